@@ -0,0 +1,277 @@
+package iped.app.metadata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.NumericUtils;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.engine.data.IPEDMultiSource;
+import iped.engine.lucene.SegmentDocValues;
+import iped.engine.search.MultiSearchResult;
+
+/**
+ * Counts doc values of the items of a search result. Lucene ids of the result
+ * are sorted and split into chunks, each one inside a single segment. Chunks
+ * are counted in parallel, each one with its own doc values iterators and
+ * primitive counting arrays, which are merged at the end. Segment ordinals are
+ * mapped to global ordinals with the ordinal maps cached by
+ * {@link SegmentDocValues}.
+ */
+class FacetCounter {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private static final ExecutorService executor = Executors
+            .newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "FacetCounter"); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            });
+
+    /**
+     * Accumulates values of one doc into a partial count.
+     */
+    interface ValuesConsumer<T> {
+        void accept(T partial, double[] values, int count);
+    }
+
+    private static class Chunk {
+        private final int leafIndex, from, to;
+
+        private Chunk(int leafIndex, int from, int to) {
+            this.leafIndex = leafIndex;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private interface ChunkCounter<T> {
+        T count(Chunk chunk) throws IOException;
+    }
+
+    private final SegmentDocValues segmentDocValues;
+    private final int[] docs;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final long fingerprint;
+    private RoaringBitmap docBitmap;
+
+    FacetCounter(IPEDMultiSource source, MultiSearchResult result) {
+        segmentDocValues = SegmentDocValues.get(source.getReader());
+        docs = new int[result.getLength()];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = source.getLuceneId(result.getSourceId(i), result.getId(i));
+        }
+        Arrays.parallelSort(docs);
+
+        long hash = docs.length;
+        for (int doc : docs) {
+            hash = 31 * hash + doc;
+            hash ^= hash >>> 29;
+        }
+        fingerprint = hash;
+
+        List<LeafReaderContext> leaves = segmentDocValues.leaves();
+        int start = 0;
+        while (start < docs.length) {
+            int leafIndex = segmentDocValues.leafIndex(docs[start]);
+            LeafReaderContext leaf = leaves.get(leafIndex);
+            int leafEnd = leaf.docBase + leaf.reader().maxDoc();
+            int end = start;
+            while (end < docs.length && docs[end] < leafEnd && end - start < CHUNK_SIZE) {
+                end++;
+            }
+            chunks.add(new Chunk(leafIndex, start, end));
+            start = end;
+        }
+    }
+
+    /**
+     * @return hash of the sorted lucene ids of the result, used with its length to
+     *         find results which may have the same items
+     */
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return compressed lucene ids of the result, to check if results with the
+     *         same fingerprint really have the same items
+     */
+    synchronized RoaringBitmap getDocBitmap() {
+        if (docBitmap == null) {
+            docBitmap = RoaringBitmap.bitmapOf(docs);
+            docBitmap.runOptimize();
+        }
+        return docBitmap;
+    }
+
+    int getNumDocs() {
+        return docs.length;
+    }
+
+    private LeafReader leafReader(Chunk chunk) {
+        return segmentDocValues.leaves().get(chunk.leafIndex).reader();
+    }
+
+    private int docBase(Chunk chunk) {
+        return segmentDocValues.leaves().get(chunk.leafIndex).docBase;
+    }
+
+    private <T> T run(ChunkCounter<T> counter, BinaryOperator<T> merger) throws IOException {
+        List<Future<T>> futures = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            futures.add(executor.submit((Callable<T>) () -> counter.count(chunk)));
+        }
+        T result = null;
+        try {
+            for (Future<T> future : futures) {
+                T partial = future.get();
+                result = result == null ? partial : merger.apply(result, partial);
+            }
+        } catch (InterruptedException e) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return result;
+    }
+
+    static int[] sum(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] += b[i];
+        }
+        return a;
+    }
+
+    /**
+     * @return count of docs by global ordinal of a SORTED field
+     */
+    int[] countSortedOrds(String field, int numOrds) throws IOException {
+        // builds the ordinal map once, before counting in parallel
+        segmentDocValues.getSortedGlobalOrds(field, 0);
+        int[] counts = run(chunk -> {
+            int[] partial = new int[numOrds];
+            SortedDocValues values = leafReader(chunk).getSortedDocValues(field);
+            if (values == null) {
+                return partial;
+            }
+            LongValues globalOrds = segmentDocValues.getSortedGlobalOrds(field, chunk.leafIndex);
+            int docBase = docBase(chunk);
+            for (int i = chunk.from; i < chunk.to; i++) {
+                if (values.advanceExact(docs[i] - docBase)) {
+                    partial[(int) globalOrds.get(values.ordValue())]++;
+                }
+            }
+            return partial;
+        }, FacetCounter::sum);
+        return counts != null ? counts : new int[numOrds];
+    }
+
+    /**
+     * @return count of docs by global ordinal of a SORTED_SET field, each ordinal
+     *         is counted once per doc
+     */
+    int[] countSortedSetOrds(String field, int numOrds) throws IOException {
+        segmentDocValues.getSortedSetGlobalOrds(field, 0);
+        int[] counts = run(chunk -> {
+            int[] partial = new int[numOrds];
+            SortedSetDocValues values = leafReader(chunk).getSortedSetDocValues(field);
+            if (values == null) {
+                return partial;
+            }
+            LongValues globalOrds = segmentDocValues.getSortedSetGlobalOrds(field, chunk.leafIndex);
+            int docBase = docBase(chunk);
+            for (int i = chunk.from; i < chunk.to; i++) {
+                if (values.advanceExact(docs[i] - docBase)) {
+                    long ord, prevOrd = -1;
+                    while ((ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                        if (ord != prevOrd) {
+                            partial[(int) globalOrds.get(ord)]++;
+                        }
+                        prevOrd = ord;
+                    }
+                }
+            }
+            return partial;
+        }, FacetCounter::sum);
+        return counts != null ? counts : new int[numOrds];
+    }
+
+    /**
+     * Visits decoded values of a NUMERIC or SORTED_NUMERIC field of each doc,
+     * accumulating them into partial results merged at the end.
+     */
+    <T> T visitNumericValues(String field, boolean isFloat, boolean isDouble, Supplier<T> supplier,
+            ValuesConsumer<T> consumer, BinaryOperator<T> merger) throws IOException {
+        T result = run(chunk -> {
+            T partial = supplier.get();
+            LeafReader reader = leafReader(chunk);
+            NumericDocValues numValues = reader.getNumericDocValues(field);
+            SortedNumericDocValues numValuesSet = numValues == null ? reader.getSortedNumericDocValues(field) : null;
+            if (numValues == null && numValuesSet == null) {
+                return partial;
+            }
+            int docBase = docBase(chunk);
+            double[] values = new double[1];
+            for (int i = chunk.from; i < chunk.to; i++) {
+                int doc = docs[i] - docBase;
+                int count;
+                if (numValues != null) {
+                    if (!numValues.advanceExact(doc)) {
+                        continue;
+                    }
+                    count = 1;
+                    values[0] = decode(numValues.longValue(), isFloat, isDouble);
+                } else {
+                    if (!numValuesSet.advanceExact(doc)) {
+                        continue;
+                    }
+                    count = numValuesSet.docValueCount();
+                    if (count > values.length) {
+                        values = new double[count];
+                    }
+                    for (int j = 0; j < count; j++) {
+                        values[j] = decode(numValuesSet.nextValue(), isFloat, isDouble);
+                    }
+                }
+                consumer.accept(partial, values, count);
+            }
+            return partial;
+        }, merger);
+        return result != null ? result : supplier.get();
+    }
+
+    private static double decode(long val, boolean isFloat, boolean isDouble) {
+        if (isFloat)
+            return NumericUtils.sortableIntToFloat((int) val);
+        else if (isDouble)
+            return NumericUtils.sortableLongToDouble(val);
+        return val;
+    }
+
+}
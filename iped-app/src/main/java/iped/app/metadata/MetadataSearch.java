@@ -6,14 +6,19 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.ArrayUtils;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.app.ui.App;
 import iped.app.ui.Messages;
@@ -49,6 +54,72 @@ public class MetadataSearch extends MetadataSearchable {
 
     volatile IMultiSearchResult ipedResult;
 
+    private static final int FACET_CACHE_SIZE = 64;
+
+    /**
+     * Counts of recently seen (result, field) pairs, so refreshing the metadata
+     * panel with the same result does not count values again.
+     */
+    private static final LinkedHashMap<FacetKey, FacetCounts> facetCache = new LinkedHashMap<FacetKey, FacetCounts>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FacetKey, FacetCounts> eldest) {
+            return size() > FACET_CACHE_SIZE;
+        }
+    };
+
+    private static Object cachedReaderKey;
+
+    private static class FacetKey {
+        private final Object readerKey;
+        private final String field;
+        private final boolean logScale, noRanges;
+        private final int numDocs;
+        private final long fingerprint;
+        private final RoaringBitmap docs;
+
+        private FacetKey(IndexReader reader, String field, boolean logScale, boolean noRanges, FacetCounter counter) {
+            IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+            this.readerKey = cacheHelper != null ? cacheHelper.getKey() : reader;
+            this.field = field;
+            this.logScale = logScale;
+            this.noRanges = noRanges;
+            this.numDocs = counter.getNumDocs();
+            this.fingerprint = counter.getFingerprint();
+            this.docs = counter.getDocBitmap();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, logScale, noRanges, numDocs, fingerprint);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FacetKey)) {
+                return false;
+            }
+            FacetKey o = (FacetKey) obj;
+            return readerKey == o.readerKey && field.equals(o.field) && logScale == o.logScale
+                    && noRanges == o.noRanges && numDocs == o.numDocs && fingerprint == o.fingerprint
+                    && (docs == o.docs || docs.equals(o.docs));
+        }
+    }
+
+    private static class FacetCounts {
+        private final ArrayList<ValueCount> values;
+        private final double min, max, interval;
+
+        private FacetCounts(ArrayList<ValueCount> values, double min, double max, double interval) {
+            this.values = values;
+            this.min = min;
+            this.max = max;
+            this.interval = interval;
+        }
+    }
+
     public MetadataSearch() {
     }
 
@@ -307,10 +378,118 @@ public ArrayList<ValueCount> countValues(String field) throws IOException {
 
         loadDocValues(field);
 
+        boolean isTimeEvent = BasicProps.TIME_EVENT.equals(field);
+        MultiSearchResult result = MultiSearchResult.of(ipedResult);
+
+        // time event items carry their own events, so counts depend on more than docs
+        if (isTimeEvent && docValuesSet != null) {
+            return countValues(field, result, null);
+        }
+
+        FacetCounter counter = new FacetCounter(App.get().appCase, result);
+        FacetKey key = new FacetKey(App.get().appCase.getReader(), field, logScale, noRanges, counter);
+        FacetCounts cached = getCachedFacets(key);
+        if (cached != null) {
+            min = cached.min;
+            max = cached.max;
+            interval = cached.interval;
+            return new ArrayList<>(cached.values);
+        }
+        ArrayList<ValueCount> list = countValues(field, result, counter);
+        putCachedFacets(key, new FacetCounts(new ArrayList<>(list), min, max, interval));
+        return list;
+    }
+
+    private static FacetCounts getCachedFacets(FacetKey key) {
+        synchronized (facetCache) {
+            if (cachedReaderKey != key.readerKey) {
+                facetCache.clear();
+                cachedReaderKey = key.readerKey;
+            }
+            return facetCache.get(key);
+        }
+    }
+
+    private static void putCachedFacets(FacetKey key, FacetCounts counts) {
+        synchronized (facetCache) {
+            if (cachedReaderKey == key.readerKey) {
+                facetCache.put(key, counts);
+            }
+        }
+    }
+
+    private static int getLogScaleOrd(double val) {
+        int ord = logScaleHalf;
+        if (val == Double.NEGATIVE_INFINITY) {
+            ord = 0;
+        } else if (val == Double.POSITIVE_INFINITY) {
+            ord = logScaleBins - 2;
+        } else if (Double.isNaN(val)) {
+            ord = logScaleBins - 1;
+        } else if (val < 0) {
+            ord -= 1;
+            val *= -1;
+            if (val > 1)
+                ord = ord - (int) Math.log10(val);
+            if (ord < 1)
+                ord = 1;
+        } else if (val > 1) {
+            ord = (int) Math.log10(val) + ord;
+            if (ord > logScaleBins - 3)
+                ord = logScaleBins - 3;
+        }
+        return ord;
+    }
+
+    /**
+     * Partial counts of the linear scale histogram.
+     */
+    private static class LinearBins {
+        int[] counts = new int[linearScaleBins];
+        long[] actualMin, actualMax;
+        boolean hasNegativeInfinite, hasPositiveInfinite, hasNaN;
+
+        LinearBins(boolean trackActualRanges) {
+            if (trackActualRanges) {
+                actualMin = new long[linearScaleBins];
+                actualMax = new long[linearScaleBins];
+                Arrays.fill(actualMin, Long.MAX_VALUE);
+                Arrays.fill(actualMax, Long.MIN_VALUE);
+            }
+        }
+
+        LinearBins merge(LinearBins o) {
+            FacetCounter.sum(counts, o.counts);
+            if (actualMin != null) {
+                for (int i = 0; i < linearScaleBins; i++) {
+                    actualMin[i] = Math.min(actualMin[i], o.actualMin[i]);
+                    actualMax[i] = Math.max(actualMax[i], o.actualMax[i]);
+                }
+            }
+            hasNegativeInfinite |= o.hasNegativeInfinite;
+            hasPositiveInfinite |= o.hasPositiveInfinite;
+            hasNaN |= o.hasNaN;
+            return this;
+        }
+    }
+
+    private static HashMap<Double, SingleValueCount> mergeValueCounts(HashMap<Double, SingleValueCount> a,
+            HashMap<Double, SingleValueCount> b) {
+        for (SingleValueCount v : b.values()) {
+            SingleValueCount prev = a.putIfAbsent(v.value, v);
+            if (prev != null) {
+                prev.count += v.count;
+            }
+        }
+        return a;
+    }
+
+    private ArrayList<ValueCount> countValues(String field, MultiSearchResult result, FacetCounter counter)
+            throws IOException {
+
         boolean isNumeric = IndexItem.isNumeric(field);
         boolean isFloat = IndexItem.isFloat(field);
         boolean isDouble = IndexItem.isDouble(field);
-        boolean isTimeEvent = BasicProps.TIME_EVENT.equals(field);
 
         // System.out.println("counting");
         int[] valueCount = null;
@@ -327,276 +506,103 @@ public ArrayList<ValueCount> countValues(String field) throws IOException {
         boolean hasPositiveInfinite = false;
         boolean hasNaN = false;
 
-        if (isNumeric && numValues != null && !noRanges) {
+        if (isNumeric && (numValues != null || numValuesSet != null) && !noRanges) {
             if (logScale) {
-                valueCount = new int[logScaleBins];
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValues.advanceExact(doc);
-                    if (adv) {
-                        double val = numValues.longValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        int ord = logScaleHalf;
-                        if (val == Double.NEGATIVE_INFINITY) {
-                            ord = 0;
-                        } else if (val == Double.POSITIVE_INFINITY) {
-                            ord = logScaleBins - 2;
-                        } else if (Double.isNaN(val)) {
-                            ord = logScaleBins - 1;
-                        } else if (val < 0) {
-                            ord -= 1;
-                            val *= -1;
-                            if (val > 1)
-                                ord = ord - (int) Math.log10(val);
-                            if (ord < 1)
-                                ord = 1;
-                        } else if (val > 1) {
-                            ord = (int) Math.log10(val) + ord;
-                            if (ord > logScaleBins - 3)
-                                ord = logScaleBins - 3;
-                        }
-                        valueCount[ord]++;
-                    }
-                }
+                valueCount = counter.visitNumericValues(field, isFloat, isDouble, () -> new int[logScaleBins],
+                        (counts, values, count) -> {
+                            int prevOrd = -1;
+                            for (int i = 0; i < count; i++) {
+                                int ord = getLogScaleOrd(values[i]);
+                                if (ord != prevOrd)
+                                    counts[ord]++;
+                                prevOrd = ord;
+                            }
+                        }, FacetCounter::sum);
             } else {
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValues.advanceExact(doc);
-                    if (adv) {
-                        double val = numValues.longValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        if (Double.isFinite(val)) {
-                            if (val < min)
-                                min = val;
-                            if (val > max)
-                                max = val;
-                        }
-                    }
-                }
-                valueCount = new int[linearScaleBins];
-                interval = min >= max ? 1 : (max - min) / linearScaleBins;
-                long[] rangeMin = null;
-                long[] rangeMax = null;
-                if (!isFloat && !isDouble) {
-                    rangeMin = new long[valueCount.length];
-                    rangeMax = new long[valueCount.length];
-                    for (int i = 0; i < valueCount.length; i++) {
-                        rangeMin[i] = i == 0 ? (long) Math.floor(i * interval + min) : rangeMax[i - 1] + 1;
-                        rangeMax[i] = (long) Math.ceil((i + 1) * interval + min);
-                    }
-                    actualMin = new long[valueCount.length];
-                    actualMax = new long[valueCount.length];
-                    Arrays.fill(actualMin, Long.MAX_VALUE);
-                    Arrays.fill(actualMax, Long.MIN_VALUE);
-                }
-                // must reset docValues to call advance again
-                loadDocValues(field);
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValues.advanceExact(doc);
-                    if (adv) {
-                        double val = numValues.longValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        int ord = (int) ((val - min) / interval);
-                        if (val == Double.NEGATIVE_INFINITY) {
-                            hasNegativeInfinite = true;
-                            ord = 0;
-                        } else if (val == Double.POSITIVE_INFINITY) {
-                            hasPositiveInfinite = true;
-                            ord = linearScaleBins - 1;
-                        } else if (Double.isNaN(val)) {
-                            hasNaN = true;
-                            ord = linearScaleBins - 1;
-                        } else if (ord >= linearScaleBins)
-                            ord = linearScaleBins - 1;
-                        if (!isFloat && !isDouble) {
-                            long lval = (long) val;
-                            for (int i = Math.max(0, ord - 1); i <= ord + 1 && i < valueCount.length; i++) {
-                                if (lval >= rangeMin[i] && lval <= rangeMax[i]) {
-                                    ord = i;
-                                    break;
+                double[] minMax = counter.visitNumericValues(field, isFloat, isDouble,
+                        () -> new double[] { Double.MAX_VALUE, Double.MIN_VALUE }, (partial, values, count) -> {
+                            for (int i = 0; i < count; i++) {
+                                double val = values[i];
+                                if (Double.isFinite(val)) {
+                                    if (val < partial[0])
+                                        partial[0] = val;
+                                    if (val > partial[1])
+                                        partial[1] = val;
                                 }
                             }
-                            if (lval < actualMin[ord])
-                                actualMin[ord] = lval;
-                            if (lval > actualMax[ord])
-                                actualMax[ord] = lval;
-                        }
-                        if (ord < 0)
-                            ord = 0;
-                        else if (ord >= linearScaleBins)
-                            ord = linearScaleBins - 1;
-                        valueCount[ord]++;
-                    }
-                }
-            }
-        } else if (isNumeric && numValuesSet != null && !noRanges) {
-            if (logScale) {
-                valueCount = new int[logScaleBins];
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValuesSet.advanceExact(doc);
-                    int prevOrd = -1;
-                    for (int i = 0; adv && i < numValuesSet.docValueCount(); i++) {
-                        double val = numValuesSet.nextValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        int ord = logScaleHalf;
-                        if (val == Double.NEGATIVE_INFINITY) {
-                            ord = 0;
-                        } else if (val == Double.POSITIVE_INFINITY) {
-                            ord = logScaleBins - 2;
-                        } else if (Double.isNaN(val)) {
-                            ord = logScaleBins - 1;
-                        } else if (val < 0) {
-                            ord -= 1;
-                            val *= -1;
-                            if (val > 1)
-                                ord = ord - (int) Math.log10(val);
-                            if (ord < 1)
-                                ord = 1;
-                        } else if (val > 1) {
-                            ord = (int) Math.log10(val) + ord;
-                            if (ord > logScaleBins - 3)
-                                ord = logScaleBins - 3;
-                        }
-                        if (ord != prevOrd)
-                            valueCount[ord]++;
-                        prevOrd = ord;
-                    }
-                }
-            } else {
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValuesSet.advanceExact(doc);
-                    for (int i = 0; adv && i < numValuesSet.docValueCount(); i++) {
-                        double val = numValuesSet.nextValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        if (Double.isFinite(val)) {
-                            if (val < min)
-                                min = val;
-                            if (val > max)
-                                max = val;
-                        }
-                    }
-                }
-                valueCount = new int[linearScaleBins];
+                        }, (a, b) -> new double[] { Math.min(a[0], b[0]), Math.max(a[1], b[1]) });
+                min = minMax[0];
+                max = minMax[1];
                 interval = min >= max ? 1 : (max - min) / linearScaleBins;
+                boolean isInteger = !isFloat && !isDouble;
                 long[] rangeMin = null;
                 long[] rangeMax = null;
-                if (!isFloat && !isDouble) {
-                    rangeMin = new long[valueCount.length];
-                    rangeMax = new long[valueCount.length];
-                    for (int i = 0; i < valueCount.length; i++) {
+                if (isInteger) {
+                    rangeMin = new long[linearScaleBins];
+                    rangeMax = new long[linearScaleBins];
+                    for (int i = 0; i < linearScaleBins; i++) {
                         rangeMin[i] = i == 0 ? (long) Math.floor(i * interval + min) : rangeMax[i - 1] + 1;
                         rangeMax[i] = (long) Math.ceil((i + 1) * interval + min);
                     }
-                    actualMin = new long[valueCount.length];
-                    actualMax = new long[valueCount.length];
-                    Arrays.fill(actualMin, Long.MAX_VALUE);
-                    Arrays.fill(actualMax, Long.MIN_VALUE);
                 }
-                // must reset docValues to call advance again
-                loadDocValues(field);
-                for (IItemId item : ipedResult.getIterator()) {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = numValuesSet.advanceExact(doc);
-                    int prevOrd = -1;
-                    for (int i = 0; adv && i < numValuesSet.docValueCount(); i++) {
-                        double val = numValuesSet.nextValue();
-                        if (isFloat)
-                            val = NumericUtils.sortableIntToFloat((int) val);
-                        else if (isDouble)
-                            val = NumericUtils.sortableLongToDouble((long) val);
-                        int ord = (int) ((val - min) / interval);
-                        if (val == Double.NEGATIVE_INFINITY) {
-                            hasNegativeInfinite = true;
-                            ord = 0;
-                        } else if (val == Double.POSITIVE_INFINITY) {
-                            hasPositiveInfinite = true;
-                            ord = linearScaleBins - 1;
-                        } else if (Double.isNaN(val)) {
-                            hasNaN = true;
-                            ord = linearScaleBins - 1;
-                        } else if (ord >= linearScaleBins)
-                            ord = linearScaleBins - 1;
-                        if (!isFloat && !isDouble) {
-                            long lval = (long) val;
-                            for (int j = Math.max(0, ord - 1); j <= ord + 1 && j < valueCount.length; j++) {
-                                if (lval >= rangeMin[j] && lval <= rangeMax[j]) {
-                                    ord = j;
-                                    break;
+                double min = this.min, interval = this.interval;
+                long[] finalRangeMin = rangeMin, finalRangeMax = rangeMax;
+                LinearBins bins = counter.visitNumericValues(field, isFloat, isDouble, () -> new LinearBins(isInteger),
+                        (partial, values, count) -> {
+                            int prevOrd = -1;
+                            for (int i = 0; i < count; i++) {
+                                double val = values[i];
+                                int ord = (int) ((val - min) / interval);
+                                if (val == Double.NEGATIVE_INFINITY) {
+                                    partial.hasNegativeInfinite = true;
+                                    ord = 0;
+                                } else if (val == Double.POSITIVE_INFINITY) {
+                                    partial.hasPositiveInfinite = true;
+                                    ord = linearScaleBins - 1;
+                                } else if (Double.isNaN(val)) {
+                                    partial.hasNaN = true;
+                                    ord = linearScaleBins - 1;
+                                } else if (ord >= linearScaleBins)
+                                    ord = linearScaleBins - 1;
+                                if (isInteger) {
+                                    long lval = (long) val;
+                                    for (int j = Math.max(0, ord - 1); j <= ord + 1 && j < linearScaleBins; j++) {
+                                        if (lval >= finalRangeMin[j] && lval <= finalRangeMax[j]) {
+                                            ord = j;
+                                            break;
+                                        }
+                                    }
+                                    if (lval < partial.actualMin[ord])
+                                        partial.actualMin[ord] = lval;
+                                    if (lval > partial.actualMax[ord])
+                                        partial.actualMax[ord] = lval;
                                 }
+                                if (ord < 0)
+                                    ord = 0;
+                                else if (ord >= linearScaleBins)
+                                    ord = linearScaleBins - 1;
+                                if (ord != prevOrd)
+                                    partial.counts[ord]++;
+                                prevOrd = ord;
                             }
-                            if (lval < actualMin[ord])
-                                actualMin[ord] = lval;
-                            if (lval > actualMax[ord])
-                                actualMax[ord] = lval;
-                        }
-                        if (ord < 0)
-                            ord = 0;
-                        else if (ord >= linearScaleBins)
-                            ord = linearScaleBins - 1;
-                        if (ord != prevOrd)
-                            valueCount[ord]++;
-                        prevOrd = ord;
-                    }
-                }
-            }
-        } else if (isNumeric && numValuesSet != null && noRanges) {
-            HashMap<Double, SingleValueCount> map = new HashMap<Double, SingleValueCount>();
-            for (IItemId item : ipedResult.getIterator()) {
-                int doc = App.get().appCase.getLuceneId(item);
-                boolean adv = numValuesSet.advanceExact(doc);
-                for (int i = 0; adv && i < numValuesSet.docValueCount(); i++) {
-                    double val = numValuesSet.nextValue();
-                    if (isFloat)
-                        val = NumericUtils.sortableIntToFloat((int) val);
-                    else if (isDouble)
-                        val = NumericUtils.sortableLongToDouble((long) val);
-                    SingleValueCount v = map.get(val);
-                    if (v == null)
-                        map.put(val, v = new SingleValueCount(val));
-                    v.incrementCount();
-                }
-            }
-            ArrayList<SingleValueCount> l = new ArrayList<SingleValueCount>(map.values());
-            Collections.sort(l);
-            for (int i = 0; i < l.size(); i++) {
-                l.get(i).setOrd(i);
-            }
-            list.addAll(l);
-        } else if (isNumeric && numValues != null && noRanges) {
-            HashMap<Double, SingleValueCount> map = new HashMap<Double, SingleValueCount>();
-            for (IItemId item : ipedResult.getIterator()) {
-                int doc = App.get().appCase.getLuceneId(item);
-                boolean adv = numValues.advanceExact(doc);
-                if (adv) {
-                    double val = numValues.longValue();
-                    if (isFloat)
-                        val = NumericUtils.sortableIntToFloat((int) val);
-                    else if (isDouble)
-                        val = NumericUtils.sortableLongToDouble((long) val);
-                    SingleValueCount v = map.get(val);
-                    if (v == null)
-                        map.put(val, v = new SingleValueCount(val));
-                    v.incrementCount();
-                }
+                        }, LinearBins::merge);
+                valueCount = bins.counts;
+                actualMin = bins.actualMin;
+                actualMax = bins.actualMax;
+                hasNegativeInfinite = bins.hasNegativeInfinite;
+                hasPositiveInfinite = bins.hasPositiveInfinite;
+                hasNaN = bins.hasNaN;
             }
+        } else if (isNumeric && (numValues != null || numValuesSet != null) && noRanges) {
+            HashMap<Double, SingleValueCount> map = counter.visitNumericValues(field, isFloat, isDouble,
+                    HashMap::new, (partial, values, count) -> {
+                        for (int i = 0; i < count; i++) {
+                            SingleValueCount v = partial.get(values[i]);
+                            if (v == null)
+                                partial.put(values[i], v = new SingleValueCount(values[i]));
+                            v.incrementCount();
+                        }
+                    }, MetadataSearch::mergeValueCounts);
             ArrayList<SingleValueCount> l = new ArrayList<SingleValueCount>(map.values());
             Collections.sort(l);
             for (int i = 0; i < l.size(); i++) {
@@ -604,19 +610,14 @@ else if (isDouble)
             }
             list.addAll(l);
         } else if (docValues != null) {
-            valueCount = new int[docValues.getValueCount()];
-            for (IItemId item : ipedResult.getIterator()) {
-                int doc = App.get().appCase.getLuceneId(item);
-                boolean adv = docValues.advanceExact(doc);
-                if (adv) {
-                    int ord = docValues.ordValue();
-                    valueCount[ord]++;
-                }
-            }
+            valueCount = counter.countSortedOrds(field, docValues.getValueCount());
+        } else if (docValuesSet != null && counter != null) {
+            valueCount = counter.countSortedSetOrds(getSortedSetField(field), (int) docValuesSet.getValueCount());
         } else if (docValuesSet != null) {
             valueCount = new int[(int) docValuesSet.getValueCount()];
-            for (IItemId item : ipedResult.getIterator()) {
-                if (isTimeEvent && item instanceof TimeItemId) {
+            for (int i = 0; i < result.getLength(); i++) {
+                IItemId item = result.getItem(i);
+                if (item instanceof TimeItemId) {
                     TimeItemId timeId = (TimeItemId) item;
                     String eventSet = timeId.getTimeEventValue(eventDocValuesSet);
                     long[] ords = getEventOrdsFromEventSet(docValuesSet, eventSet);
@@ -55,6 +55,8 @@
 import iped.app.ui.AppMain;
 import iped.data.IItem;
 import iped.engine.Version;
+import iped.engine.core.LatencyHistogram;
+import iped.engine.core.ProcessingMetrics;
 import iped.engine.core.Statistics;
 import iped.engine.core.Worker;
 import iped.engine.core.Worker.STATE;
@@ -79,7 +81,7 @@ public class ProgressFrame extends JFrame implements PropertyChangeListener, Act
     private static final long serialVersionUID = -1130342847618772236L;
     private JProgressBar progressBar;
     private JButton pause, openApp;
-    private JLabel tasks, itens, stats, parsers;
+    private JLabel tasks, itens, stats, parsers, latencies;
     private int prevVolume;
     private boolean discoverEnded;
     private long rate, instantRate;
@@ -160,20 +162,24 @@ public ProgressFrame(UIPropertyListenerProvider task) {
         itens = new RestrictedSizeLabel();
         stats = new RestrictedSizeLabel();
         parsers = new RestrictedSizeLabel();
+        latencies = new RestrictedSizeLabel();
 
         int sz = 10;
         stats.setBorder(BorderFactory.createEmptyBorder(sz, sz, sz, sz));
         tasks.setBorder(BorderFactory.createEmptyBorder(sz, 0, sz, sz));
         parsers.setBorder(BorderFactory.createEmptyBorder(sz, 0, sz, sz));
+        latencies.setBorder(BorderFactory.createEmptyBorder(sz, 0, sz, sz));
         itens.setBorder(BorderFactory.createEmptyBorder(sz, 0, sz, sz));
 
         stats.setAlignmentY(TOP_ALIGNMENT);
         tasks.setAlignmentY(TOP_ALIGNMENT);
         parsers.setAlignmentY(TOP_ALIGNMENT);
+        latencies.setAlignmentY(TOP_ALIGNMENT);
         itens.setAlignmentY(TOP_ALIGNMENT);
 
         panel.add(stats);
         panel.add(tasks);
+        panel.add(latencies);
         panel.add(parsers);
         panel.add(itens);
         JScrollPane scrollPane = new JScrollPane(panel);
@@ -199,10 +205,11 @@ private void update() {
             return;
         }
         // Get volume/item processed/total 
-        int totalVolume = (int)(Statistics.get().getCaseData().getDiscoveredVolume() >>> 20); // Converted to MB
-        int totalItems = Statistics.get().getCaseData().getDiscoveredEvidences();
-        int processedVolume = (int)(Statistics.get().getVolume() >>> 20); // Converted to MB
-        int processedItems = Statistics.get().getProcessed();
+        Statistics.Snapshot snapshot = s.getSnapshot();
+        int totalVolume = (int)(s.getCaseData().getDiscoveredVolume() >>> 20); // Converted to MB
+        int totalItems = s.getCaseData().getDiscoveredEvidences();
+        int processedVolume = (int)(snapshot.getVolume() >>> 20); // Converted to MB
+        int processedItems = snapshot.getProcessed();
 
         progressBar.setMaximum(totalVolume);
         
@@ -210,6 +217,7 @@ private void update() {
         itens.setText(getItemList());
         stats.setText(getStats());
         parsers.setText(getParserTimes());
+        latencies.setText(getTaskLatencies());
         if (processedItems > 0)
             openApp.setEnabled(true);
 
@@ -265,6 +273,7 @@ public void propertyChange(PropertyChangeEvent evt) {
             itens.setText(getItemList());
             stats.setText(getStats());
             parsers.setText(getParserTimes());
+            latencies.setText(getTaskLatencies());
 
         } else if ("workers".equals(evt.getPropertyName())) { //$NON-NLS-1$
             workers = (Worker[]) evt.getNewValue();
@@ -380,6 +389,39 @@ private String getTaskTimes() {
         return msg.toString();
     }
 
+    private ProcessingMetrics getProcessingMetrics() {
+        if (workers == null) {
+            return null;
+        }
+        return workers[0].manager.getProcessingMetrics();
+    }
+
+    private String getTaskLatencies() {
+        ProcessingMetrics metrics = getProcessingMetrics();
+        if (metrics == null) {
+            return "";
+        }
+        StringBuilder msg = new StringBuilder();
+        startTable(msg);
+        addTitle(msg, 4, Messages.getString("ProgressFrame.TaskLatencies"));
+
+        startRow(msg, "");
+        addCell(msg, Messages.getString("ProgressFrame.LatencyP50"), Align.CENTER);
+        addCell(msg, Messages.getString("ProgressFrame.LatencyP99"), Align.CENTER);
+        finishRow(msg, Messages.getString("ProgressFrame.LatencyMax"), Align.CENTER);
+
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : metrics.getTaskLatencies().entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue();
+            startRow(msg, entry.getKey(), snapshot.getCount() > 0);
+            addCell(msg, formatMicros(snapshot.getPercentile(50)), Align.RIGHT);
+            addCell(msg, formatMicros(snapshot.getPercentile(99)), Align.RIGHT);
+            finishRow(msg, formatMicros(snapshot.getMax()), Align.RIGHT);
+        }
+
+        finishTable(msg);
+        return msg.toString();
+    }
+
     private String getParserTimes() {
         ParsingTask.copyTimesPerParser(timesPerParser);
         if (timesPerParser.isEmpty())
@@ -410,8 +452,10 @@ private String getParserTimes() {
     }
 
     private String getStats() {
-        if (Statistics.get() == null)
+        Statistics s = Statistics.get();
+        if (s == null)
             return "";
+        Statistics.Snapshot snapshot = s.getSnapshot();
         StringBuilder msg = new StringBuilder();
         startTable(msg);
         addTitle(msg, 2, Messages.getString("ProgressFrame.Statistics"));
@@ -431,44 +475,53 @@ private String getStats() {
         startRow(msg, Messages.getString("ProgressFrame.CurrentSpeed"));
         finishRow(msg, nf.format(instantRate) + " GB/h", Align.RIGHT);
 
+        ProcessingMetrics metrics = getProcessingMetrics();
+        if (metrics != null) {
+            startRow(msg, Messages.getString("ProgressFrame.ItemsPerSecond"));
+            finishRow(msg, nf.format(Math.round(metrics.getItemsPerSecond())), Align.RIGHT);
+
+            startRow(msg, Messages.getString("ProgressFrame.QueueSize"));
+            finishRow(msg, nf.format(metrics.getQueueSize()), Align.RIGHT);
+        }
+
         startRow(msg, Messages.getString("ProgressFrame.VolumeFound"));
-        finishRow(msg, formatMB(Statistics.get().getCaseData().getDiscoveredVolume()), Align.RIGHT);
+        finishRow(msg, formatMB(s.getCaseData().getDiscoveredVolume()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.VolumeProcessed"));
-        finishRow(msg, formatMB(Statistics.get().getVolume()), Align.RIGHT);
+        finishRow(msg, formatMB(snapshot.getVolume()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.ItemsFound"));
-        finishRow(msg, nf.format(Statistics.get().getCaseData().getDiscoveredEvidences()), Align.RIGHT);
+        finishRow(msg, nf.format(s.getCaseData().getDiscoveredEvidences()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.ItemsProcessed"));
-        finishRow(msg, nf.format(Statistics.get().getProcessed()), Align.RIGHT);
+        finishRow(msg, nf.format(snapshot.getProcessed()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.ActiveProcessed"));
-        finishRow(msg, nf.format(Statistics.get().getActiveProcessed()), Align.RIGHT);
+        finishRow(msg, nf.format(snapshot.getActiveProcessed()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.SubitemsProcessed"));
-        finishRow(msg, nf.format(Statistics.get().getSubitemsDiscovered()), Align.RIGHT);
+        finishRow(msg, nf.format(snapshot.getSubitemsDiscovered()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.Carved"));
         finishRow(msg, nf.format(BaseCarveTask.getItensCarved()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.CarvedDiscarded"));
-        finishRow(msg, nf.format(Statistics.get().getCorruptCarveIgnored()), Align.RIGHT);
+        finishRow(msg, nf.format(snapshot.getCorruptCarveIgnored()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.Exported"));
         finishRow(msg, nf.format(ExportFileTask.getItensExtracted()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.Ignored"));
-        finishRow(msg, nf.format(Statistics.get().getIgnored()), Align.RIGHT);
+        finishRow(msg, nf.format(snapshot.getIgnored()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.ParsingErrors"));
         finishRow(msg, nf.format(StandardParser.parsingErrors), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.ReadErrors"));
-        finishRow(msg, nf.format(Statistics.get().getIoErrors()), Align.RIGHT);
+        finishRow(msg, nf.format(snapshot.getIoErrors()), Align.RIGHT);
 
         startRow(msg, Messages.getString("ProgressFrame.Timeouts"));
-        finishRow(msg, nf.format(Statistics.get().getTimeouts()), Align.RIGHT);
+        finishRow(msg, nf.format(snapshot.getTimeouts()), Align.RIGHT);
 
         // Some environment information
         skipRow(msg, 2);
@@ -703,6 +756,15 @@ private static String formatMB(long value) {
         return nf.format(value >>> 20) + " MB";
     }
 
+    private static String formatMicros(long value) {
+        if (value < 1000) {
+            return nf.format(value) + " us";
+        } else if (value < 1000000) {
+            return nf.format(value / 1000) + " ms";
+        }
+        return nf.format(value / 1000000) + " s";
+    }
+
     private static String formatGB(long value) {
         return nf.format(value >>> 30) + " GB";
     }
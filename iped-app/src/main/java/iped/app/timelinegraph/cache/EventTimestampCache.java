@@ -4,15 +4,17 @@
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
-import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
 import org.apache.lucene.util.UnicodeUtil;
 import org.jfree.data.time.Day;
 import org.jfree.data.time.Hour;
@@ -24,6 +26,7 @@
 
 import iped.app.timelinegraph.DateUtil;
 import iped.app.timelinegraph.IpedChartsPanel;
+import iped.engine.lucene.SegmentDocValues;
 import iped.viewers.api.IMultiSearchResultProvider;
 
 public class EventTimestampCache implements Runnable {
@@ -47,17 +50,17 @@ public EventTimestampCache(IpedChartsPanel ipedChartsPanel, IMultiSearchResultPr
     }
 
     public void run() {
-        LeafReader reader = resultsProvider.getIPEDSource().getLeafReader();
+        // per segment doc values, with ordinals mapped to global ones
+        SegmentDocValues docValues = SegmentDocValues.get(resultsProvider.getIPEDSource().getReader());
 
         IndexTimeStampCache timeStampCache = (IndexTimeStampCache) this.timeStampCache;
 
-        DocIdSetIterator timeStampValues;
         try {
             String eventField = ipedChartsPanel.getTimeEventColumnName(eventType).trim();
             if (eventField != null) {
-                timeStampValues = reader.getSortedDocValues(eventField);
-                if (timeStampValues == null) {
-                    SortedSetDocValues values = reader.getSortedSetDocValues(eventField);
+                SortedDocValues globalValues = docValues.getGlobalSortedDocValues(eventField);
+                if (globalValues == null) {
+                    SortedSetDocValues values = docValues.getGlobalSortedSetDocValues(eventField);
                     TermsEnum tenum = values.termsEnum();
                     Long emptyValueOrd = getEmptyOrd(tenum);
                     if (emptyValueOrd == null) {
@@ -65,30 +68,41 @@ public void run() {
                     }
                     Map<String, long[]> parsedDateCache = getParsedCache(tenum, (int) values.getValueCount());
 
-                    int doc = values.nextDoc();
-                    while (doc != DocIdSetIterator.NO_MORE_DOCS) {
-                        int ord = (int) values.nextOrd();
-                        while (ord != SortedSetDocValues.NO_MORE_ORDS) {
-                            if (emptyValueOrd == null || ord != emptyValueOrd) {
-                                for (Class<? extends TimePeriod> timePeriodClass : timeStampCache.getPeriodClassesToCache()) {
-                                    Date date = null;
-                                    long[] cache = parsedDateCache.get(timePeriodClass.getSimpleName());
-                                    if (cache == null) {
-                                        date = DateUtil.ISO8601DateParse(timePeriodClass, values.lookupOrd(ord).bytes);
-                                    } else {
-                                        date = new Date(cache[ord]);
-                                    }
-                                    if (date != null) {
-                                        timeStampCache.add(timePeriodClass, date, eventInternalOrd, doc);
+                    List<LeafReaderContext> leaves = docValues.leaves();
+                    for (int i = 0; i < leaves.size(); i++) {
+                        SortedSetDocValues leafValues = leaves.get(i).reader().getSortedSetDocValues(eventField);
+                        if (leafValues == null) {
+                            continue;
+                        }
+                        LongValues globalOrds = docValues.getSortedSetGlobalOrds(eventField, i);
+                        int docBase = leaves.get(i).docBase;
+                        int leafDoc = leafValues.nextDoc();
+                        while (leafDoc != DocIdSetIterator.NO_MORE_DOCS) {
+                            int doc = docBase + leafDoc;
+                            long leafOrd = leafValues.nextOrd();
+                            while (leafOrd != SortedSetDocValues.NO_MORE_ORDS) {
+                                int ord = (int) globalOrds.get(leafOrd);
+                                if (emptyValueOrd == null || ord != emptyValueOrd) {
+                                    for (Class<? extends TimePeriod> timePeriodClass : timeStampCache.getPeriodClassesToCache()) {
+                                        Date date = null;
+                                        long[] cache = parsedDateCache.get(timePeriodClass.getSimpleName());
+                                        if (cache == null) {
+                                            date = DateUtil.ISO8601DateParse(timePeriodClass, values.lookupOrd(ord).bytes);
+                                        } else {
+                                            date = new Date(cache[ord]);
+                                        }
+                                        if (date != null) {
+                                            timeStampCache.add(timePeriodClass, date, eventInternalOrd, doc);
+                                        }
                                     }
                                 }
+                                leafOrd = leafValues.nextOrd();
                             }
-                            ord = (int) values.nextOrd();
+                            leafDoc = leafValues.nextDoc();
                         }
-                        doc = values.nextDoc();
                     }
                 } else {
-                    SortedDocValues values = (SortedDocValues) timeStampValues;
+                    SortedDocValues values = globalValues;
                     TermsEnum tenum = values.termsEnum();
                     Long emptyValueOrd = getEmptyOrd(tenum);
                     if (emptyValueOrd == null) {
@@ -96,24 +110,34 @@ public void run() {
                     }
                     Map<String, long[]> parsedDateCache = getParsedCache(tenum, values.getValueCount());
 
-                    int doc = values.nextDoc();
-                    while (doc != DocIdSetIterator.NO_MORE_DOCS) {
-                        int ord = values.ordValue();
-                        if (emptyValueOrd == null || ord != emptyValueOrd) {
-                            for (Class<? extends TimePeriod> timePeriodClass : timeStampCache.getPeriodClassesToCache()) {
-                                Date date = null;
-                                long[] cache = parsedDateCache.get(timePeriodClass.getSimpleName());
-                                if (cache == null) {
-                                    date = DateUtil.ISO8601DateParse(timePeriodClass, values.lookupOrd(ord).bytes);
-                                } else {
-                                    date = new Date(cache[ord]);
-                                }
-                                if (date != null) {
-                                    timeStampCache.add(timePeriodClass, date, eventInternalOrd, doc);
+                    List<LeafReaderContext> leaves = docValues.leaves();
+                    for (int i = 0; i < leaves.size(); i++) {
+                        SortedDocValues leafValues = leaves.get(i).reader().getSortedDocValues(eventField);
+                        if (leafValues == null) {
+                            continue;
+                        }
+                        LongValues globalOrds = docValues.getSortedGlobalOrds(eventField, i);
+                        int docBase = leaves.get(i).docBase;
+                        int leafDoc = leafValues.nextDoc();
+                        while (leafDoc != DocIdSetIterator.NO_MORE_DOCS) {
+                            int doc = docBase + leafDoc;
+                            int ord = (int) globalOrds.get(leafValues.ordValue());
+                            if (emptyValueOrd == null || ord != emptyValueOrd) {
+                                for (Class<? extends TimePeriod> timePeriodClass : timeStampCache.getPeriodClassesToCache()) {
+                                    Date date = null;
+                                    long[] cache = parsedDateCache.get(timePeriodClass.getSimpleName());
+                                    if (cache == null) {
+                                        date = DateUtil.ISO8601DateParse(timePeriodClass, values.lookupOrd(ord).bytes);
+                                    } else {
+                                        date = new Date(cache[ord]);
+                                    }
+                                    if (date != null) {
+                                        timeStampCache.add(timePeriodClass, date, eventInternalOrd, doc);
+                                    }
                                 }
                             }
+                            leafDoc = leafValues.nextDoc();
                         }
-                        doc = values.nextDoc();
                     }
                 }
             }
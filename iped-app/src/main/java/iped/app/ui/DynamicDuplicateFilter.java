@@ -1,14 +1,11 @@
 package iped.app.ui;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.BitSet;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedDocValues;
 
-import iped.data.IItemId;
 import iped.engine.data.IPEDMultiSource;
 import iped.engine.lucene.DocValuesUtil;
 import iped.engine.search.MultiSearchResult;
@@ -32,9 +29,8 @@ public MultiSearchResult filter(IMultiSearchResult result) throws IOException {
         LeafReader reader = ipedCase.getLeafReader();
         SortedDocValues docValues = reader.getSortedDocValues(IndexItem.HASH);
 
-        ArrayList<IItemId> filteredItems = new ArrayList<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        int i = 0;
+        MultiSearchResult src = MultiSearchResult.of(result);
+        MultiSearchResult.Builder filtered = new MultiSearchResult.Builder();
         boolean filterOrdZero = false;
         try {
             if (!docValues.lookupOrd(0).utf8ToString().isEmpty()) {
@@ -43,18 +39,16 @@ public MultiSearchResult filter(IMultiSearchResult result) throws IOException {
         } catch (IOException e) {
             e.printStackTrace();
         }
-        for (IItemId item : result.getIterator()) {
-            int docId = ipedCase.getLuceneId(item);
+        for (int i = 0; i < src.getLength(); i++) {
+            int docId = ipedCase.getLuceneId(src.getSourceId(i), src.getId(i));
             int ord = DocValuesUtil.getOrd(docValues, docId);
             if (ord < 0 || !ordSet.get(ord)) {
-                filteredItems.add(item);
-                scores.add(result.getScore(i));
+                filtered.add(src, i);
                 if (ord > 0 || (ord == 0 && filterOrdZero))
                     ordSet.set(ord);
             }
-            i++;
         }
-        return new MultiSearchResult(filteredItems.toArray(new IItemId[0]), ArrayUtils.toPrimitive(scores.toArray(new Float[0])));
+        return filtered.build();
     }
 
 }
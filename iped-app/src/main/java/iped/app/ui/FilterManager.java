@@ -13,7 +13,6 @@
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -37,7 +36,6 @@
 import org.apache.lucene.search.Query;
 import org.roaringbitmap.RoaringBitmap;
 
-import iped.data.IItemId;
 import iped.engine.data.IPEDMultiSource;
 import iped.engine.search.MultiSearchResult;
 import iped.engine.search.QueryBuilder;
@@ -338,63 +336,31 @@ public void setFilterEnabled(IFilterer t, boolean selected) {
     }
 
     public MultiSearchResult applyExcludeFilter(RoaringBitmap[] resultBitSet, MultiSearchResult input) {
-        LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        float[] primitiveScores;
+        MultiSearchResult.Builder result = new MultiSearchResult.Builder();
 
         if (resultBitSet != null) {
-            int i = 0;
-            while (i < input.getLength()) {
-                IItemId itemId = input.getItem(i);
-                if (!resultBitSet[itemId.getSourceId()].contains(itemId.getId())) {
-                    ids.add(itemId);
-                    scores.add(input.getScore(i));
+            for (int i = 0; i < input.getLength(); i++) {
+                if (!resultBitSet[input.getSourceId(i)].contains(input.getId(i))) {
+                    result.add(input, i);
                 }
-                i++;
             }
-
-            primitiveScores = new float[scores.size()];
-            i = 0;
-            for (Float f : scores) {
-                primitiveScores[i++] = f;
-            }
-        } else {
-            primitiveScores = new float[0];
         }
 
-        MultiSearchResult result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
-
-        return result;
+        return result.build();
     }
 
     public MultiSearchResult applyFilter(RoaringBitmap[] resultBitSet, MultiSearchResult input) {
-        LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        float[] primitiveScores;
+        MultiSearchResult.Builder result = new MultiSearchResult.Builder();
 
         if (resultBitSet != null) {
-            int i = 0;
-            while (i < input.getLength()) {
-                IItemId itemId = input.getItem(i);
-                if (resultBitSet[itemId.getSourceId()].contains(itemId.getId())) {
-                    ids.add(itemId);
-                    scores.add(input.getScore(i));
+            for (int i = 0; i < input.getLength(); i++) {
+                if (resultBitSet[input.getSourceId(i)].contains(input.getId(i))) {
+                    result.add(input, i);
                 }
-                i++;
             }
-
-            primitiveScores = new float[scores.size()];
-            i = 0;
-            for (Float f : scores) {
-                primitiveScores[i++] = f;
-            }
-        } else {
-            primitiveScores = new float[0];
         }
 
-        MultiSearchResult result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
-
-        return result;
+        return result.build();
     }
 
     public RoaringBitmap[] getCachedBitmaps(IResultSetFilter rsFilter) {
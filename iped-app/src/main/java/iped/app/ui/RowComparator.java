@@ -27,15 +27,14 @@
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.NumericDocValues;
-import org.apache.lucene.index.SortedDocValues;
-import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import iped.data.IItemId;
 import iped.engine.localization.CategoryLocalization;
+import iped.engine.lucene.SegmentDocValues;
+import iped.engine.search.MultiSearchResult;
 import iped.engine.search.TimelineResults.TimeItemId;
 import iped.engine.task.index.IndexItem;
 import iped.engine.util.Util;
@@ -118,92 +117,31 @@ private void loadDocValues(String indexedField) {
         try {
             atomicReader = App.get().appCase.getLeafReader();
 
-            SortedDocValues sdv = null;
-            SortedSetDocValues ssdv = null;
-            NumericDocValues ndv = null;
-            SortedNumericDocValues sndv = null;
+            // loads values segment by segment, mapping ordinals to global ones
+            SegmentDocValues docValues = SegmentDocValues.get(App.get().appCase.getReader());
 
             if (IndexItem.getMetadataTypes().get(indexedField) == null || !IndexItem.getMetadataTypes().get(indexedField).equals(String.class)) {
-                ndv = atomicReader.getNumericDocValues(indexedField);
-                if (ndv == null) {
-                    sndv = atomicReader.getSortedNumericDocValues(indexedField);
+                ndvOrds = docValues.loadNumericValues(indexedField, Long.MIN_VALUE);
+                if (ndvOrds == null) {
+                    sndvOrds = docValues.loadSortedNumericValues(indexedField);
                 }
             }
-            if (ndv == null && sndv == null) {
+            if (ndvOrds == null && sndvOrds == null) {
                 String prefix = ExtraProperties.LOCATIONS.equals(field) ? IndexItem.GEO_SSDV_PREFIX : "";
-                ssdv = atomicReader.getSortedSetDocValues(prefix + indexedField);
-                if (isCategory) {
-                    localizedCategoryOrds = getLocalizedCategoryOrd(ssdv);
+                ssdvOrds = docValues.loadSortedSetOrds(prefix + indexedField);
+                if (isCategory && ssdvOrds != null) {
+                    localizedCategoryOrds = getLocalizedCategoryOrd(docValues.getGlobalSortedSetDocValues(indexedField));
                 }
             }
-            if (ndv == null && sndv == null && ssdv == null) {
-                sdv = atomicReader.getSortedDocValues(indexedField);
+            if (ndvOrds == null && sndvOrds == null && ssdvOrds == null) {
+                sdvOrds = docValues.loadSortedOrds(indexedField);
             }
 
-            loadOrds(sdv, ssdv, ndv, sndv);
-
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void loadOrds(SortedDocValues sdv, SortedSetDocValues ssdv, NumericDocValues ndv, SortedNumericDocValues sndv) throws IOException {
-        int maxDoc = App.get().appCase.getLeafReader().maxDoc();
-        if (sdv != null) {
-            sdvOrds = new int[maxDoc];
-            for (int i = 0; i < maxDoc; i++) {
-                if (sdv.advanceExact(i)) {
-                    sdvOrds[i] = sdv.ordValue();
-                } else {
-                    sdvOrds[i] = -1;
-                }
-            }
-        }
-        if (ndv != null) {
-            ndvOrds = new long[maxDoc];
-            for (int i = 0; i < maxDoc; i++) {
-                if (ndv.advanceExact(i)) {
-                    ndvOrds[i] = ndv.longValue();
-                } else {
-                    ndvOrds[i] = Long.MIN_VALUE;
-                }
-            }
-        }
-        if (ssdv != null) {
-            int[] empty = new int[0];
-            ssdvOrds = new int[maxDoc][];
-            for (int i = 0; i < maxDoc; i++) {
-                if (ssdv.advanceExact(i)) {
-                    ArrayList<Integer> ords = new ArrayList<>();
-                    int ord;
-                    while ((ord = (int) ssdv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
-                        ords.add(ord);
-                    }
-                    ssdvOrds[i] = new int[ords.size()];
-                    for (int j = 0; j < ords.size(); j++) {
-                        ssdvOrds[i][j] = ords.get(j);
-                    }
-                } else {
-                    ssdvOrds[i] = empty;
-                }
-            }
-        }
-        if (sndv != null) {
-            long[] empty = new long[0];
-            sndvOrds = new long[maxDoc][];
-            for (int i = 0; i < maxDoc; i++) {
-                if (sndv.advanceExact(i)) {
-                    sndvOrds[i] = new long[sndv.docValueCount()];
-                    for (int j = 0; j < sndv.docValueCount(); j++) {
-                        sndvOrds[i][j] = sndv.nextValue();
-                    }
-                } else {
-                    sndvOrds[i] = empty;
-                }
-            }
-        }
-    }
-
     public static int[] getLocalizedCategoryOrd(SortedSetDocValues ssdv) throws IOException {
         int[] localizedOrds = new int[(int) ssdv.getValueCount()];
         ArrayList<String> localizedVals = new ArrayList<>();
@@ -226,6 +164,14 @@ public static boolean isNewIndexReader() {
         return atomicReader != App.get().appCase.getLeafReader();
     }
 
+    private int getLuceneId(int row) {
+        if (app.ipedResult instanceof MultiSearchResult) {
+            MultiSearchResult result = (MultiSearchResult) app.ipedResult;
+            return app.appCase.getLuceneId(result.getSourceId(row), result.getId(row));
+        }
+        return app.appCase.getLuceneId(app.ipedResult.getItem(row));
+    }
+
     public boolean isStringComparator() {
         return sdvOrds != null || ssdvOrds != null || bookmarkCol;
     }
@@ -239,11 +185,15 @@ public final int compare(Integer a, Integer b) {
         if (scoreCol)
             return Float.compare(app.ipedResult.getScore(a), app.ipedResult.getScore(b));
 
-        IItemId itemA = app.ipedResult.getItem(a);
-        IItemId itemB = app.ipedResult.getItem(b);
+        // item objects are just needed by some columns
+        IItemId itemA = null, itemB = null;
+        if (col == 1 || bookmarkCol || isTimeStamp || isTimeEvent) {
+            itemA = app.ipedResult.getItem(a);
+            itemB = app.ipedResult.getItem(b);
+        }
 
-        a = app.appCase.getLuceneId(itemA);
-        b = app.appCase.getLuceneId(itemB);
+        a = getLuceneId(a);
+        b = getLuceneId(b);
 
         if (col == 1) {
             if (app.appCase.getMultiBookmarks().isChecked(itemA) == app.appCase.getMultiBookmarks().isChecked(itemB))
@@ -5,7 +5,6 @@
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -19,7 +18,6 @@
 import iped.app.ui.App;
 import iped.app.ui.CaseSearcherFilter;
 import iped.app.ui.filterdecisiontree.OperandNode.Operand;
-import iped.data.IItemId;
 import iped.engine.data.IPEDMultiSource;
 import iped.engine.data.IPEDSource;
 import iped.engine.search.MultiSearchResult;
@@ -200,33 +198,18 @@ public IMultiSearchResult getSearchResult(IMultiSearchResult input) {
             e.printStackTrace();
         }
 
-        LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        float[] primitiveScores;
+        MultiSearchResult.Builder result = new MultiSearchResult.Builder();
 
         if (resultBitSet != null) {
-            int i = 0;
-            while (i < input.getLength()) {
-                IItemId itemId = input.getItem(i);
-                if (resultBitSet[itemId.getSourceId()].contains(itemId.getId())) {
-                    ids.add(itemId);
-                    scores.add(input.getScore(i));
+            MultiSearchResult src = MultiSearchResult.of(input);
+            for (int i = 0; i < src.getLength(); i++) {
+                if (resultBitSet[src.getSourceId(i)].contains(src.getId(i))) {
+                    result.add(src, i);
                 }
-                i++;
             }
-
-            primitiveScores = new float[scores.size()];
-            i = 0;
-            for (Float f : scores) {
-                primitiveScores[i++] = f;
-            }
-        } else {
-            primitiveScores = new float[0];
         }
 
-        MultiSearchResult result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
-
-        return result;
+        return result.build();
     }
 
     public IMultiSearchResult getSearchResultQuery(IMultiSearchResult input) throws ParseException, QueryNodeException, IOException {
@@ -238,30 +221,16 @@ public OperandNode getRootNode() {
     }
 
     public MultiSearchResult resultSetIntersection(MultiSearchResult input, MultiSearchResult rs) {
-        LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-
-        int i = 0;
-        while (i < input.getLength()) {
-            IItemId itemId = input.getItem(i);
-            if (rs.hasDocId(input.getIPEDSource().getLuceneId(itemId))) {
-                if (!ids.contains(itemId)) {
-                    ids.add(itemId);
-                    scores.add(input.getScore(i));
-                }
-            }
-            i++;
-        }
+        // items of a result are unique, so there is no need to check duplicates
+        MultiSearchResult.Builder result = new MultiSearchResult.Builder();
 
-        float[] primitiveScores = new float[scores.size()];
-        i = 0;
-        for (Float f : scores) {
-            primitiveScores[i++] = f;
+        for (int i = 0; i < input.getLength(); i++) {
+            if (rs.hasDocId(input.getLuceneId(i))) {
+                result.add(input, i);
+            }
         }
 
-        MultiSearchResult result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
-
-        return result;
+        return result.build();
     }
 
     class CombinedBitSet implements Future<RoaringBitmap[]> {
@@ -486,32 +455,21 @@ public IMultiSearchResult getSearchResult(IMultiSearchResult input, OperandNode
         MultiSearchResult result;
 
         if (op.operand == Operand.OR) {
-            LinkedHashSet<IItemId> ids = new LinkedHashSet<IItemId>();
-            ArrayList<Float> scores = new ArrayList<Float>();
+            MultiSearchResult src = MultiSearchResult.of(input);
+            MultiSearchResult.Builder builder = new MultiSearchResult.Builder();
 
-            int i = 0;
-            while (i < input.getLength()) {
+            for (int i = 0; i < src.getLength() && !union.isEmpty(); i++) {
+                int luceneId = src.getLuceneId(i);
                 for (Iterator iterator = union.iterator(); iterator.hasNext();) {
                     MultiSearchResult rs = (MultiSearchResult) iterator.next();
-
-                    IItemId itemId = input.getItem(i);
-                    if (rs.hasDocId(input.getIPEDSource().getLuceneId(itemId))) {
-                        if (!ids.contains(itemId)) {
-                            ids.add(itemId);
-                            scores.add(input.getScore(i));
-                        }
+                    if (rs.hasDocId(luceneId)) {
+                        builder.add(src, i);
+                        break;
                     }
                 }
-                i++;
-            }
-
-            float[] primitiveScores = new float[scores.size()];
-            i = 0;
-            for (Float f : scores) {
-                primitiveScores[i++] = f;
             }
 
-            result = new MultiSearchResult(ids.toArray(new IItemId[0]), primitiveScores);
+            result = builder.build();
         } else {
             result = (MultiSearchResult) input;
         }
@@ -1,16 +1,12 @@
 package iped.app.ui.filters;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 
 import iped.app.metadata.MetadataSearchable;
 import iped.app.ui.App;
-import iped.data.IItemId;
-import iped.engine.data.ItemId;
 import iped.engine.localization.CategoryLocalization;
 import iped.engine.search.MultiSearchResult;
 import iped.engine.task.index.IndexItem;
@@ -82,21 +78,17 @@ public IMultiSearchResult filterResult(IMultiSearchResult src) throws IOExceptio
 
         loadDocValues(field);
 
-        ArrayList<IItemId> selectedItems = new ArrayList<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
+        MultiSearchResult result = MultiSearchResult.of(src);
+        MultiSearchResult.Builder selected = new MultiSearchResult.Builder();
 
-        int i = 0;
-        for (IItemId item : src.getIterator()) {
-            int doc = App.get().appCase.getLuceneId(item);
+        for (int i = 0; i < result.getLength(); i++) {
+            int doc = App.get().appCase.getLuceneId(result.getSourceId(i), result.getId(i));
             if (filterLuceneDoc(doc)) {
-                selectedItems.add(item);
-                scores.add(src.getScore(i));
+                selected.add(result, i);
             }
-            i++;
         }
-        MultiSearchResult r = new MultiSearchResult(selectedItems.toArray(new ItemId[0]), ArrayUtils.toPrimitive(scores.toArray(new Float[0])));
 
-        return r;
+        return selected.build();
     }
 
 }
@@ -145,6 +145,10 @@ private void prepareRoot() {
                 this.root.put((byte) i, this.root);
     }
 
+    boolean isPrepared() {
+        return this.prepared;
+    }
+
     /**
      * Returns the root of the tree.
      */
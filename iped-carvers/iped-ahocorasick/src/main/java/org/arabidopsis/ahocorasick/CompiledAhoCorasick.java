@@ -0,0 +1,194 @@
+package org.arabidopsis.ahocorasick;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A prepared {@link AhoCorasick} tree flattened into a deterministic automaton.
+ * Fail transitions are resolved at compile time, so each input byte costs a
+ * single lookup in a primitive transition table, without State objects or fail
+ * link walks. Buffers are scanned in place and matches are reported by output
+ * id through a {@link MatchListener}, without allocating SearchResults.
+ * 
+ * <p>
+ * Example usage: <code><pre>
+ AhoCorasick tree = new AhoCorasick();
+ tree.add("hello".getBytes(), "hello");
+ tree.add("world".getBytes(), "world");
+ tree.prepare();
+ CompiledAhoCorasick compiled = new CompiledAhoCorasick(tree);
+
+ int state = compiled.getStartState();
+ state = compiled.search(bytes, 0, len, state, (outputId, endIndex) -> {
+   System.out.println(compiled.getOutput(outputId) + " found ending at " + endIndex);
+ });
+ </pre></code>
+ * </p>
+ * 
+ * The table uses 1KB per state of the tree. Instances are immutable and can be
+ * shared by threads, each one keeping its own current state.
+ */
+public class CompiledAhoCorasick {
+
+    private static final int ALPHABET = 256;
+
+    private static final int MAX_STATES = Integer.MAX_VALUE / ALPHABET;
+
+    /**
+     * Receives the matches found by
+     * {@link CompiledAhoCorasick#search(byte[], int, int, int, MatchListener)}.
+     */
+    public interface MatchListener {
+
+        /**
+         * @param outputId
+         *            id of the output of the matched keyword, see
+         *            {@link CompiledAhoCorasick#getOutput(int)}
+         * @param endIndex
+         *            index, in the searched array, after the last byte of the match
+         */
+        void onMatch(int outputId, int endIndex);
+    }
+
+    /**
+     * Transitions of all states, indexed by state + byte. States are stored as
+     * their offset in this table (state number * 256), complemented if the target
+     * state has outputs, so a single sign test detects matches.
+     */
+    private final int[] transitions;
+
+    /** outputIds of state n are in [outputStart[n], outputStart[n + 1]) */
+    private final int[] outputStart;
+
+    private final int[] outputIds;
+
+    private final Object[] outputs;
+
+    /**
+     * Compiles the tree, which must be prepared and is not modified.
+     */
+    public CompiledAhoCorasick(AhoCorasick tree) {
+        if (!tree.isPrepared())
+            throw new IllegalStateException("can't compile until prepare()");
+
+        // numbers states in breadth first order, so fail states come first
+        List<State> states = new ArrayList<State>();
+        Map<State, Integer> stateNumbers = new IdentityHashMap<State, Integer>();
+        State root = tree.getRoot();
+        states.add(root);
+        stateNumbers.put(root, 0);
+        for (int n = 0; n < states.size(); n++) {
+            State state = states.get(n);
+            for (int b = 0; b < ALPHABET; b++) {
+                State next = state.edgeList.array[b];
+                if (next != null && !stateNumbers.containsKey(next)) {
+                    if (states.size() == MAX_STATES)
+                        throw new IllegalStateException("too many states to compile: " + states.size());
+                    stateNumbers.put(next, states.size());
+                    states.add(next);
+                }
+            }
+        }
+
+        int numStates = states.size();
+        this.outputStart = new int[numStates + 1];
+        List<Object> outputList = new ArrayList<Object>();
+        Map<Object, Integer> outputNumbers = new IdentityHashMap<Object, Integer>();
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int n = 0; n < numStates; n++) {
+            outputStart[n] = ids.size();
+            List<Object> stateOutputs = states.get(n).getOutputs();
+            if (stateOutputs != null) {
+                for (Object output : stateOutputs) {
+                    Integer id = outputNumbers.get(output);
+                    if (id == null) {
+                        id = outputList.size();
+                        outputNumbers.put(output, id);
+                        outputList.add(output);
+                    }
+                    ids.add(id);
+                }
+            }
+        }
+        outputStart[numStates] = ids.size();
+        this.outputIds = new int[ids.size()];
+        for (int i = 0; i < outputIds.length; i++)
+            outputIds[i] = ids.get(i);
+        this.outputs = outputList.toArray();
+
+        // root already loops to itself on missing bytes, other states take the
+        // transition of their fail state, which was resolved before
+        this.transitions = new int[numStates * ALPHABET];
+        for (int n = 0; n < numStates; n++) {
+            State state = states.get(n);
+            int base = n * ALPHABET;
+            int failBase = n == 0 ? 0 : stateNumbers.get(state.getFail()) * ALPHABET;
+            for (int b = 0; b < ALPHABET; b++) {
+                State next = state.edgeList.array[b];
+                if (next != null)
+                    transitions[base + b] = encode(stateNumbers.get(next));
+                else
+                    transitions[base + b] = transitions[failBase + b];
+            }
+        }
+    }
+
+    private int encode(int stateNumber) {
+        int offset = stateNumber * ALPHABET;
+        return outputStart[stateNumber + 1] > outputStart[stateNumber] ? ~offset : offset;
+    }
+
+    /**
+     * Returns the state to start a new search.
+     */
+    public int getStartState() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of states of the automaton.
+     */
+    public int size() {
+        return transitions.length / ALPHABET;
+    }
+
+    /**
+     * Returns the output added to the tree with the matched keyword.
+     */
+    public Object getOutput(int outputId) {
+        return outputs[outputId];
+    }
+
+    /**
+     * Returns the number of distinct outputs, output ids are lower than it.
+     */
+    public int getOutputCount() {
+        return outputs.length;
+    }
+
+    /**
+     * Searches bytes[offset, offset + length), starting from the given state, and
+     * notifies the listener of all matches in the order they end. Matches
+     * spanning consecutive buffers are found by passing the returned state to the
+     * search of the next buffer.
+     * 
+     * @return the state after the last byte searched
+     */
+    public int search(byte[] bytes, int offset, int length, int state, MatchListener listener) {
+        final int[] transitions = this.transitions;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int next = transitions[state + (bytes[i] & 0xFF)];
+            if (next < 0) {
+                next = ~next;
+                int n = next / ALPHABET;
+                for (int j = outputStart[n]; j < outputStart[n + 1]; j++)
+                    listener.onMatch(outputIds[j], i + 1);
+            }
+            state = next;
+        }
+        return state;
+    }
+}
@@ -0,0 +1,119 @@
+package org.arabidopsis.ahocorasick;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CompiledAhoCorasickTest {
+
+    private static AhoCorasick buildTree(byte[][] keywords) {
+        AhoCorasick tree = new AhoCorasick();
+        for (int i = 0; i < keywords.length; i++) {
+            tree.add(keywords[i], i);
+        }
+        tree.prepare();
+        return tree;
+    }
+
+    private static List<String> treeMatches(AhoCorasick tree, byte[] bytes) {
+        List<String> matches = new ArrayList<>();
+        Iterator<SearchResult> it = tree.search(bytes);
+        while (it.hasNext()) {
+            SearchResult result = it.next();
+            for (Object output : result.getOutputs()) {
+                matches.add(output + "@" + result.getLastIndex());
+            }
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    private static List<String> compiledMatches(CompiledAhoCorasick compiled, byte[] bytes, int bufferSize) {
+        List<String> matches = new ArrayList<>();
+        int state = compiled.getStartState();
+        for (int offset = 0; offset < bytes.length; offset += bufferSize) {
+            int len = Math.min(bufferSize, bytes.length - offset);
+            state = compiled.search(bytes, offset, len, state, (outputId, endIndex) -> {
+                matches.add(compiled.getOutput(outputId) + "@" + endIndex);
+            });
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    @Test
+    public void testSimpleMatches() {
+        byte[][] keywords = { "he".getBytes(), "she".getBytes(), "his".getBytes(), "hers".getBytes() };
+        CompiledAhoCorasick compiled = new CompiledAhoCorasick(buildTree(keywords));
+        byte[] text = "ushers".getBytes();
+
+        List<String> expected = new ArrayList<>();
+        expected.add("0@4");
+        expected.add("1@4");
+        expected.add("3@6");
+        assertEquals(expected, compiledMatches(compiled, text, text.length));
+    }
+
+    @Test
+    public void testOutputsAreKept() {
+        byte[][] keywords = { { 0x50, 0x4B, 0x03, 0x04 }, { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF } };
+        CompiledAhoCorasick compiled = new CompiledAhoCorasick(buildTree(keywords));
+        assertEquals(2, compiled.getOutputCount());
+        Set<Object> outputs = new HashSet<>();
+        for (int i = 0; i < compiled.getOutputCount(); i++) {
+            outputs.add(compiled.getOutput(i));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(0, 1)), outputs);
+    }
+
+    @Test
+    public void testSameMatchesAsTree() {
+        Random random = new Random(0);
+        for (int round = 0; round < 20; round++) {
+            // small alphabet to have many overlapping and nested keywords
+            byte[][] keywords = new byte[1 + random.nextInt(30)][];
+            for (int i = 0; i < keywords.length; i++) {
+                keywords[i] = new byte[1 + random.nextInt(6)];
+                for (int j = 0; j < keywords[i].length; j++) {
+                    keywords[i][j] = (byte) (0xFE + random.nextInt(4));
+                }
+            }
+            byte[] text = new byte[10000];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = (byte) (0xFE + random.nextInt(4));
+            }
+            AhoCorasick tree = buildTree(keywords);
+            CompiledAhoCorasick compiled = new CompiledAhoCorasick(tree);
+
+            List<String> expected = treeMatches(tree, text);
+            assertEquals(expected, compiledMatches(compiled, text, text.length));
+        }
+    }
+
+    @Test
+    public void testMatchesAcrossBuffers() {
+        Random random = new Random(1);
+        byte[][] keywords = { "abcab".getBytes(), "bca".getBytes(), "aa".getBytes(), "c".getBytes() };
+        byte[] text = new byte[5000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + random.nextInt(3));
+        }
+        AhoCorasick tree = buildTree(keywords);
+        CompiledAhoCorasick compiled = new CompiledAhoCorasick(tree);
+
+        List<String> expected = treeMatches(tree, text);
+        for (int bufferSize : new int[] { 1, 2, 3, 7, 64, 4999 }) {
+            assertEquals(expected, compiledMatches(compiled, text, bufferSize));
+        }
+    }
+
+}
@@ -5,6 +5,7 @@
 
 import org.apache.tika.mime.MediaType;
 import org.arabidopsis.ahocorasick.AhoCorasick;
+import org.arabidopsis.ahocorasick.CompiledAhoCorasick;
 
 public interface CarverConfiguration {
     /* returns the configured carverTypes */
@@ -25,6 +26,9 @@ public interface CarverConfiguration {
     /* Returns the populated state machine tree */
     public AhoCorasick getPopulatedTree();
 
+    /* Returns the populated state machine compiled to a transition table */
+    public CompiledAhoCorasick getCompiledTree();
+
     /* Returns the populated state machine tree */
     public HashMap<CarverType, Carver> getRegisteredCarvers();
 
@@ -32,4 +36,10 @@ public interface CarverConfiguration {
 
     public boolean isToIgnoreCorrupted();
 
+    /*
+     * Returns the size of the ranges of big items carved in parallel, 0 if items
+     * are always carved sequentially
+     */
+    public long getParallelChunkSize();
+
 }
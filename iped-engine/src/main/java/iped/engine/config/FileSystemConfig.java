@@ -19,6 +19,7 @@ public class FileSystemConfig extends AbstractPropertiesConfigurable {
     private boolean toAddFileSlacks = false;
     private boolean robustImageReading;
     private int numImageReaders = (int) Math.ceil((float) Runtime.getRuntime().availableProcessors() / 4);
+    private int minImageReaders = 1;
     private long unallocatedFragSize = 1 << 30;
     private long minOrphanSizeToIgnore = -1;
     private boolean ignoreHardLinks = true;
@@ -57,6 +58,11 @@ public void processProperties(UTF8Properties properties) {
             numImageReaders = Integer.valueOf(value);
         }
 
+        value = properties.getProperty("minImageReaders"); //$NON-NLS-1$
+        if (value != null) {
+            minImageReaders = Integer.valueOf(value.trim());
+        }
+
         value = properties.getProperty("unallocatedFragSize"); //$NON-NLS-1$
         if (value != null) {
             unallocatedFragSize = Long.valueOf(value.trim());
@@ -99,6 +105,10 @@ public int getNumImageReaders() {
         return numImageReaders;
     }
 
+    public int getMinImageReaders() {
+        return minImageReaders;
+    }
+
     public long getUnallocatedFragSize() {
         return unallocatedFragSize;
     }
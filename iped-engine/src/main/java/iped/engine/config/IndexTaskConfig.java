@@ -1,6 +1,8 @@
 package iped.engine.config;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 import iped.utils.UTF8Properties;
 
@@ -26,6 +28,11 @@ public class IndexTaskConfig extends AbstractTaskPropertiesConfig {
     private int maxTokenLength = 255;
     private int[] extraCharsToIndexArray;
     private int commitIntervalSeconds = 1800;
+    private int indexShards = 0;
+    private List<File> indexShardsDirs = new ArrayList<>();
+    private int ramBufferSizeMB = 0;
+    private int asyncIndexingThreads = 0;
+    private int asyncIndexingQueueSize = 256;
 
     @Override
     public String getTaskEnableProperty() {
@@ -95,6 +102,35 @@ public void processProperties(UTF8Properties properties) {
             commitIntervalSeconds = Integer.parseInt(value.trim());
         }
 
+        value = properties.getProperty("indexShards"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            indexShards = Integer.parseInt(value.trim());
+        }
+
+        value = properties.getProperty("indexShardsDirs"); //$NON-NLS-1$
+        if (value != null) {
+            for (String dir : value.split(";")) { //$NON-NLS-1$
+                if (!dir.trim().isEmpty()) {
+                    indexShardsDirs.add(new File(dir.trim()));
+                }
+            }
+        }
+
+        value = properties.getProperty("ramBufferSizeMB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty() && !value.trim().equalsIgnoreCase("auto")) { //$NON-NLS-1$
+            ramBufferSizeMB = Integer.parseInt(value.trim());
+        }
+
+        value = properties.getProperty("asyncIndexingThreads"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            asyncIndexingThreads = Integer.parseInt(value.trim());
+        }
+
+        value = properties.getProperty("asyncIndexingQueueSize"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            asyncIndexingQueueSize = Integer.parseInt(value.trim());
+        }
+
     }
 
     private int[] convertExtraCharsToIndex(String chars) {
@@ -173,4 +209,45 @@ public int getCommitIntervalSeconds() {
         return commitIntervalSeconds;
     }
 
+    /**
+     * @return number of index shards written in parallel, 0 or 1 disables
+     *         sharding.
+     */
+    public int getIndexShards() {
+        return indexShards;
+    }
+
+    /**
+     * @return folders where index shards are created, empty to use the index
+     *         temp folder.
+     */
+    public List<File> getIndexShardsDirs() {
+        return indexShardsDirs;
+    }
+
+    /**
+     * @return RAM buffer size of each index writer, computed from max heap
+     *         if not configured.
+     */
+    public int getRamBufferSizeMB(int numWriters) {
+        if (ramBufferSizeMB > 0) {
+            return ramBufferSizeMB;
+        }
+        long heapMB = Runtime.getRuntime().maxMemory() / (1 << 20);
+        int minSize = numWriters > 1 ? 16 : 64;
+        return (int) Math.max(minSize, Math.min(1024, heapMB / 16 / numWriters));
+    }
+
+    /**
+     * @return number of dedicated threads adding documents to the index, 0
+     *         means workers add them.
+     */
+    public int getAsyncIndexingThreads() {
+        return asyncIndexingThreads;
+    }
+
+    public int getAsyncIndexingQueueSize() {
+        return asyncIndexingQueueSize;
+    }
+
 }
@@ -35,6 +35,12 @@ public class LocalConfig extends AbstractPropertiesConfigurable {
 
     private static final String OUTPUT_ON_SSD = "outputOnSSD";
 
+    private static final String WORK_STEALING = "workStealing";
+
+    private static final String IO_BOUND_WORKERS = "ioBoundWorkers";
+
+    private static final String COST_AWARE_SCHEDULING = "costAwareScheduling";
+
     private static final String DEFAULT_VAL = "default";
 
     public static final DirectoryStream.Filter<Path> filter = new Filter<Path>() {
@@ -48,6 +54,9 @@ public boolean accept(Path entry) throws IOException {
     private boolean outputOnSSD = false;
     private File ipedTemp, indexTemp;
     private int numThreads;
+    private boolean workStealing = false;
+    private int ioBoundWorkers = 0;
+    private boolean costAwareScheduling = false;
     private File hashDbFile;
 
     @Override
@@ -110,6 +119,21 @@ public void processProperties(UTF8Properties properties) {
             numThreads = Runtime.getRuntime().availableProcessors();
         }
 
+        value = properties.getProperty(WORK_STEALING); // $NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            workStealing = Boolean.valueOf(value.trim());
+        }
+
+        value = properties.getProperty(IO_BOUND_WORKERS); // $NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            ioBoundWorkers = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty(COST_AWARE_SCHEDULING); // $NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            costAwareScheduling = Boolean.valueOf(value.trim());
+        }
+
         value = properties.getProperty(TEMP_ON_SSD); // $NON-NLS-1$
         if (value != null) {
             value = value.trim();
@@ -161,6 +185,18 @@ public int getNumThreads() {
         return numThreads;
     }
 
+    public boolean isWorkStealing() {
+        return workStealing;
+    }
+
+    public int getIOBoundWorkers() {
+        return ioBoundWorkers;
+    }
+
+    public boolean isCostAwareScheduling() {
+        return costAwareScheduling;
+    }
+
     public File getHashDbFile() {
         return hashDbFile;
     }
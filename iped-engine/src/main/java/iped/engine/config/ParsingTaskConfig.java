@@ -24,6 +24,7 @@ public class ParsingTaskConfig extends AbstractTaskPropertiesConfig {
     private int timeOutPerMB = 2;
     private int minRawStringSize = 4;
     private boolean storeTextCacheOnDisk = true;
+    private int textCacheMemoryBudget = 0;
     private boolean sortPDFChars;
     private boolean processImagesInPDFs = false;
     private String phoneParsersToUse;
@@ -95,6 +96,11 @@ public void processProperties(UTF8Properties properties) {
             storeTextCacheOnDisk = Boolean.valueOf(value.trim());
         }
 
+        value = properties.getProperty("textCacheMemoryBudget"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty() && !value.trim().equalsIgnoreCase("auto")) { //$NON-NLS-1$
+            textCacheMemoryBudget = Integer.valueOf(value.trim());
+        }
+
         value = properties.getProperty("sortPDFChars"); //$NON-NLS-1$
         if (value != null) {
             sortPDFChars = Boolean.valueOf(value.trim());
@@ -149,6 +155,13 @@ public boolean isStoreTextCacheOnDisk() {
         return storeTextCacheOnDisk;
     }
 
+    /**
+     * @return max memory in MB used by all parsed text caches, 0 means auto.
+     */
+    public int getTextCacheMemoryBudget() {
+        return textCacheMemoryBudget;
+    }
+
     public boolean isSortPDFChars() {
         return sortPDFChars;
     }
@@ -0,0 +1,127 @@
+package iped.engine.config;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream.Filter;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.tika.mime.MediaType;
+
+import iped.utils.UTF8Properties;
+
+/**
+ * Compression of item contents stored in case SQLite storages.
+ */
+public class StorageCodecConfig extends AbstractPropertiesConfigurable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+
+    private static final String CONF_FILE = "StorageCodecConfig.txt";
+
+    private static final String DEFAULT_CODEC = "defaultCodec"; //$NON-NLS-1$
+    private static final String MEDIA_TYPE_CODECS = "mediaTypeCodecs"; //$NON-NLS-1$
+    private static final String ZSTD_LEVEL = "zstdLevel"; //$NON-NLS-1$
+    private static final String ZSTD_DICTIONARY = "zstdDictionary"; //$NON-NLS-1$
+    private static final String ZSTD_DICTIONARY_MAX_ITEM_SIZE = "zstdDictionaryMaxItemSize"; //$NON-NLS-1$
+    private static final String CHUNK_SIZE = "chunkSize"; //$NON-NLS-1$
+
+    // ordinal is stored in blobs, new codecs must be added at the end
+    public enum Codec {
+        NONE, GZIP, ZSTD, LZ4
+    }
+
+    private Codec defaultCodec = Codec.ZSTD;
+    private Map<String, Codec> mediaTypeCodecs = new HashMap<>();
+    private int zstdLevel = 3;
+    private boolean zstdDictionary = true;
+    private int zstdDictionaryMaxItemSize = 16 * 1024;
+    private int chunkSize = 1 << 20;
+
+    /**
+     * @return the codec configured for the media type, its supertype (e.g.
+     *         image/*) or the default codec
+     */
+    public Codec getCodec(MediaType mediaType) {
+        Codec codec = null;
+        if (mediaType != null && !mediaTypeCodecs.isEmpty()) {
+            codec = mediaTypeCodecs.get(mediaType.getBaseType().toString());
+            if (codec == null) {
+                codec = mediaTypeCodecs.get(mediaType.getType() + "/*"); //$NON-NLS-1$
+            }
+        }
+        return codec != null ? codec : defaultCodec;
+    }
+
+    public int getZstdLevel() {
+        return zstdLevel;
+    }
+
+    public boolean isZstdDictionary() {
+        return zstdDictionary;
+    }
+
+    public int getZstdDictionaryMaxItemSize() {
+        return zstdDictionaryMaxItemSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public void processProperties(UTF8Properties properties) {
+
+        String value = properties.getProperty(DEFAULT_CODEC);
+        if (value != null && !value.trim().isEmpty()) {
+            defaultCodec = Codec.valueOf(value.trim().toUpperCase());
+        }
+
+        value = properties.getProperty(MEDIA_TYPE_CODECS);
+        if (value != null) {
+            for (String entry : value.split(";")) { //$NON-NLS-1$
+                int idx = entry.lastIndexOf(':');
+                if (idx > 0) {
+                    String mediaType = entry.substring(0, idx).trim();
+                    Codec codec = Codec.valueOf(entry.substring(idx + 1).trim().toUpperCase());
+                    mediaTypeCodecs.put(mediaType, codec);
+                }
+            }
+        }
+
+        value = properties.getProperty(ZSTD_LEVEL);
+        if (value != null && !value.trim().isEmpty()) {
+            zstdLevel = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty(ZSTD_DICTIONARY);
+        if (value != null && !value.trim().isEmpty()) {
+            zstdDictionary = Boolean.valueOf(value.trim());
+        }
+
+        value = properties.getProperty(ZSTD_DICTIONARY_MAX_ITEM_SIZE);
+        if (value != null && !value.trim().isEmpty()) {
+            zstdDictionaryMaxItemSize = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty(CHUNK_SIZE);
+        if (value != null && !value.trim().isEmpty()) {
+            chunkSize = Integer.valueOf(value.trim());
+        }
+
+    }
+
+    @Override
+    public Filter<Path> getResourceLookupFilter() {
+        return new Filter<Path>() {
+            @Override
+            public boolean accept(Path entry) throws IOException {
+                return entry.endsWith(CONF_FILE);
+            }
+        };
+    }
+
+}
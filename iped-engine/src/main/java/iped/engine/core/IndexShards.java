@@ -0,0 +1,245 @@
+package iped.engine.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SlowCodecReaderWrapper;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.engine.data.IPEDSource;
+import iped.engine.lucene.ConfiguredFSDirectory;
+import iped.utils.IOUtil;
+
+/**
+ * Independent index writers used by groups of workers to add documents, so
+ * indexing does not contend on a single writer flushing and merging segments.
+ * Each shard can live on a different disk. Shards are merged into the case
+ * index when workers are idle (processing queue changes) and when processing
+ * finishes, so the case index keeps a single directory for the search app.
+ *
+ * Shard directories are saved to the case, so shards committed before an
+ * interrupted processing are merged when it is resumed.
+ */
+public class IndexShards implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(IndexShards.class);
+
+    public static final String SHARDS_INFO_PATH = IPEDSource.DATA_DIR + "/indexShards.txt"; //$NON-NLS-1$
+
+    private static final String SHARD_DIR_PREFIX = "index-shard-"; //$NON-NLS-1$
+
+    private final File output;
+    private final File[] dirs;
+    private final IndexWriter[] writers;
+
+    /**
+     * Creates empty shards, distributed round robin over baseDirs.
+     */
+    public IndexShards(File output, int numShards, List<File> baseDirs, Supplier<IndexWriterConfig> configSupplier)
+            throws IOException {
+        this.output = output;
+        this.dirs = new File[numShards];
+        this.writers = new IndexWriter[numShards];
+        for (int i = 0; i < numShards; i++) {
+            File baseDir = baseDirs.get(i % baseDirs.size());
+            dirs[i] = new File(baseDir, SHARD_DIR_PREFIX + i);
+            if (dirs[i].exists()) {
+                IOUtil.deleteDirectory(dirs[i]);
+            }
+            dirs[i].mkdirs();
+        }
+        writeInfo();
+
+        boolean ok = false;
+        try {
+            for (int i = 0; i < numShards; i++) {
+                LOGGER.info("Creating index shard: {}", dirs[i].getAbsolutePath()); //$NON-NLS-1$
+                writers[i] = new IndexWriter(ConfiguredFSDirectory.open(dirs[i]), configSupplier.get());
+            }
+            ok = true;
+        } finally {
+            if (!ok) {
+                rollback();
+            }
+        }
+    }
+
+    private void writeInfo() throws IOException {
+        StringBuilder info = new StringBuilder();
+        for (File dir : dirs) {
+            info.append(dir.getAbsolutePath()).append('\n');
+        }
+        File infoFile = new File(output, SHARDS_INFO_PATH);
+        infoFile.getParentFile().mkdirs();
+        Files.write(infoFile.toPath(), info.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int size() {
+        return writers.length;
+    }
+
+    /**
+     * @return the shard writer of the worker group of workerId
+     */
+    public IndexWriter getWriter(int workerId) {
+        return writers[workerId % writers.length];
+    }
+
+    public void commit() throws IOException {
+        for (IndexWriter writer : writers) {
+            writer.commit();
+        }
+    }
+
+    public void rollback() {
+        for (IndexWriter writer : writers) {
+            if (writer != null) {
+                try {
+                    writer.rollback();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds documents of the shards to the case index, keeping shards open. Must
+     * be called while no worker is adding documents, e.g. when all workers are
+     * waiting for the next processing queue. After the case index is committed,
+     * {@link #clearMerged()} must be called before workers add new documents.
+     */
+    public void mergeInto(IndexWriter caseWriter) throws IOException {
+        long start = System.currentTimeMillis();
+        List<CodecReader> segments = new ArrayList<>();
+        List<DirectoryReader> readers = new ArrayList<>();
+        try {
+            for (IndexWriter writer : writers) {
+                DirectoryReader reader = DirectoryReader.open(writer, true, true);
+                readers.add(reader);
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    if (leaf.reader().numDocs() > 0) {
+                        segments.add(SlowCodecReaderWrapper.wrap(leaf.reader()));
+                    }
+                }
+            }
+            if (!segments.isEmpty()) {
+                caseWriter.addIndexes(segments.toArray(new CodecReader[0]));
+            }
+        } finally {
+            for (DirectoryReader reader : readers) {
+                IOUtil.closeQuietly(reader);
+            }
+        }
+        LOGGER.info("Index shards merged in {}ms", System.currentTimeMillis() - start); //$NON-NLS-1$
+    }
+
+    /**
+     * Deletes documents of the shards merged by {@link #mergeInto(IndexWriter)},
+     * which must be already committed to the case index.
+     */
+    public void clearMerged() throws IOException {
+        // while the info file is missing, a crash leaves the shards out of a resumed
+        // processing, their documents are already in the case index
+        Files.deleteIfExists(new File(output, SHARDS_INFO_PATH).toPath());
+        for (IndexWriter writer : writers) {
+            writer.deleteAll();
+            writer.commit();
+        }
+        writeInfo();
+    }
+
+    /**
+     * Closes the shards and adds their segments to the case index, without
+     * decoding them again. Shards must be deleted with {@link #delete()} after the
+     * case index is committed.
+     */
+    public void closeAndMergeInto(IndexWriter caseWriter) throws IOException {
+        for (IndexWriter writer : writers) {
+            writer.close();
+        }
+        addDirs(caseWriter, dirs);
+    }
+
+    public void delete() {
+        deleteShards(output, dirs);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (IndexWriter writer : writers) {
+            IOUtil.closeQuietly(writer);
+        }
+    }
+
+    private static void addDirs(IndexWriter caseWriter, File[] shardDirs) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Directory> directories = new ArrayList<>();
+        try {
+            for (File dir : shardDirs) {
+                if (dir.exists()) {
+                    Directory directory = ConfiguredFSDirectory.open(dir);
+                    directories.add(directory);
+                    if (!DirectoryReader.indexExists(directory)) {
+                        continue;
+                    }
+                    caseWriter.addIndexes(directory);
+                }
+            }
+        } finally {
+            for (Directory directory : directories) {
+                IOUtil.closeQuietly(directory);
+            }
+        }
+        LOGGER.info("Index shards added to case index in {}ms", System.currentTimeMillis() - start); //$NON-NLS-1$
+    }
+
+    private static void deleteShards(File output, File[] shardDirs) {
+        for (File dir : shardDirs) {
+            IOUtil.deleteDirectory(dir);
+        }
+        new File(output, SHARDS_INFO_PATH).delete();
+    }
+
+    /**
+     * Handles shards left by a previous interrupted processing: their committed
+     * documents are added to the case index, or they are just deleted if discard
+     * is true (e.g. when restarting processing).
+     */
+    public static void handlePreviousShards(File output, IndexWriter caseWriter, boolean discard)
+            throws IOException {
+        File infoFile = new File(output, SHARDS_INFO_PATH);
+        if (!infoFile.exists()) {
+            return;
+        }
+        List<File> shardDirs = new ArrayList<>();
+        for (String line : Files.readAllLines(infoFile.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                shardDirs.add(new File(line.trim()));
+            }
+        }
+        File[] dirs = shardDirs.toArray(new File[0]);
+        if (discard) {
+            deleteShards(output, dirs);
+        } else {
+            LOGGER.info("Adding index shards of previous processing to case index..."); //$NON-NLS-1$
+            addDirs(caseWriter, dirs);
+            caseWriter.commit();
+            deleteShards(output, dirs);
+        }
+    }
+
+}
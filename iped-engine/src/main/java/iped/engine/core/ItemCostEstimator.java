@@ -0,0 +1,109 @@
+package iped.engine.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import iped.data.IItem;
+
+/**
+ * Estimates the processing cost of items from their size and the throughput
+ * observed when parsing previous items of the same media type, or of the same
+ * extension if the media type was not detected yet, like items just added by
+ * data source readers. Parsing times include the time to process subitems, as
+ * all of them keep the same worker busy. Without history, the throughput of
+ * all parsed items, or a default one, is used.
+ */
+public class ItemCostEstimator {
+
+    /** items smaller than this are not sampled, their time is mostly overhead */
+    private static final long MIN_SAMPLE_SIZE = 1 << 20;
+
+    private static final int MIN_SAMPLES = 3;
+
+    private static final double DEFAULT_BYTES_PER_MICRO = 50;
+
+    private static class Throughput {
+
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder micros = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+
+        private void add(long length, long time) {
+            bytes.add(length);
+            micros.add(time);
+            samples.increment();
+        }
+
+        /**
+         * @return bytes per microsecond or 0 if there are few samples
+         */
+        private double get() {
+            long time = micros.sum();
+            if (samples.sum() < MIN_SAMPLES || time <= 0) {
+                return 0;
+            }
+            return (double) bytes.sum() / time;
+        }
+    }
+
+    private static final Map<String, Throughput> throughputs = new ConcurrentHashMap<>();
+
+    private static final Throughput globalThroughput = new Throughput();
+
+    /**
+     * Records the time, in microseconds, to parse an item and its subitems.
+     */
+    public static void record(IItem item, long micros) {
+        Long length = item.getLength();
+        if (length == null || length < MIN_SAMPLE_SIZE || micros <= 0) {
+            return;
+        }
+        if (item.getMediaType() != null) {
+            throughputs.computeIfAbsent(item.getMediaType().toString(), k -> new Throughput()).add(length, micros);
+        }
+        String ext = getExtKey(item);
+        if (ext != null) {
+            throughputs.computeIfAbsent(ext, k -> new Throughput()).add(length, micros);
+        }
+        globalThroughput.add(length, micros);
+    }
+
+    private static String getExtKey(IItem item) {
+        String ext = item.getExt();
+        return ext == null || ext.isEmpty() ? null : "." + ext.toLowerCase(); //$NON-NLS-1$
+    }
+
+    private static double getThroughput(String key) {
+        if (key == null) {
+            return 0;
+        }
+        Throughput throughput = throughputs.get(key);
+        return throughput != null ? throughput.get() : 0;
+    }
+
+    /**
+     * @return estimated time, in microseconds, to process the item
+     */
+    public static long estimate(IItem item) {
+        Long length = item.getLength();
+        if (length == null || length <= 0) {
+            return 0;
+        }
+        double throughput = 0;
+        if (item.getMediaType() != null) {
+            throughput = getThroughput(item.getMediaType().toString());
+        }
+        if (throughput == 0) {
+            throughput = getThroughput(getExtKey(item));
+        }
+        if (throughput == 0) {
+            throughput = globalThroughput.get();
+        }
+        if (throughput == 0) {
+            throughput = DEFAULT_BYTES_PER_MICRO;
+        }
+        return (long) (length / throughput);
+    }
+
+}
@@ -0,0 +1,146 @@
+package iped.engine.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of latencies (or any non negative long values), in the
+ * spirit of HdrHistogram: each power of 2 range is split into 8 linear sub
+ * buckets, so the relative error is at most 12.5%. Recording does not allocate
+ * nor lock, so it can be used in the processing hot path. Snapshots can be
+ * taken concurrently by other threads.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final int COUNT = NUM_BUCKETS;
+    private static final int SUM = NUM_BUCKETS + 1;
+    private static final int MAX = NUM_BUCKETS + 2;
+
+    // buckets followed by total count, sum and max
+    private final AtomicLongArray values = new AtomicLongArray(NUM_BUCKETS + 3);
+
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long getBucketLowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exp = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exp - SUB_BUCKET_BITS);
+    }
+
+    static long getBucketUpperBound(int bucket) {
+        if (bucket == NUM_BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return getBucketLowerBound(bucket + 1) - 1;
+    }
+
+    /**
+     * Records a value, negative ones are recorded as 0.
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        values.incrementAndGet(getBucket(value));
+        values.incrementAndGet(COUNT);
+        values.addAndGet(SUM, value);
+        long max;
+        while (value > (max = values.get(MAX))) {
+            if (values.compareAndSet(MAX, max, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return values.get(COUNT);
+    }
+
+    public long getSum() {
+        return values.get(SUM);
+    }
+
+    public long getMax() {
+        return values.get(MAX);
+    }
+
+    /**
+     * Adds the values of this histogram into the snapshot.
+     */
+    public void addTo(Snapshot snapshot) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot.counts[i] += values.get(i);
+        }
+        snapshot.count += values.get(COUNT);
+        snapshot.sum += values.get(SUM);
+        snapshot.max = Math.max(snapshot.max, values.get(MAX));
+    }
+
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        addTo(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Point in time copy of one or more merged histograms.
+     */
+    public static class Snapshot {
+
+        private final long[] counts = new long[NUM_BUCKETS];
+        private long count, sum, max;
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * @param percentile
+         *            value between 0 and 100
+         * @return upper bound of the bucket containing the percentile, limited by
+         *         the max recorded value
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * percentile / 100);
+            long acc = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                acc += counts[i];
+                if (acc >= target && acc > 0) {
+                    return Math.min(getBucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+}
@@ -28,7 +28,9 @@
 import java.nio.file.StandardOpenOption;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -137,7 +139,10 @@ public class Manager {
 
     private ItemProducer counter, producer;
     private Worker[] workers;
+    private Semaphore cpuPermits;
+    private ProcessingMetrics metrics;
     private IndexWriter writer;
+    private IndexShards indexShards;
 
     public Statistics stats;
     public volatile Exception exception;
@@ -202,6 +207,7 @@ public Manager(List<File> sources, File output, File palavras) {
 
         this.caseData = new CaseData();
         this.processingQueues = new ProcessingQueues(caseData);
+        this.processingQueues.setCostAwareScheduling(localConfig.isCostAwareScheduling());
 
         for (File source : sources) {
             if (source.getName().toLowerCase().endsWith(Bookmarks.EXT)) {
@@ -233,6 +239,19 @@ Worker[] getWorkers() {
         return workers;
     }
 
+    /**
+     * @return semaphore limiting workers running CPU bound tasks and helper
+     *         threads of workers. Workers hold a permit only while processing an
+     *         item, so permits of idle workers can be used by helpers.
+     */
+    Semaphore getCpuPermits() {
+        return cpuPermits;
+    }
+
+    public ProcessingMetrics getProcessingMetrics() {
+        return metrics;
+    }
+
     public int getNumWorkers() {
         return workers.length;
     }
@@ -241,6 +260,14 @@ public IndexWriter getIndexWriter() {
         return this.writer;
     }
 
+    /**
+     * @return writer where the worker adds its documents, its index shard if
+     *         sharded indexing is enabled or the case index writer otherwise.
+     */
+    public IndexWriter getDocumentsWriter(int workerId) {
+        return indexShards != null ? indexShards.getWriter(workerId) : writer;
+    }
+
     public void process() throws Exception {
 
         stats.printSystemInfo();
@@ -306,6 +333,10 @@ public void process() throws Exception {
 
         } finally {
             closeItemProducers();
+            // also unregisters the MBean if processing failed, so next runs in this JVM can register it
+            if (metrics != null) {
+                metrics.stop();
+            }
         }
 
         filterKeywords();
@@ -356,6 +387,10 @@ private void interruptProcessing() {
             }
         }
         ParsingReader.shutdownTasks();
+        IndexTask.interruptIndexingQueue();
+        if (indexShards != null) {
+            indexShards.rollback();
+        }
         if (writer != null) {
             try {
                 writer.rollback();
@@ -418,6 +453,19 @@ private void loadExistingData() throws IOException {
     }
 
     private IndexWriterConfig getIndexWriterConfig() {
+        IndexWriterConfig conf = getBaseIndexWriterConfig();
+        conf.setRAMBufferSizeMB(indexShards != null ? 64 : indexConfig.getRamBufferSizeMB(1));
+        conf.setIndexDeletionPolicy(new CustomIndexDeletionPolicy(args));
+        return conf;
+    }
+
+    private IndexWriterConfig getShardWriterConfig() {
+        IndexWriterConfig conf = getBaseIndexWriterConfig();
+        conf.setRAMBufferSizeMB(indexConfig.getRamBufferSizeMB(indexConfig.getIndexShards()));
+        return conf;
+    }
+
+    private IndexWriterConfig getBaseIndexWriterConfig() {
         IndexWriterConfig conf = new IndexWriterConfig(AppAnalyzer.get());
         conf.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
@@ -429,7 +477,6 @@ private IndexWriterConfig getIndexWriterConfig() {
             mergeScheduler.setMaxMergesAndThreads(8, 4);
         }
         conf.setMergeScheduler(mergeScheduler);
-        conf.setRAMBufferSizeMB(64);
         TieredMergePolicy tieredPolicy = new TieredMergePolicy();
         /*
          * Seta tamanho máximo dos subíndices. Padrão é 5GB. Poucos subíndices grandes
@@ -440,8 +487,6 @@ private IndexWriterConfig getIndexWriterConfig() {
         tieredPolicy.setMaxMergedSegmentMB(4000);
         conf.setMergePolicy(tieredPolicy);
 
-        conf.setIndexDeletionPolicy(new CustomIndexDeletionPolicy(args));
-
         return conf;
     }
 
@@ -542,6 +587,9 @@ private void openIndex() throws IOException {
             writer.commit();
         }
 
+        // documents of index shards committed by an interrupted processing
+        IndexShards.handlePreviousShards(output, writer, args.isRestart());
+
         if (args.isRestart()) {
             try (IPEDSource ipedCase = new IPEDSource(output.getParentFile(), writer)) {
                 ipedCase.clearOldBookmarks();
@@ -552,11 +600,28 @@ private void openIndex() throws IOException {
             loadExistingData();
         }
 
+        if (indexConfig.getIndexShards() > 1 && args.getEvidenceToRemove() == null) {
+            List<File> shardsDirs = indexConfig.getIndexShardsDirs();
+            if (shardsDirs.isEmpty()) {
+                shardsDirs = Collections.singletonList(indexDir.getAbsoluteFile().getParentFile());
+            }
+            indexShards = new IndexShards(output, indexConfig.getIndexShards(), shardsDirs,
+                    this::getShardWriterConfig);
+        }
+
     }
 
     private void initWorkers() throws Exception {
 
-        workers = new Worker[localConfig.getNumThreads()];
+        int numWorkers = localConfig.getNumThreads();
+        // just numThreads workers or helper threads running CPU bound tasks at a time
+        cpuPermits = new Semaphore(localConfig.getNumThreads());
+        if (localConfig.getIOBoundWorkers() > 0) {
+            numWorkers += localConfig.getIOBoundWorkers();
+            LOGGER.info("Using {} workers, {} running CPU bound tasks at a time", numWorkers, //$NON-NLS-1$
+                    localConfig.getNumThreads());
+        }
+        workers = new Worker[numWorkers];
         for (int k = 0; k < workers.length; k++) {
             workers[k] = new Worker(k, caseData, writer, output, this);
         }
@@ -567,6 +632,9 @@ private void initWorkers() throws Exception {
             workers[k].start();
         }
 
+        metrics = new ProcessingMetrics(this, output);
+        metrics.start();
+
         UIPropertyListenerProvider.getInstance().firePropertyChange("workers", 0, workers); //$NON-NLS-1$
     }
 
@@ -591,6 +659,7 @@ private void monitorProcessing() throws Exception {
                 UIPropertyListenerProvider.getInstance().firePropertyChange("decodingDir", 0, //$NON-NLS-1$
                         Messages.getString("Manager.Adding") + currentDir.trim() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
             }
+            metrics.update();
             UIPropertyListenerProvider.getInstance().firePropertyChange("update", 0, 0);
 
             boolean changeToNextQueue = !producer.isAlive();
@@ -616,6 +685,11 @@ private void monitorProcessing() throws Exception {
                     throw new IPEDException("Tried to get queue end from queue, but failed! Please warn the dev team.");
                 }
                 if (processingQueues.changeToNextQueue() != null) {
+                    IndexTask.drainIndexingQueue();
+                    if (indexShards != null) {
+                        // makes items of previous queues searchable by next queues
+                        mergeIndexShards();
+                    }
                     LOGGER.info(
                             "Changed to processing queue with priority " + processingQueues.getCurrentQueuePriority()); //$NON-NLS-1$
                     caseData.putCaseObject(IItemSearcher.class.getName(),
@@ -640,6 +714,23 @@ private void monitorProcessing() throws Exception {
 
     }
 
+    /**
+     * Merges index shards into the case index and clears them only after the case
+     * index is committed, so a crash between both commits does not lose documents.
+     */
+    private void mergeIndexShards() throws Exception {
+        if (commitThread != null && commitThread.isAlive()) {
+            commitThread.join();
+        }
+        indexShards.mergeInto(writer);
+        commitThread = commit();
+        commitThread.join();
+        if (exception != null) {
+            throw exception;
+        }
+        indexShards.clearMerged();
+    }
+
     private Thread commit() {
         // commit could be costly, do in another thread
         Thread t = new Thread() {
@@ -649,6 +740,8 @@ public void run() {
                     long start = System.currentTimeMillis() / 1000;
                     UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.CommitStarted"));
                     LOGGER.info("Prepare commit started...");
+                    // items already processed by workers must be in the commit
+                    IndexTask.drainIndexingQueue();
                     writer.prepareCommit();
 
                     // commit other control data
@@ -665,6 +758,10 @@ public void run() {
 
                     ElasticSearchIndexTask.commit();
 
+                    if (indexShards != null) {
+                        indexShards.commit();
+                    }
+
                     writer.commit();
 
                     long end = System.currentTimeMillis() / 1000;
@@ -702,6 +799,15 @@ private void finishProcessing() throws Exception {
             }
         }
 
+        IndexTask.closeIndexingQueue();
+
+        if (indexShards != null) {
+            // before finishing tasks, some of them search the case index
+            UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.ClosingIndex")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            LOGGER.info("Merging index shards..."); //$NON-NLS-1$
+            indexShards.closeAndMergeInto(writer);
+        }
+
         for (int k = 0; k < workers.length; k++) {
             workers[k].finish();
         }
@@ -724,6 +830,11 @@ private void finishProcessing() throws Exception {
         writer.close();
         writer = null;
 
+        if (indexShards != null) {
+            indexShards.delete();
+            indexShards = null;
+        }
+
         if (!indexDir.getCanonicalPath().equalsIgnoreCase(finalIndexDir.getCanonicalPath())) {
             UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.CopyingIndex")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
             LOGGER.info("Moving Index..."); //$NON-NLS-1$
@@ -0,0 +1,255 @@
+package iped.engine.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.tika.mime.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.engine.task.AbstractTask;
+
+/**
+ * Aggregates processing metrics of all workers: latency histograms per task and
+ * per media type, items/s, bytes/s, queue size and subitems fan-out. Metrics are
+ * periodically exported to files in the case log folder and are also available
+ * through JMX and to the progress UI, so bottlenecks can be found while the
+ * processing is running.
+ */
+public class ProcessingMetrics implements ProcessingMetricsMBean {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ProcessingMetrics.class);
+
+    private static final String OBJECT_NAME = "iped.engine:type=ProcessingMetrics"; //$NON-NLS-1$
+    private static final String REPORT_FILE = "log/ProcessingMetrics.txt"; //$NON-NLS-1$
+    private static final String THROUGHPUT_FILE = "log/ProcessingThroughput.csv"; //$NON-NLS-1$
+
+    private static final long EXPORT_INTERVAL_MILLIS = 60 * 1000;
+    private static final int MEDIA_TYPES_PER_TASK = 10;
+
+    private final Manager manager;
+    private final File reportFile, throughputFile;
+
+    private long lastUpdateTime, lastExportTime;
+    private long lastProcessed, lastVolume, lastSubitems;
+    private volatile double itemsPerSecond, bytesPerSecond, subitemsPerSecond;
+
+    public ProcessingMetrics(Manager manager, File output) {
+        this.manager = manager;
+        this.reportFile = new File(output, REPORT_FILE);
+        this.throughputFile = new File(output, THROUGHPUT_FILE);
+    }
+
+    public void start() {
+        lastUpdateTime = lastExportTime = System.currentTimeMillis();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                // left by a previous processing not stopped, expose this one instead
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            LOGGER.warn("Error registering processing metrics MBean", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Updates throughput rates and exports metrics if the export interval has
+     * elapsed. Should be called periodically by the processing monitor thread.
+     */
+    public void update() {
+        long now = System.currentTimeMillis();
+        long interval = now - lastUpdateTime;
+        if (interval < 1000) {
+            return;
+        }
+        Statistics.Snapshot stats = manager.stats.getSnapshot();
+        long processed = stats.getProcessed();
+        long volume = stats.getVolume();
+        long subitems = stats.getSubitemsDiscovered();
+        itemsPerSecond = (processed - lastProcessed) * 1000.0 / interval;
+        bytesPerSecond = (volume - lastVolume) * 1000.0 / interval;
+        subitemsPerSecond = (subitems - lastSubitems) * 1000.0 / interval;
+        lastProcessed = processed;
+        lastVolume = volume;
+        lastSubitems = subitems;
+        lastUpdateTime = now;
+
+        if (now - lastExportTime >= EXPORT_INTERVAL_MILLIS) {
+            export();
+            lastExportTime = now;
+        }
+    }
+
+    public void stop() {
+        export();
+        LOGGER.info("Processing metrics saved to {}", reportFile.getAbsolutePath()); //$NON-NLS-1$
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            LOGGER.debug("Error unregistering processing metrics MBean", e); //$NON-NLS-1$
+        }
+    }
+
+    private void export() {
+        try {
+            reportFile.getParentFile().mkdirs();
+            Files.write(reportFile.toPath(), getTaskLatencyReport().getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder sb = new StringBuilder();
+            if (!throughputFile.exists()) {
+                sb.append("time,itemsPerSec,bytesPerSec,subitemsPerSec,queueSize,itemsBeingProcessed\n"); //$NON-NLS-1$
+            }
+            sb.append(String.format("%tFT%<tT,%.1f,%.0f,%.1f,%d,%d\n", new Date(), itemsPerSecond, bytesPerSecond, //$NON-NLS-1$
+                    subitemsPerSecond, getQueueSize(), getItemsBeingProcessed()));
+            Files.write(throughputFile.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        } catch (IOException e) {
+            LOGGER.warn("Error exporting processing metrics", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return latency snapshots of enabled tasks, merged from all workers, in
+     *         pipeline order.
+     */
+    public Map<String, LatencyHistogram.Snapshot> getTaskLatencies() {
+        Map<String, LatencyHistogram.Snapshot> result = new LinkedHashMap<>();
+        Worker[] workers = manager.getWorkers();
+        if (workers == null) {
+            return result;
+        }
+        for (int i = 0; i < workers[0].tasks.size(); i++) {
+            if (!workers[0].tasks.get(i).isEnabled()) {
+                continue;
+            }
+            LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+            for (Worker worker : workers) {
+                worker.tasks.get(i).getMetrics().getLatencies().addTo(snapshot);
+            }
+            result.put(workers[0].tasks.get(i).getName(), snapshot);
+        }
+        return result;
+    }
+
+    private Map<MediaType, LatencyHistogram.Snapshot> getMediaTypeLatencies(int taskIndex) {
+        Map<MediaType, LatencyHistogram.Snapshot> result = new LinkedHashMap<>();
+        // shared by the task instances of all workers
+        TaskMetrics metrics = manager.getWorkers()[0].tasks.get(taskIndex).getMetrics();
+        for (Entry<MediaType, LatencyHistogram> entry : metrics.getLatenciesPerType().entrySet()) {
+            LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+            entry.getValue().addTo(snapshot);
+            result.put(entry.getKey(), snapshot);
+        }
+        return result;
+    }
+
+    @Override
+    public String getTaskLatencyReport() {
+        Worker[] workers = manager.getWorkers();
+        if (workers == null) {
+            return ""; //$NON-NLS-1$
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Items/s: %.1f  MB/s: %.1f  Subitems/s: %.1f  Subitems per item: %.2f\n", //$NON-NLS-1$
+                itemsPerSecond, bytesPerSecond / (1 << 20), subitemsPerSecond, getSubitemsPerItem()));
+        sb.append(String.format("Queue size: %d  Items being processed: %d\n\n", getQueueSize(), //$NON-NLS-1$
+                getItemsBeingProcessed()));
+        appendHeader(sb, "TASK"); //$NON-NLS-1$
+        for (int i = 0; i < workers[0].tasks.size(); i++) {
+            AbstractTask task = workers[0].tasks.get(i);
+            if (!task.isEnabled()) {
+                continue;
+            }
+            LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+            long bytes = 0;
+            for (Worker worker : workers) {
+                TaskMetrics metrics = worker.tasks.get(i).getMetrics();
+                metrics.getLatencies().addTo(snapshot);
+                bytes += metrics.getBytes();
+            }
+            appendRow(sb, task.getName(), snapshot, bytes);
+        }
+        for (int i = 0; i < workers[0].tasks.size(); i++) {
+            AbstractTask task = workers[0].tasks.get(i);
+            if (!task.isEnabled()) {
+                continue;
+            }
+            List<Entry<MediaType, LatencyHistogram.Snapshot>> entries = new ArrayList<>(
+                    getMediaTypeLatencies(i).entrySet());
+            if (entries.isEmpty()) {
+                continue;
+            }
+            entries.sort((e1, e2) -> Long.compare(e2.getValue().getSum(), e1.getValue().getSum()));
+            sb.append("\n").append(task.getName()).append(" - slowest media types by total time\n"); //$NON-NLS-1$ //$NON-NLS-2$
+            appendHeader(sb, "MEDIA TYPE"); //$NON-NLS-1$
+            for (Entry<MediaType, LatencyHistogram.Snapshot> entry : entries.subList(0,
+                    Math.min(MEDIA_TYPES_PER_TASK, entries.size()))) {
+                appendRow(sb, entry.getKey().toString(), entry.getValue(), -1);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendHeader(StringBuilder sb, String name) {
+        sb.append(String.format("%-50s %10s %9s %9s %9s %9s %10s %9s %8s\n", name, "COUNT", "TOTAL(s)", "MEAN(ms)", //$NON-NLS-1$
+                "P50(ms)", "P90(ms)", "P99(ms)", "MAX(ms)", "MB/s")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+
+    private static void appendRow(StringBuilder sb, String name, LatencyHistogram.Snapshot s, long bytes) {
+        double totalSecs = s.getSum() / 1e6;
+        String rate = bytes < 0 ? "-" : totalSecs == 0 ? "0" : String.format("%.1f", bytes / totalSecs / (1 << 20)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        sb.append(String.format("%-50s %10d %9.0f %9.1f %9.1f %9.1f %10.1f %9.1f %8s\n", name, s.getCount(), totalSecs, //$NON-NLS-1$
+                s.getMean() / 1e3, s.getPercentile(50) / 1e3, s.getPercentile(90) / 1e3, s.getPercentile(99) / 1e3,
+                s.getMax() / 1e3, rate));
+    }
+
+    @Override
+    public double getItemsPerSecond() {
+        return itemsPerSecond;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public double getSubitemsPerSecond() {
+        return subitemsPerSecond;
+    }
+
+    @Override
+    public double getSubitemsPerItem() {
+        long processed = manager.stats.getProcessed();
+        return processed == 0 ? 0 : (double) manager.stats.getSubitemsDiscovered() / processed;
+    }
+
+    @Override
+    public int getQueueSize() {
+        Integer priority = manager.getProcessingQueues().getCurrentQueuePriority();
+        return priority == null ? 0 : manager.getProcessingQueues().getCurrentQueueSize();
+    }
+
+    @Override
+    public int getItemsBeingProcessed() {
+        return manager.getProcessingQueues().getItemsBeingProcessed();
+    }
+
+}
@@ -0,0 +1,22 @@
+package iped.engine.core;
+
+/**
+ * Processing metrics exposed through JMX while processing is running.
+ */
+public interface ProcessingMetricsMBean {
+
+    double getItemsPerSecond();
+
+    double getBytesPerSecond();
+
+    double getSubitemsPerSecond();
+
+    double getSubitemsPerItem();
+
+    int getQueueSize();
+
+    int getItemsBeingProcessed();
+
+    String getTaskLatencyReport();
+
+}
@@ -1,25 +1,163 @@
 package iped.engine.core;
 
-import java.util.LinkedList;
+import java.util.Deque;
+import java.util.Queue;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import iped.data.IItem;
 import iped.engine.data.CaseData;
 import iped.engine.util.Util;
 
+/**
+ * Processing queues, one per priority defined in {@link QueuesProcessingOrder}.
+ *
+ * Each queue is a lock-free multi-producer/multi-consumer deque, so workers
+ * adding subitems and polling new items do not serialize on a single monitor.
+ * Producers adding to the default priority queue when it is full block on a
+ * condition signaled by consumers, instead of sleeping for a fixed time.
+ */
 public class ProcessingQueues {
 
     private static final int QUEUE_SIZE = 100000;
 
-    private TreeMap<Integer, LinkedList<IItem>> queues;
+    private static final long MAX_BLOCKED_WAIT_MILLIS = 1000;
+
+    /**
+     * Items estimated to take longer than this, in microseconds, are costly and
+     * scheduled before other items of the same queue.
+     */
+    private static final long COSTLY_ITEM_MICROS = 60 * 1000000L;
+
+    private static class CostlyItem implements Comparable<CostlyItem> {
+
+        private static final AtomicLong sequence = new AtomicLong();
+
+        private final IItem item;
+        private final long cost;
+        private final long seq = sequence.incrementAndGet();
+
+        private CostlyItem(IItem item, long cost) {
+            this.item = item;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(CostlyItem o) {
+            // most costly first, then FIFO
+            int c = Long.compare(o.cost, cost);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    /**
+     * Queue of a single priority. Size is tracked apart because
+     * {@link ConcurrentLinkedDeque#size()} is O(n). It is incremented before
+     * adding and decremented after polling, so it is never lower than the real
+     * size.
+     *
+     * If cost aware scheduling is enabled, costly items are kept in a separate
+     * queue, ordered by estimated cost, which is polled first. So huge items
+     * found late are started as soon as possible, instead of keeping a single
+     * worker busy after all other items were processed. The queue end marker is
+     * never costly, so it is still returned after all items of the queue.
+     */
+    private class ItemQueue {
+
+        private final Deque<IItem> deque = new ConcurrentLinkedDeque<>();
+        private final Queue<CostlyItem> costlyItems = new PriorityBlockingQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private boolean addCostly(IItem item) {
+            if (!costAwareScheduling || item.isQueueEnd()) {
+                return false;
+            }
+            long cost = ItemCostEstimator.estimate(item);
+            if (cost < COSTLY_ITEM_MICROS) {
+                return false;
+            }
+            size.incrementAndGet();
+            costlyItems.add(new CostlyItem(item, cost));
+            costlyAdds.increment();
+            return true;
+        }
+
+        private void addFirst(IItem item) {
+            if (addCostly(item)) {
+                return;
+            }
+            size.incrementAndGet();
+            deque.addFirst(item);
+        }
+
+        private void addLast(IItem item) {
+            if (addCostly(item)) {
+                return;
+            }
+            size.incrementAndGet();
+            deque.addLast(item);
+        }
+
+        private IItem pollFirst() {
+            IItem item = null;
+            CostlyItem costly = costlyItems.poll();
+            if (costly != null) {
+                item = costly.item;
+            } else {
+                item = deque.pollFirst();
+            }
+            if (item != null) {
+                size.decrementAndGet();
+            }
+            return item;
+        }
+
+        private IItem peekFirst() {
+            CostlyItem costly = costlyItems.peek();
+            if (costly != null) {
+                return costly.item;
+            }
+            return deque.peekFirst();
+        }
+
+        private boolean isEmpty() {
+            return costlyItems.isEmpty() && deque.isEmpty();
+        }
+
+        private int size() {
+            return size.get();
+        }
+    }
+
+    // read only after initialization, so it is safe to be read concurrently
+    private TreeMap<Integer, ItemQueue> queues;
 
     private volatile Integer currentQueuePriority = 0;
-    
+
     private CaseData caseData;
 
     private int maxQueueSize = QUEUE_SIZE;
 
-    private int totalItemsBeingProcessed = 0;
+    private final AtomicInteger totalItemsBeingProcessed = new AtomicInteger();
+
+    private final ReentrantLock fullLock = new ReentrantLock();
+    private final Condition notFull = fullLock.newCondition();
+    private final AtomicInteger blockedProducers = new AtomicInteger();
+
+    // contention counters
+    private final LongAdder blockedAdds = new LongAdder();
+    private final LongAdder blockedWaitNanos = new LongAdder();
+    private final LongAdder emptyPolls = new LongAdder();
+    private final LongAdder costlyAdds = new LongAdder();
+
+    private volatile boolean costAwareScheduling = false;
 
     public ProcessingQueues(CaseData caseData) {
         this.caseData = caseData;
@@ -27,10 +165,10 @@ public ProcessingQueues(CaseData caseData) {
     }
 
     private void initQueues() {
-        queues = new TreeMap<Integer, LinkedList<IItem>>();
-        queues.put(0, new LinkedList<IItem>());
+        queues = new TreeMap<Integer, ItemQueue>();
+        queues.put(0, new ItemQueue());
         for (Integer priority : QueuesProcessingOrder.getProcessingQueues())
-            queues.put(priority, new LinkedList<IItem>());
+            queues.put(priority, new ItemQueue());
     }
 
     public void addItem(IItem item) throws InterruptedException {
@@ -66,59 +204,94 @@ private void addItemToQueue(IItem item, int queuePriority, boolean addFirst, boo
 
         Util.calctrackIDAndUpdateID(caseData, item);
 
-        LinkedList<IItem> queue = queues.get(queuePriority);
-        boolean sleep = false;
-        while (true) {
-            if (sleep) {
-                sleep = false;
-                Thread.sleep(1000);
-            }
-            synchronized (this) {
-                if (blockIfFull && queuePriority == 0 && queue.size() >= maxQueueSize) {
-                    sleep = true;
-                    continue;
-                } else {
-                    if (addFirst) {
-                        queue.addFirst(item);
-                    } else {
-                        queue.addLast(item);
-                    }
-                    break;
-                }
+        ItemQueue queue = queues.get(queuePriority);
+        if (blockIfFull && queuePriority == 0 && queue.size() >= maxQueueSize) {
+            waitNotFull(queue);
+        }
+        if (addFirst) {
+            queue.addFirst(item);
+        } else {
+            queue.addLast(item);
+        }
+    }
+
+    private void waitNotFull(ItemQueue queue) throws InterruptedException {
+        long start = System.nanoTime();
+        blockedAdds.increment();
+        fullLock.lockInterruptibly();
+        try {
+            blockedProducers.incrementAndGet();
+            while (queue.size() >= maxQueueSize) {
+                // timed wait just as a safety net, consumers should signal
+                notFull.await(MAX_BLOCKED_WAIT_MILLIS, TimeUnit.MILLISECONDS);
             }
+        } finally {
+            blockedProducers.decrementAndGet();
+            fullLock.unlock();
+            blockedWaitNanos.add(System.nanoTime() - start);
         }
+    }
 
+    private void signalNotFull(ItemQueue queue) {
+        // fast path: no lock is taken if there is no blocked producer
+        if (blockedProducers.get() > 0 && queue.size() < maxQueueSize) {
+            fullLock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                fullLock.unlock();
+            }
+        }
     }
 
-    public synchronized int getItemsBeingProcessed() {
-        return totalItemsBeingProcessed;
+    public int getItemsBeingProcessed() {
+        return totalItemsBeingProcessed.get();
     }
 
-    public synchronized void incItemsBeingProcessed() {
-        totalItemsBeingProcessed++;
+    public void incItemsBeingProcessed() {
+        totalItemsBeingProcessed.incrementAndGet();
     }
 
-    public synchronized void decItemsBeingProcessed() {
-        totalItemsBeingProcessed--;
+    public void decItemsBeingProcessed() {
+        totalItemsBeingProcessed.decrementAndGet();
     }
 
-    public synchronized boolean isNoItemInQueueOrBeingProcessed() {
-        return totalItemsBeingProcessed == 0 && getItemQueue().size() == 0;
+    public boolean isNoItemInQueueOrBeingProcessed() {
+        return totalItemsBeingProcessed.get() == 0 && getItemQueue().isEmpty();
     }
 
-    public synchronized IItem pollFirstFromCurrentQueue() throws InterruptedException {
-        return getItemQueue().pollFirst();
+    /**
+     * Polls the first item of current queue. If it is a regular item (not the
+     * queue end marker), it is already accounted as being processed when
+     * returned, so there is no window where it is neither in the queue nor
+     * being processed, seen by {@link #isNoItemInQueueOrBeingProcessed()}.
+     *
+     * @return the polled item or null if current queue is empty
+     */
+    public IItem pollFirstFromCurrentQueue() throws InterruptedException {
+        ItemQueue queue = getItemQueue();
+        totalItemsBeingProcessed.incrementAndGet();
+        IItem item = queue.pollFirst();
+        if (item == null || item.isQueueEnd()) {
+            totalItemsBeingProcessed.decrementAndGet();
+        }
+        if (item == null) {
+            emptyPolls.increment();
+        } else {
+            signalNotFull(queue);
+        }
+        return item;
     }
 
-    public synchronized void addLastToCurrentQueue(IItem item) throws InterruptedException {
+    public void addLastToCurrentQueue(IItem item) throws InterruptedException {
         getItemQueue().addLast(item);
     }
 
-    public synchronized IItem peekItemFromCurrentQueue() {
-        return getItemQueue().peek();
+    public IItem peekItemFromCurrentQueue() {
+        return getItemQueue().peekFirst();
     }
 
-    public synchronized int getCurrentQueueSize() {
+    public int getCurrentQueueSize() {
         return getItemQueue().size();
     }
 
@@ -131,12 +304,50 @@ public Integer getCurrentQueuePriority() {
         return currentQueuePriority;
     }
 
+    /**
+     * @return number of times producers were blocked because the queue was full
+     */
+    public long getBlockedAdds() {
+        return blockedAdds.sum();
+    }
+
+    /**
+     * @return total time, in milliseconds, producers were blocked because the
+     *         queue was full
+     */
+    public long getBlockedWaitMillis() {
+        return blockedWaitNanos.sum() / 1000000;
+    }
+
+    /**
+     * @return number of times consumers tried to poll from an empty queue
+     */
+    public long getEmptyPolls() {
+        return emptyPolls.sum();
+    }
+
+    /**
+     * Enables scheduling items estimated to be costly by
+     * {@link ItemCostEstimator} before other items of the same queue.
+     */
+    public void setCostAwareScheduling(boolean costAwareScheduling) {
+        this.costAwareScheduling = costAwareScheduling;
+    }
+
+    /**
+     * @return number of items scheduled early because they were estimated to be
+     *         costly
+     */
+    public long getCostlyAdds() {
+        return costlyAdds.sum();
+    }
+
     /**
      * Obtém fila de arquivos de evidência do caso.
      *
      * @return fila de arquivos.
      */
-    private LinkedList<IItem> getItemQueue() {
+    private ItemQueue getItemQueue() {
         return queues.get(currentQueuePriority);
     }
 
@@ -10,8 +10,11 @@
 import java.lang.management.RuntimeMXBean;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.swing.JOptionPane;
 
@@ -57,24 +60,24 @@ public class Statistics {
 
     private static final float IO_ERROR_RATE_TO_WARN = 0.05f;
 
-    private HashMap<HashValue, Integer> ignoredMap = new HashMap<>();
+    private Map<HashValue, Integer> ignoredMap = new ConcurrentHashMap<>();
 
     ICaseData caseData;
     File indexDir;
 
-    // EstatÃ­sticas
+    // Estatísticas, atualizadas por todos os workers para cada item processado
     Date start = new Date();
-    int splits = 0;
-    int timeouts = 0;
-    int processed = 0;
-    int activeProcessed = 0;
-    long volumeIndexed = 0;
-    int lastId = -1;
-    int corruptCarveIgnored = 0;
-    int ignored = 0;
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder activeProcessed = new LongAdder();
+    private final LongAdder volumeIndexed = new LongAdder();
+    private final AtomicInteger lastId = new AtomicInteger(-1);
+    private final LongAdder corruptCarveIgnored = new LongAdder();
+    private final LongAdder ignored = new LongAdder();
     int previousIndexedFiles = 0;
-    int ioerrors = 0;
-    AtomicInteger subitensDiscovered = new AtomicInteger();
+    private final LongAdder ioerrors = new LongAdder();
+    private final LongAdder subitensDiscovered = new LongAdder();
 
     public static Statistics get(ICaseData caseData, File indexDir) {
         if (instance == null) {
@@ -88,9 +91,7 @@ public static Statistics get() {
     }
 
     public int getCarvedIgnoredNum(HashValue trackId) {
-        synchronized (ignoredMap) {
-            return ignoredMap.getOrDefault(trackId, 0);
-        }
+        return ignoredMap.getOrDefault(trackId, 0);
     }
 
     private Statistics(ICaseData caseData, File indexDir) {
@@ -107,7 +108,7 @@ private void loadPrevCarvedIgnoredMap() {
         File file = new File(indexDir.getParentFile(), CARVED_IGNORED_MAP_FILE);
         if (file.exists()) {
             try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                ignoredMap = (HashMap<HashValue, Integer>) ois.readObject();
+                ignoredMap.putAll((HashMap<HashValue, Integer>) ois.readObject());
 
             } catch (Exception e) {
                 throw new RuntimeException(e);
@@ -118,122 +119,192 @@ private void loadPrevCarvedIgnoredMap() {
     public void incCarvedIgnored(IItem item) {
         this.incCorruptCarveIgnored();
         HashValue parentPersistId = new HashValue((String) item.getExtraAttribute(IndexItem.PARENT_TRACK_ID));
-        synchronized (ignoredMap) {
-            Integer ignored = ignoredMap.getOrDefault(parentPersistId, 0);
-            ignoredMap.put(parentPersistId, ++ignored);
-        }
+        ignoredMap.merge(parentPersistId, 1, Integer::sum);
     }
 
     public void resetCarvedIgnored(IItem item) {
         HashValue parentPersistId = new HashValue((String) item.getExtraAttribute(IndexItem.TRACK_ID));
-        synchronized (ignoredMap) {
-            ignoredMap.remove(parentPersistId);
-        }
+        ignoredMap.remove(parentPersistId);
     }
 
     public void commit() throws IOException {
         File file = new File(indexDir.getParentFile(), CARVED_IGNORED_MAP_FILE);
-        synchronized (ignoredMap) {
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-                oos.writeObject(ignoredMap);
-            }
+        // keeps the HashMap file format used by previous versions
+        HashMap<HashValue, Integer> mapCopy = new HashMap<>(ignoredMap);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+            oos.writeObject(mapCopy);
         }
         Util.fsync(file.toPath());
     }
 
-    synchronized public int getSplits() {
-        return splits;
+    public int getSplits() {
+        return splits.intValue();
     }
 
-    synchronized public void incSplits() {
-        splits++;
+    public void incSplits() {
+        splits.increment();
     }
 
-    synchronized public int getTimeouts() {
-        return timeouts;
+    public int getTimeouts() {
+        return timeouts.intValue();
     }
 
-    synchronized public void incTimeouts() {
-        timeouts++;
+    public void incTimeouts() {
+        timeouts.increment();
     }
 
-    synchronized public void incProcessed() {
-        processed++;
+    public void incProcessed() {
+        processed.increment();
     }
 
-    synchronized public int getProcessed() {
-        return processed;
+    public int getProcessed() {
+        return processed.intValue();
     }
 
-    synchronized public void incIoErrors() {
-        ioerrors++;
+    public void incIoErrors() {
+        ioerrors.increment();
     }
 
-    synchronized public int getIoErrors() {
-        return ioerrors;
+    public int getIoErrors() {
+        return ioerrors.intValue();
     }
 
-    synchronized public void incActiveProcessed() {
-        activeProcessed++;
+    public void incActiveProcessed() {
+        activeProcessed.increment();
     }
 
-    synchronized public int getActiveProcessed() {
-        return activeProcessed;
+    public int getActiveProcessed() {
+        return activeProcessed.intValue();
     }
 
-    synchronized public void addVolume(long volume) {
-        volumeIndexed += volume;
+    public void addVolume(long volume) {
+        volumeIndexed.add(volume);
     }
 
-    synchronized public long getVolume() {
-        return volumeIndexed;
+    public long getVolume() {
+        return volumeIndexed.sum();
     }
 
-    synchronized public int getCorruptCarveIgnored() {
-        return corruptCarveIgnored;
+    public int getCorruptCarveIgnored() {
+        return corruptCarveIgnored.intValue();
     }
 
-    private synchronized void incCorruptCarveIgnored() {
-        corruptCarveIgnored++;
+    private void incCorruptCarveIgnored() {
+        corruptCarveIgnored.increment();
     }
 
-    synchronized public int getIgnored() {
-        return ignored;
+    public int getIgnored() {
+        return ignored.intValue();
     }
 
-    synchronized public void incIgnored() {
-        ignored++;
+    public void incIgnored() {
+        ignored.increment();
     }
 
-    synchronized public void updateLastId(int id) {
-        if (id > lastId) {
-            lastId = id;
-        }
+    public void updateLastId(int id) {
+        lastId.accumulateAndGet(id, Math::max);
     }
 
-    synchronized public int getLastId() {
-        return lastId;
+    public int getLastId() {
+        return lastId.get();
     }
 
-    synchronized public void setLastId(int id) {
-        lastId = id;
+    public void setLastId(int id) {
+        lastId.set(id);
     }
 
     public void incSubitemsDiscovered() {
-        this.subitensDiscovered.incrementAndGet();
+        this.subitensDiscovered.increment();
     }
 
     public int getSubitemsDiscovered() {
-        return this.subitensDiscovered.get();
+        return this.subitensDiscovered.intValue();
+    }
+
+    /**
+     * Returns a point in time copy of all counters, to be used by reports and UI
+     * instead of reading each counter separately. Counters are read in an order
+     * that keeps their relations (e.g. active processed items never exceed
+     * processed items) even if they are being updated concurrently.
+     */
+    public Snapshot getSnapshot() {
+        return new Snapshot(this);
+    }
+
+    public static class Snapshot {
+
+        private final long time;
+        private final int activeProcessed, processed, subitemsDiscovered;
+        private final int splits, timeouts, ioErrors, corruptCarveIgnored, ignored, lastId;
+        private final long volume;
+
+        private Snapshot(Statistics stats) {
+            time = System.currentTimeMillis();
+            activeProcessed = stats.getActiveProcessed();
+            volume = stats.getVolume();
+            processed = stats.getProcessed();
+            subitemsDiscovered = stats.getSubitemsDiscovered();
+            splits = stats.getSplits();
+            timeouts = stats.getTimeouts();
+            ioErrors = stats.getIoErrors();
+            corruptCarveIgnored = stats.getCorruptCarveIgnored();
+            ignored = stats.getIgnored();
+            lastId = stats.getLastId();
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public int getProcessed() {
+            return processed;
+        }
+
+        public int getActiveProcessed() {
+            return activeProcessed;
+        }
+
+        public int getSubitemsDiscovered() {
+            return subitemsDiscovered;
+        }
+
+        public long getVolume() {
+            return volume;
+        }
+
+        public int getSplits() {
+            return splits;
+        }
+
+        public int getTimeouts() {
+            return timeouts;
+        }
+
+        public int getIoErrors() {
+            return ioErrors;
+        }
+
+        public int getCorruptCarveIgnored() {
+            return corruptCarveIgnored;
+        }
+
+        public int getIgnored() {
+            return ignored;
+        }
+
+        public int getLastId() {
+            return lastId;
+        }
     }
 
     public void logStatistics(Manager manager) throws Exception {
 
-        int processed = getProcessed();
+        Snapshot snapshot = getSnapshot();
+        int processed = snapshot.getProcessed();
         int extracted = ExportFileTask.getItensExtracted();
-        int activeFiles = getActiveProcessed();
-        int carvedIgnored = getCorruptCarveIgnored();
-        int ignored = getIgnored();
+        int activeFiles = snapshot.getActiveProcessed();
+        int carvedIgnored = snapshot.getCorruptCarveIgnored();
+        int ignored = snapshot.getIgnored();
 
         // Processing times per task
         long totalTime = 0;
@@ -308,24 +379,33 @@ public void logStatistics(Manager manager) throws Exception {
         }
 
         LOGGER.info("Partial commits took {} seconds", manager.partialCommitsTime.get());
+        ProcessingQueues queues = manager.getProcessingQueues();
+        LOGGER.info("Processing queue full waits: {} ({} seconds), empty polls: {}", queues.getBlockedAdds(), //$NON-NLS-1$
+                queues.getBlockedWaitMillis() / 1000, queues.getEmptyPolls());
+        if (localConfig.isWorkStealing()) {
+            LOGGER.info("Subitems stolen by idle workers: {}", Worker.getStolenItems()); //$NON-NLS-1$
+        }
+        if (localConfig.isCostAwareScheduling()) {
+            LOGGER.info("Costly items scheduled early: {}", queues.getCostlyAdds()); //$NON-NLS-1$
+        }
         LOGGER.info("Index internal docs: {}", numDocs); //$NON-NLS-1$
-        LOGGER.info("Text Splits: {}", getSplits()); //$NON-NLS-1$
-        LOGGER.info("Timeouts: {}", getTimeouts()); //$NON-NLS-1$
+        LOGGER.info("Text Splits: {}", snapshot.getSplits()); //$NON-NLS-1$
+        LOGGER.info("Timeouts: {}", snapshot.getTimeouts()); //$NON-NLS-1$
         LOGGER.info("Parsing Exceptions: {}", StandardParser.parsingErrors); //$NON-NLS-1$
-        LOGGER.info("I/O read errors: {}", this.getIoErrors()); //$NON-NLS-1$
-        LOGGER.info("Subitems Found: {}", getSubitemsDiscovered()); //$NON-NLS-1$
+        LOGGER.info("I/O read errors: {}", snapshot.getIoErrors()); //$NON-NLS-1$
+        LOGGER.info("Subitems Found: {}", snapshot.getSubitemsDiscovered()); //$NON-NLS-1$
         LOGGER.info("Exported Items: {}", extracted); //$NON-NLS-1$
         LOGGER.info("Total Carved Items: {}", BaseCarveTask.getItensCarved()); //$NON-NLS-1$
         LOGGER.info("Carved Ignored (corrupted): {}", carvedIgnored); //$NON-NLS-1$
         LOGGER.info("Ignored Items: {}", ignored); //$NON-NLS-1$
 
-        int indexed = (numDocs - getSplits() - previousIndexedFiles) / 2;
+        int indexed = (numDocs - snapshot.getSplits() - previousIndexedFiles) / 2;
         LOGGER.info("Total Indexed: {}", indexed); //$NON-NLS-1$
 
         LOGGER.info("Discovered volume: {} bytes", caseData.getDiscoveredVolume());
-        LOGGER.info("Processed  volume: {} bytes", getVolume());
+        LOGGER.info("Processed  volume: {} bytes", snapshot.getVolume());
 
-        long processedVolume = getVolume() / (1024 * 1024);
+        long processedVolume = snapshot.getVolume() / (1024 * 1024);
 
         if (activeFiles != processed) {
             LOGGER.info("Active Items: {}", activeFiles); //$NON-NLS-1$
@@ -352,8 +432,8 @@ public void logStatistics(Manager manager) throws Exception {
            * " itens de " + extracted);
            */
 
-        if (this.getIoErrors() > processed * IO_ERROR_RATE_TO_WARN)
-            LOGGER.error("Warning: IO Errors happened while reading {} items from {}!", getIoErrors(), processed); //$NON-NLS-1$
+        if (snapshot.getIoErrors() > processed * IO_ERROR_RATE_TO_WARN)
+            LOGGER.error("Warning: IO Errors happened while reading {} items from {}!", snapshot.getIoErrors(), processed); //$NON-NLS-1$
     }
 
     public void printSystemInfo() throws Exception {
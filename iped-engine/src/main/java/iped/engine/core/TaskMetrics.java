@@ -0,0 +1,72 @@
+package iped.engine.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tika.mime.MediaType;
+
+/**
+ * Processing metrics of a task instance: latency histogram of all items,
+ * latency histograms per media type and number of bytes of processed items.
+ * Latencies are in microseconds and do not include subitems processing time.
+ * 
+ * Histograms per media type are shared by all instances of the same task
+ * class, one per worker, and are limited to {@link #MAX_MEDIA_TYPES} types,
+ * other types are merged into {@link #OTHER_TYPES}.
+ */
+public class TaskMetrics {
+
+    private static final MediaType UNKNOWN_TYPE = MediaType.OCTET_STREAM;
+
+    public static final MediaType OTHER_TYPES = MediaType.application("x-other-types"); //$NON-NLS-1$
+
+    private static final int MAX_MEDIA_TYPES = 256;
+
+    private static final Map<Class<?>, Map<MediaType, LatencyHistogram>> latenciesPerTypePerTask = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final Map<MediaType, LatencyHistogram> latenciesPerType;
+
+    public TaskMetrics(Class<?> taskClass) {
+        latenciesPerType = latenciesPerTypePerTask.computeIfAbsent(taskClass, c -> new ConcurrentHashMap<>());
+    }
+
+    private final LongAdder bytes = new LongAdder();
+
+    public void record(MediaType mediaType, long micros, Long length) {
+        latencies.record(micros);
+        if (mediaType == null) {
+            mediaType = UNKNOWN_TYPE;
+        }
+        LatencyHistogram histogram = latenciesPerType.get(mediaType);
+        if (histogram == null) {
+            if (latenciesPerType.size() >= MAX_MEDIA_TYPES) {
+                mediaType = OTHER_TYPES;
+            }
+            histogram = latenciesPerType.computeIfAbsent(mediaType, type -> new LatencyHistogram());
+        }
+        histogram.record(micros);
+        if (length != null) {
+            bytes.add(length);
+        }
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return latency histograms per media type of all instances of the task
+     *         class
+     */
+    public Map<MediaType, LatencyHistogram> getLatenciesPerType() {
+        return latenciesPerType;
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+}
@@ -20,7 +20,13 @@
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.lucene.index.IndexWriter;
 import org.slf4j.Logger;
@@ -28,6 +34,7 @@
 
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
+import iped.engine.config.LocalConfig;
 import iped.engine.data.CaseData;
 import iped.engine.localization.Messages;
 import iped.engine.task.AbstractTask;
@@ -56,6 +63,9 @@ public class Worker extends Thread {
     private static final long MIN_WAIT_TIME_TO_SEND_QUEUE_END = 1000;
     private static volatile long lastItemProcessingTime = 0;
 
+    private static final int MAX_LOCAL_ITEMS = 100;
+    private static final LongAdder stolenItems = new LongAdder();
+
     public IndexWriter writer;
     String baseFilePath;
 
@@ -64,6 +74,17 @@ public class Worker extends Thread {
     private AbstractTask firstTask;
     private int itemsBeingProcessed = 0;
 
+    /**
+     * Subitems created by this worker when work stealing is enabled. The owner
+     * takes items from the head (depth first), other workers steal from the tail.
+     */
+    private final Deque<IItem> localItems = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger localItemsSize = new AtomicInteger();
+    private final boolean workStealing;
+
+    private final Semaphore cpuPermits;
+    private boolean holdsCpuPermit = false;
+
     public enum STATE {
         RUNNING, PAUSING, PAUSED
     }
@@ -99,6 +120,9 @@ public Worker(int k, CaseData caseData, IndexWriter writer, File output, Manager
         this.manager = manager;
         this.stats = manager.stats;
         baseFilePath = output.getParentFile().getAbsolutePath();
+        LocalConfig localConfig = ConfigurationManager.get().findObject(LocalConfig.class);
+        workStealing = localConfig.isWorkStealing();
+        cpuPermits = manager.getCpuPermits();
 
         if (k == 0) {
             LOGGER.info("Starting Tika"); //$NON-NLS-1$
@@ -156,6 +180,54 @@ public void processNextQueue() {
         }
     }
 
+    /**
+     * Releases the CPU permit held by this worker, so other worker or helper
+     * thread can run CPU bound tasks while this one is blocked on I/O.
+     * 
+     * @return true if a permit was released and must be acquired again later
+     */
+    public boolean releaseCpuPermit() {
+        if (holdsCpuPermit) {
+            holdsCpuPermit = false;
+            cpuPermits.release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Acquires a CPU permit before running CPU bound tasks.
+     */
+    public void acquireCpuPermit() throws InterruptedException {
+        if (!holdsCpuPermit) {
+            cpuPermits.acquire();
+            holdsCpuPermit = true;
+        }
+    }
+
+    /**
+     * Tries to get, without blocking, a CPU permit for a helper thread running
+     * part of the work of this worker. Helpers share the permits of workers, so
+     * they just use the cores of idle workers and do not oversubscribe the CPUs.
+     * It must be released by {@link #releaseHelperCpuPermit()}.
+     */
+    public boolean tryAcquireHelperCpuPermit() {
+        return cpuPermits.tryAcquire();
+    }
+
+    public void releaseHelperCpuPermit() {
+        cpuPermits.release();
+    }
+
+    private void processWithCpuPermit(IItem evidence) throws InterruptedException {
+        acquireCpuPermit();
+        try {
+            process(evidence);
+        } finally {
+            releaseCpuPermit();
+        }
+    }
+
     /**
      * Processa o item em todas as tarefas instaladas. Caso ocorra exceção não
      * esperada, armazena exceção para abortar processamento.
@@ -210,8 +282,12 @@ public enum ProcessTime {
 
     public void processNewItem(IItem evidence, ProcessTime time) {
         caseData.incDiscoveredEvidences(1);
+        if (workStealing && !evidence.isQueueEnd() && (time == ProcessTime.LATER
+                || (time == ProcessTime.AUTO && localItemsSize.get() < MAX_LOCAL_ITEMS))) {
+            addLocalItem(evidence);
+        }
         // Se a fila está pequena, enfileira
-        if (time == ProcessTime.LATER
+        else if (time == ProcessTime.LATER
                 || (time == ProcessTime.AUTO && manager.getProcessingQueues().getCurrentQueueSize() < 100 * manager.getNumWorkers())) {
             manager.getProcessingQueues().addItemFirstNonBlocking(evidence);
         } // caso contrário processa o item no worker atual
@@ -230,6 +306,85 @@ public void processNewItem(IItem evidence, ProcessTime time) {
 
     }
 
+    private void addLocalItem(IItem item) {
+        Util.calctrackIDAndUpdateID(caseData, item);
+        // items in local queues are accounted as being processed, so the processing
+        // queue is not changed while some worker still has pending local items
+        manager.getProcessingQueues().incItemsBeingProcessed();
+        localItemsSize.incrementAndGet();
+        localItems.addFirst(item);
+    }
+
+    private IItem pollLocalItem() {
+        IItem item = localItems.pollFirst();
+        if (item != null) {
+            localItemsSize.decrementAndGet();
+        }
+        return item;
+    }
+
+    private IItem stealLocalItem() {
+        IItem item = localItems.pollLast();
+        if (item != null) {
+            localItemsSize.decrementAndGet();
+        }
+        return item;
+    }
+
+    /**
+     * Tries to steal the oldest pending subitem of other workers, starting from a
+     * random one to spread thefts.
+     */
+    private IItem stealItemFromOtherWorker() {
+        Worker[] workers = manager.getWorkers();
+        int start = ThreadLocalRandom.current().nextInt(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            Worker victim = workers[(start + i) % workers.length];
+            if (victim != this) {
+                IItem item = victim.stealLocalItem();
+                if (item != null) {
+                    stolenItems.increment();
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets next item to process: local items first, then the shared queue and
+     * finally items stolen from other workers.
+     */
+    private IItem pollNextItem() throws InterruptedException {
+        if (workStealing) {
+            IItem item = pollLocalItem();
+            if (item != null) {
+                // already accounted as being processed when added
+                itemsBeingProcessed++;
+                return item;
+            }
+        }
+        // polled item is already accounted in the global items being processed
+        IItem item = manager.getProcessingQueues().pollFirstFromCurrentQueue();
+        if (workStealing && (item == null || item.isQueueEnd())) {
+            IItem stolen = stealItemFromOtherWorker();
+            if (stolen != null) {
+                if (item != null) {
+                    manager.getProcessingQueues().addLastToCurrentQueue(item);
+                }
+                item = stolen;
+            }
+        }
+        if (item != null && !item.isQueueEnd()) {
+            itemsBeingProcessed++;
+        }
+        return item;
+    }
+
+    public static long getStolenItems() {
+        return stolenItems.sum();
+    }
+
     @Override
     public void run() {
 
@@ -246,15 +401,9 @@ public void run() {
                         sleep = false;
                         Thread.sleep(100);
                     }
-                    synchronized (manager.getProcessingQueues()) {
-                        evidence = manager.getProcessingQueues().pollFirstFromCurrentQueue();
-                        if (evidence == null) {
-                            sleep = true;
-                            continue;
-                        }
-                        if (!evidence.isQueueEnd()) {
-                            incItemsBeingProcessed();
-                        }
+                    evidence = pollNextItem();
+                    if (evidence == null) {
+                        sleep = true;
                     }
                 }
 
@@ -262,7 +411,7 @@ public void run() {
                 if (!evidence.isQueueEnd()) {
                     lastItemProcessingTime = System.currentTimeMillis();
 
-                    process(evidence);
+                    processWithCpuPermit(evidence);
 
                 } else {
                     IItem queueEnd = evidence;
@@ -288,7 +437,7 @@ public void run() {
                                             + manager.getProcessingQueues().getCurrentQueueSize()
                                     + " itemsInThisWorker = " + itemsBeingProcessed + " itemsInAllWorkers = "
                                             + manager.getProcessingQueues().getItemsBeingProcessed());
-                            process(queueEnd);
+                            processWithCpuPermit(queueEnd);
 
                         }
                     }
@@ -0,0 +1,267 @@
+package iped.engine.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.StandardDirectoryReader;
+import org.apache.lucene.util.StringHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data derived from the case index when it is opened (ids mapping, item and
+ * category counts, evidence UUIDs), saved to the case folder so next openings
+ * do not need to scan and search the whole index again.
+ *
+ * The snapshot is bound to the index commit it was computed from and is
+ * ignored if the index was changed since then. Int arrays are stored at fixed
+ * offsets before variable length data and are bulk read straight into the
+ * arrays through a small buffer, so the file is never fully loaded in memory.
+ * The file is not kept open, so it can be replaced while the case is open.
+ */
+class CaseSnapshot {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CaseSnapshot.class);
+
+    static final String SNAPSHOT_PATH = IPEDSource.DATA_DIR + "/caseSnapshot.bin"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x49534E50;
+    private static final int VERSION = 1;
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    long generation;
+    byte[] commitId;
+    int maxDoc;
+    int numDocs;
+
+    int[] ids;
+    int[] docs;
+    int lastId;
+    int totalItems;
+    List<String> evidenceUUIDs = new ArrayList<>();
+    List<String> leafCategories = new ArrayList<>();
+    Map<String, Integer> categoryItems = new HashMap<>();
+
+    /**
+     * @return empty snapshot of the index commit read by reader, which must be
+     *         opened from a directory, not from a writer
+     */
+    static CaseSnapshot create(IndexReader reader) {
+        if (!(reader instanceof StandardDirectoryReader)) {
+            return null;
+        }
+        StandardDirectoryReader dirReader = (StandardDirectoryReader) reader;
+        CaseSnapshot snapshot = new CaseSnapshot();
+        snapshot.generation = dirReader.getSegmentInfos().getGeneration();
+        snapshot.commitId = dirReader.getSegmentInfos().getId();
+        snapshot.maxDoc = reader.maxDoc();
+        snapshot.numDocs = reader.numDocs();
+        return snapshot;
+    }
+
+    private boolean isSameCommit(CaseSnapshot other) {
+        return generation == other.generation && Arrays.equals(commitId, other.commitId) && maxDoc == other.maxDoc
+                && numDocs == other.numDocs;
+    }
+
+    /**
+     * @return the saved snapshot, or null if it does not exist or was computed
+     *         from a different index commit
+     */
+    static CaseSnapshot load(File moduleDir, IndexReader reader) {
+        CaseSnapshot current = create(reader);
+        File file = new File(moduleDir, SNAPSHOT_PATH);
+        if (current == null || !file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            SnapshotReader buf = new SnapshotReader(channel);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                return null;
+            }
+            CaseSnapshot saved = new CaseSnapshot();
+            saved.generation = buf.getLong();
+            saved.commitId = new byte[StringHelper.ID_LENGTH];
+            buf.get(saved.commitId);
+            saved.maxDoc = buf.getInt();
+            saved.numDocs = buf.getInt();
+            if (!saved.isSameCommit(current)) {
+                LOGGER.info("Index changed, case snapshot will be rebuilt"); //$NON-NLS-1$
+                return null;
+            }
+            saved.lastId = buf.getInt();
+            saved.totalItems = buf.getInt();
+            if (saved.lastId < -1 || ((long) saved.maxDoc + saved.lastId + 1) * Integer.BYTES > buf.size()) {
+                throw new IOException("Invalid lastId in case snapshot: " + saved.lastId); //$NON-NLS-1$
+            }
+
+            saved.ids = new int[saved.maxDoc];
+            buf.get(saved.ids);
+            saved.docs = new int[saved.lastId + 1];
+            buf.get(saved.docs);
+
+            readStrings(buf, saved.evidenceUUIDs);
+            readStrings(buf, saved.leafCategories);
+            int numCategories = buf.getInt();
+            for (int i = 0; i < numCategories; i++) {
+                String category = readString(buf);
+                saved.categoryItems.put(category, buf.getInt());
+            }
+            return saved;
+
+        } catch (Exception e) {
+            LOGGER.warn("Error loading case snapshot {}: {}", file.getAbsolutePath(), e.toString()); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    /**
+     * Reads the snapshot sequentially through a small reusable buffer.
+     */
+    private static class SnapshotReader {
+
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        private SnapshotReader(FileChannel channel) {
+            this.channel = channel;
+            buf.flip();
+        }
+
+        private void fill(int bytes) throws IOException {
+            if (buf.remaining() >= bytes) {
+                return;
+            }
+            buf.compact();
+            while (buf.position() < bytes) {
+                if (channel.read(buf) == -1) {
+                    throw new EOFException("Truncated case snapshot"); //$NON-NLS-1$
+                }
+            }
+            buf.flip();
+        }
+
+        private int getInt() throws IOException {
+            fill(Integer.BYTES);
+            return buf.getInt();
+        }
+
+        private long getLong() throws IOException {
+            fill(Long.BYTES);
+            return buf.getLong();
+        }
+
+        private void get(byte[] bytes) throws IOException {
+            int off = 0;
+            while (off < bytes.length) {
+                fill(1);
+                int len = Math.min(buf.remaining(), bytes.length - off);
+                buf.get(bytes, off, len);
+                off += len;
+            }
+        }
+
+        private void get(int[] ints) throws IOException {
+            int off = 0;
+            while (off < ints.length) {
+                fill(Integer.BYTES);
+                int len = Math.min(buf.remaining() / Integer.BYTES, ints.length - off);
+                buf.asIntBuffer().get(ints, off, len);
+                buf.position(buf.position() + len * Integer.BYTES);
+                off += len;
+            }
+        }
+
+        private long size() throws IOException {
+            return channel.size();
+        }
+    }
+
+    private static void readStrings(SnapshotReader buf, Collection<String> strings) throws IOException {
+        int size = buf.getInt();
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(buf));
+        }
+    }
+
+    private static String readString(SnapshotReader buf) throws IOException {
+        int len = buf.getInt();
+        if (len < 0 || len > buf.size()) {
+            throw new IOException("Invalid string length in case snapshot: " + len); //$NON-NLS-1$
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Saves the snapshot, replacing the previous one. Errors are just logged, as
+     * case folders can be read only.
+     */
+    void save(File moduleDir) {
+        File file = new File(moduleDir, SNAPSHOT_PATH);
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(generation);
+                out.write(commitId, 0, StringHelper.ID_LENGTH);
+                out.writeInt(maxDoc);
+                out.writeInt(numDocs);
+                out.writeInt(lastId);
+                out.writeInt(totalItems);
+                for (int id : ids) {
+                    out.writeInt(id);
+                }
+                for (int doc : docs) {
+                    out.writeInt(doc);
+                }
+                writeStrings(out, evidenceUUIDs);
+                writeStrings(out, leafCategories);
+                out.writeInt(categoryItems.size());
+                for (Map.Entry<String, Integer> entry : categoryItems.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        } catch (IOException e) {
+            LOGGER.warn("Error saving case snapshot {}: {}", file.getAbsolutePath(), e.toString()); //$NON-NLS-1$
+            tmp.delete();
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String str : strings) {
+            writeString(out, str);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
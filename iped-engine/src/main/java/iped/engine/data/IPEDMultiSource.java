@@ -173,6 +173,20 @@ private void loadCategories() {
             }
         }
         loadCategoryTree();
+
+        // keeps counts of categories found just in other cases
+        for (IPEDSource iCase : cases) {
+            iCase.saveSnapshot();
+        }
+    }
+
+    @Override
+    protected int countCategoryItems(String category) {
+        int count = 0;
+        for (IPEDSource iCase : cases) {
+            count += iCase.countCategoryItems(category);
+        }
+        return count;
     }
 
     private void openIndex() throws IOException {
@@ -285,10 +299,13 @@ final public int getLuceneId(int id) {
     }
 
     final public int getLuceneId(IItemId id) {
-        int sourceid = id.getSourceId();
-        IIPEDSource atomicCase = getAtomicSourceBySourceId(sourceid);
-        int baseDoc = baseDocCache.get(sourceid);
-        return atomicCase.getLuceneId(id.getId()) + baseDoc;
+        return getLuceneId(id.getSourceId(), id.getId());
+    }
+
+    final public int getLuceneId(int sourceId, int id) {
+        IIPEDSource atomicCase = getAtomicSourceBySourceId(sourceId);
+        int baseDoc = baseDocCache.get(sourceId);
+        return atomicCase.getLuceneId(id) + baseDoc;
     }
     
     @SuppressWarnings("resource")
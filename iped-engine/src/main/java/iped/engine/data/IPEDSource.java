@@ -40,6 +40,7 @@
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Terms;
@@ -125,6 +126,9 @@ public class IPEDSource implements IIPEDSource {
 
     private int lastId = -1;
 
+    private CaseSnapshot snapshot;
+    private boolean snapshotChanged = false;
+
     LinkedHashSet<String> keywords = new LinkedHashSet<String>();
 
     Set<String> extraAttributes = new HashSet<String>();
@@ -221,15 +225,21 @@ public IPEDSource(File casePath, IndexWriter iw, boolean askImagePathIfNotFound)
             BooleanQuery.setMaxClauseCount(Integer.MAX_VALUE);
             analyzer = AppAnalyzer.get();
 
-            populateLuceneIdToIdMap();
-            invertIdToLuceneIdArray();
-            populateEvidenceUUIDs();
-            countTotalItems();
+            boolean snapshotLoaded = loadSnapshot();
+            if (!snapshotLoaded) {
+                populateLuceneIdToIdMap();
+                invertIdToLuceneIdArray();
+                populateEvidenceUUIDs();
+                countTotalItems();
+            }
 
             SleuthkitReader.loadImagePasswords(moduleDir);
 
-            loadLeafCategories();
+            if (!snapshotLoaded) {
+                loadLeafCategories();
+            }
             loadCategoryTree();
+            saveSnapshot();
 
             loadKeywords();
 
@@ -285,23 +295,26 @@ public void populateLuceneIdToIdMap() throws IOException {
         
         parentDocs = new BitSet(ids.length);
 
-        NumericDocValues ndv = atomicReader.getNumericDocValues(IndexItem.ID);
-        if (ndv == null) {
-            // no items in index
-            return;
-        }
-
-        Bits liveDocs = atomicReader.getLiveDocs();
-
-        int i;
-        while ((i = ndv.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-            if (liveDocs != null && !liveDocs.get(i)) {
+        // per segment, merged doc values of all segments are much slower
+        for (LeafReaderContext context : reader.leaves()) {
+            NumericDocValues ndv = context.reader().getNumericDocValues(IndexItem.ID);
+            if (ndv == null) {
+                // no items in segment
                 continue;
             }
-            ids[i] = (int) ndv.longValue();
-            parentDocs.set(i);
-            if (ids[i] > lastId)
-                lastId = ids[i];
+            Bits liveDocs = context.reader().getLiveDocs();
+            int docBase = context.docBase;
+            int doc;
+            while ((doc = ndv.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                int i = docBase + doc;
+                ids[i] = (int) ndv.longValue();
+                parentDocs.set(i);
+                if (ids[i] > lastId)
+                    lastId = ids[i];
+            }
         }
     }
 
@@ -317,6 +330,54 @@ protected void invertIdToLuceneIdArray() {
         }
     }
 
+    /**
+     * Loads data derived from the index saved by a previous opening of the same
+     * index commit. Snapshots are not used while the index is being written.
+     */
+    private boolean loadSnapshot() {
+        if (iw != null) {
+            return false;
+        }
+        CaseSnapshot saved = CaseSnapshot.load(moduleDir, reader);
+        if (saved == null) {
+            snapshot = CaseSnapshot.create(reader);
+            snapshotChanged = snapshot != null;
+            return false;
+        }
+        LOGGER.info("Case snapshot loaded"); //$NON-NLS-1$
+        snapshot = saved;
+        ids = saved.ids;
+        docs = saved.docs;
+        lastId = saved.lastId;
+        parentDocs = new BitSet(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != -1) {
+                parentDocs.set(i);
+            }
+        }
+        evidenceUUIDs.addAll(saved.evidenceUUIDs);
+        leafCategories.addAll(saved.leafCategories);
+        totalItens = saved.totalItems;
+        return true;
+    }
+
+    /**
+     * Saves the case snapshot if it was created or updated by this opening.
+     */
+    void saveSnapshot() {
+        if (snapshot == null || !snapshotChanged) {
+            return;
+        }
+        snapshot.ids = ids;
+        snapshot.docs = docs;
+        snapshot.lastId = lastId;
+        snapshot.totalItems = totalItens;
+        snapshot.evidenceUUIDs = new ArrayList<>(evidenceUUIDs);
+        snapshot.leafCategories = new ArrayList<>(leafCategories);
+        snapshot.save(moduleDir);
+        snapshotChanged = false;
+    }
+
     private void populateEvidenceUUIDs() throws IOException {
         SortedDocValues sdv = atomicReader.getSortedDocValues(BasicProps.EVIDENCE_UUID);
         if (sdv == null)
@@ -426,22 +487,38 @@ private int countNumItems(Category category) {
             num += countNumItems(child);
         }
 
-        String query = IndexItem.CATEGORY + ":\"" + category.getName() + "\"";
+        num += countCategoryItems(category.getName());
+
+        category.setNumItems(num);
+        return num;
+    }
+
+    /**
+     * @return number of items found by a search for the category, without
+     *         adding items of its subcategories
+     */
+    protected int countCategoryItems(String category) {
+        if (snapshot != null) {
+            Integer count = snapshot.categoryItems.get(category);
+            if (count != null) {
+                return count;
+            }
+        }
+        String query = IndexItem.CATEGORY + ":\"" + category + "\"";
         IPEDSearcher searcher = new IPEDSearcher(this, query);
         searcher.setNoScoring(true);
         try {
-            if (this instanceof IPEDMultiSource) {
-                num += searcher.multiSearch().getLength();
-            } else {
-                num += searcher.search().getLength();
+            int count = searcher.search().getLength();
+            if (snapshot != null) {
+                snapshot.categoryItems.put(category, count);
+                snapshotChanged = true;
             }
+            return count;
 
         } catch (Exception e) {
             e.printStackTrace();
+            return 0;
         }
-
-        category.setNumItems(num);
-        return num;
     }
 
     private void loadKeywords() {
@@ -19,7 +19,6 @@
 
 import javax.swing.KeyStroke;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.roaringbitmap.RoaringBitmap;
 
 import iped.data.IBookmarks;
@@ -325,25 +324,21 @@ public IMultiSearchResult filterBookmarks(IMultiSearchResult result, Set<String>
             uniqueUnion = unions[0];
         }
 
-        ArrayList<IItemId> selectedItems = new ArrayList<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        int i = 0;
-        for (IItemId item : result.getIterator()) {
+        MultiSearchResult src = MultiSearchResult.of(result);
+        MultiSearchResult.Builder selected = new MultiSearchResult.Builder();
+        for (int i = 0; i < src.getLength(); i++) {
             RoaringBitmap union = null;
             if (map.size() > 1) {
-                union = unions[item.getSourceId()];
+                union = unions[src.getSourceId(i)];
             } else {
                 union = uniqueUnion;
             }
-            if (union.contains(item.getId())) {
-                selectedItems.add(item);
-                scores.add(result.getScore(i));
+            if (union.contains(src.getId(i))) {
+                selected.add(src, i);
             }
-            i++;
         }
-        MultiSearchResult r = new MultiSearchResult(selectedItems.toArray(new ItemId[0]), ArrayUtils.toPrimitive(scores.toArray(new Float[0])));
 
-        return r;
+        return selected.build();
     }
 
     public IMultiSearchResult filterBookmarksOrNoBookmarks(IMultiSearchResult result, Set<String> bookmarkNames) {
@@ -356,20 +351,16 @@ public IMultiSearchResult filterBookmarksOrNoBookmarks(IMultiSearchResult result
             }
         }
 
-        ArrayList<IItemId> selectedItems = new ArrayList<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        int i = 0;
-        for (IItemId item : result.getIterator()) {
-            RoaringBitmap union = unions.get(item.getSourceId());
-            if (union.contains(item.getId())) {
-                selectedItems.add(item);
-                scores.add(result.getScore(i));
+        MultiSearchResult src = MultiSearchResult.of(result);
+        MultiSearchResult.Builder selected = new MultiSearchResult.Builder();
+        for (int i = 0; i < src.getLength(); i++) {
+            RoaringBitmap union = unions.get(src.getSourceId(i));
+            if (union.contains(src.getId(i))) {
+                selected.add(src, i);
             }
-            i++;
         }
-        MultiSearchResult r = new MultiSearchResult(selectedItems.toArray(new ItemId[0]), ArrayUtils.toPrimitive(scores.toArray(new Float[0])));
 
-        return r;
+        return selected.build();
     }
 
     public IMultiSearchResult filterNoBookmarks(IMultiSearchResult result) {
@@ -383,37 +374,29 @@ public IMultiSearchResult filterNoBookmarks(IMultiSearchResult result) {
             }
         }
 
-        ArrayList<IItemId> selectedItems = new ArrayList<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        int i = 0;
-        for (IItemId item : result.getIterator()) {
-            RoaringBitmap union = unions.get(item.getSourceId());
-            if (!union.contains(item.getId())) {
-                selectedItems.add(item);
-                scores.add(result.getScore(i));
+        MultiSearchResult src = MultiSearchResult.of(result);
+        MultiSearchResult.Builder selected = new MultiSearchResult.Builder();
+        for (int i = 0; i < src.getLength(); i++) {
+            RoaringBitmap union = unions.get(src.getSourceId(i));
+            if (!union.contains(src.getId(i))) {
+                selected.add(src, i);
             }
-            i++;
         }
-        MultiSearchResult r = new MultiSearchResult(selectedItems.toArray(new ItemId[0]), ArrayUtils.toPrimitive(scores.toArray(new Float[0])));
 
-        return r;
+        return selected.build();
     }
 
     public IMultiSearchResult filterChecked(IMultiSearchResult result) {
 
-        ArrayList<IItemId> selectedItems = new ArrayList<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        int i = 0;
-        for (IItemId item : result.getIterator()) {
-            if (map.get(item.getSourceId()).isChecked(item.getId())) {
-                selectedItems.add(item);
-                scores.add(result.getScore(i));
+        MultiSearchResult src = MultiSearchResult.of(result);
+        MultiSearchResult.Builder selected = new MultiSearchResult.Builder();
+        for (int i = 0; i < src.getLength(); i++) {
+            if (map.get(src.getSourceId(i)).isChecked(src.getId(i))) {
+                selected.add(src, i);
             }
-            i++;
         }
-        MultiSearchResult r = new MultiSearchResult(selectedItems.toArray(new ItemId[0]), ArrayUtils.toPrimitive(scores.toArray(new Float[0])));
 
-        return r;
+        return selected.build();
     }
 
     public void loadState() {
@@ -0,0 +1,258 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDB.hashBytesLen;
+import static iped.engine.hashdb.HashDB.hashTypes;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import iped.utils.IOUtil;
+
+/**
+ * Preloaded copy of all hashes of the hashes database, used to avoid one SQLite
+ * query per processed item. For each hash type, records (hash bytes followed by
+ * the HASH_ID) are stored sorted in a cache file, which is memory mapped, so
+ * hashes are kept off-heap and lookups are lock-free binary searches. Only hits
+ * need to query the database to fetch the hash properties.
+ *
+ * Each hashes database has its own cache file, named after its canonical
+ * path, which is also stored in the file header. The cache file is rebuilt if
+ * the hashes database path, length or last modified date changes. It is
+ * written to a temp file and then renamed, so concurrent processes never see a
+ * partial file.
+ */
+public class HashDBCache implements Closeable {
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_LEN = 4 + 8 + 8 + 4 + hashTypes.length * (4 + 8);
+
+    // keeps each mapped buffer below the 2GB limit
+    private static final long MAX_BUFFER_LEN = 1 << 30;
+
+    private final FileChannel channel;
+    private final HashTable[] tables = new HashTable[hashTypes.length];
+
+    private static class HashTable {
+
+        private final int hashLen, recordLen, recordsPerBuffer;
+        private final long count;
+        private final MappedByteBuffer[] buffers;
+
+        private HashTable(FileChannel channel, long offset, int hashLen, long count) throws IOException {
+            this.hashLen = hashLen;
+            this.recordLen = hashLen + 4;
+            this.count = count;
+            this.recordsPerBuffer = (int) (MAX_BUFFER_LEN / recordLen);
+            buffers = new MappedByteBuffer[(int) ((count + recordsPerBuffer - 1) / recordsPerBuffer)];
+            for (int i = 0; i < buffers.length; i++) {
+                long records = Math.min(recordsPerBuffer, count - (long) i * recordsPerBuffer);
+                buffers[i] = channel.map(MapMode.READ_ONLY, offset + (long) i * recordsPerBuffer * recordLen,
+                        records * recordLen);
+            }
+        }
+
+        private int compare(long record, byte[] hash) {
+            ByteBuffer buffer = buffers[(int) (record / recordsPerBuffer)];
+            int off = (int) (record % recordsPerBuffer) * recordLen;
+            for (int i = 0; i < hashLen; i++) {
+                int cmp = Integer.compare(buffer.get(off + i) & 255, hash[i] & 255);
+                if (cmp != 0)
+                    return cmp;
+            }
+            return 0;
+        }
+
+        private int getHashId(long record) {
+            ByteBuffer buffer = buffers[(int) (record / recordsPerBuffer)];
+            return buffer.getInt((int) (record % recordsPerBuffer) * recordLen + hashLen);
+        }
+
+        private int lookup(byte[] hash) {
+            if (hash.length != hashLen)
+                return -1;
+            long low = 0;
+            long high = count - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                int cmp = compare(mid, hash);
+                if (cmp == 0)
+                    return getHashId(mid);
+                if (cmp < 0)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            return -1;
+        }
+    }
+
+    private HashDBCache(File cacheFile, File hashDBFile) throws IOException {
+        channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+        boolean ok = false;
+        try {
+            byte[] path = getCanonicalPath(hashDBFile);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LEN + 4 + path.length);
+            while (header.hasRemaining() && channel.read(header) >= 0)
+                ;
+            header.flip();
+            if (header.remaining() < header.capacity() || header.getInt() != VERSION
+                    || header.getLong() != hashDBFile.length() || header.getLong() != hashDBFile.lastModified()
+                    || header.getInt() != hashTypes.length) {
+                throw new IOException("Outdated hashes cache file " + cacheFile.getPath());
+            }
+            int[] hashLens = new int[hashTypes.length];
+            long[] counts = new long[hashTypes.length];
+            for (int i = 0; i < hashTypes.length; i++) {
+                hashLens[i] = header.getInt();
+                counts[i] = header.getLong();
+            }
+            byte[] savedPath = new byte[path.length];
+            if (header.getInt() != path.length) {
+                throw new IOException("Hashes cache file " + cacheFile.getPath() + " is from other database");
+            }
+            header.get(savedPath);
+            if (!Arrays.equals(savedPath, path)) {
+                throw new IOException("Hashes cache file " + cacheFile.getPath() + " is from other database");
+            }
+            long offset = header.capacity();
+            for (int i = 0; i < hashTypes.length; i++) {
+                int hashLen = hashLens[i];
+                long count = counts[i];
+                if (hashLen != hashBytesLen[i] || offset + count * (hashLen + 4) > channel.size()) {
+                    throw new IOException("Corrupted hashes cache file " + cacheFile.getPath());
+                }
+                if (count > 0) {
+                    tables[i] = new HashTable(channel, offset, hashLen, count);
+                }
+                offset += count * (hashLen + 4);
+            }
+            ok = true;
+        } finally {
+            if (!ok) {
+                IOUtil.closeQuietly(channel);
+            }
+        }
+    }
+
+    private static byte[] getCanonicalPath(File hashDBFile) throws IOException {
+        return hashDBFile.getCanonicalPath().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the cache file of the hashes database, in the directory dir
+     */
+    public static File getCacheFile(File dir, File hashDBFile) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(getCanonicalPath(hashDBFile));
+            StringBuilder name = new StringBuilder("hashdblookup-");
+            for (int i = 0; i < 8; i++) {
+                name.append(String.format("%02x", digest[i] & 255));
+            }
+            return new File(dir, name.append(".cache").toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Opens the cache file, creating it from the hashes database if it does not
+     * exist or is outdated.
+     */
+    public static HashDBCache open(File cacheFile, File hashDBFile, HashDBDataSource dataSource) throws Exception {
+        if (cacheFile.exists()) {
+            try {
+                return new HashDBCache(cacheFile, hashDBFile);
+            } catch (IOException e) {
+                // outdated or corrupted, rebuild it below
+            }
+        }
+        create(cacheFile, hashDBFile, dataSource);
+        return new HashDBCache(cacheFile, hashDBFile);
+    }
+
+    private static void create(File cacheFile, File hashDBFile, HashDBDataSource dataSource) throws Exception {
+        if (cacheFile.getParentFile() != null) {
+            cacheFile.getParentFile().mkdirs();
+        }
+        File tmp = new File(cacheFile.getPath() + ".tmp" + ProcessHandle.current().pid());
+        boolean ok = false;
+        try {
+            try (DataOutputStream os = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20))) {
+                long[] counts = new long[hashTypes.length];
+                for (int i = 0; i < hashTypes.length; i++) {
+                    counts[i] = dataSource.countHashes(i);
+                }
+                os.writeInt(VERSION);
+                os.writeLong(hashDBFile.length());
+                os.writeLong(hashDBFile.lastModified());
+                os.writeInt(hashTypes.length);
+                for (int i = 0; i < hashTypes.length; i++) {
+                    os.writeInt(hashBytesLen[i]);
+                    os.writeLong(counts[i]);
+                }
+                byte[] path = getCanonicalPath(hashDBFile);
+                os.writeInt(path.length);
+                os.write(path);
+                for (int i = 0; i < hashTypes.length; i++) {
+                    long written = dataSource.writeSortedHashes(i, os);
+                    if (written != counts[i]) {
+                        throw new IOException("Hashes database changed while creating cache file.");
+                    }
+                }
+            }
+            try {
+                Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            ok = true;
+        } finally {
+            if (!ok) {
+                tmp.delete();
+            }
+        }
+    }
+
+    public boolean hasHashType(int hashType) {
+        return tables[hashType] != null;
+    }
+
+    public long size(int hashType) {
+        return tables[hashType] == null ? 0 : tables[hashType].count;
+    }
+
+    /**
+     * Thread safe lookup of a hash.
+     *
+     * @return the HASH_ID of the hash or -1 if it was not found
+     */
+    public int lookup(int hashType, byte[] hash) {
+        HashTable table = tables[hashType];
+        if (table == null || hash == null)
+            return -1;
+        return table.lookup(hash);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -2,6 +2,7 @@
 
 import static iped.engine.hashdb.HashDB.hashTypes;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -30,6 +31,7 @@ public class HashDBDataSource {
     private PreparedStatement stmtSelectHashProperties;
     private PreparedStatement stmtSelectMD5;
     private boolean[] presentHashes;
+    private volatile HashDBCache cache;
     private final Map<Integer, String> propertyIdToName = new HashMap<Integer, String>();
 
     private static final String ledFileLength = "fileLength";
@@ -292,7 +294,7 @@ public synchronized LedHashDB readLedHashDB() throws Exception {
         return ledHashDB;
     }
 
-    public synchronized List<String> lookupSets(String algorithm, String hash) throws Exception {
+    public List<String> lookupSets(String algorithm, String hash) throws Exception {
         int idx = HashDB.hashType(algorithm);
         if (idx < 0)
             return null;
@@ -319,7 +321,44 @@ public synchronized List<String> lookupSets(String algorithm, String hash) throw
         return pedo ? hashSets : null;
     }
 
-    public synchronized void lookup(byte[][] hashes, Map<String, String> properties) throws Exception {
+    /**
+     * Sets a preloaded cache of hashes, so lookups only query the database to
+     * fetch properties of found hashes.
+     */
+    public void setCache(HashDBCache cache) {
+        this.cache = cache;
+    }
+
+    public void lookup(byte[][] hashes, Map<String, String> properties) throws Exception {
+        if (cache == null) {
+            lookupDB(hashes, properties);
+            return;
+        }
+        int[] hashIds = null;
+        int numHashIds = 0;
+        NEXT: for (int i = 0; i < hashes.length; i++) {
+            int hashId = cache.lookup(i, hashes[i]);
+            if (hashId >= 0) {
+                if (hashIds == null) {
+                    hashIds = new int[hashes.length];
+                }
+                for (int j = 0; j < numHashIds; j++) {
+                    if (hashIds[j] == hashId)
+                        continue NEXT;
+                }
+                hashIds[numHashIds++] = hashId;
+            }
+        }
+        if (numHashIds > 0) {
+            synchronized (this) {
+                for (int j = 0; j < numHashIds; j++) {
+                    addProperties(hashIds[j], properties);
+                }
+            }
+        }
+    }
+
+    private synchronized void lookupDB(byte[][] hashes, Map<String, String> properties) throws Exception {
         int mask = 0;
         for (int i = 0; i < hashes.length; i++) {
             if (hashes[i] != null && presentHashes[i]) {
@@ -337,24 +376,62 @@ public synchronized void lookup(byte[][] hashes, Map<String, String> properties)
         }
         ResultSet rs1 = stmtSelect.executeQuery();
         while (rs1.next()) {
-            int hashId = rs1.getInt(1);
-            stmtSelectHashProperties.setInt(1, hashId);
-            ResultSet rs2 = stmtSelectHashProperties.executeQuery();
-            while (rs2.next()) {
-                int propertyId = rs2.getInt(1);
-                String propertyName = propertyIdToName.get(propertyId);
-                if (propertyName != null) {
-                    String propertyValue = rs2.getString(2);
-                    String prev = properties.get(propertyName);
-                    if (prev != null) {
-                        propertyValue = HashDB.mergeProperties(propertyValue, prev);
-                    }
-                    properties.put(propertyName, propertyValue);
+            addProperties(rs1.getInt(1), properties);
+        }
+        rs1.close();
+    }
+
+    private void addProperties(int hashId, Map<String, String> properties) throws Exception {
+        stmtSelectHashProperties.setInt(1, hashId);
+        ResultSet rs2 = stmtSelectHashProperties.executeQuery();
+        while (rs2.next()) {
+            int propertyId = rs2.getInt(1);
+            String propertyName = propertyIdToName.get(propertyId);
+            if (propertyName != null) {
+                String propertyValue = rs2.getString(2);
+                String prev = properties.get(propertyName);
+                if (prev != null) {
+                    propertyValue = HashDB.mergeProperties(propertyValue, prev);
                 }
+                properties.put(propertyName, propertyValue);
             }
-            rs2.close();
         }
-        rs1.close();
+        rs2.close();
+    }
+
+    public synchronized long countHashes(int hashType) throws Exception {
+        if (!presentHashes[hashType])
+            return 0;
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("select count(*) from HASHES where length(" + hashTypes[hashType]
+                        + ")=" + HashDB.hashBytesLen[hashType])) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Writes all hashes of a type, sorted by hash value, each one followed by its
+     * HASH_ID. Used to build {@link HashDBCache}.
+     *
+     * @return number of hashes written
+     */
+    public synchronized long writeSortedHashes(int hashType, DataOutputStream os) throws Exception {
+        if (!presentHashes[hashType])
+            return 0;
+        long count = 0;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.setFetchSize(1024);
+            String col = hashTypes[hashType];
+            ResultSet rs = stmt.executeQuery("select " + col + ", HASH_ID from HASHES where length(" + col + ")="
+                    + HashDB.hashBytesLen[hashType] + " order by " + col);
+            while (rs.next()) {
+                os.write(rs.getBytes(1));
+                os.writeInt(rs.getInt(2));
+                count++;
+            }
+            rs.close();
+        }
+        return count;
     }
 
     public synchronized void close() {
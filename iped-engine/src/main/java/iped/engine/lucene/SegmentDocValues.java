@@ -0,0 +1,328 @@
+package iped.engine.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues.MultiSortedDocValues;
+import org.apache.lucene.index.MultiDocValues.MultiSortedSetDocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * Per segment access to doc values of a (composite) index reader. Consumers
+ * iterate each segment with its own doc values, which is much faster than
+ * going through the merged views of {@link SlowCompositeReaderWrapper}, and
+ * convert segment ordinals to global ones with ordinal maps built once per
+ * field and reader generation.
+ *
+ * Instances are cached by reader and released when the reader is closed.
+ */
+public class SegmentDocValues {
+
+    private static final Map<IndexReader.CacheKey, SegmentDocValues> instances = new ConcurrentHashMap<>();
+
+    private final IndexReader reader;
+    private final List<LeafReaderContext> leaves;
+    private final Map<String, Optional<OrdinalMap>> sortedOrdMaps = new ConcurrentHashMap<>();
+    private final Map<String, Optional<OrdinalMap>> sortedSetOrdMaps = new ConcurrentHashMap<>();
+
+    public static SegmentDocValues get(IndexReader reader) {
+        IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        if (cacheHelper == null) {
+            return new SegmentDocValues(reader);
+        }
+        return instances.computeIfAbsent(cacheHelper.getKey(), key -> {
+            cacheHelper.addClosedListener(instances::remove);
+            return new SegmentDocValues(reader);
+        });
+    }
+
+    private SegmentDocValues(IndexReader reader) {
+        this.reader = reader;
+        this.leaves = reader.leaves();
+    }
+
+    public IndexReader getReader() {
+        return reader;
+    }
+
+    public List<LeafReaderContext> leaves() {
+        return leaves;
+    }
+
+    /**
+     * @return index of the segment containing the global doc id
+     */
+    public int leafIndex(int doc) {
+        return ReaderUtil.subIndex(doc, leaves);
+    }
+
+    /**
+     * @return true if some segment has doc values of the given type for field
+     */
+    public boolean hasDocValues(String field, DocValuesType type) {
+        for (LeafReaderContext leaf : leaves) {
+            FieldInfo info = leaf.reader().getFieldInfos().fieldInfo(field);
+            if (info != null && info.getDocValuesType() == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private OrdinalMap getSortedOrdinalMap(String field) throws IOException {
+        return getOrdinalMap(sortedOrdMaps, field, false);
+    }
+
+    private OrdinalMap getSortedSetOrdinalMap(String field) throws IOException {
+        return getOrdinalMap(sortedSetOrdMaps, field, true);
+    }
+
+    private OrdinalMap getOrdinalMap(Map<String, Optional<OrdinalMap>> cache, String field, boolean sortedSet)
+            throws IOException {
+        Optional<OrdinalMap> map = cache.get(field);
+        if (map == null) {
+            // single segment ordinals are already global
+            OrdinalMap ordMap = null;
+            if (leaves.size() > 1) {
+                if (sortedSet) {
+                    SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = DocValues.getSortedSet(leaves.get(i).reader(), field);
+                    }
+                    ordMap = OrdinalMap.build(getOwner(), values, PackedInts.DEFAULT);
+                } else {
+                    SortedDocValues[] values = new SortedDocValues[leaves.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = DocValues.getSorted(leaves.get(i).reader(), field);
+                    }
+                    ordMap = OrdinalMap.build(getOwner(), values, PackedInts.DEFAULT);
+                }
+            }
+            map = Optional.ofNullable(ordMap);
+            cache.put(field, map);
+        }
+        return map.orElse(null);
+    }
+
+    private IndexReader.CacheKey getOwner() {
+        IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        return cacheHelper != null ? cacheHelper.getKey() : null;
+    }
+
+    /**
+     * @return mapping from ordinals of the segment to global ordinals of a
+     *         SORTED field
+     */
+    public LongValues getSortedGlobalOrds(String field, int leafIndex) throws IOException {
+        OrdinalMap map = getSortedOrdinalMap(field);
+        return map != null ? map.getGlobalOrds(leafIndex) : LongValues.IDENTITY;
+    }
+
+    /**
+     * @return mapping from ordinals of the segment to global ordinals of a
+     *         SORTED_SET field
+     */
+    public LongValues getSortedSetGlobalOrds(String field, int leafIndex) throws IOException {
+        OrdinalMap map = getSortedSetOrdinalMap(field);
+        return map != null ? map.getGlobalOrds(leafIndex) : LongValues.IDENTITY;
+    }
+
+    /**
+     * Global view of a SORTED field, using the cached ordinal map. Should be used
+     * just to lookup global ordinals, not to iterate over docs.
+     */
+    public SortedDocValues getGlobalSortedDocValues(String field) throws IOException {
+        if (!hasDocValues(field, DocValuesType.SORTED)) {
+            return null;
+        }
+        if (leaves.size() == 1) {
+            return leaves.get(0).reader().getSortedDocValues(field);
+        }
+        OrdinalMap map = getSortedOrdinalMap(field);
+        SortedDocValues[] values = new SortedDocValues[leaves.size()];
+        int[] starts = new int[leaves.size() + 1];
+        long cost = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = DocValues.getSorted(leaves.get(i).reader(), field);
+            starts[i] = leaves.get(i).docBase;
+            cost += values[i].cost();
+        }
+        starts[values.length] = reader.maxDoc();
+        return new MultiSortedDocValues(values, starts, map, cost);
+    }
+
+    /**
+     * Global view of a SORTED_SET field, using the cached ordinal map. Should be
+     * used just to lookup global ordinals, not to iterate over docs.
+     */
+    public SortedSetDocValues getGlobalSortedSetDocValues(String field) throws IOException {
+        if (!hasDocValues(field, DocValuesType.SORTED_SET)) {
+            return null;
+        }
+        if (leaves.size() == 1) {
+            return leaves.get(0).reader().getSortedSetDocValues(field);
+        }
+        OrdinalMap map = getSortedSetOrdinalMap(field);
+        SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+        int[] starts = new int[leaves.size() + 1];
+        long cost = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = DocValues.getSortedSet(leaves.get(i).reader(), field);
+            starts[i] = leaves.get(i).docBase;
+            cost += values[i].cost();
+        }
+        starts[values.length] = reader.maxDoc();
+        return new MultiSortedSetDocValues(values, starts, map, cost);
+    }
+
+    /**
+     * @return global ordinal of each doc of a SORTED field, -1 if missing, or null
+     *         if the field has no such doc values
+     */
+    public int[] loadSortedOrds(String field) throws IOException {
+        if (!hasDocValues(field, DocValuesType.SORTED)) {
+            return null;
+        }
+        int[] ords = new int[reader.maxDoc()];
+        Arrays.fill(ords, -1);
+        for (int i = 0; i < leaves.size(); i++) {
+            LeafReader leaf = leaves.get(i).reader();
+            int docBase = leaves.get(i).docBase;
+            SortedDocValues values = leaf.getSortedDocValues(field);
+            if (values == null) {
+                continue;
+            }
+            LongValues globalOrds = getSortedGlobalOrds(field, i);
+            int doc;
+            while ((doc = values.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                ords[docBase + doc] = (int) globalOrds.get(values.ordValue());
+            }
+        }
+        return ords;
+    }
+
+    /**
+     * @return global ordinals of each doc of a SORTED_SET field, or null if the
+     *         field has no such doc values
+     */
+    public int[][] loadSortedSetOrds(String field) throws IOException {
+        if (!hasDocValues(field, DocValuesType.SORTED_SET)) {
+            return null;
+        }
+        int[] empty = new int[0];
+        int[][] ords = new int[reader.maxDoc()][];
+        Arrays.fill(ords, empty);
+        int[] buffer = new int[16];
+        for (int i = 0; i < leaves.size(); i++) {
+            LeafReader leaf = leaves.get(i).reader();
+            int docBase = leaves.get(i).docBase;
+            SortedSetDocValues values = leaf.getSortedSetDocValues(field);
+            if (values == null) {
+                continue;
+            }
+            LongValues globalOrds = getSortedSetGlobalOrds(field, i);
+            int doc;
+            while ((doc = values.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                int count = 0;
+                long ord;
+                while ((ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                    if (count == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, count * 2);
+                    }
+                    buffer[count++] = (int) globalOrds.get(ord);
+                }
+                ords[docBase + doc] = Arrays.copyOf(buffer, count);
+            }
+        }
+        return ords;
+    }
+
+    /**
+     * @return value of each doc of a NUMERIC field, missingValue if missing, or
+     *         null if the field has no such doc values
+     */
+    public long[] loadNumericValues(String field, long missingValue) throws IOException {
+        if (!hasDocValues(field, DocValuesType.NUMERIC)) {
+            return null;
+        }
+        long[] result = new long[reader.maxDoc()];
+        Arrays.fill(result, missingValue);
+        for (LeafReaderContext context : leaves) {
+            NumericDocValues values = context.reader().getNumericDocValues(field);
+            if (values == null) {
+                continue;
+            }
+            int doc;
+            while ((doc = values.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                result[context.docBase + doc] = values.longValue();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return values of each doc of a SORTED_NUMERIC field, or null if the field
+     *         has no such doc values
+     */
+    public long[][] loadSortedNumericValues(String field) throws IOException {
+        if (!hasDocValues(field, DocValuesType.SORTED_NUMERIC)) {
+            return null;
+        }
+        long[] empty = new long[0];
+        long[][] result = new long[reader.maxDoc()][];
+        Arrays.fill(result, empty);
+        for (LeafReaderContext context : leaves) {
+            SortedNumericDocValues values = context.reader().getSortedNumericDocValues(field);
+            if (values == null) {
+                continue;
+            }
+            int doc;
+            while ((doc = values.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                long[] docValues = new long[values.docValueCount()];
+                for (int j = 0; j < docValues.length; j++) {
+                    docValues[j] = values.nextValue();
+                }
+                result[context.docBase + doc] = docValues;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sorts doc ids, so they can be visited by per segment doc values, whose
+     * iterators can only move forward.
+     *
+     * @return positions in the docs array ordered by doc id
+     */
+    public static int[] sortByDoc(int[] docs) {
+        long[] packed = new long[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            packed[i] = ((long) docs[i] << 32) | i;
+        }
+        Arrays.parallelSort(packed);
+        int[] positions = new int[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            positions[i] = (int) packed[i];
+        }
+        return positions;
+    }
+
+}
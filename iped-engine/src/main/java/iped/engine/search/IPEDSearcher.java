@@ -30,6 +30,7 @@
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.engine.data.IPEDMultiSource;
 import iped.engine.data.IPEDSource;
@@ -48,6 +49,7 @@ public class IPEDSearcher implements IIPEDSearcher {
     Query query;
     boolean treeQuery, noScore, rewriteQuery = true;
     NoScoringCollector collector;
+    RoaringBitmap hits;
     Sort sort;
 
     private volatile boolean canceled;
@@ -133,7 +135,28 @@ public MultiSearchResult multiSearch() throws IOException {
         if (!(ipedCase instanceof IPEDMultiSource))
             throw new UnsupportedOperationException("Use search() method for only one IPEDSource!"); //$NON-NLS-1$
 
-        return MultiSearchResult.get((IPEDMultiSource) ipedCase, luceneSearch());
+        MultiSearchResult result = MultiSearchResult.get((IPEDMultiSource) ipedCase, luceneSearch());
+        // shares the hits bitmap, so it is not built again from the result
+        result.ipedSource = ipedCase;
+        result.docids = hits;
+        return result;
+    }
+
+    /**
+     * Searches just the lucene ids of the hits, without scoring nor mapping them
+     * to items.
+     * 
+     * @return lucene ids of the hits, must not be modified
+     */
+    public RoaringBitmap searchDocIds() throws IOException {
+        boolean noScore = this.noScore;
+        this.noScore = true;
+        try {
+            searchAll();
+        } finally {
+            this.noScore = noScore;
+        }
+        return hits;
     }
 
     LuceneSearchResult luceneSearch() throws IOException {
@@ -144,6 +167,15 @@ private LuceneSearchResult searchAll() throws IOException {
 
         // System.out.println("searching");
 
+        QueryResultCache.Key cacheKey = QueryResultCache.getKey(ipedCase.getReader(), this.query, treeQuery,
+                rewriteQuery);
+        QueryResultCache.Entry cached = QueryResultCache.get(cacheKey);
+        if (cached != null) {
+            hits = cached.getDocs();
+            if (noScore || hits.getCardinality() > MAX_SIZE_TO_SCORE || (sort == null && cached.isScored()))
+                return cached.getSearchResult();
+        }
+
         Query query = this.query;
         if (query instanceof MatchAllDocsQuery) {
             query = QueryBuilder.getMatchAllItemsQuery();
@@ -154,16 +186,26 @@ private LuceneSearchResult searchAll() throws IOException {
             query = getNonTreeQuery(query);
         }
 
-        collector = new NoScoringCollector(ipedCase.getReader().maxDoc());
-        try {
-            ipedCase.getSearcher().search(query, collector);
-
-        } catch (InterruptedIOException e) {
-            // e.printStackTrace();
+        // hits are already known, just scores must be computed
+        if (cached == null) {
+            collector = new NoScoringCollector(ipedCase.getReader().maxDoc());
+            try {
+                ipedCase.getSearcher().search(query, collector);
+
+            } catch (InterruptedIOException e) {
+                // e.printStackTrace();
+            }
+            LuceneSearchResult result = collector.getSearchResults();
+            hits = new RoaringBitmap();
+            hits.addN(result.getLuceneIds(), 0, result.getLength());
+            hits.runOptimize();
+            if (!canceled)
+                QueryResultCache.put(cacheKey, hits, null);
+
+            // do not compute scores (slow) when result set is large
+            if (noScore || result.getLength() > MAX_SIZE_TO_SCORE || canceled)
+                return result;
         }
-        // do not compute scores (slow) when result set is large
-        if (noScore || collector.getTotalHits() > MAX_SIZE_TO_SCORE || canceled)
-            return collector.getSearchResults();
 
         // otherwise get results computing score
         LuceneSearchResult searchResult = new LuceneSearchResult(0);
@@ -189,16 +231,27 @@ private LuceneSearchResult searchAll() throws IOException {
 
         } while (scoreDocs.length > 0 && !canceled);
 
+        // results in doc order have scores aligned with the cached hits
+        if (this.sort == null && !canceled && searchResult.getLength() == hits.getCardinality())
+            QueryResultCache.put(cacheKey, hits, searchResult.getScores().clone());
+
         return searchResult;
     }
     
     public boolean hasDocId(int docId) {
-        if (collector != null) {
-            return collector.bits.get(docId);
+        if (hits != null) {
+            return hits.contains(docId);
         }
         return true;
     }
 
+    /**
+     * @return lucene ids of the hits of the last search, must not be modified
+     */
+    public RoaringBitmap getDocIdBitSet() {
+        return hits;
+    }
+
     private Query getNonTreeQuery(Query query) {
         BooleanQuery.Builder result = new BooleanQuery.Builder();
         result.add(query, Occur.MUST);
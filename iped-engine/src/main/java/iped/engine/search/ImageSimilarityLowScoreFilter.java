@@ -1,9 +1,5 @@
 package iped.engine.search;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import iped.data.IItemId;
 import iped.search.IMultiSearchResult;
 
 public class ImageSimilarityLowScoreFilter {
@@ -13,27 +9,14 @@ public static MultiSearchResult filter(IMultiSearchResult result) {
     }
 
     public static MultiSearchResult filter(IMultiSearchResult result, float minScore) {
-        ArrayList<IItemId> filteredItems = new ArrayList<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
-        int len = result.getLength();
+        MultiSearchResult src = MultiSearchResult.of(result);
+        MultiSearchResult.Builder filtered = new MultiSearchResult.Builder();
+        int len = src.getLength();
         for (int i = 0; i < len; i++) {
-            float score = result.getScore(i);
-            if (score > minScore) {
-                filteredItems.add(result.getItem(i));
-                scores.add(score);
+            if (src.getScore(i) > minScore) {
+                filtered.add(src, i);
             }
         }
-        return new MultiSearchResult(filteredItems.toArray(new IItemId[0]), toPrimitive(scores));
-    }
-
-    private static float[] toPrimitive(List<Float> list) {
-        if (list == null) {
-            return null;
-        }
-        final float[] result = new float[list.size()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = list.get(i).floatValue();
-        }
-        return result;
+        return filtered.build();
     }
 }
@@ -12,12 +12,14 @@
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.util.BytesRef;
 
 import iped.data.IItem;
 import iped.data.IItemId;
 import iped.engine.data.IPEDSource;
 import iped.engine.lucene.DocValuesUtil;
+import iped.engine.lucene.SegmentDocValues;
 import iped.engine.task.similarity.ImageSimilarity;
 import iped.engine.task.similarity.ImageSimilarityTask;
 import iped.properties.BasicProps;
@@ -81,28 +83,46 @@ public void score() throws IOException {
             return;
         }
         LeafReader leafReader = ipedCase.getLeafReader();
+        SegmentDocValues segmentDocValues = SegmentDocValues.get(ipedCase.getReader());
+        List<LeafReaderContext> leaves = segmentDocValues.leaves();
         int numThreads = Runtime.getRuntime().availableProcessors();
         Thread[] threads = new Thread[numThreads];
         int evalCut = (int) (100 * refSimilarityFeatures.length / distToScoreMult);
+        int[] luceneIds = new int[len];
+        for (int i = 0; i < len; i++) {
+            luceneIds[i] = ipedCase.getLuceneId(result.getItem(i));
+        }
+        // visits docs in order, segment by segment, as doc values only move forward
+        int[] positions = SegmentDocValues.sortByDoc(luceneIds);
         int itemsPerThread = (len + numThreads - 1) / numThreads;
         for (int k = 0; k < numThreads; k++) {
             int threadIdx = k;
             (threads[k] = new Thread() {
                 public void run() {
                     BinaryDocValues similarityFeaturesValues = null;
-                    try {
-                        similarityFeaturesValues = leafReader
-                                .getBinaryDocValues(ImageSimilarityTask.IMAGE_FEATURES);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        return;
-                    }
+                    int leafIdx = -1, docBase = 0;
                     int i0 = Math.min(len, itemsPerThread * threadIdx);
                     int i1 = Math.min(len, i0 + itemsPerThread);
-                    for (int i = i0; i < i1; i++) {
-                        IItemId itemId = result.getItem(i);
-                        int luceneId = ipedCase.getLuceneId(itemId);
-                        BytesRef bytesRef = DocValuesUtil.getBytesRef(similarityFeaturesValues, luceneId);
+                    for (int j = i0; j < i1; j++) {
+                        int i = positions[j];
+                        int luceneId = luceneIds[i];
+                        BytesRef bytesRef = null;
+                        if (luceneId >= 0) {
+                            if (leafIdx == -1 || luceneId >= docBase + leaves.get(leafIdx).reader().maxDoc()) {
+                                leafIdx = segmentDocValues.leafIndex(luceneId);
+                                docBase = leaves.get(leafIdx).docBase;
+                                try {
+                                    similarityFeaturesValues = leaves.get(leafIdx).reader()
+                                            .getBinaryDocValues(ImageSimilarityTask.IMAGE_FEATURES);
+                                } catch (IOException e) {
+                                    e.printStackTrace();
+                                    return;
+                                }
+                            }
+                            if (similarityFeaturesValues != null) {
+                                bytesRef = DocValuesUtil.getBytesRef(similarityFeaturesValues, luceneId - docBase);
+                            }
+                        }
                         if (bytesRef == null || bytesRef.length == 0) {
                             result.setScore(i, 0);
                         } else {
@@ -1,5 +1,6 @@
 package iped.engine.search;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -12,8 +13,18 @@
 import iped.engine.data.ItemId;
 import iped.search.IMultiSearchResult;
 
+/**
+ * Search result over multiple cases. Items are packed into a long[] (source id
+ * in the high bits, item id in the low bits), so large results do not allocate
+ * one {@link ItemId} per hit. IItemId objects are created on demand by
+ * {@link #getItem(int)}, and items are just kept as objects if they are
+ * subclasses carrying extra data, like {@link TimelineResults.TimeItemId}.
+ * Scores are null if the result was not scored.
+ */
 public class MultiSearchResult implements IMultiSearchResult {
 
+    private int length;
+    private long[] packedIds;
     private IItemId[] ids;
     private float[] scores;
     IPEDSearcher ipedSearcher;
@@ -22,38 +33,119 @@ public class MultiSearchResult implements IMultiSearchResult {
     RoaringBitmap[] casesBitSet = null;
 
     public MultiSearchResult() {
-        this.ids = new ItemId[0];
-        this.scores = new float[0];
+        this.packedIds = new long[0];
     }
 
     public MultiSearchResult(IItemId[] ids, float[] scores) {
-        this.ids = ids;
+        this.length = ids.length;
         this.scores = scores;
+        if (isPackable(ids, ids.length)) {
+            this.packedIds = pack(ids, ids.length);
+        } else {
+            this.ids = ids;
+        }
     }
 
     public MultiSearchResult(IIPEDSource ipedSource, IItemId[] ids, float[] scores) {
-        this.ids = ids;
+        this(ids, scores);
+    }
+
+    /**
+     * @param packedIds
+     *            items packed with {@link #pack(int, int)}
+     * @param scores
+     *            scores of items or null if not scored
+     */
+    public MultiSearchResult(long[] packedIds, float[] scores) {
+        this.length = packedIds.length;
+        this.packedIds = packedIds;
         this.scores = scores;
     }
 
+    public static final long pack(int sourceId, int id) {
+        return ((long) sourceId << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static boolean isPackable(IItemId[] ids, int length) {
+        for (int i = 0; i < length; i++) {
+            if (ids[i].getClass() != ItemId.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long[] pack(IItemId[] ids, int length) {
+        long[] packed = new long[length];
+        for (int i = 0; i < length; i++) {
+            packed[i] = pack(ids[i].getSourceId(), ids[i].getId());
+        }
+        return packed;
+    }
+
+    /**
+     * @return the result itself if it is a MultiSearchResult, otherwise a copy
+     */
+    public static MultiSearchResult of(IMultiSearchResult result) {
+        if (result instanceof MultiSearchResult) {
+            return (MultiSearchResult) result;
+        }
+        Builder builder = new Builder(result.getLength());
+        int i = 0;
+        for (IItemId item : result.getIterator()) {
+            builder.add(item, result.getScore(i++));
+        }
+        return builder.build();
+    }
+
     public final int getLength() {
-        return ids.length;
+        return length;
     }
 
     public final IItemId getItem(int i) {
-        return ids[i];
+        if (ids != null) {
+            return ids[i];
+        }
+        return new ItemId(getSourceId(i), getId(i));
+    }
+
+    public final int getSourceId(int i) {
+        return ids != null ? ids[i].getSourceId() : (int) (packedIds[i] >>> 32);
+    }
+
+    public final int getId(int i) {
+        return ids != null ? ids[i].getId() : (int) packedIds[i];
     }
 
     public final float getScore(int i) {
-        return scores[i];
+        return scores != null ? scores[i] : 0;
+    }
+
+    public final boolean isScored() {
+        return scores != null;
     }
 
     public final void setScore(int i, float score) {
+        if (scores == null) {
+            scores = new float[length];
+        }
         scores[i] = score;
     }
 
     public final void setItem(int i, IItemId itemId) {
-        ids[i] = itemId;
+        if (ids == null && itemId.getClass() != ItemId.class) {
+            IItemId[] items = new IItemId[length];
+            for (int j = 0; j < length; j++) {
+                items[j] = getItem(j);
+            }
+            ids = items;
+            packedIds = null;
+        }
+        if (ids != null) {
+            ids[i] = itemId;
+        } else {
+            packedIds[i] = pack(itemId.getSourceId(), itemId.getId());
+        }
     }
 
     public Iterable<IItemId> getIterator() {
@@ -71,12 +163,12 @@ public final Iterator<IItemId> iterator() {
 
         @Override
         public final boolean hasNext() {
-            return pos < ids.length;
+            return pos < length;
         }
 
         @Override
         public final IItemId next() {
-            return ids[pos++];
+            return getItem(pos++);
         }
 
         @Override
@@ -93,28 +185,119 @@ public void setPos(int pos) {
         }
     }
 
+    /**
+     * Builds results adding items one by one, without boxing them.
+     */
+    public static class Builder {
+
+        private long[] packedIds;
+        private IItemId[] ids;
+        private float[] scores;
+        private boolean scored = false;
+        private int size = 0;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int initialCapacity) {
+            packedIds = new long[Math.max(initialCapacity, 1)];
+            scores = new float[packedIds.length];
+        }
+
+        private void ensureCapacity() {
+            int capacity = ids != null ? ids.length : packedIds.length;
+            if (size == capacity) {
+                int newCapacity = capacity + (capacity >> 1) + 1;
+                if (ids != null) {
+                    ids = Arrays.copyOf(ids, newCapacity);
+                } else {
+                    packedIds = Arrays.copyOf(packedIds, newCapacity);
+                }
+                scores = Arrays.copyOf(scores, newCapacity);
+            }
+        }
+
+        public Builder add(int sourceId, int id, float score) {
+            if (ids != null) {
+                return add(new ItemId(sourceId, id), score);
+            }
+            ensureCapacity();
+            packedIds[size] = pack(sourceId, id);
+            addScore(score);
+            return this;
+        }
+
+        public Builder add(IItemId item, float score) {
+            if (ids == null && item.getClass() != ItemId.class) {
+                ids = new IItemId[packedIds.length];
+                for (int i = 0; i < size; i++) {
+                    ids[i] = new ItemId((int) (packedIds[i] >>> 32), (int) packedIds[i]);
+                }
+                packedIds = null;
+            }
+            if (ids == null) {
+                return add(item.getSourceId(), item.getId(), score);
+            }
+            ensureCapacity();
+            ids[size] = item;
+            addScore(score);
+            return this;
+        }
+
+        /**
+         * Adds the item at position i of result, with its score.
+         */
+        public Builder add(MultiSearchResult result, int i) {
+            if (result.ids != null) {
+                return add(result.ids[i], result.getScore(i));
+            }
+            return add(result.getSourceId(i), result.getId(i), result.getScore(i));
+        }
+
+        private void addScore(float score) {
+            scores[size++] = score;
+            if (score != 0) {
+                scored = true;
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public MultiSearchResult build() {
+            float[] resultScores = scored ? Arrays.copyOf(scores, size) : null;
+            if (ids != null) {
+                return new MultiSearchResult(Arrays.copyOf(ids, size), resultScores);
+            }
+            return new MultiSearchResult(Arrays.copyOf(packedIds, size), resultScores);
+        }
+    }
+
     public static MultiSearchResult get(IPEDMultiSource iSource, LuceneSearchResult luceneResult) {
 
         // System.out.println("multi Result");
 
-        MultiSearchResult result = new MultiSearchResult();
-        result.scores = luceneResult.getScores();
-        result.ids = new ItemId[luceneResult.getLength()];
+        int[] docs = luceneResult.getLuceneIds();
+        long[] packedIds = new long[luceneResult.getLength()];
+        float[] scores = luceneResult.getScores();
 
         if (luceneResult.getLength() <= IPEDSearcher.MAX_SIZE_TO_SCORE) {
-            int[] docs = luceneResult.getLuceneIds();
             for (int i = 0; i < docs.length; i++) {
-                result.ids[i] = iSource.getItemId(docs[i]);
+                IItemId item = iSource.getItemId(docs[i]);
+                packedIds[i] = pack(item.getSourceId(), item.getId());
             }
 
             // Otimização: considera que itens estão em ordem crescente do LuceneId (qdo não
             // usa scores)
         } else {
+            // large results are not scored
+            scores = null;
             IIPEDSource atomicSource = null;
             int baseDoc = 0;
             int sourceId = 0;
             int maxdoc = 0;
-            int[] docs = luceneResult.getLuceneIds();
             for (int i = 0; i < docs.length; i++) {
                 if (atomicSource == null || docs[i] >= baseDoc + maxdoc) {
                     atomicSource = iSource.getAtomicSource(docs[i]);
@@ -122,11 +305,11 @@ public static MultiSearchResult get(IPEDMultiSource iSource, LuceneSearchResult
                     baseDoc = iSource.getBaseLuceneId(atomicSource);
                     maxdoc = atomicSource.getReader().maxDoc();
                 }
-                result.ids[i] = new ItemId(sourceId, atomicSource.getId(docs[i] - baseDoc));
+                packedIds[i] = pack(sourceId, atomicSource.getId(docs[i] - baseDoc));
             }
         }
 
-        return result;
+        return new MultiSearchResult(packedIds, scores);
     }
 
     public static LuceneSearchResult get(IMultiSearchResult ipedResult, IPEDMultiSource iSource) {
@@ -134,30 +317,28 @@ public static LuceneSearchResult get(IMultiSearchResult ipedResult, IPEDMultiSou
         float[] scores = lResult.getScores();
         int[] docs = lResult.getLuceneIds();
 
-        int i = 0;
-        if (ipedResult.getLength() <= IPEDSearcher.MAX_SIZE_TO_SCORE) {
-            for (IItemId item : ipedResult.getIterator()) {
-                scores[i] = ipedResult.getScore(i);
-                docs[i] = iSource.getLuceneId(item);
-                i++;
-            }
-
-            // Otimização: considera que itens estão em ordem crescente do LuceneId (qdo não
-            // usa scores)
-        } else {
+        if (ipedResult instanceof MultiSearchResult) {
+            MultiSearchResult result = (MultiSearchResult) ipedResult;
             IIPEDSource atomicSource = null;
             int baseDoc = 0;
             int sourceId = 0;
-            for (IItemId item : ipedResult.getIterator()) {
-                if (atomicSource == null || item.getSourceId() != sourceId) {
-                    sourceId = item.getSourceId();
+            for (int i = 0; i < result.length; i++) {
+                if (atomicSource == null || result.getSourceId(i) != sourceId) {
+                    sourceId = result.getSourceId(i);
                     atomicSource = iSource.getAtomicSourceBySourceId(sourceId);
                     baseDoc = iSource.getBaseLuceneId(atomicSource);
                 }
-                docs[i] = atomicSource.getLuceneId(item.getId()) + baseDoc;
-                scores[i] = ipedResult.getScore(i);
-                i++;
+                docs[i] = atomicSource.getLuceneId(result.getId(i)) + baseDoc;
+                scores[i] = result.getScore(i);
             }
+            return lResult;
+        }
+
+        int i = 0;
+        for (IItemId item : ipedResult.getIterator()) {
+            scores[i] = ipedResult.getScore(i);
+            docs[i] = iSource.getLuceneId(item);
+            i++;
         }
 
         return lResult;
@@ -166,8 +347,10 @@ public static LuceneSearchResult get(IMultiSearchResult ipedResult, IPEDMultiSou
     @Override
     public MultiSearchResult clone() {
         MultiSearchResult result = new MultiSearchResult();
-        result.ids = this.ids.clone();
-        result.scores = this.scores.clone();
+        result.length = this.length;
+        result.packedIds = this.packedIds != null ? this.packedIds.clone() : null;
+        result.ids = this.ids != null ? this.ids.clone() : null;
+        result.scores = this.scores != null ? this.scores.clone() : null;
         return result;
     }
 
@@ -196,16 +379,25 @@ public void setIPEDSource(IIPEDSource ipedSource) {
         if (this.ipedSource == null || this.docids == null) {
             this.ipedSource = ipedSource;
             this.docids = new RoaringBitmap();
-            for (int i = 0; i < ids.length; i++) {
-                int lucId = ipedSource.getLuceneId(ids[i]);
-                docids.add(lucId);
+            for (int i = 0; i < length; i++) {
+                docids.add(getLuceneId(i));
             }
         }
     }
 
+    /**
+     * @return lucene id of item at position i in the source of this result
+     */
+    public int getLuceneId(int i) {
+        if (ipedSource instanceof IPEDMultiSource) {
+            return ((IPEDMultiSource) ipedSource).getLuceneId(getSourceId(i), getId(i));
+        }
+        return ipedSource.getLuceneId(getItem(i));
+    }
+
     public RoaringBitmap[] getCasesBitSets(IPEDMultiSource multiSource) {
         if (casesBitSet == null) {
-            Integer lastSourceId = -1;
+            int lastSourceId = -1;
             RoaringBitmap bitset = null;
             int maxSrcId = 0;
 
@@ -224,13 +416,23 @@ public RoaringBitmap[] getCasesBitSets(IPEDMultiSource multiSource) {
                 casesBitSet[ipedSource.getSourceId()] = new RoaringBitmap();
             }
 
-            for (int i = 0; i < ids.length; i++) {
-                int sourceId = ids[i].getSourceId();
-                if (sourceId != lastSourceId) {
-                    bitset = casesBitSet[ids[i].getSourceId()];
+            // adds runs of ids of the same case at once
+            int[] buffer = new int[4096];
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                int sourceId = getSourceId(i);
+                if (sourceId != lastSourceId || count == buffer.length) {
+                    if (count > 0) {
+                        bitset.addN(buffer, 0, count);
+                        count = 0;
+                    }
+                    bitset = casesBitSet[sourceId];
                     lastSourceId = sourceId;
                 }
-                bitset.add(ids[i].getId());
+                buffer[count++] = getId(i);
+            }
+            if (count > 0) {
+                bitset.addN(buffer, 0, count);
             }
 
         }
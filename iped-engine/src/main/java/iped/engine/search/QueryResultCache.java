@@ -0,0 +1,179 @@
+package iped.engine.search;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Cache of query results of the opened cases, so identical queries, like the
+ * ones run again by the UI when filters are toggled, are not executed again.
+ *
+ * Hits are stored as lucene id bitmaps, with their scores in lucene id order
+ * if the result was scored. Entries are keyed by the query, which is compared
+ * with {@link Query#equals(Object)} (clause order of boolean queries does not
+ * matter), by the tree and rewrite flags of the searcher and by the reader of
+ * the case, so a reopened index never returns stale results. Entries of a
+ * closed reader are dropped and least recently used entries are evicted when
+ * the memory budget is exceeded.
+ */
+public class QueryResultCache {
+
+    private static long memoryBudget = Runtime.getRuntime().maxMemory() / 32;
+
+    private static long usedMemory = 0;
+
+    private static final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static final Set<IndexReader.CacheKey> readerKeys = new HashSet<>();
+
+    static class Key {
+
+        private final IndexReader.CacheKey readerKey;
+        private final Query query;
+        private final boolean treeQuery, rewriteQuery;
+
+        private Key(IndexReader.CacheKey readerKey, Query query, boolean treeQuery, boolean rewriteQuery) {
+            this.readerKey = readerKey;
+            this.query = query;
+            this.treeQuery = treeQuery;
+            this.rewriteQuery = rewriteQuery;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(readerKey, query, treeQuery, rewriteQuery);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return readerKey == other.readerKey && treeQuery == other.treeQuery
+                    && rewriteQuery == other.rewriteQuery && query.equals(other.query);
+        }
+    }
+
+    static class Entry {
+
+        private final RoaringBitmap docs;
+        private final float[] scores;
+        private final long size;
+
+        private Entry(RoaringBitmap docs, float[] scores) {
+            this.docs = docs;
+            this.scores = scores;
+            this.size = docs.getLongSizeInBytes() + (scores != null ? (long) scores.length * Float.BYTES : 0);
+        }
+
+        /**
+         * @return hits of the query, must not be modified
+         */
+        RoaringBitmap getDocs() {
+            return docs;
+        }
+
+        boolean isScored() {
+            return scores != null;
+        }
+
+        /**
+         * @return new result with the hits in lucene id order
+         */
+        LuceneSearchResult getSearchResult() {
+            int[] luceneIds = docs.toArray();
+            float[] resultScores = scores != null ? scores.clone() : new float[luceneIds.length];
+            return LuceneSearchResult.buildSearchResult(luceneIds, resultScores);
+        }
+    }
+
+    /**
+     * Sets the max memory, in bytes, used by cached results.
+     */
+    public static synchronized void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+        evict();
+    }
+
+    /**
+     * @return memory, in bytes, currently used by cached results.
+     */
+    public static synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    public static synchronized void clear() {
+        entries.clear();
+        usedMemory = 0;
+    }
+
+    /**
+     * @return cache key, or null if results of the reader can not be cached
+     */
+    static Key getKey(IndexReader reader, Query query, boolean treeQuery, boolean rewriteQuery) {
+        IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        if (cacheHelper == null || query == null) {
+            return null;
+        }
+        IndexReader.CacheKey readerKey = cacheHelper.getKey();
+        synchronized (QueryResultCache.class) {
+            if (readerKeys.add(readerKey)) {
+                cacheHelper.addClosedListener(QueryResultCache::removeReader);
+            }
+        }
+        return new Key(readerKey, query, treeQuery, rewriteQuery);
+    }
+
+    static synchronized Entry get(Key key) {
+        return key != null ? entries.get(key) : null;
+    }
+
+    /**
+     * Caches the hits of the query, with their scores in lucene id order, or null
+     * if they were not computed.
+     */
+    static synchronized void put(Key key, RoaringBitmap docs, float[] scores) {
+        if (key == null || !readerKeys.contains(key.readerKey)) {
+            return;
+        }
+        Entry entry = new Entry(docs, scores);
+        if (entry.size > memoryBudget) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            usedMemory -= previous.size;
+        }
+        usedMemory += entry.size;
+        evict();
+    }
+
+    private static void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedMemory > memoryBudget && iterator.hasNext()) {
+            usedMemory -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    private static synchronized void removeReader(IndexReader.CacheKey readerKey) {
+        readerKeys.remove(readerKey);
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().readerKey == readerKey) {
+                usedMemory -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+}
@@ -7,14 +7,14 @@
 import java.util.Collections;
 import java.util.List;
 
-import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
 
 import iped.data.IItem;
-import iped.data.IItemId;
 import iped.engine.data.IPEDMultiSource;
 import iped.engine.data.IPEDSource;
+import iped.engine.lucene.SegmentDocValues;
 
 public class SimilarFacesSearch {
 
@@ -60,34 +60,45 @@ private static final float squaredDistToScore(float squaredDist) {
 
     private void score(MultiSearchResult result) throws IOException {
 
-        LeafReader leafReader = ipedCase.getLeafReader();
+        SegmentDocValues segmentDocValues = SegmentDocValues.get(ipedCase.getReader());
+        List<LeafReaderContext> leaves = segmentDocValues.leaves();
         int numThreads = Runtime.getRuntime().availableProcessors();
         Thread[] threads = new Thread[numThreads];
         int len = result.getLength();
+        int[] luceneIds = new int[len];
+        for (int i = 0; i < len; i++) {
+            luceneIds[i] = ipedCase.getLuceneId(result.getSourceId(i), result.getId(i));
+        }
+        // visits docs in order, segment by segment, as doc values only move forward
+        int[] positions = SegmentDocValues.sortByDoc(luceneIds);
         int itemsPerThread = (len + numThreads - 1) / numThreads;
         for (int k = 0; k < numThreads; k++) {
             int threadIdx = k;
             (threads[k] = new Thread() {
                 public void run() {
                     SortedSetDocValues similarityFeaturesValues = null;
-                    try {
-                        similarityFeaturesValues = leafReader.getSortedSetDocValues(FACE_FEATURES);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        return;
-                    }
+                    int leafIdx = -1, docBase = 0;
                     int i0 = Math.min(len, itemsPerThread * threadIdx);
                     int i1 = Math.min(len, i0 + itemsPerThread);
-                    for (int i = i0; i < i1; i++) {
-                        if (i % 1000 == 0 && this.isInterrupted()) {
+                    for (int j = i0; j < i1; j++) {
+                        if (j % 1000 == 0 && this.isInterrupted()) {
                             return;
                         }
-                        IItemId itemId = result.getItem(i);
-                        int luceneId = ipedCase.getLuceneId(itemId);
+                        int i = positions[j];
+                        int luceneId = luceneIds[i];
                         long ordinal;
                         float score = 0;
                         try {
-                            boolean hasVal = similarityFeaturesValues.advanceExact(luceneId);
+                            if (luceneId < 0) {
+                                continue;
+                            }
+                            if (leafIdx == -1 || luceneId >= docBase + leaves.get(leafIdx).reader().maxDoc()) {
+                                leafIdx = segmentDocValues.leafIndex(luceneId);
+                                docBase = leaves.get(leafIdx).docBase;
+                                similarityFeaturesValues = leaves.get(leafIdx).reader().getSortedSetDocValues(FACE_FEATURES);
+                            }
+                            boolean hasVal = similarityFeaturesValues != null
+                                    && similarityFeaturesValues.advanceExact(luceneId - docBase);
                             while (hasVal && (ordinal = similarityFeaturesValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
                                 BytesRef bytesRef = similarityFeaturesValues.lookupOrd(ordinal);
                                 float[] currentFeatures = convToFloatVec(bytesRef.bytes);
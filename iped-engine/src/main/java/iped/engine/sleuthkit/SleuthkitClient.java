@@ -3,22 +3,35 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.tika.utils.SystemUtils;
 import org.slf4j.Logger;
@@ -33,19 +46,58 @@
 import iped.engine.sleuthkit.SleuthkitServer.FLAGS;
 import iped.io.SeekableInputStream;
 
-public class SleuthkitClient implements Comparable<SleuthkitClient> {
+/**
+ * Client of a {@link SleuthkitServer} process. Up to
+ * {@link SleuthkitServer#NUM_SLOTS} requests, of different streams, run
+ * concurrently, each one in a slot of the shared mmap file. Responses are read
+ * from the process pipe by a dispatcher thread, which wakes up the thread
+ * waiting the slot. If the server dies, all waiting threads are woken up with
+ * an error and the server is restarted by the next request, after running
+ * requests finish.
+ * 
+ * The pool starts with {@link #MIN_TSK_SERVERS} servers and grows up to
+ * {@link #NUM_TSK_SERVERS} while requests wait for free slots and the CPU is
+ * not saturated. Servers idle for some time are finished down to the minimum.
+ * Streams with the same locality key, like files of the same filesystem area,
+ * are routed to the same server, so they reuse its libtsk and image caches,
+ * unless it is much more loaded than others.
+ */
+public class SleuthkitClient {
 
     private static Logger logger = LoggerFactory.getLogger(SleuthkitClient.class);
 
     private static final int MAX_STREAMS = 10000;
     private static final int TIMEOUT_SECONDS = 3600;
+    private static final int MEMORY_TIMEOUT_MILLIS = 10000;
+    private static final int PING_TIMEOUT_SECONDS = 60;
+
+    private static final int MONITOR_INTERVAL_MILLIS = 5000;
+    private static final int IDLE_SECONDS_TO_FINISH = 60;
+    // grows the pool if requests waited free slots this fraction of their time
+    private static final double GROW_WAIT_RATIO = 0.25;
+    // extra open streams tolerated in the server of a locality key
+    private static final int MAX_LOAD_IMBALANCE = 2 * SleuthkitServer.NUM_SLOTS;
+    private static final int MAX_LOCALITY_KEYS = 100000;
+    // start tries of servers added to the pool, the initial ones are retried until started
+    private static final int MAX_STARTS_TO_GROW = 3;
 
-    private static PriorityQueue<SleuthkitClient> clientPriorityQueue = new PriorityQueue<>();
     private static Object lock = new Object();
 
-    private static List<SleuthkitClient> clientsList = new ArrayList<>();
+    private static List<SleuthkitClient> clientsList = new CopyOnWriteArrayList<>();
+
+    private static final Map<String, SleuthkitClient> localityMap = new HashMap<>();
+
+    private static final LongAdder totalRequestNanos = new LongAdder();
+    private static final LongAdder totalSlotWaitNanos = new LongAdder();
+
+    private static volatile boolean shutdown = false;
+
+    private static TimeoutMonitor monitor;
+
+    private static final AtomicBoolean growing = new AtomicBoolean();
 
     public static final int NUM_TSK_SERVERS;
+    public static final int MIN_TSK_SERVERS;
 
     private static final HashMap<String, String> newEnvVars = new HashMap<>();
 
@@ -54,7 +106,8 @@ public class SleuthkitClient implements Comparable<SleuthkitClient> {
 
     static {
         FileSystemConfig config = ConfigurationManager.get().findObject(FileSystemConfig.class);
-        NUM_TSK_SERVERS = config.getNumImageReaders();
+        NUM_TSK_SERVERS = Math.max(1, config.getNumImageReaders());
+        MIN_TSK_SERVERS = Math.max(1, Math.min(config.getMinImageReaders(), NUM_TSK_SERVERS));
     }
 
     int id = idStart.getAndIncrement();;
@@ -66,54 +119,357 @@ public class SleuthkitClient implements Comparable<SleuthkitClient> {
     OutputStream os;
     Random rand = new Random();
 
-    private boolean serverError = false;
+    private volatile boolean serverError = false;
     private int openedStreams = 0;
     private Set<SleuthkitClientInputStream> currentStreams = new HashSet<>();
     private int priority = 0;
-    private long requestTime = 0;
+    private boolean retired = false;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder requestNanos = new LongAdder();
+    private final LongAdder slotWaitNanos = new LongAdder();
+    private volatile long lastRequestTime = System.currentTimeMillis();
+
+    private ServerChannel channel;
+    private final Slot[] slots = new Slot[SleuthkitServer.NUM_SLOTS];
+    private final ConcurrentLinkedQueue<Slot> freeSlotQueue = new ConcurrentLinkedQueue<>();
+    private final Semaphore freeSlots = new Semaphore(SleuthkitServer.NUM_SLOTS, true);
+    private final AtomicLongArray slotRequestTime = new AtomicLongArray(SleuthkitServer.NUM_SLOTS);
+    // requests hold the read lock, restarts the write one
+    private final ReentrantReadWriteLock restartLock = new ReentrantReadWriteLock();
+    private final Object pingLock = new Object();
+
+    /**
+     * Pipe and mmap of a server process, responses to each slot are signaled by
+     * its semaphore.
+     */
+    static class ServerChannel {
+
+        final MappedByteBuffer mbb;
+        final OutputStream os;
+        final Semaphore[] responses = new Semaphore[SleuthkitServer.NUM_SLOTS];
+        final BlockingQueue<Integer> pongs = new LinkedBlockingQueue<>();
+        volatile boolean closed = false;
+
+        private ServerChannel(MappedByteBuffer mbb, OutputStream os) {
+            this.mbb = mbb;
+            this.os = os;
+            for (int i = 0; i < responses.length; i++) {
+                responses[i] = new Semaphore(0);
+            }
+        }
+
+        private void close() {
+            closed = true;
+            for (Semaphore response : responses) {
+                response.release();
+            }
+        }
+    }
+
+    /**
+     * Command area of the mmap file, used by one request at a time.
+     */
+    static class Slot {
+
+        final int index;
+        final int pos;
+        ServerChannel channel;
+
+        private Slot(int index) {
+            this.index = index;
+            this.pos = SleuthkitServer.getSlotPos(index);
+        }
+
+        MappedByteBuffer mbb() {
+            return channel.mbb;
+        }
+    }
 
     static class TimeoutMonitor extends Thread {
+
+        private long lastRequestNanos, lastSlotWaitNanos;
+
         public void run() {
             try {
-                while (true) {
-                    Thread.sleep(5000);
+                while (!shutdown) {
+                    Thread.sleep(MONITOR_INTERVAL_MILLIS);
                     for (SleuthkitClient client : clientsList) {
                         client.checkTimeout();
                     }
+                    adjustPool();
                 }
             } catch (InterruptedException e) {
             }
         }
+
+        private void adjustPool() {
+            long requestNanos = totalRequestNanos.sum(), slotWaitNanos = totalSlotWaitNanos.sum();
+            long busy = requestNanos - lastRequestNanos, waiting = slotWaitNanos - lastSlotWaitNanos;
+            lastRequestNanos = requestNanos;
+            lastSlotWaitNanos = slotWaitNanos;
+
+            if (shutdown) {
+                return;
+            }
+            if (clientsList.size() < NUM_TSK_SERVERS && waiting > busy * GROW_WAIT_RATIO && !isCpuSaturated()) {
+                if (growing.compareAndSet(false, true)) {
+                    // starting could take long, timeouts must keep being checked
+                    Thread t = new Thread("SleuthkitServer pool growth") { //$NON-NLS-1$
+                        @Override
+                        public void run() {
+                            try {
+                                addClient(waiting);
+                            } finally {
+                                growing.set(false);
+                            }
+                        }
+                    };
+                    t.setDaemon(true);
+                    t.start();
+                }
+
+            } else if (waiting == 0) {
+                finishIdleClient();
+            }
+        }
+
+        private static void addClient(long waiting) {
+            SleuthkitClient sc = new SleuthkitClient(MAX_STARTS_TO_GROW);
+            synchronized (lock) {
+                if (shutdown || sc.process == null || !SleuthkitClient.isAlive(sc.process)) {
+                    sc.finishProcess(sc.pipe != null);
+                    if (!shutdown) {
+                        logger.warn("Could not start SleuthkitServer {} to grow the pool", sc.id); //$NON-NLS-1$
+                    }
+                    return;
+                }
+                clientsList.add(sc);
+            }
+            logger.info("Started SleuthkitServer {}, requests waited {}ms for free slots. Servers: {}", sc.id, //$NON-NLS-1$
+                    waiting / 1000000, clientsList.size());
+        }
+
+        private static boolean isCpuSaturated() {
+            double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+            // negative if not available on the platform
+            return load >= Runtime.getRuntime().availableProcessors();
+        }
+
+        private static void finishIdleClient() {
+            SleuthkitClient idle = null;
+            long now = System.currentTimeMillis();
+            synchronized (lock) {
+                if (clientsList.size() <= MIN_TSK_SERVERS) {
+                    return;
+                }
+                for (SleuthkitClient sc : clientsList) {
+                    if (sc.priority == 0 && now - sc.lastRequestTime >= IDLE_SECONDS_TO_FINISH * 1000) {
+                        idle = sc;
+                        break;
+                    }
+                }
+                if (idle == null) {
+                    return;
+                }
+                idle.retired = true;
+                clientsList.remove(idle);
+                localityMap.values().removeIf(sc -> sc.retired);
+            }
+            logger.info("Finishing idle SleuthkitServer {}. {}", idle.id, idle.getStats()); //$NON-NLS-1$
+            idle.finishProcess(true);
+        }
     }
 
-    synchronized boolean isServerError() {
+    boolean isServerError() {
         return serverError;
     }
 
-    synchronized void setServerError(boolean error) {
+    void setServerError(boolean error) {
         serverError = error;
     }
 
     private synchronized void checkTimeout() {
-        if (requestTime == 0)
-            return;
-        if (SleuthkitServer.getByte(mbb, 0) != FLAGS.SQLITE_READ) {
-            logger.info("Waiting SleuthkitServer {} database read...", id); //$NON-NLS-1$
+        if (mbb == null)
             return;
+        for (Slot slot : slots) {
+            long requestTime = slotRequestTime.get(slot.index);
+            if (requestTime == 0)
+                continue;
+            if (SleuthkitServer.getByte(mbb, slot.pos + SleuthkitServer.CMD_POS) != FLAGS.SQLITE_READ) {
+                logger.info("Waiting SleuthkitServer {} database read...", id); //$NON-NLS-1$
+                continue;
+            }
+            if (System.currentTimeMillis() / 1000 - requestTime >= TIMEOUT_SECONDS) {
+                logger.error("Timeout waiting SleuthkitServer " + id + " response! Restarting...");
+                serverError = true;
+                finishProcess(false);
+                return;
+            }
         }
-        if (System.currentTimeMillis() / 1000 - requestTime >= TIMEOUT_SECONDS) {
-            logger.error("Timeout waiting SleuthkitServer " + id + " response! Restarting...");
+    }
+
+    /**
+     * Gets a free slot of the current server process, waiting running requests if
+     * all slots are in use. It must be released by {@link #releaseSlot(Slot)}.
+     */
+    Slot acquireSlot() throws IOException {
+        restartLock.readLock().lock();
+        try {
+            if (!freeSlots.tryAcquire()) {
+                long t = System.nanoTime();
+                freeSlots.acquire();
+                t = System.nanoTime() - t;
+                slotWaitNanos.add(t);
+                totalSlotWaitNanos.add(t);
+            }
+        } catch (InterruptedException e) {
+            restartLock.readLock().unlock();
+            throw new InterruptedIOException(e.toString());
+        }
+        Slot slot = freeSlotQueue.poll();
+        synchronized (this) {
+            slot.channel = channel;
+        }
+        if (slot.channel == null || slot.channel.closed) {
             serverError = true;
-            requestTime = 0;
-            finishProcess(false);
+            releaseSlot(slot);
+            throw new IOException("SleuthkitServer " + id + " is not running!"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return slot;
+    }
+
+    void releaseSlot(Slot slot) {
+        slot.channel = null;
+        freeSlotQueue.add(slot);
+        freeSlots.release();
+        restartLock.readLock().unlock();
+    }
+
+    /**
+     * Sends the command written into the slot and waits the server response.
+     * 
+     * @return the response flag
+     */
+    byte sendCmd(Slot slot, byte cmd, String path) throws IOException {
+        ServerChannel channel = slot.channel;
+        long start = System.nanoTime();
+        SleuthkitServer.commitByte(channel.mbb, slot.pos + SleuthkitServer.CMD_POS, cmd);
+        slotRequestTime.set(slot.index, System.currentTimeMillis() / 1000);
+        try {
+            try {
+                SleuthkitServer.notify(channel.os, slot.index);
+            } catch (IOException e) {
+                serverError = true;
+                logger.error("Notify error: " + getCrashMsg(path));
+                throw e;
+            }
+
+            // not interruptible, the slot can not be reused before the response
+            channel.responses[slot.index].acquireUninterruptibly();
+
+            byte flag;
+            long time = 0;
+            while (FLAGS.isClientCmd(flag = SleuthkitServer.getByte(channel.mbb, slot.pos + SleuthkitServer.CMD_POS))
+                    || flag == FLAGS.SQLITE_READ) {
+                if (channel.closed) {
+                    serverError = true;
+                    logger.error("Wait response error: " + getCrashMsg(path));
+                    throw new IOException("SleuthkitServer " + id + " pipe closed!"); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                try {
+                    if (time == 0) {
+                        time = System.currentTimeMillis();
+                    }
+                    Thread.sleep(1);
+                    logger.warn("Waiting SleuthkitServer " + id + " memory write..."); //$NON-NLS-1$ //$NON-NLS-2$
+
+                    if (System.currentTimeMillis() - time >= MEMORY_TIMEOUT_MILLIS) {
+                        serverError = true;
+                        logger.error("MemoryReadTimeout waiting SleuthkitServer " + id + ": " + path); //$NON-NLS-1$
+                        throw new IOException("MemoryReadTimeout waiting SleuthkitServer " + id + ": " + path); //$NON-NLS-1$
+                    }
+
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException(e.toString());
+                }
+            }
+
+            if (flag == FLAGS.EXCEPTION) {
+                int len = channel.mbb.getInt(slot.pos + SleuthkitServer.PARAM_POS);
+                byte[] b = new byte[len];
+                ByteBuffer slotBuf = channel.mbb.duplicate();
+                slotBuf.position(slot.pos + SleuthkitServer.DATA_POS);
+                slotBuf.get(b);
+                throw new IOException("SleuthkitServer " + id + " error: " + new String(b, StandardCharsets.UTF_8)); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+
+            return flag;
+
+        } finally {
+            slotRequestTime.set(slot.index, 0);
+            long time = System.nanoTime() - start;
+            requests.increment();
+            requestNanos.add(time);
+            totalRequestNanos.add(time);
+            lastRequestTime = System.currentTimeMillis();
         }
     }
 
-    synchronized void enableTimeoutCheck(boolean enable) {
-        if (enable)
-            requestTime = System.currentTimeMillis() / 1000;
-        else
-            requestTime = 0;
+    void addBytesRead(int bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return average time, in microseconds, of the server to answer requests
+     */
+    public long getAvgRequestMicros() {
+        long count = requests.sum();
+        return count == 0 ? 0 : requestNanos.sum() / count / 1000;
+    }
+
+    /**
+     * @return total time, in milliseconds, waited for free slots of this server
+     */
+    public long getSlotWaitMillis() {
+        return slotWaitNanos.sum() / 1000000;
+    }
+
+    /**
+     * @return read throughput, in MB/s, while requests were being served
+     */
+    public double getThroughput() {
+        long nanos = requestNanos.sum();
+        return nanos == 0 ? 0 : bytesRead.sum() * 1000.0 / nanos;
+    }
+
+    public String getStats() {
+        return String.format("Requests: %d, Read: %dMB, Avg request time: %dus, Throughput: %.1fMB/s, Slot wait: %dms", //$NON-NLS-1$
+                getRequests(), getBytesRead() >> 20, getAvgRequestMicros(), getThroughput(), getSlotWaitMillis());
+    }
+
+    /**
+     * @return current servers, with their metrics
+     */
+    public static List<SleuthkitClient> getClients() {
+        return new ArrayList<>(clientsList);
+    }
+
+    private String getCrashMsg(String path) {
+        return "Possible SleuthkitServer " + id + " crash reading " + path; //$NON-NLS-1$ //$NON-NLS-2$
     }
 
     public static synchronized void addEnvVar(String key, String value) {
@@ -121,11 +477,36 @@ public static synchronized void addEnvVar(String key, String value) {
     }
 
     public static SleuthkitClient get() {
+        return get(null);
+    }
+
+    /**
+     * Gets the server to open a stream, the one used by previous streams with the
+     * same locality key, if it is not much more loaded than the least loaded one.
+     * 
+     * @param localityKey
+     *            key of the evidence area read by the stream, may be null
+     */
+    public static SleuthkitClient get(String localityKey) {
 
         synchronized (lock) {
-            SleuthkitClient sc = clientPriorityQueue.poll();
+            SleuthkitClient leastLoaded = null;
+            for (SleuthkitClient sc : clientsList) {
+                if (leastLoaded == null || sc.priority < leastLoaded.priority) {
+                    leastLoaded = sc;
+                }
+            }
+            SleuthkitClient sc = localityKey != null ? localityMap.get(localityKey) : null;
+            if (sc == null || sc.retired || sc.priority > leastLoaded.priority + MAX_LOAD_IMBALANCE) {
+                sc = leastLoaded;
+                if (localityKey != null) {
+                    if (localityMap.size() >= MAX_LOCALITY_KEYS) {
+                        localityMap.clear();
+                    }
+                    localityMap.put(localityKey, sc);
+                }
+            }
             sc.priority++;
-            clientPriorityQueue.add(sc);
             return sc;
         }
 
@@ -134,13 +515,13 @@ public static SleuthkitClient get() {
     public static void initSleuthkitServers(final String dbPath) throws InterruptedException {
         dbDirPath = dbPath;
         ArrayList<Thread> initThreads = new ArrayList<>();
-        for (int i = 0; i < NUM_TSK_SERVERS; i++) {
+        shutdown = false;
+        for (int i = 0; i < MIN_TSK_SERVERS; i++) {
             Thread t = new Thread() {
                 @Override
                 public void run() {
                     SleuthkitClient sc = new SleuthkitClient();
                     synchronized (lock) {
-                        clientPriorityQueue.add(sc);
                         clientsList.add(sc);
                     }
                 }
@@ -151,18 +532,48 @@ public void run() {
         for (Thread t : initThreads) {
             t.join();
         }
-        Thread t = new TimeoutMonitor();
-        t.setDaemon(true);
-        t.start();
+        synchronized (lock) {
+            if (monitor == null) {
+                monitor = new TimeoutMonitor();
+                monitor.setDaemon(true);
+                monitor.start();
+            }
+        }
     }
 
     public static void shutDownServers() {
-        for (SleuthkitClient sc : clientsList)
+        synchronized (lock) {
+            shutdown = true;
+            if (monitor != null) {
+                monitor.interrupt();
+                monitor = null;
+            }
+        }
+        for (SleuthkitClient sc : clientsList) {
+            logger.info("SleuthkitServer {} stats: {}", sc.id, sc.getStats()); //$NON-NLS-1$
             sc.finishProcess(true);
+        }
+        synchronized (lock) {
+            clientsList.clear();
+            localityMap.clear();
+        }
     }
 
     private SleuthkitClient() {
-        while (process == null || !isAlive(process)) {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxStarts
+     *            max tries to start the server process, the caller must check if
+     *            it is alive
+     */
+    private SleuthkitClient(int maxStarts) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(i);
+            freeSlotQueue.add(slots[i]);
+        }
+        for (int i = 0; i < maxStarts && (process == null || !isAlive(process)); i++) {
             start();
         }
     }
@@ -209,7 +620,9 @@ private synchronized void start() {
                 throw e;
             }
 
-            is.read();
+            if (is.read() == -1 || is.read() == -1) {
+                throw new Exception("Error starting SleuthkitServer " + id); //$NON-NLS-1$
+            }
             boolean ok = false;
             while (!(ok = SleuthkitServer.getByte(mbb, 0) == FLAGS.DONE)
                     && SleuthkitServer.getByte(mbb, 0) != FLAGS.ERROR) {
@@ -220,6 +633,9 @@ private synchronized void start() {
                 throw new Exception("Error starting SleuthkitServer " + id); //$NON-NLS-1$
             }
 
+            channel = new ServerChannel(mbb, os);
+            dispatchResponses(is, channel, id);
+
             logger.info("Starting SleuthkitServer {} started.", id);
 
         } catch (Exception e) {
@@ -247,22 +663,63 @@ public void run() {
         }.start();
     }
 
-    private synchronized boolean ping() {
-        int i = rand.nextInt(255) + 1;
-        try {
-            os.write(i);
-            os.flush();
-            int r = is.read();
-            if (r == i)
-                return true;
+    /**
+     * Reads the responses of the server process, waking up the threads waiting
+     * them, until the process finishes.
+     */
+    private static void dispatchResponses(final InputStream is, final ServerChannel channel, final int id) {
+        Thread t = new Thread("SleuthkitServer " + id + " response dispatcher") { //$NON-NLS-1$ //$NON-NLS-2$
+            public void run() {
+                try {
+                    int msg, value;
+                    while ((msg = is.read()) != -1 && (value = is.read()) != -1) {
+                        if (msg == SleuthkitServer.MSG_PING) {
+                            channel.pongs.offer(value);
+                        } else {
+                            channel.responses[value].release();
+                        }
+                    }
+                } catch (IOException e) {
+                    // process finished
+                }
+                channel.close();
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    private boolean ping() {
+        ServerChannel channel;
+        synchronized (this) {
+            channel = this.channel;
+        }
+        if (channel == null || channel.closed) {
+            return false;
+        }
+        synchronized (pingLock) {
+            int i = rand.nextInt(255) + 1;
+            try {
+                synchronized (channel.os) {
+                    channel.os.write(SleuthkitServer.MSG_PING);
+                    channel.os.write(i);
+                    channel.os.flush();
+                }
+                Integer r;
+                do {
+                    r = channel.pongs.poll(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } while (r != null && r != i);
+                if (r != null)
+                    return true;
+
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
         }
         return false;
     }
 
-    private synchronized boolean isFineToUse() {
+    private boolean isFineToUse() {
         if (serverError) {
             return false;
         }
@@ -270,50 +727,72 @@ private synchronized boolean isFineToUse() {
             logger.warn("Ping SleuthkitServer " + this.id + " failed! Restarting..."); //$NON-NLS-1$ //$NON-NLS-2$
             return false;
         }
-        if (openedStreams > MAX_STREAMS && currentStreams.size() == 0) {
-            logger.info("Restarting SleuthkitServer {} to clean possible resource leaks.", id); //$NON-NLS-1$
-            return false;
+        synchronized (this) {
+            if (openedStreams > MAX_STREAMS && currentStreams.size() == 0) {
+                logger.info("Restarting SleuthkitServer {} to clean possible resource leaks.", id); //$NON-NLS-1$
+                return false;
+            }
         }
         return true;
     }
 
-    public synchronized SeekableInputStream getInputStream(int id, String path) throws IOException {
+    public SeekableInputStream getInputStream(int id, String path) throws IOException {
 
         if (!isFineToUse()) {
+            serverError = true;
             restartServer();
         }
 
-        SleuthkitClientInputStream stream = new SleuthkitClientInputStream(id, path, this);
-        currentStreams.add(stream);
-        openedStreams++;
-        return stream;
+        synchronized (this) {
+            SleuthkitClientInputStream stream = new SleuthkitClientInputStream(id, path, this);
+            currentStreams.add(stream);
+            openedStreams++;
+            return stream;
+        }
     }
 
-    synchronized void restartServer() throws IOException {
+    /**
+     * Restarts the server after running requests finish, if it was not restarted
+     * by other thread since the error. Must not be called while holding a slot.
+     */
+    void restartServer() throws IOException {
+
+        restartLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (!serverError) {
+                    return;
+                }
+
+                finishProcess(false);
 
-        finishProcess(false);
+                while (process == null || !isAlive(process)) {
+                    start();
+                }
 
-        while (process == null || !isAlive(process)) {
-            start();
+                openedStreams = 0;
+                currentStreams.forEach(s -> s.seekAfterRestart = true);
+                serverError = false;
+            }
+        } finally {
+            restartLock.writeLock().unlock();
         }
-
-        openedStreams = 0;
-        currentStreams.forEach(s -> s.seekAfterRestart = true);
-        serverError = false;
     }
 
     synchronized void removeStream(SleuthkitClientInputStream stream) {
         boolean removed = currentStreams.remove(stream);
         if (removed) {
             synchronized (lock) {
-                clientPriorityQueue.remove(this);
                 priority--;
-                clientPriorityQueue.add(this);
             }
         }
     }
 
     private synchronized void finishProcess(boolean deletemmapFile) {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
         if (process != null) {
             process.destroyForcibly();
             try {
@@ -350,9 +829,4 @@ private static boolean isAlive(Process p) {
             return true;
         }
     }
-
-    @Override
-    public int compareTo(SleuthkitClient o) {
-        return priority - o.priority;
-    }
 }
@@ -1,24 +1,16 @@
 package iped.engine.sleuthkit;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import iped.engine.sleuthkit.SleuthkitServer.FLAGS;
 import iped.io.SeekableInputStream;
 
 public class SleuthkitClientInputStream extends SeekableInputStream {
 
-    private static Logger LOGGER = LoggerFactory.getLogger(SleuthkitClientInputStream.class);
-
     private static AtomicLong next = new AtomicLong();
 
-    private static int TIMEOUT = 10000;
-
     int sleuthId;
     String path;
     SleuthkitClient client;
@@ -36,10 +28,6 @@ public SleuthkitClientInputStream(int id, String path, SleuthkitClient client) {
         this.client = client;
     }
 
-    private String getServerId() {
-        return "SleuthkitServer " + client.id;
-    }
-
     @Override
     public int read(byte b[], int off, int len) throws IOException {
 
@@ -55,24 +43,28 @@ public int read(byte b[], int off, int len) throws IOException {
     private int readIn(byte b[], int off, int len) throws IOException {
 
         if (empty) {
-            synchronized (client) {
-                if (client.isServerError()) {
-                    client.restartServer();
-                }
+            if (client.isServerError()) {
+                client.restartServer();
+            }
+            SleuthkitClient.Slot slot = client.acquireSlot();
+            try {
                 if (seekAfterRestart) {
-                    seek(position);
-                    seekAfterRestart = false;
+                    sendSeek(slot, position);
                 }
-                byte cmd = sendRead(len);
+                byte cmd = sendRead(slot, len);
                 if (cmd == FLAGS.EOF) {
                     return -1;
                 }
-                int size = client.mbb.getInt(13);
+                int size = slot.mbb().getInt(slot.pos + SleuthkitServer.PARAM_POS);
+                client.addBytesRead(size);
                 buf = new byte[size];
-                client.mbb.position(17);
-                client.mbb.get(buf, 0, size);
+                ByteBuffer slotBuf = slot.mbb().duplicate();
+                slotBuf.position(slot.pos + SleuthkitServer.DATA_POS);
+                slotBuf.get(buf, 0, size);
                 bufPos = 0;
                 empty = false;
+            } finally {
+                client.releaseSlot(slot);
             }
         }
 
@@ -88,79 +80,24 @@ private int readIn(byte b[], int off, int len) throws IOException {
         return copyLen;
     }
 
-    private byte sendRead(int len) throws IOException {
-        client.mbb.putInt(1, sleuthId);
-        client.mbb.putLong(5, streamId);
-        client.mbb.putInt(13, len);
-        SleuthkitServer.commitByte(client.mbb, 0, FLAGS.READ);
-        notifyServer();
-        return waitServerResponse();
+    private void putIds(SleuthkitClient.Slot slot) {
+        slot.mbb().putInt(slot.pos + SleuthkitServer.SLEUTH_ID_POS, sleuthId);
+        slot.mbb().putLong(slot.pos + SleuthkitServer.STREAM_ID_POS, streamId);
     }
 
-    private byte waitServerResponse() throws IOException {
-
-        client.enableTimeoutCheck(true);
-        try {
-            int b = client.is.read();
-            if (b == -1)
-                throw new IOException(getServerId() + " pipe closed!"); //$NON-NLS-1$
-
-        } catch (IOException e) {
-            client.setServerError(true);
-            LOGGER.error("Wait response error: " + getCrashMsg());
-            throw e;
-
-        } finally {
-            client.enableTimeoutCheck(false);
-        }
-
-        byte cmd;
-        long time = 0;
-        while (FLAGS.isClientCmd(cmd = SleuthkitServer.getByte(client.mbb, 0)) || cmd == FLAGS.SQLITE_READ) {
-            try {
-                if (time == 0) {
-                    time = System.currentTimeMillis();
-                }
-                Thread.sleep(1);
-                LOGGER.warn("Waiting " + getServerId() + " memory write..."); //$NON-NLS-1$
-
-                if (System.currentTimeMillis() - time >= TIMEOUT) {
-                    client.setServerError(true);
-                    LOGGER.error("MemoryReadTimeout waiting " + getServerId() + ": " + path); //$NON-NLS-1$
-                    throw new IOException("MemoryReadTimeout waiting " + getServerId() + ": " + path); //$NON-NLS-1$
-                }
-
-            } catch (InterruptedException e) {
-                throw new InterruptedIOException(e.toString());
-            }
-        }
-
-        if (cmd == FLAGS.EXCEPTION) {
-            int len = client.mbb.getInt(13);
-            byte[] b = new byte[len];
-            client.mbb.position(17);
-            client.mbb.get(b);
-            try {
-                throw new IOException(getServerId() + " error: " + new String(b, "UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
-            } catch (UnsupportedEncodingException e) {
-            }
-        }
-
-        return cmd;
-    }
-
-    private void notifyServer() throws IOException {
-        try {
-            SleuthkitServer.notify(client.os);
-        } catch (IOException e) {
-            client.setServerError(true);
-            LOGGER.error("Notify error: " + getCrashMsg());
-            throw e;
-        }
+    private byte sendRead(SleuthkitClient.Slot slot, int len) throws IOException {
+        putIds(slot);
+        slot.mbb().putInt(slot.pos + SleuthkitServer.PARAM_POS, len);
+        return client.sendCmd(slot, FLAGS.READ, path);
     }
 
-    private String getCrashMsg() {
-        return "Possible " + getServerId() + " crash reading " + path; //$NON-NLS-1$
+    private void sendSeek(SleuthkitClient.Slot slot, long pos) throws IOException {
+        putIds(slot);
+        slot.mbb().putLong(slot.pos + SleuthkitServer.PARAM_POS, pos);
+        client.sendCmd(slot, FLAGS.SEEK, path);
+        empty = true;
+        bufPos = 0;
+        seekAfterRestart = false;
     }
 
     @Override
@@ -175,19 +112,14 @@ public void seek(long pos) throws IOException {
             bufPos += dif;
 
         } else {
-            synchronized (client) {
-                if (client.isServerError()) {
-                    client.restartServer();
-                }
-                client.mbb.putInt(1, sleuthId);
-                client.mbb.putLong(5, streamId);
-                client.mbb.putLong(13, pos);
-                SleuthkitServer.commitByte(client.mbb, 0, FLAGS.SEEK);
-                notifyServer();
-                waitServerResponse();
-                empty = true;
-                bufPos = 0;
-                seekAfterRestart = false;
+            if (client.isServerError()) {
+                client.restartServer();
+            }
+            SleuthkitClient.Slot slot = client.acquireSlot();
+            try {
+                sendSeek(slot, pos);
+            } finally {
+                client.releaseSlot(slot);
             }
         }
         position = pos;
@@ -209,17 +141,17 @@ public long size() throws IOException {
             throw new IOException("Stream is closed!"); //$NON-NLS-1$
         }
 
-        synchronized (client) {
-            if (client.isServerError()) {
-                client.restartServer();
-            }
-            client.mbb.putInt(1, sleuthId);
-            client.mbb.putLong(5, streamId);
-            SleuthkitServer.commitByte(client.mbb, 0, FLAGS.SIZE);
-            notifyServer();
-            waitServerResponse();
-            size = client.mbb.getLong(13);
+        if (client.isServerError()) {
+            client.restartServer();
+        }
+        SleuthkitClient.Slot slot = client.acquireSlot();
+        try {
+            putIds(slot);
+            client.sendCmd(slot, FLAGS.SIZE, path);
+            size = slot.mbb().getLong(slot.pos + SleuthkitServer.PARAM_POS);
             return size;
+        } finally {
+            client.releaseSlot(slot);
         }
 
     }
@@ -250,14 +182,17 @@ public void close() throws IOException {
         if (closed) {
             return;
         }
-        synchronized (client) {
+        try {
             if (!client.isServerError()) {
-                client.mbb.putInt(1, sleuthId);
-                client.mbb.putLong(5, streamId);
-                SleuthkitServer.commitByte(client.mbb, 0, FLAGS.CLOSE);
-                notifyServer();
-                waitServerResponse();
+                SleuthkitClient.Slot slot = client.acquireSlot();
+                try {
+                    putIds(slot);
+                    client.sendCmd(slot, FLAGS.CLOSE, path);
+                } finally {
+                    client.releaseSlot(slot);
+                }
             }
+        } finally {
             client.removeStream(this);
         }
         empty = true;
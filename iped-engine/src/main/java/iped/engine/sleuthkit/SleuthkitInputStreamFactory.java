@@ -8,6 +8,7 @@
 import java.util.Properties;
 
 import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.FsContent;
 import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.slf4j.Logger;
@@ -26,6 +27,8 @@ public class SleuthkitInputStreamFactory extends SeekableInputStreamFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(SleuthkitInputStreamFactory.class);
 
+    private static final int META_ADDR_GROUP_SIZE = 4096;
+
     private SleuthkitCase sleuthkitCase;
     private Content content;
     private boolean emptyContent = false;
@@ -121,7 +124,7 @@ public SeekableInputStream getSeekableInputStream(String identifier) throws IOEx
         if (SleuthkitReader.sleuthCase == null || !fsConfig.isRobustImageReading()) {
             return new SleuthkitInputStream(tskContent);
         } else {
-            SleuthkitClient sleuthProcess = SleuthkitClient.get();
+            SleuthkitClient sleuthProcess = SleuthkitClient.get(getLocalityKey(tskContent));
             try {
                 return sleuthProcess.getInputStream((int) tskId, tskContent.getUniquePath());
             } catch (TskCoreException e) {
@@ -131,6 +134,19 @@ public SeekableInputStream getSeekableInputStream(String identifier) throws IOEx
 
     }
 
+    /**
+     * Files of the same filesystem with close metadata addresses, often written
+     * together to near disk areas, get the same key. Getting their block ranges
+     * would cost a database query per file.
+     */
+    private static String getLocalityKey(Content content) {
+        if (content instanceof FsContent) {
+            FsContent fsContent = (FsContent) content;
+            return fsContent.getFileSystemId() + "_" + fsContent.getMetaAddr() / META_ADDR_GROUP_SIZE; //$NON-NLS-1$
+        }
+        return null;
+    }
+
     public Content getContentById(long id) throws IOException {
         if (content != null) {
             return content;
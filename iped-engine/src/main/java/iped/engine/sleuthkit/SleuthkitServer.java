@@ -6,11 +6,16 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.SleuthkitCase;
@@ -20,10 +25,40 @@
 import iped.engine.config.LocalConfig;
 import iped.engine.util.DirectMemory;
 
+/**
+ * Process reading items from sleuthkit images on behalf of a
+ * {@link SleuthkitClient}, so crashes of native code do not kill the main
+ * process.
+ * 
+ * The mmap file shared with the client is divided in {@link #NUM_SLOTS} slots,
+ * each one with a command flag, its parameters and a data buffer, so the client
+ * can have that many requests running concurrently. The client writes a command
+ * into a free slot and sends the slot number through the process pipe, the
+ * server runs it in a thread of that slot and sends back the slot number when
+ * the response is written. Blocks after sequential reads are read ahead, while
+ * the client consumes the previous one.
+ */
 public class SleuthkitServer {
 
-    public static final int MMAP_FILE_SIZE = 10 * 1024 * 1024;
-    private static final int MAX_BUF_SIZE = 8 * 1024 * 1024; // must be less than MMAP_FILE_SIZE
+    public static final int NUM_SLOTS = 4;
+    private static final int MAX_BUF_SIZE = 2 * 1024 * 1024;
+    static final int SLOT_HEADER_SIZE = 32;
+    static final int SLOT_SIZE = SLOT_HEADER_SIZE + MAX_BUF_SIZE;
+    public static final int MMAP_FILE_SIZE = NUM_SLOTS * SLOT_SIZE;
+
+    // offsets inside slots
+    static final int CMD_POS = 0;
+    static final int SLEUTH_ID_POS = 1;
+    static final int STREAM_ID_POS = 5;
+    static final int PARAM_POS = 13;
+    static final int DATA_POS = SLOT_HEADER_SIZE;
+
+    // pipe messages, followed by the slot number or ping value
+    static final int MSG_CMD = 0;
+    static final int MSG_PING = 1;
+
+    private static final int MIN_TO_READ = 64 * 1024;
+    private static final long MAX_READ_AHEAD_MEMORY = 16 * 1024 * 1024;
 
     static class FLAGS {
 
@@ -49,6 +84,96 @@ final static boolean isClientCmd(int cmd) {
 
     static boolean useUnsafe = true;
 
+    private static final Map<Long, ServerStream> streams = new ConcurrentHashMap<>();
+
+    private static final AtomicLong readAheadMemory = new AtomicLong();
+
+    /**
+     * Item stream opened by the client, with the block read ahead, if any.
+     */
+    private static class ServerStream {
+
+        private final SleuthkitInputStream sis;
+        private byte[] ahead;
+        private int aheadPos, aheadLen;
+        private long lastReadEnd = -1;
+        private boolean sequential;
+
+        private ServerStream(SleuthkitInputStream sis) {
+            this.sis = sis;
+        }
+
+        private int read(byte[] buf, int len) throws IOException {
+            long start = position();
+            int read;
+            if (ahead != null) {
+                read = Math.min(len, aheadLen - aheadPos);
+                System.arraycopy(ahead, aheadPos, buf, 0, read);
+                aheadPos += read;
+                if (aheadPos == aheadLen) {
+                    clearAhead();
+                }
+            } else {
+                read = readIn(sis, buf, len);
+            }
+            sequential = start == lastReadEnd;
+            lastReadEnd = read == -1 ? -1 : start + read;
+            return read;
+        }
+
+        private void readAhead(int len) {
+            if (ahead != null || sis.closed) {
+                return;
+            }
+            if (readAheadMemory.addAndGet(len) > MAX_READ_AHEAD_MEMORY) {
+                readAheadMemory.addAndGet(-len);
+                return;
+            }
+            try {
+                byte[] buf = new byte[len];
+                int read = readIn(sis, buf, len);
+                if (read > 0) {
+                    ahead = buf;
+                    aheadPos = 0;
+                    aheadLen = read;
+                    return;
+                }
+            } catch (IOException e) {
+                // the error, if persistent, will be returned by the next read
+            }
+            readAheadMemory.addAndGet(-len);
+        }
+
+        private void clearAhead() {
+            if (ahead != null) {
+                readAheadMemory.addAndGet(-ahead.length);
+                ahead = null;
+            }
+        }
+
+        private long position() {
+            return sis.position() - (ahead != null ? aheadLen - aheadPos : 0);
+        }
+
+        private void seek(long pos) throws IOException {
+            if (ahead != null) {
+                // ahead starts at sis.position() - aheadLen
+                long aheadStart = sis.position() - aheadLen;
+                if (pos >= aheadStart && pos < sis.position()) {
+                    aheadPos = (int) (pos - aheadStart);
+                    return;
+                }
+                clearAhead();
+            }
+            sis.seek(pos);
+        }
+
+        private void close() throws IOException {
+            clearAhead();
+            sis.close();
+        }
+    }
+
     public static void main(String args[]) {
 
         String dbPath = args[0];
@@ -77,111 +202,161 @@ public static void main(String args[]) {
             Configuration.getInstance().loadNativeLibs();
 
             SleuthkitCase sleuthCase = SleuthkitInputStreamFactory.openSleuthkitCase(dbPath);
-            HashMap<Long, SleuthkitInputStream> sisMap = new HashMap<>();
 
             java.util.logging.Logger.getLogger("org.sleuthkit").setLevel(java.util.logging.Level.SEVERE); //$NON-NLS-1$
 
-            commitByte(out, 0, FLAGS.DONE);
-            notify(os);
+            ExecutorService[] slotThreads = new ExecutorService[NUM_SLOTS];
+            byte[][] slotBufs = new byte[NUM_SLOTS][];
+            for (int slot = 0; slot < NUM_SLOTS; slot++) {
+                slotThreads[slot] = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r);
+                    t.setDaemon(true);
+                    return t;
+                });
+                slotBufs[slot] = new byte[MAX_BUF_SIZE];
+                if (slot > 0) {
+                    commitByte(out, getSlotPos(slot) + CMD_POS, FLAGS.DONE);
+                }
+            }
 
-            byte[] buf = new byte[MAX_BUF_SIZE];
-            int minToRead = 64 * 1024;
-            SleuthkitInputStream sis = null;
+            commitByte(out, CMD_POS, FLAGS.DONE);
+            notify(os, 0);
 
             while (true) {
-                try {
-                    int read = in.read();
-                    if (read == -1)
-                        break;
-                    if (read > 0) {
-                        // ping response
-                        os.write(read);
+                int msg = in.read();
+                int value = in.read();
+                if (msg == -1 || value == -1)
+                    break;
+                if (msg == MSG_PING) {
+                    // ping response
+                    synchronized (os) {
+                        os.write(MSG_PING);
+                        os.write(value);
                         os.flush();
-                        continue;
                     }
-                    byte cmd = waitCmd(out, in);
-                    sis = getSis(out, sleuthCase, sisMap);
-                    commitByte(out, 0, FLAGS.SQLITE_READ);
+                    continue;
+                }
+                final int slot = value;
+                final MappedByteBuffer mbb = out;
+                slotThreads[slot].execute(() -> processCmd(mbb, os, sleuthCase, slot, slotBufs[slot]));
+            }
+
+        } catch (Throwable e) {
+            e.printStackTrace();
+            commitByte(out, CMD_POS, FLAGS.ERROR);
+            try {
+                if (os != null)
+                    notify(os, 0);
+            } catch (IOException e1) {
+                e1.printStackTrace();
+            }
+        }
+    }
+
+    static final int getSlotPos(int slot) {
+        return slot * SLOT_SIZE;
+    }
+
+    private static void processCmd(MappedByteBuffer out, OutputStream os, SleuthkitCase sleuthCase, int slot,
+            byte[] buf) {
+        int slotPos = getSlotPos(slot);
+        ServerStream readAhead = null;
+        int readAheadLen = 0;
+        try {
+            try {
+                byte cmd = waitCmd(out, slotPos);
+                ServerStream stream = getStream(out, slotPos, sleuthCase);
+                commitByte(out, slotPos + CMD_POS, FLAGS.SQLITE_READ);
 
+                byte response = FLAGS.DONE;
+                synchronized (stream) {
                     if (cmd == FLAGS.SEEK) {
-                        sis.seek(out.getLong(13));
+                        stream.seek(out.getLong(slotPos + PARAM_POS));
                     } else if (cmd == FLAGS.CLOSE) {
-                        sis = sisMap.remove(out.getLong(5));
-                        sis.close();
+                        streams.remove(out.getLong(slotPos + STREAM_ID_POS));
+                        stream.close();
                     } else if (cmd == FLAGS.READ) {
-                        int len = out.getInt(13);
-                        len = Math.max(minToRead, Math.min(len, buf.length));
-                        len = readIn(sis, buf, len);
-                        if (len == -1) {
-                            commitByte(out, 0, FLAGS.EOF);
-                            notify(os);
-                            continue;
+                        int len = out.getInt(slotPos + PARAM_POS);
+                        len = Math.max(MIN_TO_READ, Math.min(len, buf.length));
+                        int read = stream.read(buf, len);
+                        if (read == -1) {
+                            response = FLAGS.EOF;
                         } else {
-                            writeOut(out, buf, len);
+                            writeOut(out, slotPos, buf, read);
+                            if (stream.sequential) {
+                                readAhead = stream;
+                                readAheadLen = len;
+                            }
                         }
                     } else if (cmd == FLAGS.SIZE) {
-                        out.putLong(13, sis.size());
+                        out.putLong(slotPos + PARAM_POS, stream.sis.size());
                     } else if (cmd == FLAGS.POSITION) {
-                        out.putLong(13, sis.position());
+                        out.putLong(slotPos + PARAM_POS, stream.position());
                     }
+                }
+
+                commitByte(out, slotPos + CMD_POS, response);
+                notify(os, slot);
+
+            } catch (Throwable e) {
+                // e.printStackTrace(System.err);
+                byte[] msgBytes = String.valueOf(e.getMessage()).getBytes("UTF-8"); //$NON-NLS-1$
+                int len = Math.min(msgBytes.length, MAX_BUF_SIZE);
+                out.putInt(slotPos + PARAM_POS, len);
+                ByteBuffer slotBuf = out.duplicate();
+                slotBuf.position(slotPos + DATA_POS);
+                slotBuf.put(msgBytes, 0, len);
+                commitByte(out, slotPos + CMD_POS, FLAGS.EXCEPTION);
+                notify(os, slot);
+            }
 
-                    commitByte(out, 0, FLAGS.DONE);
-                    notify(os);
-
-                } catch (Throwable e) {
-                    // e.printStackTrace(System.err);
-                    byte[] msgBytes = e.getMessage().getBytes("UTF-8"); //$NON-NLS-1$
-                    out.putInt(13, msgBytes.length);
-                    out.position(17);
-                    out.put(msgBytes);
-                    commitByte(out, 0, FLAGS.EXCEPTION);
-                    notify(os);
+            // reads the next block while the client consumes the current one
+            if (readAhead != null) {
+                synchronized (readAhead) {
+                    readAhead.readAhead(readAheadLen);
                 }
             }
 
-        } catch (Throwable e) {
+        } catch (IOException e) {
+            // pipe closed, client is gone
             e.printStackTrace();
-            commitByte(out, 0, FLAGS.ERROR);
-            try {
-                if (os != null)
-                    notify(os);
-            } catch (IOException e1) {
-                e1.printStackTrace();
-            }
         }
     }
 
     private static HashSet<Long> warmedDataSources = new HashSet<>();
 
-    private static SleuthkitInputStream getSis(MappedByteBuffer out, SleuthkitCase sleuthCase,
-            HashMap<Long, SleuthkitInputStream> sisMap) throws Exception {
-        long streamId = out.getLong(5);
-        SleuthkitInputStream sis = sisMap.get(streamId);
-        if (sis == null) {
-            int id = out.getInt(1);
+    private static ServerStream getStream(MappedByteBuffer out, int slotPos, SleuthkitCase sleuthCase)
+            throws Exception {
+        long streamId = out.getLong(slotPos + STREAM_ID_POS);
+        ServerStream stream = streams.get(streamId);
+        if (stream == null) {
+            int id = out.getInt(slotPos + SLEUTH_ID_POS);
             Content content = sleuthCase.getAbstractFileById(id);
             if (content == null) {
                 content = sleuthCase.getContentById(id);
             }
-            sis = new SleuthkitInputStream(content);
-            sisMap.put(streamId, sis);
+            SleuthkitInputStream sis = new SleuthkitInputStream(content);
 
             // first read can take a long time, so do it here to prevent timeouts on client
             // side
             Long sourceId = content.getDataSource().getId();
-            if (!warmedDataSources.contains(sourceId)) {
-                sis.read();
-                sis.seek(0);
-                warmedDataSources.add(sourceId);
+            synchronized (warmedDataSources) {
+                if (!warmedDataSources.contains(sourceId)) {
+                    sis.read();
+                    sis.seek(0);
+                    warmedDataSources.add(sourceId);
+                }
             }
+            stream = new ServerStream(sis);
+            streams.put(streamId, stream);
         }
-        return sis;
+        return stream;
     }
 
-    private static byte waitCmd(MappedByteBuffer out, InputStream in) throws Exception {
+    private static byte waitCmd(MappedByteBuffer out, int slotPos) throws Exception {
         byte cmd;
         long t = 0;
-        while (!FLAGS.isClientCmd(cmd = getByte(out, 0))) {
+        while (!FLAGS.isClientCmd(cmd = getByte(out, slotPos + CMD_POS))) {
             if (t == 0)
                 t = System.currentTimeMillis();
             long time = (System.currentTimeMillis() - t) / 1000;
@@ -196,15 +371,19 @@ private static int readIn(SleuthkitInputStream sis, byte[] buf, int len) throws
         return sis.read(buf, 0, len);
     }
 
-    private static void writeOut(MappedByteBuffer out, byte[] buf, int len) throws Exception {
-        out.position(17);
-        out.put(buf, 0, len);
-        out.putInt(13, len);
+    private static void writeOut(MappedByteBuffer out, int slotPos, byte[] buf, int len) throws Exception {
+        ByteBuffer slotBuf = out.duplicate();
+        slotBuf.position(slotPos + DATA_POS);
+        slotBuf.put(buf, 0, len);
+        out.putInt(slotPos + PARAM_POS, len);
     }
 
-    static void notify(OutputStream os) throws IOException {
-        os.write(0);
-        os.flush();
+    static void notify(OutputStream os, int slot) throws IOException {
+        synchronized (os) {
+            os.write(MSG_CMD);
+            os.write(slot);
+            os.flush();
+        }
     }
 
     static final void commitByte(MappedByteBuffer mbb, int pos, byte val) {
@@ -13,6 +13,7 @@
 import iped.engine.config.ConfigurationManager;
 import iped.engine.core.QueuesProcessingOrder;
 import iped.engine.core.Statistics;
+import iped.engine.core.TaskMetrics;
 import iped.engine.core.Worker;
 import iped.engine.core.Worker.STATE;
 import iped.engine.data.CaseData;
@@ -64,12 +65,18 @@ public abstract class AbstractTask {
 
     private long taskTime;
 
+    private final TaskMetrics metrics = new TaskMetrics(getClass());
+
     private HashMap<Integer, Long> subitemProcessingTime = new HashMap<Integer, Long>();
 
     public long getTaskTime() {
         return taskTime;
     }
 
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+
     public void addSubitemProcessingTime(long time) {
         Long prevTime = subitemProcessingTime.get(worker.evidence.getId());
         if (prevTime == null) {
@@ -188,17 +195,28 @@ public final void processAndSendToNextTask(IItem evidence) throws Exception {
 
         if (this.isEnabled() && (!evidence.isToIgnore() || processIgnoredItem())) {
             long t = System.nanoTime() / 1000;
+            boolean permitReleased = isIOBound() && worker.releaseCpuPermit();
             try {
                 processMonitorTimeout(evidence);
 
             } catch (ItemReEnqueuedException e) {
                 sendToNextTask = false;
+
+            } finally {
+                if (permitReleased) {
+                    worker.acquireCpuPermit();
+                }
             }
             Long subitensTime = subitemProcessingTime.remove(evidence.getId());
             if (subitensTime == null) {
                 subitensTime = 0L;
             }
-            taskTime += System.nanoTime() / 1000 - t - subitensTime;
+            // subitems time is measured by other tasks, do not let it turn this one negative
+            long time = Math.max(0, System.nanoTime() / 1000 - t - subitensTime);
+            taskTime += time;
+            if (!evidence.isQueueEnd()) {
+                metrics.record(evidence.getMediaType(), time, evidence.getLength());
+            }
         }
 
         if (sendToNextTask) {
@@ -312,6 +330,17 @@ protected boolean processQueueEnd() {
         return false;
     }
 
+    /**
+     * Indica se a tarefa passa a maior parte do tempo bloqueada em I/O (disco,
+     * rede, banco de dados). Se houver workers adicionais para tarefas de I/O
+     * configurados, o worker libera sua permissão de uso de CPU enquanto executa
+     * a tarefa, permitindo que outro worker execute tarefas de CPU. O padrão é
+     * false.
+     */
+    protected boolean isIOBound() {
+        return false;
+    }
+
     /**
      * Retorna se a tarefa está habilitada. Padrão é sim, mas pode ser sobrescrita
      * se a tarefa possuir esse controle.
@@ -0,0 +1,37 @@
+package iped.engine.task;
+
+import java.io.IOException;
+
+import iped.data.IItem;
+
+/**
+ * Task able to process the content of items as a sequence of blocks, in a
+ * single pass. Those tasks receive the blocks read by {@link HashTask}, so the
+ * content of items is read once from the data source for all of them. Results
+ * should be kept in the item, usually as temp attributes, and used when the
+ * item reaches the task, which must read the content itself if they are not
+ * there, e.g. if hashing is disabled or the read failed.
+ */
+public interface ContentConsumer {
+
+    /**
+     * Called before the content of an item is read.
+     * 
+     * @return true to receive the content of the item
+     */
+    boolean beginContent(IItem item);
+
+    /**
+     * Receives the next block of the content. Blocks are passed in order, from a
+     * thread other than the worker one, and must not be modified nor kept after
+     * returning.
+     */
+    void updateContent(byte[] buf, int len) throws IOException;
+
+    /**
+     * Called after all blocks of the content were received, only if it was
+     * completely read.
+     */
+    void endContent(IItem item);
+
+}
@@ -10,16 +10,26 @@
 import iped.engine.config.EnableTaskProperty;
 import iped.engine.task.carver.BaseCarveTask;
 import iped.parsers.standard.RawStringParser;
+import iped.utils.CompressRatioCalculator;
 import iped.utils.RandomFilterInputStream;
 
-public class EntropyTask extends AbstractTask {
+/**
+ * Computes the compression ratio of items. It is usually computed while
+ * {@link HashTask} reads the items, see {@link ContentConsumer}, otherwise the
+ * content is read again here.
+ */
+public class EntropyTask extends AbstractTask implements ContentConsumer {
 
     public static final String COMPRESS_RATIO = RawStringParser.COMPRESS_RATIO;
 
     public static final String ENABLE_PARAM = "entropyTest"; //$NON-NLS-1$
 
+    private static final String SHARED_COMPRESS_RATIO = "sharedCompressRatio"; //$NON-NLS-1$
+
     private byte[] buf = new byte[64 * 1024];
 
+    private CompressRatioCalculator calculator = new CompressRatioCalculator();
+
     private boolean enableOption;
 
     @Override
@@ -42,15 +52,46 @@ public boolean isEnabled() {
         return enableOption;
     }
 
+    private static boolean isToSkip(IItem evidence) {
+        return BaseCarveTask.UNALLOCATED_MIMETYPE.equals(evidence.getMediaType());
+    }
+
+    @Override
+    public boolean beginContent(IItem item) {
+        if (!isEnabled() || isToSkip(item)) {
+            return false;
+        }
+        calculator.reset();
+        return true;
+    }
+
+    @Override
+    public void updateContent(byte[] buf, int len) {
+        calculator.update(buf, 0, len);
+    }
+
+    @Override
+    public void endContent(IItem item) {
+        Double compression = calculator.getCompressRatio();
+        // NaN marks the ratio was computed, but the item is too small
+        item.setTempAttribute(SHARED_COMPRESS_RATIO, compression != null ? compression : Double.NaN);
+    }
+
     @Override
     protected void process(IItem evidence) throws Exception {
 
         if (!isEnabled() || !evidence.isToAddToCase())
             return;
 
-        if (evidence.getMediaType().equals(BaseCarveTask.UNALLOCATED_MIMETYPE)
-                || Boolean.TRUE.equals(evidence.getExtraAttribute(ThumbTask.HAS_THUMB)))
+        if (isToSkip(evidence) || Boolean.TRUE.equals(evidence.getExtraAttribute(ThumbTask.HAS_THUMB)))
+            return;
+
+        Double shared = (Double) evidence.getTempAttribute(SHARED_COMPRESS_RATIO);
+        if (shared != null) {
+            if (!shared.isNaN())
+                evidence.setExtraAttribute(COMPRESS_RATIO, shared);
             return;
+        }
 
         try (RandomFilterInputStream rfis = new RandomFilterInputStream(evidence.getBufferedInputStream())) {
 
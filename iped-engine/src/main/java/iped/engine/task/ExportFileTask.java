@@ -25,7 +25,6 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -40,24 +39,20 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.Deflater;
 
 import iped.properties.BasicProps;
 import iped.properties.ExtraProperties;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.compressors.CompressorException;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipParameters;
-import org.apache.commons.compress.utils.IOUtils;
-import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -83,6 +78,7 @@
 import iped.engine.config.ExportByKeywordsConfig;
 import iped.engine.config.HashTaskConfig;
 import iped.engine.config.HtmlReportTaskConfig;
+import iped.engine.config.StorageCodecConfig;
 import iped.engine.data.Category;
 import iped.engine.data.IPEDSource;
 import iped.engine.localization.Messages;
@@ -96,7 +92,6 @@
 import iped.utils.FileInputStreamFactory;
 import iped.utils.HashValue;
 import iped.utils.IOUtil;
-import iped.utils.SeekableFileInputStream;
 import iped.utils.SeekableInputStreamFactory;
 
 /**
@@ -121,20 +116,18 @@ public class ExportFileTask extends AbstractTask {
 
     private static final byte DB_SUFFIX_BITS = 4; // current impl maximum is 8
 
-    private static final String CREATE_TABLE1 = "CREATE TABLE IF NOT EXISTS thumbs(id TEXT PRIMARY KEY, thumb BLOB);";
-    private static final String CREATE_TABLE2 = "CREATE TABLE IF NOT EXISTS t1(id TEXT PRIMARY KEY, data BLOB);";
-
-    private static final String INSERT_DATA = "INSERT INTO t1(id, data) VALUES(?,?) ON CONFLICT(id) DO UPDATE SET data=? WHERE data IS NULL;";
-
-    private static final String CHECK_HASH = "SELECT id FROM t1 WHERE id=? AND data IS NOT NULL;";
-
     private static final String SELECT_IDS_WITH_DATA = "SELECT id FROM t1 WHERE data IS NOT NULL;";
 
     private static final String CLEAR_DATA = "DELETE FROM t1 WHERE id=?;";
 
     // maps below are used to track different storages/connections in multicases
-    private static HashMap<File, HashMap<Integer, File>> storage = new HashMap<>();
-    private static HashMap<File, HashMap<Integer, Connection>> storageCon = new HashMap<>();
+    private static Map<File, HashMap<Integer, File>> storage = new ConcurrentHashMap<>();
+    private static Map<File, HashMap<Integer, SQLiteStorage>> storageCon = new ConcurrentHashMap<>();
+
+    // storages opened just for reading, e.g. by the analysis UI
+    private static Map<File, SQLiteStorage> readOnlyStorage = new ConcurrentHashMap<>();
+
+    private static Map<File, StorageBlobCodec> storageCodec = new ConcurrentHashMap<>();
 
     private static AtomicInteger counter = new AtomicInteger();
 
@@ -153,6 +146,7 @@ public class ExportFileTask extends AbstractTask {
     private ExportByCategoriesConfig exportByCategories;
     private ExportByKeywordsConfig exportByKeywords;
     private CategoryConfig categoryConfig;
+    private StorageCodecConfig storageCodecConfig;
     private boolean automaticExportEnabled = false;
 
     public ExportFileTask() {
@@ -184,7 +178,7 @@ private static void setExtractLocation(ICaseData caseData, File output) {
         }
     }
 
-    public static Connection getSQLiteStorageCon(File output, byte[] hash) {
+    public static SQLiteStorage getSQLiteStorage(File output, byte[] hash) {
         if (storageCon.get(output) == null) {
             configureSQLiteStorage(output);
         }
@@ -196,45 +190,66 @@ private static int getStorageSuffix(byte[] hash) {
         return (hash[0] & 0xFF) >> (8 - DB_SUFFIX_BITS);
     }
 
-    private static Connection getSQLiteStorageCon(File db) {
+    /**
+     * Returns the storage being written by processing, if any, otherwise a read
+     * only storage with pooled connections.
+     */
+    private static SQLiteStorage getSQLiteStorage(File db) {
         File output = db.getParentFile().getParentFile();
-        if (storageCon.get(output) == null) {
-            configureSQLiteStorage(output);
+        HashMap<Integer, SQLiteStorage> storages = storageCon.get(output);
+        if (storages != null) {
+            int dbSuffix = Integer
+                    .valueOf(db.getName().substring(STORAGE_PREFIX.length() + 1, db.getName().indexOf(".db")));
+            SQLiteStorage sqliteStorage = storages.get(dbSuffix);
+            if (sqliteStorage != null && !sqliteStorage.isClosed()) {
+                return sqliteStorage;
+            }
         }
-        int dbSuffix = Integer
-                .valueOf(db.getName().substring(STORAGE_PREFIX.length() + 1, db.getName().indexOf(".db")));
-        return storageCon.get(output).get(dbSuffix);
+        return readOnlyStorage.computeIfAbsent(db.getAbsoluteFile(), f -> SQLiteStorage.openReadOnly(f));
+    }
+
+    private static synchronized HashMap<Integer, File> getStorageFiles(File output) {
+        HashMap<Integer, File> tempStorage = storage.get(output);
+        if (tempStorage == null) {
+            tempStorage = new HashMap<>();
+            for (int i = 0; i < Math.pow(2, DB_SUFFIX_BITS); i++) {
+                String storageName = STORAGE_PREFIX + "-" + i + ".db";
+                File db = new File(output, STORAGE_PREFIX + File.separator + storageName);
+                tempStorage.put(i, db);
+            }
+            storage.put(output, tempStorage);
+        }
+        return tempStorage;
     }
 
     private static synchronized void configureSQLiteStorage(File output) {
         if (storageCon.get(output) != null) {
             return;
         }
-        HashMap<Integer, Connection> tempStorageCon = new HashMap<>();
-        HashMap<Integer, File> tempStorage = new HashMap<>();
-        for (int i = 0; i < Math.pow(2, DB_SUFFIX_BITS); i++) {
-            String storageName = STORAGE_PREFIX + "-" + i + ".db";
-            File db = new File(output, STORAGE_PREFIX + File.separator + storageName);
+        HashMap<Integer, SQLiteStorage> tempStorageCon = new HashMap<>();
+        for (Entry<Integer, File> entry : getStorageFiles(output).entrySet()) {
+            File db = entry.getValue();
             db.getParentFile().mkdir();
-            tempStorage.put(i, db);
             try {
-                Connection con = getSQLiteConnection(db);
-                try (Statement stmt = con.createStatement()) {
-                    stmt.executeUpdate(CREATE_TABLE1);
-                }
-                try (Statement stmt = con.createStatement()) {
-                    stmt.executeUpdate(CREATE_TABLE2);
-                }
-                tempStorageCon.put(i, con);
+                tempStorageCon.put(entry.getKey(), SQLiteStorage.open(db));
 
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
         }
-        storage.put(output, tempStorage);
         storageCon.put(output, tempStorageCon);
     }
 
+    private static synchronized void closeSQLiteStorage(File output) throws SQLException, InterruptedException {
+        HashMap<Integer, SQLiteStorage> storages = storageCon.remove(output);
+        if (storages != null) {
+            for (Entry<Integer, SQLiteStorage> entry : storages.entrySet()) {
+                entry.getValue().close();
+                LOGGER.info("Closed connection to storage " + entry.getKey());
+            }
+        }
+    }
+
     private static Connection getSQLiteConnection(File storage) throws SQLException {
         SQLiteConfig config = new SQLiteConfig();
         config.setSynchronous(SynchronousMode.NORMAL);
@@ -618,56 +633,33 @@ private void insertIntoStorage(IItem evidence, byte[] buf, int len)
             hash = DigestUtils.md5(new ByteArrayInputStream(buf, 0, len));
         }
         int k = getStorageSuffix(hash);
-        boolean alreadyInDB = false;
         String id = hashString != null ? hashString : new HashValue(hash).toString();
-        try (PreparedStatement ps = storageCon.get(output).get(k).prepareStatement(CHECK_HASH)) {
-            ps.setString(1, id);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                alreadyInDB = true;
-            }
-        }
-        if (!alreadyInDB) {
-            try (PreparedStatement ps = storageCon.get(output).get(k).prepareStatement(INSERT_DATA)) {
-                ps.setString(1, id);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                OutputStream gzippedOut = new GzipCompressorOutputStream(baos, getGzipParams());
-                // OutputStream gzippedOut = new LZ4BlockOutputStream(baos);
-                gzippedOut.write(buf, 0, len);
-                gzippedOut.close();
-                byte[] bytes = baos.toByteArray();
-                baos = null;
-                ps.setBytes(2, bytes);
-                ps.setBytes(3, bytes);
-                ps.executeUpdate();
-            }
+        SQLiteStorage sqliteStorage = storageCon.get(output).get(k);
+        if (!sqliteStorage.containsData(id)) {
+            StorageBlobCodec codec = storageCodec.computeIfAbsent(output,
+                    o -> new StorageBlobCodec(storageCodecConfig, new File(o, STORAGE_PREFIX)));
+            byte[] bytes = codec.encode(buf, len, evidence.getMediaType());
+            // handed off to the storage writer thread
+            sqliteStorage.insertData(id, bytes);
         }
         evidence.setIdInDataSource(id);
         evidence.setInputStreamFactory(
-                new SQLiteInputStreamFactory(storage.get(output).get(k).toPath(), storageCon.get(output).get(k)));
+                new SQLiteInputStreamFactory(storage.get(output).get(k).toPath(), sqliteStorage));
         evidence.setFileOffset(-1);
         evidence.setLength((long) len);
     }
 
-    private GzipParameters getGzipParams() {
-        GzipParameters compression = new GzipParameters();
-        compression.setCompressionLevel(Deflater.BEST_SPEED);
-        return compression;
-    }
-
     public static class SQLiteInputStreamFactory extends SeekableInputStreamFactory {
 
-        private static final String SELECT_DATA = "SELECT data FROM t1 WHERE id=?;";
-
-        private Connection conn;
+        private SQLiteStorage sqliteStorage;
 
         public SQLiteInputStreamFactory(Path datasource) {
             super(datasource.toUri());
         }
 
-        public SQLiteInputStreamFactory(Path datasource, Connection conn) {
+        public SQLiteInputStreamFactory(Path datasource, SQLiteStorage sqliteStorage) {
             super(datasource.toUri());
-            this.conn = conn;
+            this.sqliteStorage = sqliteStorage;
         }
 
         @Override
@@ -681,23 +673,14 @@ public boolean checkIfDataSourceExists() {
         @Override
         public SeekableInputStream getSeekableInputStream(String identifier) throws IOException {
             try {
-                byte[] bytes = null;
-                if (conn == null || conn.isClosed()) {
-                    conn = getSQLiteStorageCon(Paths.get(getDataSourceURI()).toFile());
+                if (sqliteStorage == null || sqliteStorage.isClosed()) {
+                    sqliteStorage = getSQLiteStorage(Paths.get(getDataSourceURI()).toFile());
                 }
-                try (PreparedStatement ps = conn.prepareStatement(SELECT_DATA)) {
-                    ps.setString(1, identifier);
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (rs.next()) {
-                            bytes = rs.getBytes(1);
-                        }
-                    }
+                byte[] bytes = sqliteStorage.getData(identifier);
+                if (bytes == null) {
+                    throw new IOException("Item data not found in storage: " + identifier);
                 }
-                InputStream gzippedIn = new GzipCompressorInputStream(new ByteArrayInputStream(bytes));
-                // gzippedIn = new LZ4BlockInputStream(new ByteArrayInputStream(bytes));
-                bytes = IOUtils.toByteArray(gzippedIn);
-                gzippedIn.close();
-                return new SeekableFileInputStream(new SeekableInMemoryByteChannel(bytes));
+                return StorageBlobCodec.openBlob(bytes, sqliteStorage.getFile().getParentFile());
 
             } catch (Exception e) {
                 e.printStackTrace();
@@ -710,7 +693,7 @@ public SeekableInputStream getSeekableInputStream(String identifier) throws IOEx
     @Override
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new EnableTaskProperty(ENABLE_PARAM), new ExportByCategoriesConfig(),
-                new ExportByKeywordsConfig());
+                new ExportByKeywordsConfig(), new StorageCodecConfig());
     }
 
     @Override
@@ -720,6 +703,7 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         exportByCategories = configurationManager.findObject(ExportByCategoriesConfig.class);
         exportByKeywords = configurationManager.findObject(ExportByKeywordsConfig.class);
         categoryConfig = configurationManager.findObject(CategoryConfig.class);
+        storageCodecConfig = configurationManager.findObject(StorageCodecConfig.class);
 
         if (automaticExportEnabled && !exportByCategories.hasCategoryToExport() && !exportByKeywords.isEnabled()) {
             throw new IPEDException("Inconsistent configuration: " + ENABLE_PARAM + "=true but " + ExportByCategoriesConfig.CONFIG_FILE + "/" + ExportByKeywordsConfig.CONFIG_FILE + " not configured!");
@@ -747,25 +731,17 @@ public void init(ConfigurationManager configurationManager) throws Exception {
     @Override
     public void finish() throws Exception {
         hashMap.clear();
-        if (storageCon.get(output) != null) {
-            for (Entry<Integer, Connection> entry : storageCon.get(output).entrySet()) {
-                Connection con = entry.getValue();
-                if (con != null && !con.isClosed() && !con.getAutoCommit()) {
-                    con.commit();
-                    con.close();
-                    LOGGER.info("Closed connection to storage " + entry.getKey());
-                }
-            }
-            storageCon.remove(output);
-        }
+        closeSQLiteStorage(output);
     }
 
-    public static void commitStorage(File output) throws SQLException {
-        if (storageCon.get(output) != null) {
-            for (Connection con : storageCon.get(output).values()) {
-                if (con != null && !con.isClosed() && !con.getAutoCommit()) {
-                    con.commit();
-                }
+    /**
+     * Waits for pending storage writes to be committed.
+     */
+    public static void commitStorage(File output) throws SQLException, InterruptedException {
+        HashMap<Integer, SQLiteStorage> storages = storageCon.get(output);
+        if (storages != null) {
+            for (SQLiteStorage sqliteStorage : storages.values()) {
+                sqliteStorage.flush();
             }
         }
     }
@@ -819,19 +795,29 @@ private static int deleteIgnoredSubitemsFromFS(SortedDocValues sdv, Path root, F
         return deleted;
     }
 
-    private static int deleteIgnoredSubitemsFromStorage(IPEDSource ipedCase, File output) throws SQLException {
+    private static int deleteIgnoredSubitemsFromStorage(IPEDSource ipedCase, File output)
+            throws SQLException, InterruptedException {
         final AtomicInteger deleted = new AtomicInteger();
         ArrayList<Future<?>> futures = new ArrayList<>();
         ExecutorService executor = Executors.newFixedThreadPool(4);
-        // connections were closed in finish(), open them again
-        configureSQLiteStorage(output);
+        // storage writers should be closed in finish(), use exclusive connections
+        closeSQLiteStorage(output);
         Collections.sort(noContentHashes);
-        for (Entry<Integer, Connection> entry : storageCon.get(output).entrySet()) {
+        for (Entry<Integer, File> entry : getStorageFiles(output).entrySet()) {
             Integer storage = entry.getKey();
-            Connection con = entry.getValue();
+            File db = entry.getValue();
+            if (!db.exists()) {
+                continue;
+            }
             futures.add(executor.submit(new Runnable() {
                 @Override
                 public void run() {
+                    Connection con;
+                    try {
+                        con = getSQLiteConnection(db);
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
                     try (PreparedStatement ps = con.prepareStatement(SELECT_IDS_WITH_DATA);
                             PreparedStatement ps2 = con.prepareStatement(CLEAR_DATA);
                             Statement ps3 = con.createStatement()) {
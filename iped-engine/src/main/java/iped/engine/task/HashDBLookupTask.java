@@ -24,6 +24,7 @@
 import iped.engine.config.HashTaskConfig;
 import iped.engine.config.LocalConfig;
 import iped.engine.hashdb.HashDB;
+import iped.engine.hashdb.HashDBCache;
 import iped.engine.hashdb.HashDBDataSource;
 import iped.parsers.util.ChildPornHashLookup;
 import iped.parsers.util.ChildPornHashLookup.LookupProvider;
@@ -50,7 +51,10 @@ public class HashDBLookupTask extends AbstractTask {
     private static final AtomicLong totProcessed = new AtomicLong();
     private static final AtomicLong totFound = new AtomicLong();
 
+    private static final File cacheDir = new File(System.getProperty("user.home"), ".iped");
+
     private static File hashDBFile;
+    private static HashDBCache hashDBCache;
     private static String[] hashesAttributes;
 
     private HashDBDataSource hashDBDataSource;
@@ -105,6 +109,9 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                             } else {
                                 excludeKnown = hashDBConfig.isExcludeKnown();
                                 hashDBDataSource = new HashDBDataSource(hashDBFile);
+                                if (hashDBConfig.isPreloadHashes()) {
+                                    loadCache();
+                                }
                                 addLookupProvider(hashDBDataSource);
                                 if (hashDBConfig.getNsrlConfig() != null) {
                                     loadNsrlConfig(hashDBConfig.getNsrlConfig());
@@ -125,6 +132,27 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         if (taskEnabled) {
             hashes = new byte[hashesAttributes.length][];
             if (hashDBDataSource == null) hashDBDataSource = new HashDBDataSource(hashDBFile);
+            hashDBDataSource.setCache(hashDBCache);
+        }
+    }
+
+    private void loadCache() {
+        long t = System.currentTimeMillis();
+        File cacheFile = null;
+        boolean exists = false;
+        try {
+            cacheFile = HashDBCache.getCacheFile(cacheDir, hashDBFile);
+            exists = cacheFile.exists();
+            hashDBCache = HashDBCache.open(cacheFile, hashDBFile, hashDBDataSource);
+            long total = 0;
+            for (int i = 0; i < HashDB.hashTypes.length; i++) {
+                total += hashDBCache.size(i);
+            }
+            logger.info("{} hashes preloaded from cache file {} in {} ms.", total, cacheFile.getPath(),
+                    System.currentTimeMillis() - t);
+        } catch (Exception e) {
+            logger.warn("Error " + (exists ? "loading" : "creating") + " hashes cache file " + cacheFile
+                    + ", hashes will be looked up in database.", e);
         }
     }
 
@@ -148,6 +176,10 @@ public void finish() throws Exception {
                 if (hashDBDataSource != null) {
                     hashDBDataSource.close();
                 }
+                if (hashDBCache != null) {
+                    hashDBCache.close();
+                    hashDBCache = null;
+                }
                 if (excluded > 0) {
                     logger.info("Items ignored by hash database lookup: {}", excluded);
                 }
@@ -166,6 +198,11 @@ public boolean isEnabled() {
         return taskEnabled;
     }
 
+    @Override
+    protected boolean isIOBound() {
+        return true;
+    }
+
     public static void setEnabled(boolean enabled) {
         taskEnabled = enabled;
     }
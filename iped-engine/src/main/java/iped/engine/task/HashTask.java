@@ -18,18 +18,24 @@
  */
 package iped.engine.task;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,10 +44,16 @@
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.HashTaskConfig;
+import iped.engine.data.Item;
 import iped.parsers.whatsapp.WhatsAppParser;
+import iped.utils.IOUtil;
 
 /**
  * Classe para calcular e manipular hashes.
+ * 
+ * The read of the content to compute hashes is shared with the tasks that
+ * implement {@link ContentConsumer}, each one receiving the blocks in its own
+ * lane, so they do not read items again.
  */
 public class HashTask extends AbstractTask {
 
@@ -70,10 +82,174 @@ public String toString() {
         }
     }
 
-    private HashMap<String, MessageDigest> digestMap = new LinkedHashMap<String, MessageDigest>();
+    private static final Map<String, LongAdder> hashNanosPerAlgorithm = new ConcurrentHashMap<>();
+    private static final LongAdder hashedBytes = new LongAdder();
+    private static final AtomicBoolean statsPrinted = new AtomicBoolean();
+
+    private List<HashLane> lanes = new ArrayList<>();
+
+    private List<ConsumerLane> consumerLanes;
 
     private HashTaskConfig hashConfig;
 
+    /**
+     * Computes one hash algorithm over the buffers read from the item. Each lane
+     * is run in parallel with the others and with the read of the next buffer.
+     * Lanes are reused between buffers and items, so no objects are allocated
+     * per buffer besides the latch.
+     */
+    private static class HashLane implements Runnable {
+
+        private final String algorithm;
+        private final MessageDigest digest;
+        private final LongAdder nanos;
+
+        private byte[] buf;
+        private int len;
+        private CountDownLatch latch;
+        private volatile Exception exception;
+
+        private HashLane(String algorithm, MessageDigest digest) {
+            this.algorithm = algorithm;
+            this.digest = digest;
+            this.nanos = hashNanosPerAlgorithm.computeIfAbsent(algorithm, a -> new LongAdder());
+        }
+
+        private void submit(byte[] buf, int len, CountDownLatch latch) {
+            this.buf = buf;
+            this.len = len;
+            this.latch = latch;
+            executorService.execute(this);
+        }
+
+        @Override
+        public void run() {
+            long t = System.nanoTime();
+            try {
+                update(buf, len);
+            } catch (Exception e) {
+                exception = e;
+            } finally {
+                nanos.add(System.nanoTime() - t);
+                latch.countDown();
+            }
+        }
+
+        protected void update(byte[] buf, int len) throws IOException {
+            digest.update(buf, 0, len);
+        }
+
+        protected byte[] digest() throws IOException {
+            return digest.digest();
+        }
+
+        protected void reset() {
+            digest.reset();
+            exception = null;
+        }
+    }
+
+    /**
+     * Computes the ed2k hash: MD4 of each 9500 KiB chunk and the MD4 of the
+     * concatenated chunk hashes, if there is more than one chunk. Chunk hashes
+     * are fed directly into the root digest instead of being buffered.
+     */
+    static class Ed2kHashLane extends HashLane {
+
+        private static final int CHUNK_SIZE = 9500 * 1024;
+
+        private final MessageDigest rootDigest;
+        private byte[] firstChunkHash;
+        private int numChunkHashes = 0;
+        private int chunk = 0;
+        private long total = 0;
+
+        Ed2kHashLane(String algorithm, MessageDigest md4) throws NoSuchAlgorithmException {
+            super(algorithm, md4);
+            rootDigest = MessageDigest.getInstance("MD4"); //$NON-NLS-1$
+        }
+
+        private void addChunkHash(byte[] hash) {
+            if (numChunkHashes++ == 0) {
+                firstChunkHash = hash;
+            }
+            rootDigest.update(hash);
+        }
+
+        @Override
+        protected void update(byte[] buffer, int len) throws IOException {
+            MessageDigest md4 = super.digest;
+            if (chunk + len >= CHUNK_SIZE) {
+                int offset = CHUNK_SIZE - chunk;
+                md4.update(buffer, 0, offset);
+                addChunkHash(md4.digest());
+                chunk = len - offset;
+                md4.update(buffer, offset, chunk);
+            } else {
+                md4.update(buffer, 0, len);
+                chunk += len;
+            }
+            total += len;
+        }
+
+        @Override
+        protected byte[] digest() throws IOException {
+            if (total == 0 || total % CHUNK_SIZE != 0) {
+                addChunkHash(super.digest.digest());
+            }
+            byte[] ed2k = numChunkHashes > 1 ? rootDigest.digest() : firstChunkHash;
+            reset();
+            return ed2k;
+        }
+
+        @Override
+        protected void reset() {
+            super.reset();
+            rootDigest.reset();
+            firstChunkHash = null;
+            numChunkHashes = 0;
+            chunk = 0;
+            total = 0;
+        }
+    }
+
+    /**
+     * Passes the buffers read from the item to a {@link ContentConsumer}.
+     */
+    private static class ConsumerLane extends HashLane {
+
+        private final ContentConsumer consumer;
+        private boolean failed;
+
+        private ConsumerLane(ContentConsumer consumer) {
+            super(consumer.getClass().getSimpleName(), null);
+            this.consumer = consumer;
+        }
+
+        /**
+         * Errors of consumers do not fail hashing, they just stop receiving the
+         * content of the item.
+         */
+        @Override
+        protected void update(byte[] buf, int len) {
+            if (failed) {
+                return;
+            }
+            try {
+                consumer.updateContent(buf, len);
+            } catch (Exception e) {
+                failed = true;
+                LOGGER.warn("{} Error passing content to {}: {}", Thread.currentThread().getName(), //$NON-NLS-1$
+                        consumer.getClass().getSimpleName(), e.toString());
+            }
+        }
+
+        @Override
+        protected void reset() {
+            failed = false;
+        }
+    }
+
     @Override
     public boolean isEnabled() {
         return hashConfig.isEnabled();
@@ -89,13 +265,11 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         hashConfig = configurationManager.findObject(HashTaskConfig.class);
 
         for (String algorithm : hashConfig.getAlgorithms()) {
-            MessageDigest digest = null;
             if (!algorithm.equalsIgnoreCase(HASH.EDONKEY.toString())) {
-                digest = MessageDigest.getInstance(algorithm.toUpperCase());
+                lanes.add(new HashLane(algorithm, MessageDigest.getInstance(algorithm.toUpperCase())));
             } else {
-                digest = MessageDigest.getInstance("MD4"); //$NON-NLS-1$
+                lanes.add(new Ed2kHashLane(algorithm, MessageDigest.getInstance("MD4"))); //$NON-NLS-1$
             }
-            digestMap.put(algorithm, digest);
             if (HASH.SHA256.toString().equals(algorithm)) {
                 System.setProperty(WhatsAppParser.SHA256_ENABLED_SYSPROP, Boolean.TRUE.toString());
             }
@@ -108,6 +282,59 @@ public void finish() throws Exception {
         if (!executorService.isShutdown()) {
             executorService.shutdown();
         }
+        if (!statsPrinted.getAndSet(true) && hashedBytes.sum() > 0) {
+            for (HashLane lane : lanes) {
+                long nanos = hashNanosPerAlgorithm.get(lane.algorithm).sum();
+                LOGGER.info("Hash {} throughput: {} MB/s of hashing thread time", lane.algorithm, //$NON-NLS-1$
+                        nanos == 0 ? 0 : hashedBytes.sum() * 1000 / nanos);
+            }
+        }
+    }
+
+    /**
+     * Opens a stream to read item content. Items stored in a local file are read
+     * directly from a FileChannel, bypassing buffering and data source layers.
+     */
+    private InputStream openInputStream(IItem evidence, File file) throws IOException {
+        if (file != null) {
+            return Channels.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+        }
+        return evidence.getBufferedInputStream();
+    }
+
+    private File getLocalFile(IItem evidence) throws IOException {
+        File file = null;
+        if (IOUtil.hasFile(evidence)) {
+            file = IOUtil.getFile(evidence);
+        } else if (evidence instanceof Item && ((Item) evidence).hasTmpFile()) {
+            file = evidence.getTempFile();
+        }
+        if (file != null && file.isFile() && file.length() == evidence.getLength()) {
+            return file;
+        }
+        return null;
+    }
+
+    private List<ConsumerLane> getConsumerLanes() {
+        if (consumerLanes == null) {
+            consumerLanes = new ArrayList<>();
+            if (worker != null) {
+                for (AbstractTask task : worker.tasks) {
+                    if (task instanceof ContentConsumer && task != this && task.isEnabled()) {
+                        consumerLanes.add(new ConsumerLane((ContentConsumer) task));
+                    }
+                }
+            }
+        }
+        return consumerLanes;
+    }
+
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int len = 0, i = 0;
+        while (len < buf.length && (i = in.read(buf, len, buf.length - len)) != -1) {
+            len += i;
+        }
+        return len == 0 && i == -1 ? -1 : len;
     }
 
     public void process(IItem evidence) {
@@ -116,7 +343,7 @@ public void process(IItem evidence) {
             return;
         }
 
-        if (evidence.getHash() != null || digestMap.isEmpty()
+        if (evidence.getHash() != null || lanes.isEmpty()
                 || evidence.getExtraAttribute(IgnoreHardLinkTask.IGNORE_HARDLINK_ATTR) != null) {
             return;
         }
@@ -126,67 +353,71 @@ public void process(IItem evidence) {
             return;
         }
 
-        try (InputStream in = evidence.getBufferedInputStream()) {
+        CountDownLatch countDown = null;
+        List<HashLane> itemLanes = new ArrayList<>(lanes);
+        for (ConsumerLane lane : getConsumerLanes()) {
+            if (lane.consumer.beginContent(evidence)) {
+                lane.reset();
+                itemLanes.add(lane);
+            }
+        }
+
+        File file = null;
+        try {
+            file = getLocalFile(evidence);
+        } catch (IOException e) {
+            // ignore, content will be read from data source
+        }
+
+        try (InputStream in = openInputStream(evidence, file)) {
 
             byte[] readBuf = new byte[HASH_BUFFER_LEN];
             byte[] hashBuf = new byte[HASH_BUFFER_LEN];
             byte[] tempBuf = null;
             int len;
 
-            AtomicReference<CountDownLatch> countDown = new AtomicReference<>(null);
-            AtomicReference<Exception> ex = new AtomicReference<Exception>(null);
+            while ((len = readFully(in, readBuf)) >= 0 && !Thread.currentThread().isInterrupted()) {
 
-            while ((len = in.read(readBuf)) >= 0 && !Thread.currentThread().isInterrupted()) {
-
-                if (countDown.get() != null) {
-                    countDown.get().await();
+                if (countDown != null) {
+                    countDown.await();
+                    checkLaneExceptions(itemLanes);
                 }
 
-                countDown.set(new CountDownLatch(digestMap.size()));
+                if (len == 0) {
+                    continue;
+                }
 
                 // swap hashBuf <-> readBuf
                 tempBuf = hashBuf;
                 hashBuf = readBuf;
                 readBuf = tempBuf;
 
-                final int currLen = len;
-                final byte[] currHashBuf = hashBuf;
-                for (String algo : digestMap.keySet()) {
-                    executorService.execute(() -> {
-                        try {
-                            if (!algo.equals(HASH.EDONKEY.toString())) {
-                                digestMap.get(algo).update(currHashBuf, 0, currLen);
-                            } else {
-                                updateEd2k(currHashBuf, currLen);
-                            }
-                        } catch (Exception e) {
-                            ex.set(e);
-                        } finally {
-                            countDown.get().countDown();
-                        }
-                    });
-                }
-
-                if (ex.get() != null) {
-                    throw ex.get();
+                countDown = new CountDownLatch(itemLanes.size());
+                for (HashLane lane : itemLanes) {
+                    lane.submit(hashBuf, len, countDown);
                 }
+                hashedBytes.add(len);
             }
 
-            if (countDown.get() != null) {
-                countDown.get().await();
+            if (countDown != null) {
+                countDown.await();
+                countDown = null;
+                checkLaneExceptions(itemLanes);
             }
 
-            boolean defaultHash = true;
-            for (String algo : digestMap.keySet()) {
-                byte[] hash;
-                if (!algo.equals(HASH.EDONKEY.toString())) {
-                    hash = digestMap.get(algo).digest();
-                } else {
-                    hash = digestEd2k();
+            if (!Thread.currentThread().isInterrupted()) {
+                for (int i = lanes.size(); i < itemLanes.size(); i++) {
+                    ConsumerLane lane = (ConsumerLane) itemLanes.get(i);
+                    if (!lane.failed) {
+                        lane.consumer.endContent(evidence);
+                    }
                 }
+            }
 
-                String hashString = getHashString(hash);
-                evidence.setExtraAttribute(algo, hashString);
+            boolean defaultHash = true;
+            for (HashLane lane : lanes) {
+                String hashString = getHashString(lane.digest());
+                evidence.setExtraAttribute(lane.algorithm, hashString);
 
                 if (defaultHash) {
                     evidence.setHash(hashString);
@@ -203,50 +434,34 @@ public void process(IItem evidence) {
                     e.toString());
             // e.printStackTrace();
 
+            resetLanes(countDown, itemLanes);
         }
 
     }
 
-    private static int CHUNK_SIZE = 9500 * 1024;
-    private int chunk = 0, total = 0;
-    private ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-    private void updateEd2k(byte[] buffer, int len) throws IOException {
-
-        MessageDigest md4 = digestMap.get(HASH.EDONKEY.toString());
-        if (chunk + len >= CHUNK_SIZE) {
-            int offset = CHUNK_SIZE - chunk;
-            md4.update(buffer, 0, offset);
-            out.write(md4.digest());
-            chunk = len - offset;
-            md4.update(buffer, offset, chunk);
-        } else {
-            md4.update(buffer, 0, len);
-            chunk += len;
+    private void checkLaneExceptions(List<HashLane> lanes) throws Exception {
+        for (HashLane lane : lanes) {
+            if (lane.exception != null) {
+                throw lane.exception;
+            }
         }
-        total += len;
     }
 
-    private byte[] digestEd2k() throws IOException {
-
-        MessageDigest md4 = digestMap.get(HASH.EDONKEY.toString());
-        if (total == 0 || total % CHUNK_SIZE != 0) {
-            out.write(md4.digest());
+    /**
+     * Waits running lanes and resets digests state, so a failure does not
+     * corrupt the hashes of next items.
+     */
+    private void resetLanes(CountDownLatch countDown, List<HashLane> lanes) {
+        if (countDown != null) {
+            try {
+                countDown.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
-
-        if (out.size() > md4.getDigestLength()) {
-            md4.update(out.toByteArray());
-            out.reset();
-            out.write(md4.digest());
+        for (HashLane lane : lanes) {
+            lane.reset();
         }
-
-        byte[] ed2k = out.toByteArray();
-
-        chunk = 0;
-        total = 0;
-        out = new ByteArrayOutputStream();
-
-        return ed2k;
     }
 
     public static String getHashString(byte[] hash) {
@@ -197,6 +197,11 @@ public boolean isEnabled() {
         return minIOConfig.isEnabled();
     }
 
+    @Override
+    protected boolean isIOBound() {
+        return true;
+    }
+
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new MinIOConfig());
     }
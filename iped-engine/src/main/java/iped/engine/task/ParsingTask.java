@@ -67,6 +67,7 @@
 import iped.engine.config.ParsingTaskConfig;
 import iped.engine.config.PluginConfig;
 import iped.engine.config.SplitLargeBinaryConfig;
+import iped.engine.core.ItemCostEstimator;
 import iped.engine.core.Statistics;
 import iped.engine.core.Worker;
 import iped.engine.core.Worker.ProcessTime;
@@ -328,6 +329,7 @@ public void process(IItem evidence) throws Exception {
                 synchronized (timesPerParser) {
                     timesPerParser.merge(parserName, diff - st, Long::sum);
                 }
+                ItemCostEstimator.record(evidence, diff);
             }
 
         }
@@ -781,6 +783,10 @@ public void init(ConfigurationManager configurationManager) {
         SplitLargeBinaryConfig splitConfig = configurationManager.findObject(SplitLargeBinaryConfig.class);
         minItemSizeToFragment = splitConfig.getMinItemSizeToFragment();
 
+        if (parsingConfig.getTextCacheMemoryBudget() > 0) {
+            TextCache.setMemoryBudget(parsingConfig.getTextCacheMemoryBudget() * (1L << 20));
+        }
+
         setupParsingOptions(configurationManager);
 
         this.autoParser = new StandardParser();
@@ -0,0 +1,403 @@
+package iped.engine.task;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+/**
+ * One shard of the SQLite storage of item contents and thumbnails.
+ *
+ * Writes are handed off to a dedicated writer thread through a queue bounded
+ * by the size of pending blobs, and are committed in batched transactions, so
+ * workers do not block on SQLite locks. Until committed, written blobs are
+ * served from memory. Reads use a pool of read only connections, which in WAL
+ * mode do not block the writer.
+ *
+ * If a batch fails, its writes are retried one by one. Blobs which still can
+ * not be written are kept in memory, and all later writes, flushes and closing
+ * fail, so callers do not assume they were stored.
+ */
+public class SQLiteStorage {
+
+    private static Logger LOGGER = LogManager.getLogger(SQLiteStorage.class);
+
+    private static final String CREATE_TABLE1 = "CREATE TABLE IF NOT EXISTS thumbs(id TEXT PRIMARY KEY, thumb BLOB);";
+    private static final String CREATE_TABLE2 = "CREATE TABLE IF NOT EXISTS t1(id TEXT PRIMARY KEY, data BLOB);";
+
+    private static final String INSERT_DATA = "INSERT INTO t1(id, data) VALUES(?,?) ON CONFLICT(id) DO UPDATE SET data=? WHERE data IS NULL;";
+    private static final String INSERT_THUMB = "INSERT INTO thumbs(id, thumb) VALUES(?,?) ON CONFLICT(id) DO UPDATE SET thumb=? WHERE thumb IS NULL;"; //$NON-NLS-1$
+
+    private static final String CHECK_DATA = "SELECT id FROM t1 WHERE id=? AND data IS NOT NULL;";
+    private static final String SELECT_DATA = "SELECT data FROM t1 WHERE id=?;";
+    private static final String SELECT_THUMB = "SELECT thumb FROM thumbs WHERE id=?;"; //$NON-NLS-1$
+
+    private static final int SQLITE_CACHE_SIZE = 1 << 24;
+    private static final int SQLITE_READ_CACHE_SIZE = 1 << 22;
+    private static final int BUSY_TIMEOUT = 3600000;
+
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_PENDING_BYTES = 1 << 26;
+    private static final int MAX_POOLED_READ_CONNECTIONS = 8;
+
+    private enum OpType {
+        DATA, THUMB, FLUSH, CLOSE
+    }
+
+    private static class WriteOp {
+
+        private final OpType type;
+        private final String id;
+        private final byte[] bytes;
+        private final CountDownLatch latch;
+
+        private WriteOp(OpType type, String id, byte[] bytes, CountDownLatch latch) {
+            this.type = type;
+            this.id = id;
+            this.bytes = bytes;
+            this.latch = latch;
+        }
+
+        private int getPermits() {
+            return bytes == null ? 0 : Math.min(bytes.length, MAX_PENDING_BYTES);
+        }
+    }
+
+    private final File dbFile;
+    private final boolean readOnly;
+
+    private Connection writeConn;
+    private Thread writerThread;
+    private final BlockingQueue<WriteOp> writeQueue = new LinkedBlockingQueue<>();
+    private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+    private final Map<String, byte[]> pendingData = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> pendingThumbs = new ConcurrentHashMap<>();
+    private volatile SQLException writeError;
+    // sticky, some blob was not written
+    private volatile SQLException failedWrite;
+
+    private final ConcurrentLinkedQueue<Connection> readPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger readPoolSize = new AtomicInteger();
+
+    private volatile boolean closed = false;
+
+    private SQLiteStorage(File dbFile, boolean readOnly) {
+        this.dbFile = dbFile;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Opens the storage for writing, creating its tables if needed and starting
+     * its writer thread.
+     */
+    public static SQLiteStorage open(File dbFile) throws SQLException {
+        SQLiteStorage storage = new SQLiteStorage(dbFile, false);
+        storage.writeConn = storage.createWriteConnection();
+        try (Statement stmt = storage.writeConn.createStatement()) {
+            stmt.executeUpdate(CREATE_TABLE1);
+            stmt.executeUpdate(CREATE_TABLE2);
+        }
+        storage.writeConn.commit();
+        storage.writerThread = new Thread(storage::writeLoop, "SQLiteStorageWriter-" + dbFile.getName()); //$NON-NLS-1$
+        storage.writerThread.setDaemon(true);
+        storage.writerThread.start();
+        return storage;
+    }
+
+    /**
+     * Opens the storage just for reading, e.g. by the analysis UI.
+     */
+    public static SQLiteStorage openReadOnly(File dbFile) {
+        return new SQLiteStorage(dbFile, true);
+    }
+
+    public File getFile() {
+        return dbFile;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private Connection createWriteConnection() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSynchronous(SynchronousMode.NORMAL);
+        config.setJournalMode(JournalMode.WAL);
+        config.setPragma(Pragma.CACHE_SIZE, "-" + SQLITE_CACHE_SIZE / 1024);
+        config.setBusyTimeout(BUSY_TIMEOUT);
+        Connection conn = config.createConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        conn.setAutoCommit(false);
+        return conn;
+    }
+
+    private Connection createReadConnection() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setPragma(Pragma.CACHE_SIZE, "-" + SQLITE_READ_CACHE_SIZE / 1024);
+        config.setBusyTimeout(BUSY_TIMEOUT);
+        return config.createConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+    }
+
+    private Connection borrowReadConnection() throws SQLException {
+        Connection conn = readPool.poll();
+        if (conn != null) {
+            readPoolSize.decrementAndGet();
+            return conn;
+        }
+        return createReadConnection();
+    }
+
+    private void releaseReadConnection(Connection conn) {
+        if (!closed && readPoolSize.incrementAndGet() <= MAX_POOLED_READ_CONNECTIONS) {
+            readPool.offer(conn);
+            return;
+        }
+        readPoolSize.decrementAndGet();
+        closeQuietly(conn);
+    }
+
+    private byte[] selectBlob(String sql, String id) throws SQLException {
+        Connection conn = borrowReadConnection();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getBytes(1) : null;
+            }
+        } finally {
+            releaseReadConnection(conn);
+        }
+    }
+
+    public boolean containsData(String id) throws SQLException {
+        if (pendingData.containsKey(id)) {
+            return true;
+        }
+        Connection conn = borrowReadConnection();
+        try (PreparedStatement ps = conn.prepareStatement(CHECK_DATA)) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } finally {
+            releaseReadConnection(conn);
+        }
+    }
+
+    /**
+     * @return the (compressed) data stored with this id or null if not found
+     */
+    public byte[] getData(String id) throws SQLException {
+        byte[] data = pendingData.get(id);
+        return data != null ? data : selectBlob(SELECT_DATA, id);
+    }
+
+    /**
+     * @return the thumbnail stored with this id or null if not found
+     */
+    public byte[] getThumb(String id) throws SQLException {
+        byte[] thumb = pendingThumbs.get(id);
+        return thumb != null ? thumb : selectBlob(SELECT_THUMB, id);
+    }
+
+    /**
+     * Queues the data to be written. Blocks if too many bytes are waiting to be
+     * written.
+     */
+    public void insertData(String id, byte[] data) throws SQLException, InterruptedException {
+        enqueue(new WriteOp(OpType.DATA, id, data, null), pendingData);
+    }
+
+    /**
+     * Queues the thumbnail to be written. Blocks if too many bytes are waiting to
+     * be written.
+     */
+    public void insertThumb(String id, byte[] thumb) throws SQLException, InterruptedException {
+        enqueue(new WriteOp(OpType.THUMB, id, thumb, null), pendingThumbs);
+    }
+
+    private void enqueue(WriteOp op, Map<String, byte[]> pending) throws SQLException, InterruptedException {
+        checkWritable();
+        pendingBytes.acquire(op.getPermits());
+        pending.put(op.id, op.bytes);
+        writeQueue.add(op);
+    }
+
+    private void checkWritable() throws SQLException {
+        if (readOnly || closed) {
+            throw new IllegalStateException("Storage not opened for writing: " + dbFile.getAbsolutePath()); //$NON-NLS-1$
+        }
+        if (!writerThread.isAlive()) {
+            throw new SQLException("Storage writer is not running: " + dbFile.getAbsolutePath(), writeError); //$NON-NLS-1$
+        }
+        throwFailedWrite();
+    }
+
+    private void throwFailedWrite() throws SQLException {
+        SQLException e = failedWrite;
+        if (e != null) {
+            throw new SQLException("Previous write failed, storage " + dbFile.getAbsolutePath(), e); //$NON-NLS-1$
+        }
+    }
+
+    private void throwWriteError() throws SQLException {
+        throwFailedWrite();
+        SQLException e = writeError;
+        if (e != null) {
+            writeError = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all queued writes are committed. Throws the last write error,
+     * if any happened since last flush.
+     */
+    public void flush() throws SQLException, InterruptedException {
+        if (readOnly || closed) {
+            return;
+        }
+        checkWritable();
+        CountDownLatch latch = new CountDownLatch(1);
+        writeQueue.add(new WriteOp(OpType.FLUSH, null, null, latch));
+        latch.await();
+        throwWriteError();
+    }
+
+    /**
+     * Commits all queued writes and closes all connections. The journal mode is
+     * set back to TRUNCATE, so the storage can be opened from read only media.
+     */
+    public synchronized void close() throws SQLException, InterruptedException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Connection conn;
+        while ((conn = readPool.poll()) != null) {
+            closeQuietly(conn);
+        }
+        if (!readOnly) {
+            writeQueue.add(new WriteOp(OpType.CLOSE, null, null, null));
+            writerThread.join();
+            try (Statement stmt = writeConn.createStatement()) {
+                writeConn.setAutoCommit(true);
+                stmt.execute("PRAGMA journal_mode=TRUNCATE"); //$NON-NLS-1$
+            } finally {
+                writeConn.close();
+            }
+            throwWriteError();
+        }
+    }
+
+    private void writeLoop() {
+        List<WriteOp> batch = new ArrayList<>();
+        boolean close = false;
+        try (PreparedStatement psData = writeConn.prepareStatement(INSERT_DATA);
+                PreparedStatement psThumb = writeConn.prepareStatement(INSERT_THUMB)) {
+            while (!close) {
+                batch.add(writeQueue.take());
+                writeQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                List<WriteOp> failed = new ArrayList<>();
+                try {
+                    writeBatch(batch, psData, psThumb);
+
+                } catch (SQLException e) {
+                    LOGGER.warn("Error writing batch to storage " + dbFile.getAbsolutePath() + ", retrying one by one", //$NON-NLS-1$ //$NON-NLS-2$
+                            e);
+                    rollbackQuietly(psData, psThumb);
+                    for (WriteOp op : batch) {
+                        try {
+                            writeBatch(Collections.singletonList(op), psData, psThumb);
+                        } catch (SQLException e1) {
+                            LOGGER.error("Error writing " + op.id + " to storage " + dbFile.getAbsolutePath(), e1); //$NON-NLS-1$ //$NON-NLS-2$
+                            rollbackQuietly(psData, psThumb);
+                            failed.add(op);
+                            failedWrite = e1;
+                        }
+                    }
+                } finally {
+                    for (WriteOp op : batch) {
+                        if (op.type == OpType.CLOSE) {
+                            close = true;
+                        } else if (failed.contains(op)) {
+                            // kept pending, so it is still readable by this process
+                            continue;
+                        } else if (op.type == OpType.DATA) {
+                            pendingData.remove(op.id, op.bytes);
+                        } else if (op.type == OpType.THUMB) {
+                            pendingThumbs.remove(op.id, op.bytes);
+                        } else if (op.latch != null) {
+                            op.latch.countDown();
+                        }
+                        pendingBytes.release(op.getPermits());
+                    }
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Storage writer interrupted: {}", dbFile.getAbsolutePath()); //$NON-NLS-1$
+        } catch (SQLException e) {
+            LOGGER.error("Error preparing storage writer " + dbFile.getAbsolutePath(), e); //$NON-NLS-1$
+            writeError = e;
+        }
+    }
+
+    private void writeBatch(List<WriteOp> ops, PreparedStatement psData, PreparedStatement psThumb)
+            throws SQLException {
+        for (WriteOp op : ops) {
+            if (op.type == OpType.DATA || op.type == OpType.THUMB) {
+                PreparedStatement ps = op.type == OpType.DATA ? psData : psThumb;
+                ps.setString(1, op.id);
+                ps.setBytes(2, op.bytes);
+                ps.setBytes(3, op.bytes);
+                ps.addBatch();
+            }
+        }
+        psData.executeBatch();
+        psThumb.executeBatch();
+        writeConn.commit();
+    }
+
+    private void rollbackQuietly(PreparedStatement psData, PreparedStatement psThumb) {
+        try {
+            psData.clearBatch();
+            psThumb.clearBatch();
+        } catch (SQLException e) {
+            LOGGER.debug("Error clearing storage batch", e); //$NON-NLS-1$
+        }
+        try {
+            writeConn.rollback();
+        } catch (SQLException e) {
+            LOGGER.debug("Error rolling back storage transaction", e); //$NON-NLS-1$
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
+}
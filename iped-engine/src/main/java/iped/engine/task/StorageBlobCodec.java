@@ -0,0 +1,407 @@
+package iped.engine.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tika.mime.MediaType;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+
+import iped.engine.config.StorageCodecConfig;
+import iped.engine.config.StorageCodecConfig.Codec;
+import iped.io.SeekableInputStream;
+import iped.utils.SeekableFileInputStream;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * Encodes and decodes item contents stored in case SQLite storages.
+ *
+ * Besides legacy gzip blobs, contents are stored in a chunked format: a header
+ * with the codec, chunk size, uncompressed length and the compressed length of
+ * each chunk, followed by the independently compressed chunks. So
+ * {@link #openBlob(byte[], File)} can seek to any position decompressing just
+ * the chunk containing it. Chunks that do not shrink are stored uncompressed.
+ *
+ * Small items can be compressed with a zstd dictionary, trained from the first
+ * small items stored and saved in the storage folder.
+ */
+public class StorageBlobCodec {
+
+    private static Logger LOGGER = LogManager.getLogger(StorageBlobCodec.class);
+
+    private static final byte[] MAGIC = { 'I', 'C', 'B', 1 };
+    private static final int FLAG_DICT = 1;
+    private static final int HEADER_LEN = MAGIC.length + 1 + 1 + 4 + 4 + 8 + 4;
+
+    private static final String DICT_FILE = "zstd.dict"; //$NON-NLS-1$
+    private static final int DICT_SIZE = 1 << 16;
+    private static final int DICT_SAMPLES_SIZE = 1 << 22;
+    private static final int DICT_MAX_SAMPLES = 2000;
+
+    private static final LZ4Factory lz4Factory = LZ4Factory.fastestInstance();
+
+    private static final Map<File, ZstdDictionary> readDictionaries = new ConcurrentHashMap<>();
+
+    private final StorageCodecConfig config;
+    private final File storageDir;
+
+    private volatile ZstdDictionary dictionary;
+    private ZstdDictTrainer trainer;
+    private int numSamples = 0;
+    private boolean trainingDone = false;
+
+    private static class ZstdDictionary {
+
+        private final byte[] bytes;
+        private final int checksum;
+        private ZstdDictCompress compress;
+        private ZstdDictDecompress decompress;
+
+        private ZstdDictionary(byte[] bytes) {
+            this.bytes = bytes;
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            this.checksum = (int) crc.getValue();
+        }
+    }
+
+    public StorageBlobCodec(StorageCodecConfig config, File storageDir) {
+        this.config = config;
+        this.storageDir = storageDir;
+        if (config.isZstdDictionary()) {
+            File dictFile = new File(storageDir, DICT_FILE);
+            if (dictFile.exists()) {
+                try {
+                    dictionary = new ZstdDictionary(Files.readAllBytes(dictFile.toPath()));
+                    dictionary.compress = new ZstdDictCompress(dictionary.bytes, config.getZstdLevel());
+                    trainingDone = true;
+                } catch (IOException e) {
+                    LOGGER.warn("Error loading zstd dictionary " + dictFile.getAbsolutePath(), e); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    /**
+     * Compresses the content with the codec configured for its media type.
+     */
+    public byte[] encode(byte[] buf, int len, MediaType mediaType) throws IOException {
+        Codec codec = config.getCodec(mediaType);
+        if (codec == Codec.GZIP) {
+            return encodeGzip(buf, len);
+        }
+        ZstdDictionary dict = null;
+        if (codec == Codec.ZSTD && config.isZstdDictionary() && len <= config.getZstdDictionaryMaxItemSize()) {
+            dict = dictionary;
+            if (dict == null) {
+                addDictionarySample(buf, len);
+            }
+        }
+        int chunkSize = config.getChunkSize();
+        int numChunks = len == 0 ? 0 : (len - 1) / chunkSize + 1;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LEN + numChunks * 4);
+        header.put(MAGIC);
+        header.put((byte) codec.ordinal());
+        header.put((byte) (dict != null ? FLAG_DICT : 0));
+        header.putInt(dict != null ? dict.checksum : 0);
+        header.putInt(chunkSize);
+        header.putLong(len);
+        header.putInt(numChunks);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(len / 2 + header.capacity());
+        baos.write(header.array(), 0, header.capacity());
+        byte[] out = new byte[maxCompressedLength(codec, Math.min(chunkSize, len))];
+        for (int i = 0; i < numChunks; i++) {
+            int off = i * chunkSize;
+            int chunkLen = Math.min(chunkSize, len - off);
+            int compressedLen = compress(codec, dict, buf, off, chunkLen, out);
+            if (compressedLen < 0 || compressedLen >= chunkLen) {
+                // negative length means uncompressed chunk
+                header.putInt(HEADER_LEN + i * 4, -chunkLen);
+                baos.write(buf, off, chunkLen);
+            } else {
+                header.putInt(HEADER_LEN + i * 4, compressedLen);
+                baos.write(out, 0, compressedLen);
+            }
+        }
+        byte[] result = baos.toByteArray();
+        System.arraycopy(header.array(), 0, result, 0, header.capacity());
+        return result;
+    }
+
+    private static byte[] encodeGzip(byte[] buf, int len) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        GzipParameters params = new GzipParameters();
+        params.setCompressionLevel(Deflater.BEST_SPEED);
+        try (OutputStream gzippedOut = new GzipCompressorOutputStream(baos, params)) {
+            gzippedOut.write(buf, 0, len);
+        }
+        return baos.toByteArray();
+    }
+
+    private static int maxCompressedLength(Codec codec, int len) {
+        switch (codec) {
+            case ZSTD:
+                return (int) Zstd.compressBound(len);
+            case LZ4:
+                return lz4Factory.fastCompressor().maxCompressedLength(len);
+            default:
+                return 0;
+        }
+    }
+
+    private int compress(Codec codec, ZstdDictionary dict, byte[] buf, int off, int len, byte[] out) {
+        long result;
+        switch (codec) {
+            case ZSTD:
+                if (dict != null) {
+                    result = Zstd.compressFastDict(out, 0, buf, off, len, dict.compress);
+                } else {
+                    result = Zstd.compressByteArray(out, 0, out.length, buf, off, len, config.getZstdLevel());
+                }
+                return Zstd.isError(result) ? -1 : (int) result;
+            case LZ4:
+                LZ4Compressor compressor = lz4Factory.fastCompressor();
+                return compressor.compress(buf, off, len, out, 0, out.length);
+            default:
+                return -1;
+        }
+    }
+
+    private void addDictionarySample(byte[] buf, int len) {
+        ZstdDictTrainer fullTrainer = null;
+        synchronized (this) {
+            if (trainingDone) {
+                return;
+            }
+            if (trainer == null) {
+                trainer = new ZstdDictTrainer(DICT_SAMPLES_SIZE, DICT_SIZE);
+            }
+            byte[] sample = len == buf.length ? buf : Arrays.copyOf(buf, len);
+            if (!trainer.addSample(sample) || ++numSamples >= DICT_MAX_SAMPLES) {
+                fullTrainer = trainer;
+                trainer = null;
+                trainingDone = true;
+            }
+        }
+        if (fullTrainer != null) {
+            trainDictionary(fullTrainer);
+        }
+    }
+
+    private void trainDictionary(ZstdDictTrainer fullTrainer) {
+        long t = System.currentTimeMillis();
+        try {
+            ZstdDictionary dict = new ZstdDictionary(fullTrainer.trainSamples());
+            dict.compress = new ZstdDictCompress(dict.bytes, config.getZstdLevel());
+            File dictFile = new File(storageDir, DICT_FILE);
+            File tmp = new File(storageDir, DICT_FILE + ".tmp"); //$NON-NLS-1$
+            Files.write(tmp.toPath(), dict.bytes);
+            Files.move(tmp.toPath(), dictFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dictionary = dict;
+            LOGGER.info("zstd dictionary trained in {}ms: {}", System.currentTimeMillis() - t, //$NON-NLS-1$
+                    dictFile.getAbsolutePath());
+        } catch (Exception e) {
+            LOGGER.warn("Error training zstd dictionary, small items will be compressed without it.", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Opens a stream to read a stored blob.
+     *
+     * @param storageDir
+     *            folder of the storage, where the zstd dictionary is saved
+     */
+    public static SeekableInputStream openBlob(byte[] blob, File storageDir) throws IOException {
+        if (!isChunkedBlob(blob)) {
+            // legacy gzip format
+            try (InputStream gzippedIn = new GzipCompressorInputStream(new ByteArrayInputStream(blob))) {
+                byte[] bytes = IOUtils.toByteArray(gzippedIn);
+                return new SeekableFileInputStream(new SeekableInMemoryByteChannel(bytes));
+            }
+        }
+        return new ChunkedBlobInputStream(blob, storageDir);
+    }
+
+    private static boolean isChunkedBlob(byte[] blob) {
+        if (blob.length < HEADER_LEN) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (blob[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ZstdDictDecompress getReadDictionary(File storageDir, int checksum) throws IOException {
+        ZstdDictionary dict = readDictionaries.get(storageDir);
+        if (dict == null || dict.checksum != checksum) {
+            synchronized (readDictionaries) {
+                dict = readDictionaries.get(storageDir);
+                if (dict == null || dict.checksum != checksum) {
+                    dict = new ZstdDictionary(Files.readAllBytes(new File(storageDir, DICT_FILE).toPath()));
+                    if (dict.checksum != checksum) {
+                        throw new IOException("zstd dictionary does not match: " + storageDir.getAbsolutePath()); //$NON-NLS-1$
+                    }
+                    dict.decompress = new ZstdDictDecompress(dict.bytes);
+                    readDictionaries.put(storageDir, dict);
+                }
+            }
+        }
+        return dict.decompress;
+    }
+
+    private static class ChunkedBlobInputStream extends SeekableInputStream {
+
+        private final byte[] blob;
+        private final Codec codec;
+        private final ZstdDictDecompress dict;
+        private final int chunkSize;
+        private final long length;
+        private final int[] chunkLens;
+        private final int[] chunkOffsets;
+
+        private byte[] chunk;
+        private int currentChunk = -1;
+        private long pos = 0;
+
+        private ChunkedBlobInputStream(byte[] blob, File storageDir) throws IOException {
+            this.blob = blob;
+            ByteBuffer header = ByteBuffer.wrap(blob);
+            header.position(MAGIC.length);
+            codec = Codec.values()[header.get()];
+            int flags = header.get();
+            int dictChecksum = header.getInt();
+            chunkSize = header.getInt();
+            length = header.getLong();
+            int numChunks = header.getInt();
+            chunkLens = new int[numChunks];
+            chunkOffsets = new int[numChunks];
+            int offset = HEADER_LEN + numChunks * 4;
+            for (int i = 0; i < numChunks; i++) {
+                chunkLens[i] = header.getInt();
+                chunkOffsets[i] = offset;
+                offset += Math.abs(chunkLens[i]);
+            }
+            dict = (flags & FLAG_DICT) != 0 ? getReadDictionary(storageDir, dictChecksum) : null;
+        }
+
+        private void loadChunk(int idx) throws IOException {
+            if (idx == currentChunk) {
+                return;
+            }
+            int rawLen = (int) Math.min(chunkSize, length - (long) idx * chunkSize);
+            if (chunk == null || chunk.length < rawLen) {
+                chunk = new byte[rawLen];
+            }
+            int compressedLen = chunkLens[idx];
+            if (compressedLen < 0) {
+                System.arraycopy(blob, chunkOffsets[idx], chunk, 0, rawLen);
+            } else if (codec == Codec.ZSTD) {
+                long result;
+                if (dict != null) {
+                    result = Zstd.decompressFastDict(chunk, 0, blob, chunkOffsets[idx], compressedLen, dict);
+                } else {
+                    result = Zstd.decompressByteArray(chunk, 0, rawLen, blob, chunkOffsets[idx], compressedLen);
+                }
+                if (Zstd.isError(result) || result != rawLen) {
+                    throw new IOException("Error decompressing zstd chunk " + idx); //$NON-NLS-1$
+                }
+            } else if (codec == Codec.LZ4) {
+                LZ4SafeDecompressor decompressor = lz4Factory.safeDecompressor();
+                int result = decompressor.decompress(blob, chunkOffsets[idx], compressedLen, chunk, 0, rawLen);
+                if (result != rawLen) {
+                    throw new IOException("Error decompressing lz4 chunk " + idx); //$NON-NLS-1$
+                }
+            } else {
+                throw new IOException("Unknown storage codec " + codec); //$NON-NLS-1$
+            }
+            currentChunk = idx;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= length) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int idx = (int) (pos / chunkSize);
+            loadChunk(idx);
+            int chunkPos = (int) (pos - (long) idx * chunkSize);
+            int rawLen = (int) Math.min(chunkSize, length - (long) idx * chunkSize);
+            int n = Math.min(len, rawLen - chunkPos);
+            System.arraycopy(chunk, chunkPos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int i = read(b, 0, 1);
+            return i == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long newPos = Math.min(length, pos + Math.max(n, 0));
+            long skipped = newPos - pos;
+            pos = newPos;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, length - pos);
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            this.pos = pos;
+        }
+
+        @Override
+        public long position() throws IOException {
+            return pos;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunk = null;
+        }
+    }
+
+}
@@ -38,6 +38,11 @@ public boolean isEnabled() {
         return isEnabled;
     }
 
+    @Override
+    protected boolean isIOBound() {
+        return true;
+    }
+
     @Override
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new TempFileTaskConfig());
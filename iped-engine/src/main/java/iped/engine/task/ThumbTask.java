@@ -2,9 +2,6 @@
 
 import java.io.File;
 import java.nio.file.Files;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
@@ -16,9 +13,6 @@ public abstract class ThumbTask extends AbstractTask {
     public static final String thumbsFolder = "thumbs"; //$NON-NLS-1$
     public static final String HAS_THUMB = "hasThumb"; //$NON-NLS-1$
 
-    private static final String SELECT_THUMB = "SELECT thumb FROM thumbs WHERE id=?;"; //$NON-NLS-1$
-    private static final String INSERT_THUMB = "INSERT INTO thumbs(id, thumb) VALUES(?,?) ON CONFLICT(id) DO UPDATE SET thumb=? WHERE thumb IS NULL;"; //$NON-NLS-1$
-
     protected File getThumbFile(IItem evidence) throws Exception {
         File thumbFile = null;
 
@@ -37,26 +31,16 @@ protected boolean hasThumb(IItem evidence, File thumbFile) throws Exception {
             return true;
         }
         if (thumbFile == null) {
-            Connection con = ExportFileTask.getSQLiteStorageCon(output, evidence.getHashValue().getBytes());
-            try (PreparedStatement ps = con.prepareStatement(SELECT_THUMB)) {
-                ps.setString(1, evidence.getHash());
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    byte[] thumb = rs.getBytes(1);
-                    if (thumb != null) {
-                        evidence.setThumb(thumb);
-                        if (thumb.length > 0) {
-                            evidence.setExtraAttribute(HAS_THUMB, true);
-                        } else {
-                            evidence.setExtraAttribute(HAS_THUMB, false);
-                        }
-                        rs.close();
-                        ps.close();
-                        return true;
-                    }
+            SQLiteStorage storage = ExportFileTask.getSQLiteStorage(output, evidence.getHashValue().getBytes());
+            byte[] thumb = storage.getThumb(evidence.getHash());
+            if (thumb != null) {
+                evidence.setThumb(thumb);
+                if (thumb.length > 0) {
+                    evidence.setExtraAttribute(HAS_THUMB, true);
+                } else {
+                    evidence.setExtraAttribute(HAS_THUMB, false);
                 }
-                rs.close();
-                ps.close();
+                return true;
             }
         } else {
             // if exists, do not need to compute again
@@ -80,14 +64,8 @@ protected void saveThumb(IItem evidence, File thumbFile) throws Throwable {
                 evidence.setThumb(new byte[0]); // zero size thumb means thumb error
             }
             if (thumbFile == null) {
-                Connection con = ExportFileTask.getSQLiteStorageCon(output, evidence.getHashValue().getBytes());
-                try (PreparedStatement ps = con.prepareStatement(INSERT_THUMB)) {
-                    ps.setString(1, evidence.getHash());
-                    ps.setBytes(2, evidence.getThumb());
-                    ps.setBytes(3, evidence.getThumb());
-                    ps.executeUpdate();
-                    ps.close();
-                }
+                SQLiteStorage storage = ExportFileTask.getSQLiteStorage(output, evidence.getHashValue().getBytes());
+                storage.insertThumb(evidence.getHash(), evidence.getThumb());
             } else {
                 if (!thumbFile.getParentFile().exists()) {
                     thumbFile.getParentFile().mkdirs();
@@ -3,16 +3,20 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.TreeMap;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.tika.mime.MediaType;
-import org.arabidopsis.ahocorasick.AhoCorasick;
-import org.arabidopsis.ahocorasick.SearchResult;
-import org.arabidopsis.ahocorasick.Searcher;
+import org.arabidopsis.ahocorasick.CompiledAhoCorasick;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,6 +31,7 @@
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.FileSystemConfig;
 import iped.engine.data.Item;
+import iped.io.SeekableInputStream;
 import iped.properties.MediaTypes;
 import iped.utils.IOUtil;
 
@@ -36,6 +41,20 @@
  * Assim, o algoritmo é independente do número de assinaturas pesquisadas, sendo
  * proporcional ao volume de dados de entrada e ao número de padrões
  * descobertos.
+ * 
+ * O buffer lido é pesquisado no próprio local com a versão compilada da
+ * máquina de estados, que notifica as ocorrências pelo id da saída, sem criar
+ * objetos por ocorrência.
+ * 
+ * Itens maiores que o dobro de parallelChunkSize, como grandes áreas não
+ * alocadas, são divididos em faixas carveadas em paralelo. Cada faixa é lida
+ * além do seu fim pelo maior maxLength configurado, limitado a 1/4 de
+ * parallelChunkSize, e só são mantidos os itens cujo cabeçalho está na própria
+ * faixa, sem duplicatas nas fronteiras. Itens maiores que esse limite iniciados
+ * perto do fim de uma faixa podem ser truncados. O próprio worker carveia as
+ * faixas, ajudado por threads que só rodam se obtiverem permissões de CPU
+ * livres, para não sobrecarregar os processadores. Os itens são entregues na
+ * ordem das faixas, após o fim de todas.
  */
 public class CarverTask extends BaseCarveTask {
 
@@ -46,6 +65,17 @@ public class CarverTask extends BaseCarveTask {
     private static Logger LOGGER = LoggerFactory.getLogger(CarverTask.class);
     private static int largestPatternLen = 100;
 
+    // signature, sequence and carver type index of each output id of the tree
+    private static Signature[] outputSigs;
+    private static int[] outputSeqs;
+    private static int[] outputTypes;
+
+    private static final int MAX_OVERLAP_DIVISOR = 4;
+
+    private static long parallelChunkSize = 0;
+    private static long chunkOverlap = 0;
+    private static ExecutorService chunkExecutor;
+
     protected HashMap<CarverType, Carver> registeredCarvers = new HashMap<CarverType, Carver>();
     private CarvedItemListener carvedItemListener = null;
     IItem evidence;
@@ -53,7 +83,71 @@ public class CarverTask extends BaseCarveTask {
     long prevLen = 0;
     int len = 0, k = 0;
     byte[] buf = new byte[1024 * 1024];
-    byte[] cBuf;
+    PartialHits[] partialHits;
+
+    // range of the item owned by this instance, when carving in parallel
+    long rangeStart, rangeEnd;
+    List<CarvedInRange> carvedInRange;
+
+    private static class CarvedInRange {
+
+        private final IItem item;
+        private final long offset;
+
+        private CarvedInRange(IItem item, long offset) {
+            this.item = item;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Number of sequences found so far of split signatures (with ?), by their
+     * offset. Keeps the largestPatternLen entries with greatest offsets, like
+     * the TreeMap used before, in primitive arrays.
+     */
+    private static class PartialHits {
+
+        private final long[] offsets = new long[largestPatternLen];
+        private final int[] hits = new int[largestPatternLen];
+        private int size = 0;
+
+        private int indexOf(long offset) {
+            for (int i = 0; i < size; i++) {
+                if (offsets[i] == offset) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int get(long offset) {
+            int i = indexOf(offset);
+            return i == -1 ? 0 : hits[i];
+        }
+
+        private void put(long offset, int value) {
+            int i = indexOf(offset);
+            if (i == -1) {
+                if (size < offsets.length) {
+                    i = size++;
+                } else {
+                    // replaces the smallest offset, the new one may be smaller
+                    int min = 0;
+                    for (int j = 1; j < size; j++) {
+                        if (offsets[j] < offsets[min]) {
+                            min = j;
+                        }
+                    }
+                    if (offset < offsets[min]) {
+                        return;
+                    }
+                    i = min;
+                }
+                offsets[i] = offset;
+            }
+            hits[i] = value;
+        }
+    }
 
     public static void setEnabled(boolean enabled) {
         enableCarving = enabled;
@@ -117,7 +211,12 @@ private void safeProcess(IItem evidence) {
 
             clearExtraAttributes(evidence);
 
-            findSig(tis);
+            Long length = evidence.getLength();
+            if (parallelChunkSize > 0 && length != null && length - prevLen > 2 * parallelChunkSize) {
+                carveInParallel(prevLen, length);
+            } else {
+                findSig(tis);
+            }
 
         } catch (Exception t) {
             LOGGER.warn("{} Error carving on {} {}", Thread.currentThread().getName(), evidence.getPath(), //$NON-NLS-1$
@@ -130,6 +229,95 @@ private void safeProcess(IItem evidence) {
 
     }
 
+    private static synchronized ExecutorService getChunkExecutor() {
+        if (chunkExecutor == null) {
+            chunkExecutor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return chunkExecutor;
+    }
+
+    private void carveInParallel(long start, long end) throws InterruptedException {
+        int numRanges = (int) ((end - start + parallelChunkSize - 1) / parallelChunkSize);
+        CarverTask[] ranges = new CarverTask[numRanges];
+        for (int i = 0; i < numRanges; i++) {
+            CarverTask range = new CarverTask();
+            range.setWorker(worker);
+            range.evidence = evidence;
+            range.rangeStart = start + i * parallelChunkSize;
+            range.rangeEnd = Math.min(range.rangeStart + parallelChunkSize, end);
+            range.carvedInRange = new ArrayList<>();
+            ranges[i] = range;
+        }
+        AtomicInteger nextRange = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(numRanges);
+        IntConsumer carveRange = i -> {
+            try {
+                ranges[i].carveRange(Math.min(ranges[i].rangeEnd + chunkOverlap, end));
+            } finally {
+                finished.countDown();
+            }
+        };
+
+        List<Future<?>> helpers = new ArrayList<>();
+        try {
+            int maxHelpers = Math.min(numRanges - 1, Runtime.getRuntime().availableProcessors());
+            for (int i = 0; i < maxHelpers; i++) {
+                helpers.add(getChunkExecutor().submit(() -> {
+                    // a permit of an idle worker is taken for each range, so workers getting
+                    // new items wait at most one range, and cancelled helpers hold none
+                    while (worker.tryAcquireHelperCpuPermit()) {
+                        try {
+                            int range = nextRange.getAndIncrement();
+                            if (range >= numRanges) {
+                                return;
+                            }
+                            carveRange.accept(range);
+                        } finally {
+                            worker.releaseHelperCpuPermit();
+                        }
+                    }
+                }));
+            }
+            // this worker already holds a permit
+            int range;
+            while ((range = nextRange.getAndIncrement()) < numRanges) {
+                carveRange.accept(range);
+            }
+            finished.await();
+
+        } finally {
+            // stops ranges not started yet and interrupts running ones if this worker
+            // was interrupted
+            nextRange.set(numRanges);
+            for (Future<?> helper : helpers) {
+                helper.cancel(true);
+            }
+        }
+
+        for (CarverTask range : ranges) {
+            for (CarvedInRange carved : range.carvedInRange) {
+                addCarvedEvidence((Item) evidence, (Item) carved.item, carved.offset);
+            }
+        }
+    }
+
+    private void carveRange(long readEnd) {
+        try (SeekableInputStream sis = evidence.getSeekableInputStream()) {
+            sis.seek(rangeStart);
+            prevLen = rangeStart;
+            findSig(new BoundedInputStream(sis, readEnd - rangeStart));
+
+        } catch (Exception t) {
+            LOGGER.warn("{} Error carving on {} range {}-{} {}", Thread.currentThread().getName(), //$NON-NLS-1$
+                    evidence.getPath(), rangeStart, rangeEnd, t.toString());
+            t.printStackTrace();
+        }
+    }
+
     private void fillBuf(InputStream in) throws IOException {
         prevLen += len;
         len = 0;
@@ -137,76 +325,76 @@ private void fillBuf(InputStream in) throws IOException {
         while (k != -1 && (len += k) < buf.length) {
             k = in.read(buf, len, buf.length - len);
         }
-
-        cBuf = new byte[len];
-        System.arraycopy(buf, 0, cBuf, 0, len);
-
     }
 
     private Hit findSig(InputStream in) throws Exception {
-        HashMap<CarverType, TreeMap<Long, Integer>> map = new HashMap<>();
-        for (int i = 0; i < carverTypes.length; i++) {
-            map.put(carverTypes[i], new TreeMap<Long, Integer>());
-        }
+        partialHits = new PartialHits[carverTypes.length];
 
-        AhoCorasick tree = carverConfig.getPopulatedTree();
-        SearchResult lastResult = new SearchResult(tree.root, null, 0);
+        CompiledAhoCorasick tree = carverConfig.getCompiledTree();
+        CompiledAhoCorasick.MatchListener listener = this::onMatch;
+        int state = tree.getStartState();
         do {
             fillBuf(in);
-            lastResult = new SearchResult(lastResult.lastMatchedState, cBuf, 0);
-            Iterator<SearchResult> searcher = new Searcher(tree, tree.continueSearch(lastResult));
-
-            while (searcher.hasNext()) {
-                lastResult = searcher.next();
-
-                for (Object out : lastResult.getOutputs()) {
-                    Object[] oarray = (Object[]) out;
-                    Signature sig = (Signature) oarray[0];
-                    int seq = (int) oarray[1];
-                    int i = lastResult.getLastIndex() - sig.seqEndPos[seq];
-
-                    // tratamento para assinaturas com ? (divididas)
-                    if (sig.seqs.length > 1) {
-                        Integer hits = (Integer) map.get(sig.getCarverType()).get(prevLen + i);
-                        if (hits == null) {
-                            hits = 0;
-                        }
-                        if (hits != seq) {
-                            continue;
-                        }
-                        map.get(sig.getCarverType()).put(prevLen + i, ++hits);
-                        if (map.get(sig.getCarverType()).size() > largestPatternLen) {
-                            map.get(sig.getCarverType()).remove(map.get(sig.getCarverType()).firstKey());
-                        }
+            state = tree.search(buf, 0, len, state, listener);
 
-                        if (hits < sig.seqs.length) {
-                            continue;
-                        }
-                    }
+        } while (k != -1);
 
-                    Hit hit = null;
-                    hit = new Hit(sig, prevLen + i);
+        for (Carver carver : registeredCarvers.values()) {
+            carver.notifyEnd(this.evidence);
+        }
 
-                    Carver carver = getCarver(sig.getCarverType());
+        return null;
+    }
 
-                    try {
-                        carver.notifyHit(this.evidence, hit);
-                    } catch (Exception e) {
-                        LOGGER.warn("{} Skipping unexpected error carving on hit {} {} - CarverClass {}", //$NON-NLS-1$
-                                Thread.currentThread().getName(), evidence.getPath(), hit.getOffset(),
-                                carver.getClass().getName());
-                        e.printStackTrace();
-                    }
-                }
+    private void onMatch(int outputId, int endIndex) {
+        Signature sig = outputSigs[outputId];
+        int seq = outputSeqs[outputId];
+        int i = endIndex - sig.seqEndPos[seq];
+
+        // tratamento para assinaturas com ? (divididas)
+        if (sig.seqs.length > 1) {
+            PartialHits typeHits = partialHits[outputTypes[outputId]];
+            if (typeHits == null) {
+                typeHits = partialHits[outputTypes[outputId]] = new PartialHits();
             }
+            int hits = typeHits.get(prevLen + i);
+            if (hits != seq) {
+                return;
+            }
+            typeHits.put(prevLen + i, ++hits);
 
-        } while (k != -1);
+            if (hits < sig.seqs.length) {
+                return;
+            }
+        }
 
-        for (Carver carver : registeredCarvers.values()) {
-            carver.notifyEnd(this.evidence);
+        Hit hit = new Hit(sig, prevLen + i);
+
+        Carver carver = getCarver(sig.getCarverType());
+
+        try {
+            carver.notifyHit(this.evidence, hit);
+        } catch (Exception e) {
+            LOGGER.warn("{} Skipping unexpected error carving on hit {} {} - CarverClass {}", //$NON-NLS-1$
+                    Thread.currentThread().getName(), evidence.getPath(), hit.getOffset(),
+                    carver.getClass().getName());
+            e.printStackTrace();
         }
+    }
 
-        return null;
+    private static void mapOutputs(CompiledAhoCorasick tree) {
+        Signature[] sigs = new Signature[tree.getOutputCount()];
+        int[] seqs = new int[sigs.length];
+        int[] types = new int[sigs.length];
+        for (int id = 0; id < sigs.length; id++) {
+            Object[] oarray = (Object[]) tree.getOutput(id);
+            sigs[id] = (Signature) oarray[0];
+            seqs[id] = (int) oarray[1];
+            types[id] = Arrays.asList(carverTypes).indexOf(sigs[id].getCarverType());
+        }
+        outputSigs = sigs;
+        outputSeqs = seqs;
+        outputTypes = types;
     }
 
     @Override
@@ -231,21 +419,41 @@ public void init(ConfigurationManager configurationManager) throws Exception {
             carverConfig = ctConfig.getConfiguration();
             carverConfig.configListener(carvedItemListener);
             carverTypes = carverConfig.getCarverTypes();
+            mapOutputs(carverConfig.getCompiledTree());
             ignoreCorrupted = carverConfig.isToIgnoreCorrupted();
+
+            parallelChunkSize = carverConfig.getParallelChunkSize();
+            for (CarverType carverType : carverTypes) {
+                if (carverType.getMaxLength() != null) {
+                    chunkOverlap = Math.max(chunkOverlap, carverType.getMaxLength());
+                }
+            }
+            if (chunkOverlap == 0 || chunkOverlap > parallelChunkSize / MAX_OVERLAP_DIVISOR) {
+                chunkOverlap = parallelChunkSize / MAX_OVERLAP_DIVISOR;
+            }
         }
     }
 
     @Override
     public void finish() throws Exception {
-        // TODO Auto-generated method stub
-
+        synchronized (CarverTask.class) {
+            if (chunkExecutor != null) {
+                chunkExecutor.shutdown();
+                chunkExecutor = null;
+            }
+        }
     }
 
     private CarvedItemListener getCarvedItemListener() {
         if (carvedItemListener == null) {
             carvedItemListener = new CarvedItemListener() {
                 public void processCarvedItem(IItem parentEvidence, IItem carvedEvidence, long off) {
-                    addCarvedEvidence((Item) parentEvidence, (Item) carvedEvidence, off);
+                    if (carvedInRange == null) {
+                        addCarvedEvidence((Item) parentEvidence, (Item) carvedEvidence, off);
+                    } else if (off >= rangeStart && off < rangeEnd) {
+                        // items starting in the overlap are carved by the next range
+                        carvedInRange.add(new CarvedInRange(carvedEvidence, off));
+                    }
                 }
             };
         }
@@ -0,0 +1,175 @@
+package iped.engine.task.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.utils.IOUtil;
+
+/**
+ * Bounded queue of prepared documents consumed by dedicated indexing threads,
+ * so workers go on processing items while Lucene tokenizes text and flushes
+ * segments. Workers block when the queue is full. {@link #drain()} waits for
+ * all queued documents to be added to the index, it must be called before
+ * commits and before searching the index being processed.
+ */
+public class AsyncIndexingQueue {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(AsyncIndexingQueue.class);
+
+    private static final String THREAD_PREFIX = "IndexingThread-"; //$NON-NLS-1$
+
+    private static class Job {
+
+        private final IndexWriter writer;
+        private final Iterable<Document> docs;
+        private final Closeable[] resources;
+
+        private Job(IndexWriter writer, Iterable<Document> docs, Closeable[] resources) {
+            this.writer = writer;
+            this.docs = docs;
+            this.resources = resources;
+        }
+
+        private void close() {
+            for (Closeable resource : resources) {
+                IOUtil.closeQuietly(resource);
+            }
+        }
+    }
+
+    private final BlockingQueue<Job> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ReentrantReadWriteLock drainLock = new ReentrantReadWriteLock();
+    private volatile IOException exception;
+
+    public AsyncIndexingQueue(int numThreads, int queueSize) {
+        queue = new ArrayBlockingQueue<>(queueSize);
+        for (int i = 0; i < numThreads; i++) {
+            Thread t = new Thread(this::run, THREAD_PREFIX + i);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+        LOGGER.info("Started {} indexing threads, queue size {}", numThreads, queueSize); //$NON-NLS-1$
+    }
+
+    /**
+     * Queues documents to be added with writer.addDocuments(). Resources are
+     * closed after the documents are indexed.
+     */
+    public void add(IndexWriter writer, Iterable<Document> docs, Closeable... resources)
+            throws IOException, InterruptedException {
+        checkException();
+        drainLock.readLock().lockInterruptibly();
+        try {
+            pending.incrementAndGet();
+            try {
+                queue.put(new Job(writer, docs, resources));
+            } catch (InterruptedException e) {
+                decPending();
+                throw e;
+            }
+        } finally {
+            drainLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits until all queued documents are indexed. Workers trying to queue new
+     * documents meanwhile are blocked.
+     */
+    public void drain() throws IOException, InterruptedException {
+        drainLock.writeLock().lockInterruptibly();
+        try {
+            synchronized (pending) {
+                while (pending.get() > 0 && exception == null) {
+                    pending.wait(1000);
+                }
+            }
+        } finally {
+            drainLock.writeLock().unlock();
+        }
+        checkException();
+    }
+
+    /**
+     * Drains the queue and stops the indexing threads.
+     */
+    public void close() throws IOException, InterruptedException {
+        try {
+            drain();
+        } finally {
+            interrupt();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    /**
+     * Stops the indexing threads without waiting for queued documents.
+     */
+    public void interrupt() {
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        Job job;
+        while ((job = queue.poll()) != null) {
+            job.close();
+            decPending();
+        }
+    }
+
+    private void checkException() throws IOException {
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void decPending() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (pending) {
+                pending.notifyAll();
+            }
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                job.writer.addDocuments(job.docs);
+
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            } catch (Throwable e) {
+                if (exception == null) {
+                    exception = new IOException(e);
+                }
+            } finally {
+                job.close();
+                decPending();
+            }
+        }
+    }
+
+}
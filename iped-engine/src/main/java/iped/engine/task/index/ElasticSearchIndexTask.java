@@ -120,6 +120,11 @@ public boolean isEnabled() {
         return isEnabled;
     }
 
+    @Override
+    protected boolean isIOBound() {
+        return true;
+    }
+
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new ElasticSearchTaskConfig());
     }
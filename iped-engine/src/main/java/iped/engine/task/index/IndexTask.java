@@ -15,6 +15,7 @@
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
@@ -36,6 +37,7 @@
 import iped.engine.task.ParsingTask;
 import iped.engine.task.SkipCommitedTask;
 import iped.engine.task.carver.BaseCarveTask;
+import iped.engine.util.TextCache;
 import iped.engine.util.Util;
 import iped.exception.IPEDException;
 import iped.parsers.standard.StandardParser;
@@ -63,6 +65,8 @@ public class IndexTask extends AbstractTask {
     private static final AtomicBoolean finished = new AtomicBoolean();
     private static final AtomicBoolean lastIDLoaded = new AtomicBoolean();
 
+    private static AsyncIndexingQueue indexingQueue;
+
     private static FieldType contentField;
 
     private static final FieldType getContentFieldType() {
@@ -108,6 +112,8 @@ public void process(IItem evidence) throws IOException {
         }
 
         Reader textReader = null;
+        TextCache textCache = null;
+        boolean async = indexingQueue != null;
 
         if (!evidence.isToAddToCase()) {
             if (isTreeNodeOnly(evidence)) {
@@ -122,8 +128,17 @@ public void process(IItem evidence) throws IOException {
         if (textReader == null) {
             if (indexConfig.isIndexFileContents() && (indexConfig.isIndexUnallocated()
                     || !BaseCarveTask.UNALLOCATED_MIMETYPE.equals(evidence.getMediaType()))) {
-                textReader = evidence.getTextReader();
-                if (textReader == null) {
+                if (async && evidence instanceof Item && ((Item) evidence).getTextCache() != null) {
+                    // indexing thread reads a clone, item text cache may be closed meanwhile
+                    textCache = ((Item) evidence).getTextCache().clone();
+                    textCache.setSourceItem(evidence);
+                    textReader = textCache.getTextReader();
+                } else {
+                    // text is not cached, it can't be read after this item is disposed
+                    async = false;
+                    textReader = evidence.getTextReader();
+                }
+                if (textReader == null && textCache == null) {
                     LOGGER.warn("Null Text reader, creating a new one for {}", evidence.getPath()); //$NON-NLS-1$
                     try {
                         TikaInputStream tis = evidence.getTikaStream();
@@ -145,8 +160,23 @@ public void process(IItem evidence) throws IOException {
 
         FragmentingReader fragReader = new FragmentingReader(textReader, indexConfig.getTextSplitSize(),
                 indexConfig.getTextOverlapSize());
+        IndexWriter writer = worker.manager.getDocumentsWriter(worker.id);
         try {
-            worker.writer.addDocuments(new DocumentsIterable(evidence, fragReader));
+            if (async) {
+                // text size is known, so parent document can be created now
+                long textSize = textCache != null ? textCache.getSize() : 0;
+                if (textSize > 0 && textSize >= indexConfig.getTextSplitSize() + indexConfig.getTextOverlapSize()) {
+                    evidence.setExtraAttribute(TEXT_SPLITTED, Boolean.TRUE.toString());
+                }
+                evidence.setExtraAttribute(TEXT_SIZE, textSize);
+                Document parentDoc = IndexItem.Document(evidence, output);
+                indexingQueue.add(writer, new DocumentsIterable(evidence, fragReader, parentDoc), fragReader,
+                        textCache);
+                fragReader = null;
+                textCache = null;
+            } else {
+                writer.addDocuments(new DocumentsIterable(evidence, fragReader, null));
+            }
 
         } catch (IOException e) {
             if (IOUtil.isDiskFull(e))
@@ -154,8 +184,13 @@ public void process(IItem evidence) throws IOException {
                         "Not enough space for the index on " + worker.manager.getIndexTemp().getAbsolutePath()); //$NON-NLS-1$
             else
                 throw e;
+        } catch (InterruptedException e) {
+            throw new IPEDException("Processing canceled!"); //$NON-NLS-1$
         } finally {
-            fragReader.close();
+            if (fragReader != null) {
+                fragReader.close();
+            }
+            IOUtil.closeQuietly(textCache);
         }
 
     }
@@ -164,12 +199,19 @@ private class DocumentsIterable implements Iterable<Document> {
 
         private IItem item;
         private FragmentingReader fragReader;
+        private Document parentDoc;
         private boolean hasMoreContentFrags, parentIndexed = false;
         private int numFrags = 0;
 
-        private DocumentsIterable(IItem item, FragmentingReader fragReader) {
+        /**
+         * @param parentDoc
+         *            parent document created in advance, or null to create it after
+         *            reading the text
+         */
+        private DocumentsIterable(IItem item, FragmentingReader fragReader, Document parentDoc) {
             this.item = item;
             this.fragReader = fragReader;
+            this.parentDoc = parentDoc;
         }
 
         public Iterator<Document> iterator() {
@@ -203,6 +245,9 @@ public Document next() {
                         doc.add(new IntPoint(FRAG_PARENT_ID, item.getId()));
                         doc.add(new Field(IndexItem.CONTENT, new CloseFilterReader(fragReader), getContentFieldType()));
                         return doc;
+                    } else if (parentDoc != null) {
+                        parentIndexed = true;
+                        return parentDoc;
                     } else {
                         if (numFrags > 1) {
                             item.setExtraAttribute(TEXT_SPLITTED, Boolean.TRUE.toString());
@@ -258,6 +303,13 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         IndexItem.loadMetadataTypes(new File(output, "conf")); //$NON-NLS-1$
         loadExtraAttributes();
 
+        synchronized (IndexTask.class) {
+            if (indexingQueue == null && indexConfig.getAsyncIndexingThreads() > 0) {
+                indexingQueue = new AsyncIndexingQueue(indexConfig.getAsyncIndexingThreads(),
+                        indexConfig.getAsyncIndexingQueueSize());
+            }
+        }
+
         this.autoParser = new StandardParser();
 
     }
@@ -271,6 +323,40 @@ public void finish() throws Exception {
         }
     }
 
+    /**
+     * Waits for documents queued to the indexing threads to be added to the
+     * index, if asynchronous indexing is enabled.
+     */
+    public static void drainIndexingQueue() throws IOException, InterruptedException {
+        AsyncIndexingQueue queue = indexingQueue;
+        if (queue != null) {
+            queue.drain();
+        }
+    }
+
+    /**
+     * Drains the indexing queue and stops the indexing threads.
+     */
+    public static synchronized void closeIndexingQueue() throws IOException, InterruptedException {
+        if (indexingQueue != null) {
+            try {
+                indexingQueue.close();
+            } finally {
+                indexingQueue = null;
+            }
+        }
+    }
+
+    /**
+     * Stops the indexing threads discarding queued documents.
+     */
+    public static synchronized void interruptIndexingQueue() {
+        if (indexingQueue != null) {
+            indexingQueue.interrupt();
+            indexingQueue = null;
+        }
+    }
+
     public static void saveExtraAttributes(File output) throws IOException {
         File extraAttributtesFile = new File(output, "data/" + extraAttrFilename); //$NON-NLS-1$
         Set<String> extraAttr = Item.getAllExtraAttributes();
@@ -188,6 +188,14 @@ private static synchronized Server getServer() {
         return servers.get(currentServer);
     }
 
+    /**
+     * Audios are sent to remote servers, so this task mostly waits on network.
+     */
+    @Override
+    protected boolean isIOBound() {
+        return true;
+    }
+
     /**
      * Don't convert to WAV on client side, return the audio as is.
      */
@@ -1,45 +1,85 @@
 package iped.engine.util;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystemException;
-import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.io.input.BoundedReader;
-import org.apache.commons.io.input.RandomAccessFileInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import iped.data.IItem;
 import iped.utils.IOUtil;
 
+/**
+ * Cache of the text extracted from an item, so it can be read many times by
+ * different tasks without parsing the item again.
+ *
+ * Text is kept in fixed size char chunks, instead of a big contiguous buffer.
+ * Memory used by all text caches is limited by a global budget shared by all
+ * workers: if a text would exceed it, or the per item limit, it is spilled to
+ * a temp file outside the heap, stored as raw UTF-16 chars, so there is no
+ * re-encoding and any char offset can be read directly. Clones share the same
+ * chunks and file, so readers do not copy the text.
+ */
 public class TextCache implements Closeable, Cloneable {
 
     private static Logger logger = LoggerFactory.getLogger(TextCache.class);
 
     private static int MAX_MEMORY_CHARS = 10000000;
 
+    private static final int CHUNK_CHARS = 64 * 1024;
+    private static final int IO_BUFFER_CHARS = 64 * 1024;
+
+    private static volatile long memoryBudgetChars = Runtime.getRuntime().maxMemory() / 16;
+    private static final AtomicLong usedMemoryChars = new AtomicLong();
+    private static final AtomicLong spilledTexts = new AtomicLong();
+
     private IItem sourceItem;
-    private StringBuilder sb = new StringBuilder();
+    private List<char[]> chunks = new ArrayList<>();
+    private int lastChunkLen = CHUNK_CHARS;
     private File tmp;
-    private Writer writer;
+    private FileChannel channel;
+    private ByteBuffer writeBuffer;
+    private CharBuffer writeChars;
     private long size = 0;
+    private long diskChars = 0;
+    private boolean diskWriteFailed = false;
     private boolean diskCacheEnabled = true;
-    private long offset = -1;
+    private long offset = 0;
     private AtomicInteger refCount = new AtomicInteger(1);
+    private boolean closed = false;
+
+    /**
+     * Sets the max memory, in bytes, used by all text caches.
+     */
+    public static void setMemoryBudget(long bytes) {
+        memoryBudgetChars = bytes / 2;
+    }
+
+    /**
+     * @return memory, in bytes, currently used by all text caches.
+     */
+    public static long getUsedMemory() {
+        return usedMemoryChars.get() * 2;
+    }
+
+    /**
+     * @return number of texts spilled to disk because of the memory limits.
+     */
+    public static long getSpilledTexts() {
+        return spilledTexts.get();
+    }
 
     public void setSourceItem(IItem sourceItem) {
         this.sourceItem = sourceItem;
@@ -54,65 +94,167 @@ public void write(String string) throws IOException {
     }
 
     public void write(char[] buf, int off, int len) throws IOException {
-        if (tmp == null && sb != null && sb.length() + len > MAX_MEMORY_CHARS && diskCacheEnabled) {
+        while (len > 0) {
+            if (channel != null) {
+                writeToDisk(buf, off, len);
+                return;
+            }
+            if (diskWriteFailed) {
+                // text already on disk is kept, the rest is truncated
+                return;
+            }
+            if (lastChunkLen == CHUNK_CHARS) {
+                if (diskCacheEnabled && needsSpill() && spill()) {
+                    continue;
+                }
+                if (size >= MAX_MEMORY_CHARS) {
+                    // text is truncated if it can not be stored on disk
+                    return;
+                }
+                chunks.add(new char[CHUNK_CHARS]);
+                usedMemoryChars.addAndGet(CHUNK_CHARS);
+                lastChunkLen = 0;
+            }
+            int n = (int) Math.min(Math.min(len, CHUNK_CHARS - lastChunkLen), MAX_MEMORY_CHARS - size);
+            if (n <= 0) {
+                return;
+            }
+            System.arraycopy(buf, off, chunks.get(chunks.size() - 1), lastChunkLen, n);
+            lastChunkLen += n;
+            size += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private boolean needsSpill() {
+        return size + CHUNK_CHARS > MAX_MEMORY_CHARS || usedMemoryChars.get() + CHUNK_CHARS > memoryBudgetChars;
+    }
+
+    /**
+     * Moves text in memory to a temp file and releases its memory. If the text
+     * can not be written, it is kept in memory.
+     */
+    private boolean spill() {
+        long memSize = size;
+        try {
             tmp = File.createTempFile("text", null);
-            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
-            writer.write(sb.toString());
-            sb = null;
+            channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ);
+            writeBuffer = ByteBuffer.allocateDirect(IO_BUFFER_CHARS * 2);
+            writeChars = writeBuffer.asCharBuffer();
+            size = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                int len = (int) Math.min(CHUNK_CHARS, memSize - (long) i * CHUNK_CHARS);
+                writeChars(chunks.get(i), 0, len);
+            }
+        } catch (IOException e) {
+            logger.warn("Error writing text cache file, text will be kept in memory: {}", e.toString());
+            deleteTmp();
+            size = memSize;
+            diskChars = 0;
+            diskCacheEnabled = false;
+            return false;
         }
+        usedMemoryChars.addAndGet(-(long) chunks.size() * CHUNK_CHARS);
+        chunks = new ArrayList<>();
+        lastChunkLen = CHUNK_CHARS;
+        spilledTexts.incrementAndGet();
+        return true;
+    }
 
-        if (sb != null && sb.length() < MAX_MEMORY_CHARS) {
-            if (sb.length() + len > MAX_MEMORY_CHARS)
-                len = MAX_MEMORY_CHARS - sb.length();
-            sb.append(buf, off, len);
+    private void writeToDisk(char[] buf, int off, int len) {
+        try {
+            writeChars(buf, off, len);
+        } catch (IOException e) {
+            onDiskWriteError(e);
         }
+    }
 
-        if (writer != null)
-            try {
-                writer.write(buf, off, len);
-            } catch (IOException e) {
-                // maybe no space left
-                e.printStackTrace();
-                IOUtil.closeQuietly(writer);
-                writer = null;
-                tmp.delete();
-                tmp = null;
+    private void writeChars(char[] buf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, writeChars.remaining());
+            writeChars.put(buf, off, n);
+            if (!writeChars.hasRemaining()) {
+                flushWriteBuffer();
             }
+            size += n;
+            off += n;
+            len -= n;
+        }
+    }
 
-        size += len;
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.clear();
+        writeBuffer.limit(writeChars.position() * 2);
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        diskChars += writeChars.position();
+        writeChars.clear();
+    }
+
+    /**
+     * Keeps the text already written to the file, whose memory was released, and
+     * truncates the rest, so size matches what readers get.
+     */
+    private void onDiskWriteError(IOException e) {
+        // maybe no space left
+        logger.error("Error writing text cache file{}, text will be truncated: {}", //$NON-NLS-1$
+                sourceItem != null ? " of " + sourceItem.getPath() : "", e.toString()); //$NON-NLS-1$ //$NON-NLS-2$
+        IOUtil.closeQuietly(channel);
+        channel = null;
+        writeBuffer = null;
+        writeChars = null;
+        size = diskChars;
+        diskWriteFailed = true;
+    }
+
+    private void deleteTmp() {
+        IOUtil.closeQuietly(channel);
+        channel = null;
+        writeBuffer = null;
+        writeChars = null;
+        if (tmp != null) {
+            tmp.delete();
+            tmp = null;
+        }
     }
 
     public long getSize() {
         return size;
     }
 
-    public Reader getTextReader() throws IOException {
-        if (writer != null) {
-            writer.close();
-            writer = null;
+    private void finishWriting() {
+        if (channel != null) {
+            try {
+                flushWriteBuffer();
+            } catch (IOException e) {
+                onDiskWriteError(e);
+                return;
+            }
+            IOUtil.closeQuietly(channel);
+            channel = null;
+            writeBuffer = null;
+            writeChars = null;
         }
+    }
 
-        Reader reader = null;
-        if (sb != null)
-            reader = new StringReader(sb.toString());
+    public Reader getTextReader() throws IOException {
+        finishWriting();
 
+        Reader reader = null;
         if (tmp != null) {
             try {
-                if (offset == -1) {
-                    reader = Files.newBufferedReader(tmp.toPath());
-                } else {
-                    RandomAccessFile raf = new RandomAccessFile(tmp, "r");
-                    raf.seek(offset);
-                    reader = new InputStreamReader(new RandomAccessFileInputStream(raf, true), StandardCharsets.UTF_8);
-                    reader = new BufferedReader(new BoundedReader(reader, (int) size));
-                }
+                reader = new TempFileReader(tmp, offset, size);
 
-            } catch (FileSystemException | FileNotFoundException e) {
+            } catch (FileSystemException e) {
                 logger.error("Error reading extracted text file{}, maybe your antivirus blocked or deleted it? {}",
                         sourceItem != null ? " from " + sourceItem.getPath() : "", e.toString());
                 e.printStackTrace();
                 return new StringReader("");
             }
+        } else if (!chunks.isEmpty()) {
+            reader = new ChunksReader(chunks, offset, size);
         }
 
         if (reader != null) {
@@ -129,16 +271,119 @@ public void setTextBounds(long offset, int size) {
         if (offset + size > this.size) {
             throw new IllegalArgumentException("offset + size must be less than or equal to original text size.");
         }
-        this.offset = offset;
+        this.offset += offset;
         this.size = size;
     }
 
     @Override
     public void close() throws IOException {
-        if (writer != null)
-            writer.close();
-        if (tmp != null && refCount.decrementAndGet() == 0)
-            tmp.delete();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (channel != null) {
+            IOUtil.closeQuietly(channel);
+            channel = null;
+        }
+        if (refCount.decrementAndGet() == 0) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            usedMemoryChars.addAndGet(-(long) chunks.size() * CHUNK_CHARS);
+        }
+    }
+
+    /**
+     * Reads text stored in memory chunks, without copying them.
+     */
+    private static class ChunksReader extends Reader {
+
+        private final List<char[]> chunks;
+        private long pos;
+        private final long end;
+
+        private ChunksReader(List<char[]> chunks, long offset, long size) {
+            this.chunks = chunks;
+            this.pos = offset;
+            this.end = offset + size;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (pos >= end) {
+                return -1;
+            }
+            char[] chunk = chunks.get((int) (pos / CHUNK_CHARS));
+            int chunkPos = (int) (pos % CHUNK_CHARS);
+            int n = (int) Math.min(Math.min(len, CHUNK_CHARS - chunkPos), end - pos);
+            System.arraycopy(chunk, chunkPos, cbuf, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, end - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    /**
+     * Reads text spilled to disk with positional reads, so each reader is
+     * independent of others reading the same file.
+     */
+    private static class TempFileReader extends Reader {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_CHARS * 2);
+        private final CharBuffer chars = buffer.asCharBuffer();
+        private long pos;
+        private final long end;
+
+        private TempFileReader(File file, long offset, long size) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.pos = offset;
+            this.end = offset + size;
+            chars.limit(0);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (!chars.hasRemaining()) {
+                if (pos >= end) {
+                    return -1;
+                }
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), (end - pos) * 2));
+                int read = 0;
+                while (buffer.hasRemaining()) {
+                    int i = channel.read(buffer, pos * 2 + read);
+                    if (i == -1) {
+                        break;
+                    }
+                    read += i;
+                }
+                if (read < 2) {
+                    return -1;
+                }
+                chars.clear();
+                chars.limit(read / 2);
+                pos += read / 2;
+            }
+            int n = Math.min(len, chars.remaining());
+            chars.get(cbuf, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
     }
 
     public class KnownSizeReader extends Reader {
@@ -167,14 +412,17 @@ public long getSize() {
 
     @Override
     public TextCache clone() {
+        finishWriting();
         TextCache o = new TextCache();
         o.sourceItem = sourceItem;
-        o.sb = sb;
+        o.chunks = chunks;
+        o.lastChunkLen = lastChunkLen;
         o.tmp = tmp;
         // we just use clone for reading for now
-        // o.writer = writer;
+        // o.channel = channel;
         o.size = size;
         o.diskCacheEnabled = diskCacheEnabled;
+        o.diskWriteFailed = diskWriteFailed;
         o.offset = offset;
         o.refCount = refCount;
         refCount.incrementAndGet();
@@ -1,15 +1,27 @@
 package iped.engine.webapi;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
@@ -21,28 +33,216 @@
 import io.swagger.annotations.ApiOperation;
 import iped.data.IIPEDSource;
 import iped.data.IItem;
+import iped.io.SeekableInputStream;
+import iped.utils.IOUtil;
+import iped.utils.SeekableFileInputStream;
 
+/**
+ * Serves the raw content of items. Single byte ranges are supported, so
+ * clients like video players can seek inside big items without downloading
+ * them. Items stored as plain files are sent with {@link FileChannel}
+ * transfers, other ones are read from their seekable stream starting at the
+ * requested offset. Concurrent transfers of each source are limited, to not
+ * starve evidence reading by other requests: when the limit is reached, 503 is
+ * returned at once. Transfer permits are released when the request completes,
+ * also if the entity is not written, like in HEAD requests or when the client
+ * disconnects.
+ */
 @Api(value = "Documents")
 @Path("sources/{sourceID}/docs/{id}/content")
 public class Content {
 
+    private static int maxTransfersPerSource = 4;
+
+    private static final Map<String, Semaphore> transferPermits = new ConcurrentHashMap<>();
+
+    public static void setMaxTransfersPerSource(int maxTransfers) {
+        maxTransfersPerSource = maxTransfers;
+    }
+
     @ApiOperation(value = "Get document's raw content")
     @GET
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response content(@PathParam("sourceID") String sourceID, @PathParam("id") int id)
+    public void content(@PathParam("sourceID") String sourceID, @PathParam("id") int id,
+            @HeaderParam("Range") String range, @HeaderParam("If-Range") String ifRange,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch, @Suspended AsyncResponse asyncResponse)
             throws TskCoreException, IOException, URISyntaxException {
 
         IIPEDSource source = Sources.getSource(sourceID);
         final IItem item = source.getItemByID(id);
-        return Response.status(200).header("Content-Length", String.valueOf(item.getLength()))
+
+        String etag = getETag(item);
+        if (etag != null && matches(ifNoneMatch, etag)) {
+            asyncResponse.resume(Response.notModified().header(HttpHeaders.ETAG, etag).build());
+            return;
+        }
+
+        long length = getLength(item);
+        long start = 0, end = length - 1;
+        boolean partial = false;
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                asyncResponse.resume(Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header("Content-Range", "bytes */" + length).build()); //$NON-NLS-1$ //$NON-NLS-2$
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                partial = true;
+            }
+        }
+
+        Semaphore permits = transferPermits.computeIfAbsent(sourceID, s -> new Semaphore(maxTransfersPerSource));
+        if (!permits.tryAcquire()) {
+            asyncResponse.resume(
+                    Response.status(Response.Status.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, 1).build());
+            return;
+        }
+        try {
+            // called after the entity is written, or not, also on errors
+            asyncResponse.register((CompletionCallback) throwable -> permits.release());
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        final long offset = start, count = end - start + 1;
+        Response.ResponseBuilder builder = Response.status(partial ? Response.Status.PARTIAL_CONTENT : Response.Status.OK)
+                .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(count))
+                .header("Accept-Ranges", "bytes") //$NON-NLS-1$ //$NON-NLS-2$
                 .header("Content-Disposition", "attachment; filename=\"" + item.getName() + "\"")
                 .entity(new StreamingOutput() {
                     @Override
                     public void write(OutputStream arg0) throws IOException, WebApplicationException {
-                        try (InputStream is = item.getBufferedInputStream()) {
-                            IOUtils.copy(is, arg0);
-                        }
+                        transfer(item, arg0, offset, count);
                     }
-                }).build();
+                });
+        if (partial) {
+            builder.header("Content-Range", "bytes " + start + "-" + end + "/" + length); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        if (etag != null) {
+            builder.header(HttpHeaders.ETAG, etag);
+        }
+        asyncResponse.resume(builder.build());
+    }
+
+    /**
+     * @return strong ETag from the item hash, or null if it was not computed
+     */
+    static String getETag(IItem item) {
+        String hash = item.getHash();
+        if (hash == null || hash.isEmpty()) {
+            return null;
+        }
+        return "\"" + hash + "\""; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * @return true if the If-None-Match header lists the etag
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) { //$NON-NLS-1$
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) { //$NON-NLS-1$ //$NON-NLS-2$
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getLength(IItem item) throws IOException {
+        if (item.getLength() != null) {
+            return item.getLength();
+        }
+        try (SeekableInputStream sis = item.getSeekableInputStream()) {
+            return sis.size();
+        }
+    }
+
+    /**
+     * Parses a single byte range, like "bytes=0-499", "bytes=500-" or
+     * "bytes=-500".
+     *
+     * @return first and last positions of the range, an empty array if the range
+     *         is not supported and must be ignored, or null if it is not
+     *         satisfiable
+     */
+    static long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1) { //$NON-NLS-1$
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim(); //$NON-NLS-1$
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return new long[0];
+        }
+        long start, end;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) {
+                    return new long[0];
+                }
+                if (suffix == 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = length - 1;
+                if (!last.isEmpty()) {
+                    long lastPos = Long.parseLong(last);
+                    if (lastPos < start) {
+                        return new long[0];
+                    }
+                    end = Math.min(lastPos, end);
+                }
+            }
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+        if (start >= length) {
+            return null;
+        }
+        return new long[] { start, end };
+    }
+
+    private static void transfer(IItem item, OutputStream out, long offset, long count) throws IOException {
+        File file = IOUtil.getFile(item);
+        if (file != null) {
+            transfer(file, out, offset, count);
+            return;
+        }
+        try (SeekableInputStream sis = item.getSeekableInputStream()) {
+            if (sis instanceof SeekableFileInputStream && ((SeekableFileInputStream) sis).getFile() != null) {
+                transfer(((SeekableFileInputStream) sis).getFile(), out, offset, count);
+                return;
+            }
+            sis.seek(offset);
+            IOUtils.copyLarge(sis, out, 0, count);
+        }
+    }
+
+    private static void transfer(File file, OutputStream out, long offset, long count) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long pos = offset, end = offset + count;
+            while (pos < end) {
+                long transferred = channel.transferTo(pos, end - pos, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                pos += transferred;
+            }
+        }
     }
 }
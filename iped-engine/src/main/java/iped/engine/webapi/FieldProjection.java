@@ -0,0 +1,149 @@
+package iped.engine.webapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.NumericUtils;
+
+import iped.engine.lucene.SegmentDocValues;
+import iped.engine.task.index.IndexItem;
+
+/**
+ * Reads the values of some fields of search hits from doc values, instead of
+ * loading the stored documents. Hits must be visited in increasing lucene id
+ * order, so each segment is iterated forward just once. String values are
+ * returned as indexed in doc values, which are normalized for some properties
+ * like name and path.
+ */
+class FieldProjection {
+
+    private final String[] fields;
+    private final SegmentDocValues segmentDocValues;
+    private final Object[] values;
+    private int leafIndex = -1;
+    private int docBase, nextDocBase;
+
+    FieldProjection(IndexReader reader, String[] fields) {
+        this.fields = fields;
+        this.segmentDocValues = SegmentDocValues.get(reader);
+        this.values = new Object[fields.length];
+    }
+
+    static String[] parseFields(String fields) {
+        List<String> result = new ArrayList<>();
+        for (String field : fields.split(",")) { //$NON-NLS-1$
+            if (!field.isBlank()) {
+                result.add(field.trim());
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private void setLeaf(int luceneId) throws IOException {
+        List<LeafReaderContext> leaves = segmentDocValues.leaves();
+        leafIndex = segmentDocValues.leafIndex(luceneId);
+        LeafReaderContext context = leaves.get(leafIndex);
+        LeafReader reader = context.reader();
+        docBase = context.docBase;
+        nextDocBase = docBase + reader.maxDoc();
+        for (int i = 0; i < fields.length; i++) {
+            FieldInfo info = reader.getFieldInfos().fieldInfo(fields[i]);
+            DocValuesType type = info != null ? info.getDocValuesType() : DocValuesType.NONE;
+            switch (type) {
+                case SORTED:
+                    values[i] = reader.getSortedDocValues(fields[i]);
+                    break;
+                case SORTED_SET:
+                    values[i] = reader.getSortedSetDocValues(fields[i]);
+                    break;
+                case NUMERIC:
+                    values[i] = reader.getNumericDocValues(fields[i]);
+                    break;
+                case SORTED_NUMERIC:
+                    values[i] = reader.getSortedNumericDocValues(fields[i]);
+                    break;
+                default:
+                    values[i] = null;
+            }
+        }
+    }
+
+    /**
+     * @return values of the projected fields of the doc, fields without values
+     *         are not included
+     */
+    Map<String, String[]> getValues(int luceneId) throws IOException {
+        if (leafIndex == -1 || luceneId >= nextDocBase) {
+            setLeaf(luceneId);
+        }
+        int doc = luceneId - docBase;
+        Map<String, String[]> result = new LinkedHashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            String[] fieldValues = null;
+            if (values[i] instanceof SortedDocValues) {
+                SortedDocValues dv = (SortedDocValues) values[i];
+                if (dv.advanceExact(doc)) {
+                    fieldValues = new String[] { dv.lookupOrd(dv.ordValue()).utf8ToString() };
+                }
+            } else if (values[i] instanceof SortedSetDocValues) {
+                SortedSetDocValues dv = (SortedSetDocValues) values[i];
+                if (dv.advanceExact(doc)) {
+                    List<String> list = new ArrayList<>();
+                    long ord;
+                    while ((ord = dv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                        list.add(dv.lookupOrd(ord).utf8ToString());
+                    }
+                    fieldValues = list.toArray(new String[list.size()]);
+                }
+            } else if (values[i] instanceof NumericDocValues) {
+                NumericDocValues dv = (NumericDocValues) values[i];
+                if (dv.advanceExact(doc)) {
+                    fieldValues = new String[] { decodeNumeric(fields[i], dv.longValue()) };
+                }
+            } else if (values[i] instanceof SortedNumericDocValues) {
+                SortedNumericDocValues dv = (SortedNumericDocValues) values[i];
+                if (dv.advanceExact(doc)) {
+                    fieldValues = new String[dv.docValueCount()];
+                    for (int j = 0; j < fieldValues.length; j++) {
+                        fieldValues[j] = decodeSortedNumeric(fields[i], dv.nextValue());
+                    }
+                }
+            }
+            if (fieldValues != null) {
+                result.put(fields[i], fieldValues);
+            }
+        }
+        return result;
+    }
+
+    private static String decodeNumeric(String field, long value) {
+        if (IndexItem.isFloat(field)) {
+            return String.valueOf(Float.intBitsToFloat((int) value));
+        } else if (IndexItem.isDouble(field)) {
+            return String.valueOf(Double.longBitsToDouble(value));
+        }
+        return String.valueOf(value);
+    }
+
+    private static String decodeSortedNumeric(String field, long value) {
+        if (IndexItem.isFloat(field)) {
+            return String.valueOf(NumericUtils.sortableIntToFloat((int) value));
+        } else if (IndexItem.isDouble(field)) {
+            return String.valueOf(NumericUtils.sortableLongToDouble(value));
+        }
+        return String.valueOf(value);
+    }
+
+}
@@ -78,6 +78,9 @@ public static void main(String[] args) throws Exception {
             } else if (arg.startsWith("--sources=")) {
                 urlToAskSources = arg.substring("--sources=".length());
 
+            } else if (arg.startsWith("--maxTransfersPerSource=")) {
+                Content.setMaxTransfersPerSource(Integer.parseInt(arg.substring("--maxTransfersPerSource=".length())));
+
             } else {
                 printHelp();
                 System.exit(-1);
@@ -97,5 +100,6 @@ public static void printHelp() {
         System.out.println("--sources=(URL|Path)\tfile or url with json: [{id, path}...]");
         System.out.println("--host=\t\tdefault:0.0.0.0");
         System.out.println("--port=\t\tdefault:8080");
+        System.out.println("--maxTransfersPerSource=\tconcurrent content downloads of each source, default:4");
     }
 }
@@ -1,58 +1,192 @@
 package iped.engine.webapi;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
 
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import iped.data.IItemId;
 import iped.engine.data.IPEDSource;
 import iped.engine.search.IPEDSearcher;
-import iped.engine.webapi.json.DocIDJSON;
 import iped.engine.webapi.json.SourceToIDsJSON;
-import iped.search.IIPEDSearcher;
-import iped.search.IMultiSearchResult;
-import iped.search.SearchResult;
+import iped.engine.webapi.json.SourceToIDsPageJSON;
 
+/**
+ * Searches documents. Hits are iterated in index order straight from the bitmap
+ * of the search, without building the whole result list, so big results can be
+ * paginated with the cursor returned by each page or streamed as NDJSON, one
+ * document per line.
+ */
 @Api(value = "Search")
 @Path("search")
 public class Search {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson"; //$NON-NLS-1$
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor"; //$NON-NLS-1$
+
+    private static final int FLUSH_INTERVAL = 1000;
+
     @DefaultValue("")
     @QueryParam("q")
     String q;
     @DefaultValue("")
     @QueryParam("sourceID")
     String sourceID;
+    @ApiParam(value = "Cursor returned by the previous page, empty to start from the first hit")
+    @DefaultValue("")
+    @QueryParam("cursor")
+    String cursor;
+    @ApiParam(value = "Max number of hits returned, 0 for all of them")
+    @DefaultValue("0")
+    @QueryParam("limit")
+    int limit;
+    @ApiParam(value = "Comma separated fields read from doc values and returned with each hit in NDJSON responses")
+    @DefaultValue("")
+    @QueryParam("fields")
+    String fields;
+
+    private IPEDSource source;
+    private RoaringBitmap hits;
+    private int startRank;
+    private String nextCursor;
 
     @ApiOperation(value = "Search documents")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public SourceToIDsJSON doSearch() throws Exception {
+        search();
+        SourceToIDsJSON result;
+        if (limit > 0 || !cursor.isEmpty()) {
+            SourceToIDsPageJSON page = new SourceToIDsPageJSON();
+            page.setNextCursor(nextCursor);
+            result = page;
+        } else {
+            result = new SourceToIDsJSON();
+        }
+
+        PeekableIntIterator iterator = iterator();
+        for (int n = 0; iterator.hasNext() && (limit <= 0 || n < limit); n++) {
+            int luceneId = iterator.next();
+            if (source == Sources.multiSource) {
+                IItemId id = Sources.multiSource.getItemId(luceneId);
+                result.add(Sources.sourceIntToString.get(id.getSourceId()), id.getId());
+            } else {
+                result.add(sourceID, source.getId(luceneId));
+            }
+        }
+
+        return result;
+    }
+
+    @ApiOperation(value = "Search documents, streaming one JSON document per line")
+    @GET
+    // lower server side quality, so clients not asking for NDJSON keep getting JSON
+    @Produces(APPLICATION_NDJSON + ";qs=0.5")
+    public Response streamSearch() throws Exception {
+        search();
+        String[] projection = FieldProjection.parseFields(fields);
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+                FieldProjection fieldProjection = projection.length > 0
+                        ? new FieldProjection(source.getReader(), projection)
+                        : null;
+                JsonGenerator generator = new JsonFactory().createGenerator(out);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                PeekableIntIterator iterator = iterator();
+                for (int n = 0; iterator.hasNext() && (limit <= 0 || n < limit); n++) {
+                    int luceneId = iterator.next();
+                    generator.writeStartObject();
+                    if (source == Sources.multiSource) {
+                        IItemId id = Sources.multiSource.getItemId(luceneId);
+                        generator.writeStringField("source", Sources.sourceIntToString.get(id.getSourceId())); //$NON-NLS-1$
+                        generator.writeNumberField("id", id.getId()); //$NON-NLS-1$
+                    } else {
+                        generator.writeStringField("source", sourceID); //$NON-NLS-1$
+                        generator.writeNumberField("id", source.getId(luceneId)); //$NON-NLS-1$
+                    }
+                    if (fieldProjection != null) {
+                        generator.writeObjectFieldStart("properties"); //$NON-NLS-1$
+                        for (Map.Entry<String, String[]> entry : fieldProjection.getValues(luceneId).entrySet()) {
+                            generator.writeArrayFieldStart(entry.getKey());
+                            for (String value : entry.getValue()) {
+                                generator.writeString(value);
+                            }
+                            generator.writeEndArray();
+                        }
+                        generator.writeEndObject();
+                    }
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                    if (n % FLUSH_INTERVAL == FLUSH_INTERVAL - 1) {
+                        generator.flush();
+                    }
+                }
+                generator.close();
+            }
+        };
+        return Response.ok(output).header(NEXT_CURSOR_HEADER, nextCursor).build();
+    }
+
+    /**
+     * Runs the query and computes the page bounds. Hits are in lucene id order
+     * and the cursor is the lucene id of the last hit of the previous page, so it
+     * is valid while the sources are kept open.
+     */
+    private void search() throws IOException {
         String escapeq = q.replaceAll("/", "\\\\/");
-        List<DocIDJSON> docs = new ArrayList<DocIDJSON>();
         if (sourceID.equals("")) {
-            IPEDSearcher searcher = new IPEDSearcher(Sources.multiSource, escapeq);
-            IMultiSearchResult result = searcher.multiSearch();
-            for (IItemId id : result.getIterator()) {
-                docs.add(new DocIDJSON(Sources.sourceIntToString.get(id.getSourceId()), id.getId()));
-            }
+            source = Sources.multiSource;
         } else {
-            IPEDSource source = (IPEDSource) Sources.getSource(sourceID);
-            IIPEDSearcher searcher = new IPEDSearcher(source, escapeq);
-            SearchResult result = searcher.search();
-            for (int id : result.getIds()) {
-                docs.add(new DocIDJSON(sourceID, id));
+            source = (IPEDSource) Sources.getSource(sourceID);
+        }
+        IPEDSearcher searcher = new IPEDSearcher(source, escapeq);
+        hits = searcher.searchDocIds();
+
+        startRank = 0;
+        if (!cursor.isEmpty()) {
+            int lastLuceneId;
+            try {
+                lastLuceneId = Integer.parseInt(cursor);
+            } catch (NumberFormatException e) {
+                lastLuceneId = -1;
+            }
+            if (lastLuceneId < 0) {
+                throw new BadRequestException("Invalid cursor: " + cursor); //$NON-NLS-1$
             }
+            startRank = (int) hits.rank(lastLuceneId);
         }
+        nextCursor = null;
+        if (limit > 0 && (long) startRank + limit < hits.getLongCardinality()) {
+            nextCursor = String.valueOf(hits.select(startRank + limit - 1));
+        }
+    }
 
-        return new SourceToIDsJSON(docs);
+    private PeekableIntIterator iterator() {
+        PeekableIntIterator iterator = hits.getIntIterator();
+        if (startRank > 0) {
+            iterator.advanceIfNeeded(hits.select(startRank - 1) + 1);
+        }
+        return iterator;
     }
 }
@@ -6,10 +6,13 @@
 import java.net.URISyntaxException;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.io.IOUtils;
@@ -27,17 +30,23 @@ public class Thumbnail {
     @ApiOperation(value = "Get document's thumbnail")
     @GET
     @Produces("image/jpg")
-    public StreamingOutput content(@PathParam("sourceID") String sourceID, @PathParam("id") int id)
+    public Response content(@PathParam("sourceID") String sourceID, @PathParam("id") int id,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch)
             throws TskCoreException, IOException, URISyntaxException {
 
         IIPEDSource source = Sources.getSource(sourceID);
         IItem item = source.getItemByID(id);
+        // thumbs are generated from the content, so they change with the item hash
+        String etag = Content.getETag(item);
+        if (etag != null && Content.matches(ifNoneMatch, etag)) {
+            return Response.notModified().header(HttpHeaders.ETAG, etag).build();
+        }
         final byte[] thumb = item.getThumb() != null ? item.getThumb() : new byte[0];
-        return new StreamingOutput() {
+        return Response.ok(new StreamingOutput() {
             @Override
             public void write(OutputStream arg0) throws IOException, WebApplicationException {
                 IOUtils.copy(new ByteArrayInputStream(thumb), arg0);
             }
-        };
+        }).header(HttpHeaders.ETAG, etag).build();
     }
-}
\ No newline at end of file
+}
@@ -22,16 +22,19 @@ public SourceToIDsJSON() {
     public SourceToIDsJSON(List<DocIDJSON> docs) {
         this();
         for (DocIDJSON doc : docs) {
-            String source = doc.getSource();
-            Integer id = doc.getId();
-            if (!this.sourceToids.containsKey(source)) {
-                this.sourceToids.put(source, new ArrayList<Integer>());
-            }
-            List<Integer> ids = this.sourceToids.get(source);
-            ids.add(id);
+            add(doc.getSource(), doc.getId());
         }
     }
 
+    public void add(String source, int id) {
+        List<Integer> ids = this.sourceToids.get(source);
+        if (ids == null) {
+            ids = new ArrayList<Integer>();
+            this.sourceToids.put(source, ids);
+        }
+        ids.add(id);
+    }
+
     @ApiModelProperty
     public List<DocIDGroupJSON> getData() {
         List<DocIDGroupJSON> result = new ArrayList<DocIDGroupJSON>();
@@ -0,0 +1,22 @@
+package iped.engine.webapi.json;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * SourceToIDsPageModel lists a page of documents grouped by source, with the
+ * cursor to get the next page: { "data": [ { "source": "A", "ids": [ 1, 2, 3 ]
+ * } ], "nextCursor": "123" }
+ */
+public class SourceToIDsPageJSON extends SourceToIDsJSON {
+
+    private String nextCursor;
+
+    @ApiModelProperty(value = "Cursor of the next page, null if this is the last one")
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,135 @@
+package iped.engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBounds() {
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int bucket = LatencyHistogram.getBucket(value);
+            assertTrue(LatencyHistogram.getBucketLowerBound(bucket) <= value);
+            assertTrue(LatencyHistogram.getBucketUpperBound(bucket) >= value);
+        }
+        assertEquals(0, LatencyHistogram.getBucket(-1));
+        assertEquals(Long.MAX_VALUE,
+                LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        int last = LatencyHistogram.getBucket(Long.MAX_VALUE);
+        for (int bucket = 0; bucket < last; bucket++) {
+            assertEquals(LatencyHistogram.getBucketUpperBound(bucket) + 1,
+                    LatencyHistogram.getBucketLowerBound(bucket + 1));
+        }
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMean());
+        assertEquals(0, snapshot.getPercentile(50));
+        assertEquals(0, snapshot.getPercentile(99));
+    }
+
+    @Test
+    public void testPercentilesRelativeError() {
+        Random random = new Random(1);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10000];
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(sum, snapshot.getSum());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        assertEquals(sum / values.length, snapshot.getMean());
+
+        for (double percentile : new double[] { 1, 10, 50, 90, 99, 99.9 }) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long estimated = snapshot.getPercentile(percentile);
+            assertTrue(estimated >= exact);
+            assertTrue(estimated <= exact + exact / 8);
+        }
+        assertEquals(snapshot.getMax(), snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(0, snapshot.getPercentile(10));
+        assertEquals(3, snapshot.getPercentile(50));
+        assertEquals(7, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testNegativeValuesAreZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1000);
+        histogram.record(10);
+        assertEquals(2, histogram.getCount());
+        assertEquals(10, histogram.getSum());
+        assertEquals(0, histogram.getSnapshot().getPercentile(50));
+    }
+
+    @Test
+    public void testMergeSnapshots() {
+        LatencyHistogram h1 = new LatencyHistogram();
+        LatencyHistogram h2 = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            h1.record(i);
+            h2.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+        h1.addTo(snapshot);
+        h2.addTo(snapshot);
+
+        assertEquals(200, snapshot.getCount());
+        assertEquals(5050 * 1001, snapshot.getSum());
+        assertEquals(100000, snapshot.getMax());
+        assertTrue(snapshot.getPercentile(50) <= 100 + 100 / 8);
+        assertTrue(snapshot.getPercentile(51) >= 1000);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(id * 10000 + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(39999, histogram.getMax());
+        assertEquals(39999L * 40000 / 2, histogram.getSum());
+    }
+
+}
@@ -0,0 +1,153 @@
+package iped.engine.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaseSnapshotTest {
+
+    // more ids than fit in the read buffer
+    private static final int NUM_DOCS = 40000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File moduleDir;
+    private Directory directory;
+    private DirectoryReader reader;
+
+    @Before
+    public void createIndex() throws IOException {
+        moduleDir = folder.newFolder();
+        new File(moduleDir, IPEDSource.DATA_DIR).mkdirs();
+        directory = FSDirectory.open(folder.newFolder().toPath());
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            for (int i = 0; i < NUM_DOCS; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+    }
+
+    @After
+    public void closeIndex() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    private CaseSnapshot createSnapshot() {
+        CaseSnapshot snapshot = CaseSnapshot.create(reader);
+        snapshot.ids = new int[reader.maxDoc()];
+        snapshot.lastId = reader.maxDoc() * 2 - 1;
+        snapshot.docs = new int[snapshot.lastId + 1];
+        Arrays.fill(snapshot.docs, -1);
+        for (int doc = 0; doc < snapshot.ids.length; doc++) {
+            snapshot.ids[doc] = doc * 2;
+            snapshot.docs[doc * 2] = doc;
+        }
+        snapshot.totalItems = reader.numDocs();
+        snapshot.evidenceUUIDs.add("7d8a3e20-4c4f-4f30-a8a1-0e2b4e2f9c11");
+        snapshot.evidenceUUIDs.add("f3b1c2d4-0000-4000-8000-000000000001");
+        snapshot.leafCategories.add("Imagens");
+        snapshot.leafCategories.add("Documentos de Texto");
+        snapshot.categoryItems.put("Imagens", 10);
+        snapshot.categoryItems.put("Vídeos e Áudios", 20);
+        return snapshot;
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        CaseSnapshot snapshot = createSnapshot();
+        snapshot.save(moduleDir);
+
+        CaseSnapshot loaded = CaseSnapshot.load(moduleDir, reader);
+        assertNotNull(loaded);
+        assertEquals(snapshot.generation, loaded.generation);
+        assertArrayEquals(snapshot.commitId, loaded.commitId);
+        assertEquals(snapshot.maxDoc, loaded.maxDoc);
+        assertEquals(snapshot.numDocs, loaded.numDocs);
+        assertEquals(snapshot.lastId, loaded.lastId);
+        assertEquals(snapshot.totalItems, loaded.totalItems);
+        assertArrayEquals(snapshot.ids, loaded.ids);
+        assertArrayEquals(snapshot.docs, loaded.docs);
+        assertEquals(snapshot.evidenceUUIDs, loaded.evidenceUUIDs);
+        assertEquals(snapshot.leafCategories, loaded.leafCategories);
+        assertEquals(snapshot.categoryItems, loaded.categoryItems);
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        assertNull(CaseSnapshot.load(moduleDir, reader));
+    }
+
+    @Test
+    public void testNotDirectoryReader() throws IOException {
+        try (MultiReader multiReader = new MultiReader(new DirectoryReader[] { reader }, false)) {
+            assertNull(CaseSnapshot.create(multiReader));
+            assertNull(CaseSnapshot.load(moduleDir, multiReader));
+        }
+    }
+
+    @Test
+    public void testIndexChanged() throws IOException {
+        createSnapshot().save(moduleDir);
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            writer.addDocument(new Document());
+        }
+        try (DirectoryReader newReader = DirectoryReader.open(directory)) {
+            assertNull(CaseSnapshot.load(moduleDir, newReader));
+        }
+        assertNotNull(CaseSnapshot.load(moduleDir, reader));
+    }
+
+    @Test
+    public void testTruncatedSnapshot() throws IOException {
+        createSnapshot().save(moduleDir);
+        File file = new File(moduleDir, CaseSnapshot.SNAPSHOT_PATH);
+        long len = file.length();
+        for (long newLen : new long[] { len - 1, len / 2, 100, 10 }) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(newLen);
+            }
+            assertNull(CaseSnapshot.load(moduleDir, reader));
+        }
+    }
+
+    @Test
+    public void testInvalidLastId() throws IOException {
+        CaseSnapshot snapshot = createSnapshot();
+        snapshot.save(moduleDir);
+        File file = new File(moduleDir, CaseSnapshot.SNAPSHOT_PATH);
+        // magic, version, generation, commit id, maxDoc and numDocs come before lastId
+        long lastIdPos = 4 + 4 + 8 + snapshot.commitId.length + 4 + 4;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(lastIdPos);
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+        assertNull(CaseSnapshot.load(moduleDir, reader));
+    }
+
+}
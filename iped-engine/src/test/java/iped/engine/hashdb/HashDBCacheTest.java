@@ -0,0 +1,179 @@
+package iped.engine.hashdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HashDBCacheTest {
+
+    private static final int MD5 = 0;
+    private static final int SHA1 = 1;
+    private static final int SHA256 = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dbFile;
+    private HashDBDataSource dataSource;
+    private final Map<String, Integer> md5s = new HashMap<>();
+    private final Map<String, Integer> sha1s = new HashMap<>();
+    private final Random random = new Random(0);
+
+    @Before
+    public void createDatabase() throws Exception {
+        dbFile = folder.newFile("hashes.db");
+        try (Connection conn = createTables(dbFile)) {
+            try (PreparedStatement ps = conn.prepareStatement("insert into HASHES values (?, ?, ?, null, null, null)")) {
+                for (int id = 1; id <= 1000; id++) {
+                    byte[] md5 = randomHash(HashDB.hashBytesLen[MD5]);
+                    byte[] sha1 = id % 3 == 0 ? null : randomHash(HashDB.hashBytesLen[SHA1]);
+                    md5s.put(HashDB.hashBytesToStr(md5), id);
+                    if (sha1 != null) {
+                        sha1s.put(HashDB.hashBytesToStr(sha1), id);
+                    }
+                    ps.setInt(1, id);
+                    ps.setBytes(2, md5);
+                    ps.setBytes(3, sha1);
+                    ps.executeUpdate();
+                }
+            }
+        }
+        dataSource = new HashDBDataSource(dbFile);
+    }
+
+    private static Connection createTables(File file) throws Exception {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("create table HASHES (HASH_ID integer primary key, MD5 blob, SHA1 blob, SHA256 blob, "
+                    + "SHA512 blob, EDONKEY blob)");
+            stmt.executeUpdate("create table HASHES_PROPERTIES (HASH_ID integer, PROPERTY_ID integer, "
+                    + "VALUE text NOT NULL, primary key (HASH_ID, PROPERTY_ID))");
+            stmt.executeUpdate("create table PROPERTIES (PROPERTY_ID integer, PROPERTY_NAME text NOT NULL, "
+                    + "primary key (PROPERTY_ID))");
+        }
+        return conn;
+    }
+
+    @After
+    public void closeDatabase() {
+        dataSource.close();
+    }
+
+    private byte[] randomHash(int len) {
+        byte[] hash = new byte[len];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    private void assertLookups(HashDBCache cache) {
+        for (Map.Entry<String, Integer> e : md5s.entrySet()) {
+            assertEquals((int) e.getValue(), cache.lookup(MD5, HashDB.hashStrToBytes(e.getKey(), HashDB.hashBytesLen[MD5])));
+        }
+        for (Map.Entry<String, Integer> e : sha1s.entrySet()) {
+            assertEquals((int) e.getValue(), cache.lookup(SHA1, HashDB.hashStrToBytes(e.getKey(), HashDB.hashBytesLen[SHA1])));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(-1, cache.lookup(MD5, randomHash(HashDB.hashBytesLen[MD5])));
+            assertEquals(-1, cache.lookup(SHA1, randomHash(HashDB.hashBytesLen[SHA1])));
+        }
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        File cacheFile = HashDBCache.getCacheFile(folder.getRoot(), dbFile);
+        try (HashDBCache cache = HashDBCache.open(cacheFile, dbFile, dataSource)) {
+            assertTrue(cache.hasHashType(MD5));
+            assertTrue(cache.hasHashType(SHA1));
+            assertFalse(cache.hasHashType(SHA256));
+            assertEquals(md5s.size(), cache.size(MD5));
+            assertEquals(sha1s.size(), cache.size(SHA1));
+            assertEquals(0, cache.size(SHA256));
+
+            assertLookups(cache);
+            assertEquals(-1, cache.lookup(SHA256, randomHash(HashDB.hashBytesLen[SHA256])));
+            assertEquals(-1, cache.lookup(MD5, null));
+            assertEquals(-1, cache.lookup(MD5, randomHash(HashDB.hashBytesLen[SHA1])));
+        }
+    }
+
+    @Test
+    public void testReopenWithoutRebuilding() throws Exception {
+        File cacheFile = HashDBCache.getCacheFile(folder.getRoot(), dbFile);
+        HashDBCache.open(cacheFile, dbFile, dataSource).close();
+        byte[] content = Files.readAllBytes(cacheFile.toPath());
+
+        // a data source which would write an empty cache if it was rebuilt
+        dataSource.close();
+        File emptyDb = folder.newFile("empty.db");
+        createTables(emptyDb).close();
+        dataSource = new HashDBDataSource(emptyDb);
+
+        try (HashDBCache cache = HashDBCache.open(cacheFile, dbFile, dataSource)) {
+            assertLookups(cache);
+        }
+        assertTrue(Arrays.equals(content, Files.readAllBytes(cacheFile.toPath())));
+    }
+
+    @Test
+    public void testCacheFileIsKeyedByDatabasePath() throws Exception {
+        File otherDb = new File(folder.newFolder(), dbFile.getName());
+        Files.copy(dbFile.toPath(), otherDb.toPath());
+        otherDb.setLastModified(dbFile.lastModified());
+
+        File cacheFile = HashDBCache.getCacheFile(folder.getRoot(), dbFile);
+        assertEquals(cacheFile, HashDBCache.getCacheFile(folder.getRoot(), dbFile));
+        assertNotEquals(cacheFile, HashDBCache.getCacheFile(folder.getRoot(), otherDb));
+
+        HashDBCache.open(cacheFile, dbFile, dataSource).close();
+        byte[] content = Files.readAllBytes(cacheFile.toPath());
+
+        // same length and date, but other path: must be rebuilt for the other database
+        try (HashDBCache cache = HashDBCache.open(cacheFile, otherDb, dataSource)) {
+            assertLookups(cache);
+        }
+        assertFalse(Arrays.equals(content, Files.readAllBytes(cacheFile.toPath())));
+    }
+
+    @Test
+    public void testRebuildOutdatedOrCorrupted() throws Exception {
+        File cacheFile = HashDBCache.getCacheFile(folder.getRoot(), dbFile);
+        HashDBCache.open(cacheFile, dbFile, dataSource).close();
+        long len = cacheFile.length();
+
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw")) {
+            raf.setLength(len / 2);
+        }
+        try (HashDBCache cache = HashDBCache.open(cacheFile, dbFile, dataSource)) {
+            assertLookups(cache);
+        }
+        assertEquals(len, cacheFile.length());
+
+        dbFile.setLastModified(dbFile.lastModified() - 10000);
+        try (HashDBCache cache = HashDBCache.open(cacheFile, dbFile, dataSource)) {
+            assertLookups(cache);
+        }
+        for (File f : folder.getRoot().listFiles()) {
+            assertFalse(f.getName().contains(".tmp"));
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package iped.engine.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import iped.data.IItemId;
+import iped.engine.data.ItemId;
+
+public class MultiSearchResultTest {
+
+    /**
+     * ItemId subclass carrying extra data, like TimelineResults.TimeItemId, which
+     * must be kept as object.
+     */
+    private static class ExtraItemId extends ItemId {
+        private ExtraItemId(int sourceId, int id) {
+            super(sourceId, id);
+        }
+    }
+
+    private static void assertItem(MultiSearchResult result, int i, int sourceId, int id) {
+        assertEquals(sourceId, result.getSourceId(i));
+        assertEquals(id, result.getId(i));
+        assertEquals(sourceId, result.getItem(i).getSourceId());
+        assertEquals(id, result.getItem(i).getId());
+    }
+
+    @Test
+    public void testEmptyBuilder() {
+        MultiSearchResult result = new MultiSearchResult.Builder().build();
+        assertEquals(0, result.getLength());
+        assertFalse(result.isScored());
+        assertFalse(result.getIterator().iterator().hasNext());
+    }
+
+    @Test
+    public void testPackedItems() {
+        MultiSearchResult.Builder builder = new MultiSearchResult.Builder(1);
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i % 3, Integer.MAX_VALUE - i, 0);
+        }
+        builder.add(new ItemId(-1, -1), 0);
+        assertEquals(1001, builder.size());
+
+        MultiSearchResult result = builder.build();
+        assertEquals(1001, result.getLength());
+        assertFalse(result.isScored());
+        for (int i = 0; i < 1000; i++) {
+            assertItem(result, i, i % 3, Integer.MAX_VALUE - i);
+            assertEquals(0, result.getScore(i), 0);
+        }
+        assertItem(result, 1000, -1, -1);
+        assertEquals(ItemId.class, result.getItem(0).getClass());
+    }
+
+    @Test
+    public void testScores() {
+        MultiSearchResult.Builder builder = new MultiSearchResult.Builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add(0, i, i / 10f);
+        }
+        MultiSearchResult result = builder.build();
+        assertTrue(result.isScored());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i / 10f, result.getScore(i), 0);
+        }
+    }
+
+    @Test
+    public void testSubclassItemsAreKept() {
+        MultiSearchResult.Builder builder = new MultiSearchResult.Builder(2);
+        builder.add(1, 10, 1f);
+        builder.add(2, 20, 2f);
+        ExtraItemId extra = new ExtraItemId(3, 30);
+        builder.add(extra, 3f);
+        for (int i = 0; i < 100; i++) {
+            builder.add(4, i, 4f);
+        }
+
+        MultiSearchResult result = builder.build();
+        assertEquals(103, result.getLength());
+        assertItem(result, 0, 1, 10);
+        assertItem(result, 1, 2, 20);
+        assertSame(extra, result.getItem(2));
+        for (int i = 0; i < 100; i++) {
+            assertItem(result, i + 3, 4, i);
+        }
+        assertEquals(1f, result.getScore(0), 0);
+        assertEquals(3f, result.getScore(2), 0);
+        assertEquals(4f, result.getScore(102), 0);
+    }
+
+    @Test
+    public void testAddFromResult() {
+        MultiSearchResult packed = new MultiSearchResult(
+                new long[] { MultiSearchResult.pack(1, 1), MultiSearchResult.pack(2, 2) }, new float[] { 1f, 2f });
+        ExtraItemId extra = new ExtraItemId(3, 3);
+        MultiSearchResult objects = new MultiSearchResult(new IItemId[] { new ItemId(4, 4), extra }, null);
+
+        MultiSearchResult result = new MultiSearchResult.Builder().add(packed, 1).add(objects, 1).add(objects, 0)
+                .add(packed, 0).build();
+        assertEquals(4, result.getLength());
+        assertItem(result, 0, 2, 2);
+        assertSame(extra, result.getItem(1));
+        assertItem(result, 2, 4, 4);
+        assertItem(result, 3, 1, 1);
+        assertEquals(2f, result.getScore(0), 0);
+        assertEquals(0f, result.getScore(1), 0);
+        assertEquals(1f, result.getScore(3), 0);
+    }
+
+    @Test
+    public void testOf() {
+        MultiSearchResult result = new MultiSearchResult.Builder().add(1, 2, 0).build();
+        assertSame(result, MultiSearchResult.of(result));
+    }
+
+    @Test
+    public void testSetItemAndClone() {
+        MultiSearchResult result = new MultiSearchResult.Builder().add(1, 1, 0).add(2, 2, 0).build();
+        MultiSearchResult clone = result.clone();
+        ExtraItemId extra = new ExtraItemId(5, 5);
+        result.setItem(0, extra);
+        result.setScore(1, 7f);
+
+        assertSame(extra, result.getItem(0));
+        assertItem(result, 1, 2, 2);
+        assertEquals(7f, result.getScore(1), 0);
+
+        assertNotSame(extra, clone.getItem(0));
+        assertItem(clone, 0, 1, 1);
+        assertFalse(clone.isScored());
+
+        List<IItemId> items = new ArrayList<>();
+        for (IItemId item : result.getIterator()) {
+            items.add(item);
+        }
+        assertEquals(2, items.size());
+        assertSame(extra, items.get(0));
+    }
+
+}
@@ -0,0 +1,78 @@
+package iped.engine.task;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import iped.engine.hashdb.HashDB;
+
+public class HashTaskEd2kTest {
+
+    private static final int CHUNK_SIZE = 9500 * 1024;
+
+    @BeforeClass
+    public static void addMD4Provider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    /**
+     * ed2k computed from the whole content: MD4 of the chunk hashes, or the hash
+     * of the only chunk.
+     */
+    private static byte[] expectedEd2k(byte[] content) throws Exception {
+        MessageDigest md4 = MessageDigest.getInstance("MD4");
+        ByteArrayOutputStream chunkHashes = new ByteArrayOutputStream();
+        int off = 0;
+        do {
+            int len = Math.min(CHUNK_SIZE, content.length - off);
+            md4.update(content, off, len);
+            chunkHashes.write(md4.digest());
+            off += len;
+        } while (off < content.length);
+        byte[] hashes = chunkHashes.toByteArray();
+        return hashes.length == 16 ? hashes : md4.digest(hashes);
+    }
+
+    private static byte[] laneEd2k(HashTask.Ed2kHashLane lane, byte[] content, int bufferSize) throws Exception {
+        byte[] buf = new byte[bufferSize];
+        for (int off = 0; off < content.length; off += bufferSize) {
+            int len = Math.min(bufferSize, content.length - off);
+            System.arraycopy(content, off, buf, 0, len);
+            lane.update(buf, len);
+        }
+        return lane.digest();
+    }
+
+    @Test
+    public void testEmptyContent() throws Exception {
+        HashTask.Ed2kHashLane lane = new HashTask.Ed2kHashLane("EDONKEY", MessageDigest.getInstance("MD4"));
+        assertEquals("31D6CFE0D16AE931B73C59D7E0C089C0", HashDB.hashBytesToStr(laneEd2k(lane, new byte[0], 1)));
+    }
+
+    @Test
+    public void testChunkBoundaries() throws Exception {
+        byte[] data = new byte[2 * CHUNK_SIZE + 1000];
+        new Random(0).nextBytes(data);
+        HashTask.Ed2kHashLane lane = new HashTask.Ed2kHashLane("EDONKEY", MessageDigest.getInstance("MD4"));
+        int[] sizes = { 1, 1000, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 2 * CHUNK_SIZE, 2 * CHUNK_SIZE + 1000 };
+        for (int size : sizes) {
+            byte[] content = Arrays.copyOf(data, size);
+            byte[] expected = expectedEd2k(content);
+            // the same lane is reused, as for consecutive items
+            for (int bufferSize : new int[] { 1024 * 1024, 999999, 8 * 1024 * 1024 }) {
+                assertArrayEquals("size " + size + " buffer " + bufferSize, expected,
+                        laneEd2k(lane, content, bufferSize));
+            }
+        }
+    }
+
+}
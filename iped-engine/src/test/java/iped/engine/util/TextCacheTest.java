@@ -0,0 +1,171 @@
+package iped.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TextCacheTest {
+
+    private static final int CHUNK_BYTES = 64 * 1024 * 2;
+
+    @After
+    public void restoreMemoryBudget() {
+        TextCache.setMemoryBudget(Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    private static String randomText(int len, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(len);
+        while (sb.length() < len) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append('\n');
+                    break;
+                case 1:
+                    sb.append("çãé");
+                    break;
+                case 2:
+                    // surrogate pair
+                    sb.append("😀");
+                    break;
+                default:
+                    sb.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        sb.setLength(len);
+        return sb.toString();
+    }
+
+    private static void write(TextCache cache, String text) throws IOException {
+        // odd sized pieces, to cross chunk and buffer boundaries
+        char[] chars = text.toCharArray();
+        int off = 0;
+        while (off < chars.length) {
+            int len = Math.min(7919, chars.length - off);
+            cache.write(chars, off, len);
+            off += len;
+        }
+    }
+
+    private static String read(TextCache cache) throws IOException {
+        try (Reader reader = cache.getTextReader()) {
+            if (reader == null) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[3001];
+            int i;
+            while ((i = reader.read(buf)) != -1) {
+                sb.append(buf, 0, i);
+            }
+            return sb.toString();
+        }
+    }
+
+    @Test
+    public void testEmptyText() throws IOException {
+        try (TextCache cache = new TextCache()) {
+            assertEquals(0, cache.getSize());
+            assertNull(cache.getTextReader());
+        }
+    }
+
+    @Test
+    public void testTextInMemory() throws IOException {
+        long usedMemory = TextCache.getUsedMemory();
+        long spilled = TextCache.getSpilledTexts();
+        String text = randomText(200000, 0);
+        TextCache cache = new TextCache();
+        write(cache, text);
+
+        assertEquals(text.length(), cache.getSize());
+        assertEquals(text, read(cache));
+        assertEquals(text, read(cache));
+        assertEquals(spilled, TextCache.getSpilledTexts());
+        assertTrue(TextCache.getUsedMemory() >= usedMemory + text.length() * 2);
+
+        cache.close();
+        assertEquals(usedMemory, TextCache.getUsedMemory());
+    }
+
+    @Test
+    public void testSpillWhenOverBudget() throws IOException {
+        long usedMemory = TextCache.getUsedMemory();
+        long spilled = TextCache.getSpilledTexts();
+        TextCache.setMemoryBudget(usedMemory + 2 * CHUNK_BYTES);
+        String text = randomText(500000, 1);
+
+        try (TextCache cache = new TextCache()) {
+            write(cache, text);
+            assertEquals(spilled + 1, TextCache.getSpilledTexts());
+            assertEquals(usedMemory, TextCache.getUsedMemory());
+            assertEquals(text.length(), cache.getSize());
+            assertEquals(text, read(cache));
+            assertEquals(text, read(cache));
+        }
+    }
+
+    @Test
+    public void testNoSpillIfDiskCacheDisabled() throws IOException {
+        long usedMemory = TextCache.getUsedMemory();
+        long spilled = TextCache.getSpilledTexts();
+        TextCache.setMemoryBudget(usedMemory + 2 * CHUNK_BYTES);
+        String text = randomText(500000, 2);
+
+        try (TextCache cache = new TextCache()) {
+            cache.setEnableDiskCache(false);
+            write(cache, text);
+            assertEquals(spilled, TextCache.getSpilledTexts());
+            assertEquals(text, read(cache));
+        }
+        assertEquals(usedMemory, TextCache.getUsedMemory());
+    }
+
+    @Test
+    public void testTextBounds() throws IOException {
+        String text = randomText(300000, 3);
+        for (boolean spill : new boolean[] { false, true }) {
+            if (spill) {
+                TextCache.setMemoryBudget(TextCache.getUsedMemory());
+            }
+            try (TextCache cache = new TextCache()) {
+                write(cache, text);
+                cache.setTextBounds(70000, 150000);
+                assertEquals(150000, cache.getSize());
+                assertEquals(text.substring(70000, 220000), read(cache));
+
+                cache.setTextBounds(1000, 2000);
+                assertEquals(text.substring(71000, 73000), read(cache));
+            }
+        }
+    }
+
+    @Test
+    public void testClonesShareText() throws IOException {
+        for (boolean spill : new boolean[] { false, true }) {
+            long usedMemory = TextCache.getUsedMemory();
+            if (spill) {
+                TextCache.setMemoryBudget(usedMemory);
+            }
+            String text = randomText(150000, 4);
+            TextCache cache = new TextCache();
+            write(cache, text);
+            TextCache clone = cache.clone();
+            clone.setTextBounds(100, 1000);
+
+            cache.close();
+            assertEquals(text.substring(100, 1100), read(clone));
+            clone.close();
+            assertEquals(usedMemory, TextCache.getUsedMemory());
+            restoreMemoryBudget();
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package iped.engine.webapi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ContentTest {
+
+    private static void assertRange(long start, long end, String range, long length) {
+        assertArrayEquals(new long[] { start, end }, Content.parseRange(range, length));
+    }
+
+    private static void assertIgnored(String range, long length) {
+        assertEquals(0, Content.parseRange(range, length).length);
+    }
+
+    @Test
+    public void testFirstAndLastPositions() {
+        assertRange(0, 499, "bytes=0-499", 1000);
+        assertRange(500, 999, "bytes=500-999", 1000);
+        assertRange(0, 0, "bytes=0-0", 1000);
+        assertRange(999, 999, " bytes= 999 - 999 ", 1000);
+    }
+
+    @Test
+    public void testLastPositionIsLimitedByLength() {
+        assertRange(500, 999, "bytes=500-5000", 1000);
+        assertRange(500, 999, "bytes=500-", 1000);
+    }
+
+    @Test
+    public void testSuffixRange() {
+        assertRange(500, 999, "bytes=-500", 1000);
+        assertRange(0, 999, "bytes=-5000", 1000);
+        assertRange(999, 999, "bytes=-1", 1000);
+    }
+
+    @Test
+    public void testLargeFile() {
+        long length = 10L << 30;
+        assertRange(length - 100, length - 1, "bytes=-100", length);
+        assertRange(5L << 30, length - 1, "bytes=" + (5L << 30) + "-", length);
+    }
+
+    @Test
+    public void testUnsatisfiableRange() {
+        assertNull(Content.parseRange("bytes=1000-", 1000));
+        assertNull(Content.parseRange("bytes=1000-2000", 1000));
+        assertNull(Content.parseRange("bytes=-0", 1000));
+        assertNull(Content.parseRange("bytes=0-", 0));
+        assertNull(Content.parseRange("bytes=-10", 0));
+    }
+
+    @Test
+    public void testIgnoredRange() {
+        assertIgnored("items=0-499", 1000);
+        assertIgnored("bytes=0-99,200-299", 1000);
+        assertIgnored("bytes=500", 1000);
+        assertIgnored("bytes=500-100", 1000);
+        assertIgnored("bytes=a-b", 1000);
+        assertIgnored("bytes=-", 1000);
+        assertIgnored("bytes=--5", 1000);
+    }
+
+    @Test
+    public void testETagMatches() {
+        String etag = "\"D41D8CD98F00B204E9800998ECF8427E\"";
+        assertFalse(Content.matches(null, etag));
+        assertTrue(Content.matches(etag, etag));
+        assertTrue(Content.matches("W/" + etag, etag));
+        assertTrue(Content.matches("\"other\", " + etag, etag));
+        assertTrue(Content.matches("*", etag));
+        assertFalse(Content.matches("\"other\"", etag));
+    }
+
+}
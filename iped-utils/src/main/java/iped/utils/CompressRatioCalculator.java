@@ -0,0 +1,71 @@
+package iped.utils;
+
+/**
+ * Computes the same mean LZ4 compression ratio of {@link RandomFilterInputStream}
+ * from content pushed by the caller, so it can be computed while the content is
+ * read for other purposes. Content is compressed in windows of 64KB overlapped
+ * by 1KB, the last window is compressed only if it has at least 32KB. As in
+ * that stream, a window following a random (not compressible) one does not
+ * overlap it.
+ */
+public class CompressRatioCalculator {
+
+    private static final int BUF_SIZE = RandomFilterInputStream.BUF_SIZE;
+    private static final int OVERLAP = RandomFilterInputStream.OVERLAP;
+
+    private final byte[] window = new byte[BUF_SIZE];
+    private final byte[] compressed = new byte[RandomFilterInputStream.maxCompressedLen];
+    private int count = 0;
+
+    private double compressRatioSum = 0;
+    private long numCompressions = 0;
+
+    public void update(byte[] buf, int off, int len) {
+        while (len > 0) {
+            int n = Math.min(len, BUF_SIZE - count);
+            System.arraycopy(buf, off, window, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == BUF_SIZE) {
+                if (compress() > 1) {
+                    count = 0;
+                } else {
+                    System.arraycopy(window, BUF_SIZE - OVERLAP, window, 0, OVERLAP);
+                    count = OVERLAP;
+                }
+            }
+        }
+    }
+
+    private float compress() {
+        int compressedLength = RandomFilterInputStream.compressor.compress(window, 0, count, compressed, 0,
+                compressed.length);
+        float compressRatio = (float) compressedLength / count;
+        compressRatioSum += compressRatio;
+        numCompressions++;
+        return compressRatio;
+    }
+
+    /**
+     * @return mean compression ratio of the content pushed since the last reset,
+     *         or null if it is too small
+     */
+    public Double getCompressRatio() {
+        if (count >= BUF_SIZE / 2) {
+            compress();
+            count = 0;
+        }
+        if (numCompressions == 0)
+            return null;
+
+        return compressRatioSum / numCompressions;
+    }
+
+    public void reset() {
+        count = 0;
+        compressRatioSum = 0;
+        numCompressions = 0;
+    }
+
+}
@@ -0,0 +1,123 @@
+package iped.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompressRatioCalculatorTest {
+
+    private static final int[] SIZES = { 0, 100, 32 * 1024 - 1, 32 * 1024, 64 * 1024 - 1, 64 * 1024, 64 * 1024 + 1,
+            95 * 1024, 97 * 1024, 200 * 1024, 1024 * 1024 + 123 };
+
+    private static byte[] randomContent(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] textContent(int size) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(size);
+        while (sb.length() < size) {
+            sb.append("line ").append(random.nextInt(1000)).append(" of some compressible text\n");
+        }
+        byte[] content = new byte[size];
+        System.arraycopy(sb.toString().getBytes(StandardCharsets.US_ASCII), 0, content, 0, size);
+        return content;
+    }
+
+    /**
+     * Half compressible and half random content, switching every 40KB, so windows
+     * are classified differently by RandomFilterInputStream.
+     */
+    private static byte[] mixedContent(int size) {
+        byte[] text = textContent(size);
+        byte[] random = randomContent(size, size);
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (i / (40 * 1024)) % 2 == 0 ? text[i] : random[i];
+        }
+        return content;
+    }
+
+    private static Double streamRatio(byte[] content) throws IOException {
+        try (RandomFilterInputStream is = new RandomFilterInputStream(new ByteArrayInputStream(content))) {
+            byte[] buf = new byte[8192];
+            while (is.read(buf) != -1)
+                ;
+            return is.getCompressRatio();
+        }
+    }
+
+    private static Double calculatorRatio(byte[] content, int blockSize) {
+        CompressRatioCalculator calculator = new CompressRatioCalculator();
+        for (int off = 0; off < content.length; off += blockSize) {
+            calculator.update(content, off, Math.min(blockSize, content.length - off));
+        }
+        return calculator.getCompressRatio();
+    }
+
+    private static void assertSameRatio(byte[] content) throws IOException {
+        Double expected = streamRatio(content);
+        for (int blockSize : new int[] { 1000, 64 * 1024, 1024 * 1024 }) {
+            Double ratio = calculatorRatio(content, blockSize);
+            if (expected == null) {
+                assertNull(ratio);
+            } else {
+                assertNotNull(ratio);
+                assertEquals(expected, ratio, 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomContent() throws IOException {
+        for (int size : SIZES) {
+            assertSameRatio(randomContent(size, size));
+        }
+        assertTrue(calculatorRatio(randomContent(200 * 1024, 0), 4096) > 1);
+    }
+
+    @Test
+    public void testTextContent() throws IOException {
+        for (int size : SIZES) {
+            assertSameRatio(textContent(size));
+        }
+        assertTrue(calculatorRatio(textContent(200 * 1024), 4096) < 1);
+    }
+
+    @Test
+    public void testMixedContent() throws IOException {
+        for (int size : SIZES) {
+            assertSameRatio(mixedContent(size));
+        }
+    }
+
+    @Test
+    public void testSmallContent() {
+        assertNull(calculatorRatio(new byte[0], 1));
+        assertNull(calculatorRatio(randomContent(32 * 1024 - 1, 0), 1000));
+        assertNotNull(calculatorRatio(randomContent(32 * 1024, 0), 1000));
+    }
+
+    @Test
+    public void testReset() {
+        byte[] text = textContent(100 * 1024);
+        byte[] random = randomContent(100 * 1024, 0);
+        CompressRatioCalculator calculator = new CompressRatioCalculator();
+        calculator.update(text, 0, text.length);
+        calculator.reset();
+        assertNull(calculator.getCompressRatio());
+        calculator.update(random, 0, random.length);
+        assertEquals(calculatorRatio(random, random.length), calculator.getCompressRatio(), 1e-9);
+    }
+
+}